@@ -13,6 +13,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import org.apache.commons.cli.ParseException;
 import org.apache.log4j.Level;
+import pl.edu.mimuw.nesc.FrontendCaches;
 import pl.edu.mimuw.nesc.abi.ABI;
 import pl.edu.mimuw.nesc.ast.gen.AttrTransformer;
 import pl.edu.mimuw.nesc.ast.gen.Declaration;
@@ -35,13 +36,17 @@ import pl.edu.mimuw.nesc.codesize.CodeSizeEstimation;
 import pl.edu.mimuw.nesc.codesize.CodeSizeEstimator;
 import pl.edu.mimuw.nesc.codesize.EstimationProgramFailedException;
 import pl.edu.mimuw.nesc.codesize.SDCCCodeSizeEstimatorFactory;
+import pl.edu.mimuw.nesc.codesize.StaticCostModel;
 import pl.edu.mimuw.nesc.common.AtomicSpecification;
 import pl.edu.mimuw.nesc.common.util.VariousUtils;
 import pl.edu.mimuw.nesc.common.util.file.FileUtils;
 import pl.edu.mimuw.nesc.compilation.CompilationExecutor;
+import pl.edu.mimuw.nesc.compilation.CompilationListener;
 import pl.edu.mimuw.nesc.compilation.CompilationResult;
 import pl.edu.mimuw.nesc.compilation.DefaultCompilationListener;
 import pl.edu.mimuw.nesc.compilation.ErroneousIssueException;
+import pl.edu.mimuw.nesc.compilation.PhaseMeasurer;
+import pl.edu.mimuw.nesc.compilation.TimeReportCompilationListener;
 import pl.edu.mimuw.nesc.exception.InvalidOptionsException;
 import pl.edu.mimuw.nesc.external.ExternalConstants;
 import pl.edu.mimuw.nesc.names.mangling.NameMangler;
@@ -51,6 +56,9 @@ import pl.edu.mimuw.nesc.refsgraph.ReferencesGraph;
 /**
  * <p>Compilation for 8051 microcontrollers.</p>
  *
+ * <p>Many compilations can be performed with a single compilation executor,
+ * e.g. in the compiler daemon started by {@link DaemonMain}.</p>
+ *
  * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
  */
 public final class Main {
@@ -108,6 +116,20 @@ public final class Main {
      */
     private static final String DEFAULT_PARTITION_HEURISTIC = "bcomponents";
 
+    /**
+     * Default values of parameters of the tabu search heuristic used when
+     * the user does not specify them.
+     */
+    private static final int DEFAULT_PARTITION_SEARCHES_COUNT = 1;
+    private static final int DEFAULT_PARTITION_THREADS_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_PARTITION_SEED = 0;
+
+    /**
+     * Count of threads used for the calibration of the static estimation
+     * model when the user does not specify the count of estimation threads.
+     */
+    private static final int DEFAULT_CALIBRATION_THREADS_COUNT = Runtime.getRuntime().availableProcessors();
+
     /**
      * Code returned by the compiler to the system when the compilation fails.
      */
@@ -119,6 +141,11 @@ public final class Main {
      */
     private static final int STATUS_SUCCESS = 0;
 
+    /**
+     * Executor used for the compilation.
+     */
+    private final CompilationExecutor executor;
+
     /**
      * Options for the 8051 version of the compiler.
      */
@@ -141,15 +168,15 @@ public final class Main {
 
     /**
      * Parse and validate parameters for the 8051 version of the compiler. If
-     * the parsing process fails or the options don't validate, then compilation
-     * is terminated.
+     * the parsing process fails or the options don't validate, then the error
+     * is reported and the parser is absent.
      *
      * @param args The parameters to parse.
      * @return Parser that has parsed the given parameters and allows retrieving
      *         information about them.
      * @throws IOException Cannot read frontend parameters.
      */
-    private static Options8051Parser parseParameters(String[] args) throws IOException {
+    private static Optional<Options8051Parser> parseParameters(String[] args) throws IOException {
         final Options8051Parser optionsParser = new Options8051Parser(args);
 
         // Parse options
@@ -161,32 +188,63 @@ public final class Main {
             } else {
                 optionsParser.printHelpWithError(e.getMessage());
             }
-            System.exit(STATUS_ERROR);
+            return Optional.absent();
         }
 
         // Validate options
         final Optional<String> error = optionsParser.getValidator().validate();
         if (error.isPresent()) {
             optionsParser.printError(error.get());
-            System.exit(STATUS_ERROR);
+            return Optional.absent();
         }
 
-        return optionsParser;
+        return Optional.of(optionsParser);
     }
 
     public static void main(String[] args) {
+        VariousUtils.setLoggingLevel(Level.OFF);
+        System.exit(compile(newExecutor(true, new FrontendCaches()), args));
+    }
+
+    /**
+     * Create a compilation executor for the 8051 version of the compiler.
+     *
+     * @param exitOnErrors Value indicating if the frontend terminates the
+     *                     virtual machine if the options are invalid.
+     * @param caches Caches of the frontend used by the executor.
+     * @return Newly created executor.
+     */
+    static CompilationExecutor newExecutor(boolean exitOnErrors, FrontendCaches caches) {
+        return new CompilationExecutor(DEFAULT_ABI_PLATFORM, TARGET_ATTRIBUTES0,
+                TARGET_ATTRIBUTES1, exitOnErrors, caches);
+    }
+
+    /**
+     * Perform a single compilation with the given executor. The virtual
+     * machine is not terminated.
+     *
+     * @param executor Executor to use for the compilation.
+     * @param args Parameters of the compilation.
+     * @return Exit status of the compilation.
+     */
+    static int compile(CompilationExecutor executor, String[] args) {
         try {
-            VariousUtils.setLoggingLevel(Level.OFF);
-            final Options8051Parser parser = parseParameters(args);
-            new Main(parser.getOptions8051(), parser).compile();
-            System.exit(STATUS_SUCCESS);
+            final Optional<Options8051Parser> parser = parseParameters(args);
+            return parser.isPresent()
+                    ? new Main(executor, parser.get().getOptions8051(), parser.get()).compile()
+                    : STATUS_ERROR;
+        } catch (InvalidOptionsException e) {
+            // the error has been already reported by the frontend
+            return STATUS_ERROR;
         } catch (Exception e) {
             e.printStackTrace();
-            System.exit(STATUS_ERROR);
+            return STATUS_ERROR;
         }
     }
 
-    private Main(Options8051Holder options, OptionsProvider frontendOptions) {
+    private Main(CompilationExecutor executor, Options8051Holder options,
+            OptionsProvider frontendOptions) {
+        this.executor = executor;
         this.options = options;
         this.frontendOptions = frontendOptions;
         this.writeSettings = WriteSettings.builder()
@@ -201,48 +259,89 @@ public final class Main {
     /**
      * Performs the whole compilation process for 8051 microcontrollers. This
      * method shall be called exactly once.
+     *
+     * @return Exit status of the compilation.
      */
-    private void compile() throws InvalidOptionsException {
+    private int compile() throws InvalidOptionsException {
+        final Optional<StaticCostModel> staticCostModel;
+        if (options.getStaticEstimation()) {
+            staticCostModel = loadStaticCostModel();
+            if (!staticCostModel.isPresent()) {
+                return STATUS_ERROR;
+            }
+        } else {
+            staticCostModel = Optional.absent();
+        }
+
         try {
-            checkSDCC();
-            final CompilationExecutor executor = new CompilationExecutor(
-                    DEFAULT_ABI_PLATFORM, TARGET_ATTRIBUTES0,
-                    TARGET_ATTRIBUTES1);
-            executor.setListener(new DefaultCompilationListener());
+            if (!options.getStaticEstimation()) {
+                checkSDCC();
+            }
+            final TimeReportCompilationListener listener = new TimeReportCompilationListener(
+                    Optional.<CompilationListener>of(new DefaultCompilationListener()));
+            executor.setListener(listener);
             final CompilationResult result = executor.compile(frontendOptions);
+            final PhaseMeasurer measurer = new PhaseMeasurer(Optional.<CompilationListener>of(listener));
+            measurer.setCountNodes(result.getTimeReportFileName().isPresent());
+
+            measurer.phaseStarted("separateDeclarations");
             final ImmutableList<Declaration> separatedDecls =
                     separateDeclarations(result.getDeclarations(), result.getNameMangler());
+            measurer.phaseEnded(separatedDecls);
+
+            measurer.phaseStarted("adjustDeclarations");
             reduceAttributes(separatedDecls);
             adjustSpecifiers(separatedDecls);
             assignInterrupts(separatedDecls, options.getInterrupts(), result.getABI());
+            measurer.phaseEnded(separatedDecls);
+
+            measurer.phaseStarted("estimateFunctionsSizes");
             final CodeSizeEstimation funsSizesEstimation = estimateFunctionsSizes(
-                    separatedDecls, result.getReferencesGraph());
+                    separatedDecls, result.getReferencesGraph(), result.getABI(), staticCostModel,
+                    listener);
             dumpInlineFunctions(funsSizesEstimation.getInlineFunctions());
             removeInlineFunsFromRefsGraph(funsSizesEstimation.getInlineFunctions(),
                     result.getReferencesGraph());
             dumpCallGraph(result.getReferencesGraph());
+            measurer.phaseEnded();
+
+            measurer.phaseStarted("partitionFunctions");
             final BankTable bankTable = partitionFunctions(separatedDecls, funsSizesEstimation,
                     result.getAtomicSpecification(), result.getReferencesGraph());
+            measurer.phaseEnded();
+
+            measurer.phaseStarted("partitionDeclarations");
             performPostPartitionAdjustment(separatedDecls, bankTable,
                     funsSizesEstimation.getInlineFunctions(), result.getReferencesGraph());
             final DeclarationsPartitioner.Partition declsPartition =
                     partitionDeclarations(separatedDecls, bankTable,
                             funsSizesEstimation.getInlineFunctions(),
                             result.getNameMangler());
+            measurer.phaseEnded(separatedDecls);
+
             printBankingStatistics(declsPartition, funsSizesEstimation, separatedDecls);
+
+            measurer.phaseStarted("writeDeclarations");
             writeDeclarations(declsPartition, result.getOutputFileName());
+            measurer.phaseEnded();
+
+            if (result.getTimeReportFileName().isPresent()) {
+                listener.writeReport(result.getTimeReportFileName().get());
+            }
+
+            return STATUS_SUCCESS;
         } catch (ErroneousIssueException e) {
-            System.exit(STATUS_ERROR);
+            return STATUS_ERROR;
         } catch (InterruptedException e) {
             System.err.println("interrupted");
-            System.exit(STATUS_ERROR);
+            return STATUS_ERROR;
         } catch (IOException e) {
             System.err.println("I/O error: " + e.getMessage());
-            System.exit(STATUS_ERROR);
+            return STATUS_ERROR;
         } catch (PartitionImpossibleException e) {
             System.err.println("error: cannot partition functions into the code banks: "
                     + e.getMessage());
-            System.exit(STATUS_ERROR);
+            return STATUS_ERROR;
         } catch (EstimationProgramFailedException e) {
             System.err.println("error: estimation operation failed: " + e.getMessage());
             try {
@@ -250,8 +349,35 @@ public final class Main {
             } catch (IOException ioe) {
                 System.err.println("I/O error: " + e.getMessage());
             }
-            System.exit(STATUS_ERROR);
+            return STATUS_ERROR;
+        }
+    }
+
+    /**
+     * Load the model for the static code size estimator from the file given
+     * by the user or get the default model if no file has been given. If the
+     * file cannot be read or it does not contain a valid model, then the error
+     * is reported as an error of options.
+     *
+     * @return The model. It is absent if it cannot be loaded.
+     */
+    private Optional<StaticCostModel> loadStaticCostModel() {
+        if (!options.getStaticEstimationModelFile().isPresent()) {
+            return Optional.of(StaticCostModel.getDefault());
+        }
+
+        final String fileName = options.getStaticEstimationModelFile().get();
+        try {
+            return Optional.of(StaticCostModel.load(fileName));
+        } catch (IOException e) {
+            frontendOptions.printError("cannot read the static estimation model '"
+                    + fileName + "': " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            frontendOptions.printError("invalid static estimation model in file '"
+                    + fileName + "': " + e.getMessage());
         }
+
+        return Optional.absent();
     }
 
     /**
@@ -344,24 +470,40 @@ public final class Main {
 
     /**
      * Estimate sizes of functions whose definitions are on the given list using
-     * the SDCC code size estimator.
+     * the SDCC code size estimator or the static code size estimator if the
+     * user requested it.
      *
      * @param declarations List of declarations. Sizes of defined functions from
      *                     the list will be estimated.
+     * @param abi ABI of the project.
+     * @param staticCostModel Model for the static code size estimator. If it
+     *                        is present, the static estimator is used instead
+     *                        of SDCC.
+     * @param listener Listener the counters of the cache of estimated sizes
+     *                 are reported to.
      * @return Object with the result of estimation.
      */
     private CodeSizeEstimation estimateFunctionsSizes(ImmutableList<Declaration> declarations,
-                ReferencesGraph refsGraph) throws EstimationProgramFailedException,
+                ReferencesGraph refsGraph, ABI abi, Optional<StaticCostModel> staticCostModel,
+                CompilationListener listener) throws EstimationProgramFailedException,
                 InterruptedException, IOException {
 
         timeMeasurer.codeSizeEstimationStarted();
         final SDCCCodeSizeEstimatorFactory estimatorFactory =
                 new SDCCCodeSizeEstimatorFactory(declarations, writeSettings);
 
+        if (staticCostModel.isPresent()) {
+            final CodeSizeEstimation sizeEstimation =
+                    estimatorFactory.newStaticEstimator(abi, staticCostModel.get()).estimate();
+            timeMeasurer.codeSizeEstimationEnded();
+            return sizeEstimation;
+        }
+
         // Memory model and SDCC executable
         estimatorFactory.setMemoryModel(options.getMemoryModel().orNull())
                 .setSDCCExecutable(options.getSDCCExecutable().orNull())
-                .addSDCCParameters(options.getSDCCParameters().or(DEFAULT_SDCC_PARAMS));
+                .addSDCCParameters(options.getSDCCParameters().or(DEFAULT_SDCC_PARAMS))
+                .setCacheDirectory(options.getEstimationCacheDirectory().orNull());
 
         Optional<String> temporaryDirectory = Optional.absent();
         try {
@@ -373,6 +515,12 @@ public final class Main {
 
             estimatorFactory.setTemporaryDirectory(temporaryDirectory.orNull());
 
+            if (options.getCalibrateStaticEstimationFile().isPresent()) {
+                estimatorFactory.calibrateStaticModel(abi, options.getEstimateThreadsCount()
+                        .or(DEFAULT_CALIBRATION_THREADS_COUNT))
+                        .save(options.getCalibrateStaticEstimationFile().get());
+            }
+
             final CodeSizeEstimator estimator = estimatorFactory.newInliningEstimator(
                     options.getEstimateThreadsCount(),
                     options.getSDASExecutable(),
@@ -382,6 +530,11 @@ public final class Main {
             );
             final CodeSizeEstimation sizeEstimation = estimator.estimate();
 
+            if (options.getEstimationCacheDirectory().isPresent()) {
+                listener.counterReported("estimationCacheHits", estimatorFactory.getCacheHitsCount());
+                listener.counterReported("estimationCacheMisses", estimatorFactory.getCacheMissesCount());
+            }
+
             timeMeasurer.codeSizeEstimationEnded();
 
             return sizeEstimation;
@@ -477,7 +630,10 @@ public final class Main {
             final int lastDashPos = partitionHeuristic.lastIndexOf('-');
             partitioner = new TabuSearchCodePartitioner(bankSchema, atomicSpecification,
                     Integer.parseInt(partitionHeuristic.substring(9, lastDashPos)),
-                    Integer.parseInt(partitionHeuristic.substring(lastDashPos + 1)));
+                    Integer.parseInt(partitionHeuristic.substring(lastDashPos + 1)),
+                    options.getPartitionSearchesCount().or(DEFAULT_PARTITION_SEARCHES_COUNT),
+                    options.getPartitionThreadsCount().or(DEFAULT_PARTITION_THREADS_COUNT),
+                    options.getPartitionSeed().or(DEFAULT_PARTITION_SEED));
         } else if (partitionHeuristic.startsWith("greedy-")) {
             partitioner = new GreedyCodePartitioner(bankSchema, atomicSpecification,
                     Integer.parseInt(partitionHeuristic.substring(7)));
@@ -37,6 +37,13 @@ final class Options8051 {
     public static final String OPTION_LONG_DUMP_INLINE_FUNCTIONS = "dump-inline-functions";
     public static final String OPTION_LONG_PRINT_BANKING_STATS = "print-banking-stats";
     public static final String OPTION_LONG_PARTITION_HEURISTIC = "partition-heuristic";
+    public static final String OPTION_LONG_PARTITION_SEARCHES = "partition-searches";
+    public static final String OPTION_LONG_PARTITION_THREADS = "partition-threads";
+    public static final String OPTION_LONG_PARTITION_SEED = "partition-seed";
+    public static final String OPTION_LONG_ESTIMATION_CACHE = "estimation-cache";
+    public static final String OPTION_LONG_STATIC_ESTIMATION = "static-estimation";
+    public static final String OPTION_LONG_STATIC_ESTIMATION_MODEL = "static-estimation-model";
+    public static final String OPTION_LONG_CALIBRATE_STATIC_ESTIMATION = "calibrate-static-estimation";
 
     /**
      * Separators used for options values.
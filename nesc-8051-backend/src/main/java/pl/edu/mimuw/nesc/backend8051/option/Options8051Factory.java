@@ -96,6 +96,46 @@ final class Options8051Factory {
                 .hasArg()
                 .desc("heuristic to use for partitioning of functions into banks; available heuristics: simple, bcomponents, greedy-n (where n is an arbitrary positive natural number), tmsearch-n-m (where n and m are arbitrary natural numbers, n is the maximum count of iterations and m is the maximum count of consecutive fruitless iterations); if this option is not specified, then heuristic 'bcomponents' is used")
                 .argName("heuristic-kind")
+                .build(),
+            Option.builder()
+                .longOpt(OPTION_LONG_PARTITION_SEARCHES)
+                .hasArg()
+                .desc("count of independent searches performed by heuristic 'tmsearch'; the first search starts from the initial partition and other searches start from its random perturbations; the best partition found by all searches is used; if this option is not specified, then one search is performed")
+                .argName("number")
+                .build(),
+            Option.builder()
+                .longOpt(OPTION_LONG_PARTITION_THREADS)
+                .hasArg()
+                .desc("count of threads that perform searches of heuristic 'tmsearch'; the count does not affect the result of the partition; if this option is not specified, then the count of available processors is used")
+                .argName("number")
+                .build(),
+            Option.builder()
+                .longOpt(OPTION_LONG_PARTITION_SEED)
+                .hasArg()
+                .desc("seed for the random perturbations of the initial partition made by heuristic 'tmsearch'; if this option is not specified, then seed 0 is used")
+                .argName("number")
+                .build(),
+            Option.builder()
+                .longOpt(OPTION_LONG_ESTIMATION_CACHE)
+                .hasArg()
+                .desc("directory of the cache of estimated sizes of functions; SDCC is not invoked for functions whose sizes are found in the cache and sizes of remaining functions are saved in it; the directory is created if it does not exist; entries of the cache are never removed by the compiler")
+                .argName("directory")
+                .build(),
+            Option.builder()
+                .longOpt(OPTION_LONG_STATIC_ESTIMATION)
+                .desc("estimate sizes of functions from the code using a model instead of invoking SDCC; it is much faster but less accurate; no function is made inline by the compiler if this option is specified")
+                .build(),
+            Option.builder()
+                .longOpt(OPTION_LONG_STATIC_ESTIMATION_MODEL)
+                .hasArg()
+                .desc("file with the model used by option '--" + OPTION_LONG_STATIC_ESTIMATION + "' created by option '--" + OPTION_LONG_CALIBRATE_STATIC_ESTIMATION + "'; if this option is not specified, then the default model is used")
+                .argName("file")
+                .build(),
+            Option.builder()
+                .longOpt(OPTION_LONG_CALIBRATE_STATIC_ESTIMATION)
+                .hasArg()
+                .desc("fit the model for option '--" + OPTION_LONG_STATIC_ESTIMATION + "' to sizes of functions of the compiled program estimated by SDCC and save it to file")
+                .argName("file")
                 .build()
         };
 
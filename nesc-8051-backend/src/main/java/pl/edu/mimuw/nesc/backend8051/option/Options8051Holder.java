@@ -194,6 +194,34 @@ public final class Options8051Holder {
         return Optional.fromNullable(cmdLine.getOptionValue(OPTION_LONG_PARTITION_HEURISTIC));
     }
 
+    public Optional<Integer> getPartitionSearchesCount() {
+        return getIntegerOptionValue(OPTION_LONG_PARTITION_SEARCHES);
+    }
+
+    public Optional<Integer> getPartitionThreadsCount() {
+        return getIntegerOptionValue(OPTION_LONG_PARTITION_THREADS);
+    }
+
+    public Optional<Integer> getPartitionSeed() {
+        return getIntegerOptionValue(OPTION_LONG_PARTITION_SEED);
+    }
+
+    public Optional<String> getEstimationCacheDirectory() {
+        return Optional.fromNullable(cmdLine.getOptionValue(OPTION_LONG_ESTIMATION_CACHE));
+    }
+
+    public boolean getStaticEstimation() {
+        return cmdLine.hasOption(OPTION_LONG_STATIC_ESTIMATION);
+    }
+
+    public Optional<String> getStaticEstimationModelFile() {
+        return Optional.fromNullable(cmdLine.getOptionValue(OPTION_LONG_STATIC_ESTIMATION_MODEL));
+    }
+
+    public Optional<String> getCalibrateStaticEstimationFile() {
+        return Optional.fromNullable(cmdLine.getOptionValue(OPTION_LONG_CALIBRATE_STATIC_ESTIMATION));
+    }
+
     private Optional<Integer> getIntegerOptionValue(String optionName) {
         final Optional<String> optionValue = Optional.fromNullable(
                 cmdLine.getOptionValue(optionName));
@@ -101,7 +101,13 @@ public final class Options8051Validator {
                 new SDASExecutableValidator(),
                 new MaximumInlineSizeValidator(),
                 new DumpInlineFunctionsValidator(),
-                new PartitionHeuristicValidator()
+                new PartitionHeuristicValidator(),
+                new PartitionSearchesValidator(),
+                new PartitionThreadsValidator(),
+                new PartitionSeedValidator(),
+                new EstimationCacheValidator(),
+                new StaticEstimationModelValidator(),
+                new CalibrateStaticEstimationValidator()
         );
     }
 
@@ -357,6 +363,68 @@ public final class Options8051Validator {
         }
     }
 
+    private final class EstimationCacheValidator implements SingleValidator {
+        @Override
+        public Optional<String> validate() {
+            return checkNonEmptyString(getOptionValue(Options8051.OPTION_LONG_ESTIMATION_CACHE),
+                    "directory of the estimation cache");
+        }
+    }
+
+    private final class StaticEstimationModelValidator implements SingleValidator {
+        @Override
+        public Optional<String> validate() {
+            if (cmdLine.hasOption(Options8051.OPTION_LONG_STATIC_ESTIMATION_MODEL)
+                    && !cmdLine.hasOption(Options8051.OPTION_LONG_STATIC_ESTIMATION)) {
+                return Optional.of("option '--" + Options8051.OPTION_LONG_STATIC_ESTIMATION_MODEL
+                        + "' can be specified only with option '--"
+                        + Options8051.OPTION_LONG_STATIC_ESTIMATION + "'");
+            }
+
+            return checkNonEmptyString(getOptionValue(Options8051.OPTION_LONG_STATIC_ESTIMATION_MODEL),
+                    "file with the static estimation model");
+        }
+    }
+
+    private final class CalibrateStaticEstimationValidator implements SingleValidator {
+        @Override
+        public Optional<String> validate() {
+            if (cmdLine.hasOption(Options8051.OPTION_LONG_CALIBRATE_STATIC_ESTIMATION)
+                    && cmdLine.hasOption(Options8051.OPTION_LONG_STATIC_ESTIMATION)) {
+                return Optional.of("options '--" + Options8051.OPTION_LONG_CALIBRATE_STATIC_ESTIMATION
+                        + "' and '--" + Options8051.OPTION_LONG_STATIC_ESTIMATION
+                        + "' cannot be specified at the same time");
+            }
+
+            return checkNonEmptyString(getOptionValue(Options8051.OPTION_LONG_CALIBRATE_STATIC_ESTIMATION),
+                    "file for the calibrated static estimation model");
+        }
+    }
+
+    private final class PartitionSearchesValidator implements SingleValidator {
+        @Override
+        public Optional<String> validate() {
+            return checkGreaterOrEqual(getOptionValue(Options8051.OPTION_LONG_PARTITION_SEARCHES),
+                    "count of partition searches", 1);
+        }
+    }
+
+    private final class PartitionThreadsValidator implements SingleValidator {
+        @Override
+        public Optional<String> validate() {
+            return checkGreaterOrEqual(getOptionValue(Options8051.OPTION_LONG_PARTITION_THREADS),
+                    "count of partition threads", 1);
+        }
+    }
+
+    private final class PartitionSeedValidator implements SingleValidator {
+        @Override
+        public Optional<String> validate() {
+            return checkGreaterOrEqual(getOptionValue(Options8051.OPTION_LONG_PARTITION_SEED),
+                    "seed for the partition", 0);
+        }
+    }
+
     private final class PartitionHeuristicValidator implements SingleValidator {
         @Override
         public Optional<String> validate() {
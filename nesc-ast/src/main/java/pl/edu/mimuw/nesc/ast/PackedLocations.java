@@ -0,0 +1,204 @@
+package pl.edu.mimuw.nesc.ast;
+
+import com.google.common.base.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Utility class for representing locations as single <code>long</code>
+ * values. It is used by AST nodes generated with the compact layout. Paths of
+ * files are interned and identified by numbers.</p>
+ *
+ * <p>A packed location consists of the identifier of the file, the line and
+ * the column. Locations with a line or column that does not fit in the packed
+ * representation are stored in a table and the packed value is their index in
+ * it. Value zero represents the <code>null</code> reference.</p>
+ *
+ * <p>Paths and locations that cannot be packed are interned in tables backed
+ * by concurrent hash maps, so the tables grow only with the count of distinct
+ * values and packing a value already present in them does not lock or copy
+ * anything. The tables are shared by all compilations in the virtual machine
+ * because nodes do not know the compilation they belong to.</p>
+ *
+ * <p>Unpacking a location that is not the dummy location allocates a new
+ * {@link Location} object, so each call of a generated getter of a location
+ * does. Callers that use a location many times should keep the returned
+ * object instead of calling the getter again.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class PackedLocations {
+    /**
+     * Widths of the parts of a packed location.
+     */
+    private static final int COLUMN_BITS = 20;
+    private static final int LINE_BITS = 20;
+    private static final int FILE_BITS = 23;
+
+    private static final long COLUMN_MASK = (1L << COLUMN_BITS) - 1L;
+    private static final long LINE_MASK = (1L << LINE_BITS) - 1L;
+    private static final long FILE_MASK = (1L << FILE_BITS) - 1L;
+
+    /**
+     * Bit set in values that are indices in the table of locations that
+     * cannot be packed.
+     */
+    private static final long UNPACKED_FLAG = 1L << 63;
+
+    /**
+     * Packed value of the <code>null</code> reference.
+     */
+    private static final long NULL_VALUE = 0L;
+
+    /**
+     * Identifier of the <code>null</code> path.
+     */
+    private static final int NULL_FILE_ID = 1;
+
+    /**
+     * Paths of files interned with identifiers greater than the identifier of
+     * the <code>null</code> path.
+     */
+    private static final InterningTable<String> FILES_PATHS = new InterningTable<>(NULL_FILE_ID + 1);
+
+    /**
+     * Locations that cannot be packed.
+     */
+    private static final InterningTable<LocationKey> UNPACKED_LOCATIONS = new InterningTable<>(0);
+
+    /**
+     * Get the packed representation of the given location.
+     *
+     * @param location Location to pack (may be <code>null</code>).
+     * @return Value that represents the given location.
+     */
+    public static long pack(Location location) {
+        if (location == null) {
+            return NULL_VALUE;
+        }
+
+        final long line = location.getLine() + 1L;
+        final long column = location.getColumn() + 1L;
+        final long fileId = getFileId(location.getFilePath());
+
+        if (line < 0L || line > LINE_MASK || column < 0L || column > COLUMN_MASK
+                || fileId > FILE_MASK) {
+            return storeUnpacked(location);
+        }
+
+        return (fileId << (LINE_BITS + COLUMN_BITS)) | (line << COLUMN_BITS) | column;
+    }
+
+    /**
+     * Get the location represented by the given value.
+     *
+     * @param packedLocation Value returned by {@link PackedLocations#pack}.
+     * @return Location represented by the given value.
+     */
+    public static Location unpack(long packedLocation) {
+        if (packedLocation == NULL_VALUE) {
+            return null;
+        } else if ((packedLocation & UNPACKED_FLAG) != 0L) {
+            return UNPACKED_LOCATIONS.get((int) (packedLocation & ~UNPACKED_FLAG)).location;
+        }
+
+        final int fileId = (int) ((packedLocation >>> (LINE_BITS + COLUMN_BITS)) & FILE_MASK);
+        final String filePath = fileId != NULL_FILE_ID ? FILES_PATHS.get(fileId) : null;
+        final int line = (int) ((packedLocation >>> COLUMN_BITS) & LINE_MASK) - 1;
+        final int column = (int) (packedLocation & COLUMN_MASK) - 1;
+        final Location dummyLocation = Location.getDummyLocation();
+
+        return line == dummyLocation.getLine() && column == dummyLocation.getColumn()
+                    && dummyLocation.getFilePath().equals(filePath)
+                ? dummyLocation
+                : new Location(filePath, line, column);
+    }
+
+    private static long getFileId(String filePath) {
+        return filePath != null
+                ? FILES_PATHS.intern(filePath)
+                : NULL_FILE_ID;
+    }
+
+    private static long storeUnpacked(Location location) {
+        return UNPACKED_FLAG | UNPACKED_LOCATIONS.intern(new LocationKey(location));
+    }
+
+    /**
+     * Private constructor to prevent instantiating this class.
+     */
+    private PackedLocations() {
+    }
+
+    /**
+     * Table that assigns consecutive identifiers to distinct values. Each
+     * value is assigned a single identifier. Some identifiers may be unused
+     * if multiple threads intern the same value at once.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private static final class InterningTable<T> {
+        private final ConcurrentMap<T, Integer> ids = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Integer, T> values = new ConcurrentHashMap<>();
+        private final AtomicInteger nextId;
+
+        private InterningTable(int firstId) {
+            this.nextId = new AtomicInteger(firstId);
+        }
+
+        private int intern(T value) {
+            final Integer id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+
+            // Publish the value before its identifier becomes visible
+            final int newId = nextId.getAndIncrement();
+            values.put(newId, value);
+            final Integer existingId = ids.putIfAbsent(value, newId);
+            if (existingId != null) {
+                values.remove(newId);
+                return existingId;
+            }
+            return newId;
+        }
+
+        private T get(int id) {
+            return values.get(id);
+        }
+    }
+
+    /**
+     * Key of a location that takes its file into account, contrary to
+     * {@link Location#equals}.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private static final class LocationKey {
+        private final Location location;
+
+        private LocationKey(Location location) {
+            this.location = location;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(location.getFilePath(), location.getLine(), location.getColumn());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final LocationKey other = (LocationKey) obj;
+            return Objects.equal(location.getFilePath(), other.location.getFilePath())
+                    && location.getLine() == other.location.getLine()
+                    && location.getColumn() == other.location.getColumn();
+        }
+    }
+}
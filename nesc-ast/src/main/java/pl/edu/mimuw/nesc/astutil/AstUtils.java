@@ -372,6 +372,23 @@ public final class AstUtils {
                 : Optional.<LinkedList<T>>absent();
     }
 
+    /**
+     * Count all nodes of the given trees.
+     *
+     * @param roots Roots of trees whose nodes will be counted.
+     * @return Count of nodes of all trees from the given iterable.
+     */
+    public static int countNodes(Iterable<? extends Node> roots) {
+        checkNotNull(roots, "roots cannot be null");
+
+        final NodesCountingVisitor countingVisitor = new NodesCountingVisitor();
+        for (Node root : roots) {
+            root.traverse(countingVisitor, null);
+        }
+
+        return countingVisitor.nodesCount;
+    }
+
     /**
      * Create an AST node that represents the return type of the function with
      * given definition.
@@ -1402,4 +1419,18 @@ public final class AstUtils {
         }
     }
 
+    /**
+     * Visitor that counts all visited nodes.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private static final class NodesCountingVisitor extends NullVisitor<Void, Void> {
+        private int nodesCount = 0;
+
+        @Override
+        protected Void defaultVisit(Node node, Void arg) {
+            ++nodesCount;
+            return null;
+        }
+    }
 }
@@ -0,0 +1,141 @@
+package pl.edu.mimuw.nesc.astutil;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import pl.edu.mimuw.nesc.ast.Location;
+import pl.edu.mimuw.nesc.ast.gen.Node;
+
+/**
+ * <p>Interface for encoding objects referred by AST nodes that are not nodes
+ * themselves and are not simple values, e.g. types, declarations and
+ * environments. It is used by the generated
+ * {@link pl.edu.mimuw.nesc.ast.gen.AstWriter} and
+ * {@link pl.edu.mimuw.nesc.ast.gen.AstReader}.</p>
+ *
+ * <p>The writer and reader preserve the identity of such objects: each object
+ * is passed to the codec only once and later occurrences of it are written as
+ * references to the first one.</p>
+ *
+ * <p>A codec can write other external objects and nodes referred by the
+ * written object through the given output. An external object can be
+ * referred only after the codec has returned it, so objects that take part
+ * in cycles shall be created from data that does not depend on them and
+ * completed in a deferred read. Fields of nodes written by the codec are
+ * always read in a deferred manner.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public interface ExternalObjectsCodec {
+    /**
+     * Write the given object to the given output.
+     *
+     * @param object Object to write. Never <code>null</code>.
+     * @param output Output to write the object to.
+     * @throws IOException Writing the object failed.
+     */
+    void writeObject(Object object, Output output) throws IOException;
+
+    /**
+     * Read an object written by {@link ExternalObjectsCodec#writeObject}.
+     *
+     * @param input Input to read the object from.
+     * @return The read object. Never <code>null</code>.
+     * @throws IOException Reading the object failed.
+     */
+    Object readObject(Input input) throws IOException;
+
+    /**
+     * Output for writing an external object.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    interface Output {
+        /**
+         * Get the output for writing simple values.
+         *
+         * @return The underlying output.
+         */
+        DataOutput getDataOutput();
+
+        /**
+         * Write the given string. Equal strings are written only once.
+         *
+         * @param value String to write (may be <code>null</code>).
+         */
+        void writeString(String value) throws IOException;
+
+        /**
+         * Write the given location.
+         *
+         * @param location Location to write (may be <code>null</code>).
+         */
+        void writeLocation(Location location) throws IOException;
+
+        /**
+         * Write a reference to the given node. Its fields are written later,
+         * after the outermost external object.
+         *
+         * @param node Node to write (may be <code>null</code>).
+         */
+        void writeNode(Node node) throws IOException;
+
+        /**
+         * Write the given external object with the identity preserved.
+         *
+         * @param object Object to write (may be <code>null</code>).
+         */
+        void writeObject(Object object) throws IOException;
+
+        /**
+         * Defer writing some data until the outermost external object is
+         * written. The order of deferred operations is preserved.
+         *
+         * @param write Operation to perform later.
+         */
+        void defer(DeferredWrite write);
+    }
+
+    /**
+     * Input for reading an external object. Operations of it correspond to
+     * the operations of {@link Output}.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    interface Input {
+        DataInput getDataInput();
+
+        String readString() throws IOException;
+
+        Location readLocation() throws IOException;
+
+        /**
+         * Read a node written by {@link Output#writeNode}. Fields of the
+         * returned node are not set until the outermost external object is
+         * read.
+         */
+        <T extends Node> T readNode(Class<T> nodeClass) throws IOException;
+
+        <T> T readObject(Class<T> objectClass) throws IOException;
+
+        void defer(DeferredRead read);
+    }
+
+    /**
+     * Operation of writing performed after the outermost external object.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    interface DeferredWrite {
+        void write() throws IOException;
+    }
+
+    /**
+     * Operation of reading performed after the outermost external object.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    interface DeferredRead {
+        void read() throws IOException;
+    }
+}
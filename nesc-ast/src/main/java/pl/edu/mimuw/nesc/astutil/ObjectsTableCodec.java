@@ -0,0 +1,67 @@
+package pl.edu.mimuw.nesc.astutil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Codec of external objects that stores them in a table and writes only
+ * their indices in it. The same codec object shall be used for writing and
+ * reading, so the written data can be read only in the same process. It is
+ * suitable for keeping ASTs in a serialized form in memory and for copying
+ * them with types and declarations shared between the original and the
+ * copy.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class ObjectsTableCodec implements ExternalObjectsCodec {
+    /**
+     * Objects that have been written.
+     */
+    private final List<Object> objects = new ArrayList<>();
+
+    /**
+     * Indices of the objects in the list.
+     */
+    private final Map<Object, Integer> indices = new IdentityHashMap<>();
+
+    @Override
+    public void writeObject(Object object, Output output) throws IOException {
+        checkNotNull(object, "object cannot be null");
+        checkNotNull(output, "output cannot be null");
+
+        Integer index = indices.get(object);
+        if (index == null) {
+            index = objects.size();
+            objects.add(object);
+            indices.put(object, index);
+        }
+
+        output.getDataOutput().writeInt(index);
+    }
+
+    @Override
+    public Object readObject(Input input) throws IOException {
+        checkNotNull(input, "input cannot be null");
+
+        final int index = input.getDataInput().readInt();
+        if (index < 0 || index >= objects.size()) {
+            throw new IOException("invalid index of an external object: " + index);
+        }
+
+        return objects.get(index);
+    }
+
+    /**
+     * Get the count of objects stored in this codec.
+     *
+     * @return Count of stored objects.
+     */
+    public int size() {
+        return objects.size();
+    }
+}
@@ -0,0 +1,1038 @@
+package pl.edu.mimuw.nesc.astutil;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import pl.edu.mimuw.nesc.abi.Endianness;
+import pl.edu.mimuw.nesc.ast.Location;
+import pl.edu.mimuw.nesc.ast.StructKind;
+import pl.edu.mimuw.nesc.ast.gen.AttributeRef;
+import pl.edu.mimuw.nesc.ast.gen.EnumRef;
+import pl.edu.mimuw.nesc.ast.gen.Enumerator;
+import pl.edu.mimuw.nesc.ast.gen.Expression;
+import pl.edu.mimuw.nesc.ast.gen.FieldDecl;
+import pl.edu.mimuw.nesc.ast.gen.FunctionDeclarator;
+import pl.edu.mimuw.nesc.ast.gen.Node;
+import pl.edu.mimuw.nesc.ast.gen.StructRef;
+import pl.edu.mimuw.nesc.ast.gen.UnionRef;
+import pl.edu.mimuw.nesc.declaration.Declaration;
+import pl.edu.mimuw.nesc.declaration.label.LabelDeclaration;
+import pl.edu.mimuw.nesc.declaration.object.ConstantDeclaration;
+import pl.edu.mimuw.nesc.declaration.object.FunctionDeclaration;
+import pl.edu.mimuw.nesc.declaration.object.Linkage;
+import pl.edu.mimuw.nesc.declaration.object.TypenameDeclaration;
+import pl.edu.mimuw.nesc.declaration.object.VariableDeclaration;
+import pl.edu.mimuw.nesc.declaration.tag.AttributeDeclaration;
+import pl.edu.mimuw.nesc.declaration.tag.EnumDeclaration;
+import pl.edu.mimuw.nesc.declaration.tag.FieldDeclaration;
+import pl.edu.mimuw.nesc.declaration.tag.FieldTagDeclaration;
+import pl.edu.mimuw.nesc.declaration.tag.StructDeclaration;
+import pl.edu.mimuw.nesc.declaration.tag.TagDeclaration;
+import pl.edu.mimuw.nesc.declaration.tag.UnionDeclaration;
+import pl.edu.mimuw.nesc.declaration.tag.fieldtree.BlockElement;
+import pl.edu.mimuw.nesc.declaration.tag.fieldtree.FieldElement;
+import pl.edu.mimuw.nesc.declaration.tag.fieldtree.TreeElement;
+import pl.edu.mimuw.nesc.external.ExternalScheme;
+import pl.edu.mimuw.nesc.type.*;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Codec of external objects that writes types and declarations entirely to
+ * the stream. Unlike {@link ObjectsTableCodec}, the written data can be read
+ * by a different codec object, e.g. in another process, so the codec is
+ * suitable for storing ASTs on disk.</p>
+ *
+ * <p>Supported objects are all types and declaration objects of variables,
+ * functions, type definitions, enumeration constants, tags, fields and labels.
+ * Environments, declarations specific to NesC and other objects are not
+ * supported. Environments of read declarations are not set.</p>
+ *
+ * <p>Types are immutable, so they are created after reading the objects they
+ * refer to. Declarations of tags and fields can take part in cycles, so they
+ * are created from their basic data and their contents are read in a deferred
+ * manner.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class PortableObjectsCodec implements ExternalObjectsCodec {
+    /**
+     * Version of the format of written objects. It shall be changed after
+     * changing the format and stored along with the written data.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * Kinds of written objects.
+     */
+    private static final byte KIND_VOID = 0;
+    private static final byte KIND_CHAR = 1;
+    private static final byte KIND_SIGNED_CHAR = 2;
+    private static final byte KIND_UNSIGNED_CHAR = 3;
+    private static final byte KIND_SHORT = 4;
+    private static final byte KIND_UNSIGNED_SHORT = 5;
+    private static final byte KIND_INT = 6;
+    private static final byte KIND_UNSIGNED_INT = 7;
+    private static final byte KIND_LONG = 8;
+    private static final byte KIND_UNSIGNED_LONG = 9;
+    private static final byte KIND_LONG_LONG = 10;
+    private static final byte KIND_UNSIGNED_LONG_LONG = 11;
+    private static final byte KIND_FLOAT = 12;
+    private static final byte KIND_DOUBLE = 13;
+    private static final byte KIND_LONG_DOUBLE = 14;
+    private static final byte KIND_ENUMERATED = 15;
+    private static final byte KIND_POINTER = 16;
+    private static final byte KIND_ARRAY = 17;
+    private static final byte KIND_FUNCTION = 18;
+    private static final byte KIND_STRUCTURE = 19;
+    private static final byte KIND_EXTERNAL_STRUCTURE = 20;
+    private static final byte KIND_UNION = 21;
+    private static final byte KIND_EXTERNAL_UNION = 22;
+    private static final byte KIND_INTERFACE = 23;
+    private static final byte KIND_COMPONENT = 24;
+    private static final byte KIND_TYPE_DEFINITION = 25;
+    private static final byte KIND_UNKNOWN = 26;
+    private static final byte KIND_UNKNOWN_ARITHMETIC = 27;
+    private static final byte KIND_UNKNOWN_INTEGER = 28;
+    private static final byte KIND_VARIABLE_DECLARATION = 40;
+    private static final byte KIND_FUNCTION_DECLARATION = 41;
+    private static final byte KIND_TYPENAME_DECLARATION = 42;
+    private static final byte KIND_CONSTANT_DECLARATION = 43;
+    private static final byte KIND_STRUCT_DECLARATION = 44;
+    private static final byte KIND_UNION_DECLARATION = 45;
+    private static final byte KIND_ENUM_DECLARATION = 46;
+    private static final byte KIND_ATTRIBUTE_DECLARATION = 47;
+    private static final byte KIND_FIELD_DECLARATION = 48;
+    private static final byte KIND_LABEL_DECLARATION = 49;
+
+    /**
+     * Markers of elements of the structure of a field tag.
+     */
+    private static final byte FIELD_ELEMENT_MARKER = 0;
+    private static final byte BLOCK_ELEMENT_MARKER = 1;
+
+    private static final Map<Class<?>, Byte> KINDS = new HashMap<>();
+    static {
+        KINDS.put(VoidType.class, KIND_VOID);
+        KINDS.put(CharType.class, KIND_CHAR);
+        KINDS.put(SignedCharType.class, KIND_SIGNED_CHAR);
+        KINDS.put(UnsignedCharType.class, KIND_UNSIGNED_CHAR);
+        KINDS.put(ShortType.class, KIND_SHORT);
+        KINDS.put(UnsignedShortType.class, KIND_UNSIGNED_SHORT);
+        KINDS.put(IntType.class, KIND_INT);
+        KINDS.put(UnsignedIntType.class, KIND_UNSIGNED_INT);
+        KINDS.put(LongType.class, KIND_LONG);
+        KINDS.put(UnsignedLongType.class, KIND_UNSIGNED_LONG);
+        KINDS.put(LongLongType.class, KIND_LONG_LONG);
+        KINDS.put(UnsignedLongLongType.class, KIND_UNSIGNED_LONG_LONG);
+        KINDS.put(FloatType.class, KIND_FLOAT);
+        KINDS.put(DoubleType.class, KIND_DOUBLE);
+        KINDS.put(LongDoubleType.class, KIND_LONG_DOUBLE);
+        KINDS.put(EnumeratedType.class, KIND_ENUMERATED);
+        KINDS.put(PointerType.class, KIND_POINTER);
+        KINDS.put(ArrayType.class, KIND_ARRAY);
+        KINDS.put(FunctionType.class, KIND_FUNCTION);
+        KINDS.put(StructureType.class, KIND_STRUCTURE);
+        KINDS.put(ExternalStructureType.class, KIND_EXTERNAL_STRUCTURE);
+        KINDS.put(UnionType.class, KIND_UNION);
+        KINDS.put(ExternalUnionType.class, KIND_EXTERNAL_UNION);
+        KINDS.put(InterfaceType.class, KIND_INTERFACE);
+        KINDS.put(ComponentType.class, KIND_COMPONENT);
+        KINDS.put(TypeDefinitionType.class, KIND_TYPE_DEFINITION);
+        KINDS.put(UnknownType.class, KIND_UNKNOWN);
+        KINDS.put(UnknownArithmeticType.class, KIND_UNKNOWN_ARITHMETIC);
+        KINDS.put(UnknownIntegerType.class, KIND_UNKNOWN_INTEGER);
+        KINDS.put(VariableDeclaration.class, KIND_VARIABLE_DECLARATION);
+        KINDS.put(FunctionDeclaration.class, KIND_FUNCTION_DECLARATION);
+        KINDS.put(TypenameDeclaration.class, KIND_TYPENAME_DECLARATION);
+        KINDS.put(ConstantDeclaration.class, KIND_CONSTANT_DECLARATION);
+        KINDS.put(StructDeclaration.class, KIND_STRUCT_DECLARATION);
+        KINDS.put(UnionDeclaration.class, KIND_UNION_DECLARATION);
+        KINDS.put(EnumDeclaration.class, KIND_ENUM_DECLARATION);
+        KINDS.put(AttributeDeclaration.class, KIND_ATTRIBUTE_DECLARATION);
+        KINDS.put(FieldDeclaration.class, KIND_FIELD_DECLARATION);
+        KINDS.put(LabelDeclaration.class, KIND_LABEL_DECLARATION);
+    }
+
+    @Override
+    public void writeObject(Object object, Output output) throws IOException {
+        checkNotNull(object, "object cannot be null");
+        checkNotNull(output, "output cannot be null");
+
+        final Byte kind = KINDS.get(object.getClass());
+        if (kind == null) {
+            throw new IllegalArgumentException("cannot write an object of class "
+                    + object.getClass().getCanonicalName());
+        }
+
+        output.getDataOutput().writeByte(kind);
+
+        if (object instanceof Type) {
+            writeType((Type) object, kind, output);
+        } else {
+            writeDeclaration((Declaration) object, kind, output);
+        }
+    }
+
+    @Override
+    public Object readObject(Input input) throws IOException {
+        checkNotNull(input, "input cannot be null");
+
+        final byte kind = input.getDataInput().readByte();
+        return kind < KIND_VARIABLE_DECLARATION
+                ? readType(kind, input)
+                : readDeclaration(kind, input);
+    }
+
+    private void writeType(Type type, byte kind, Output output) throws IOException {
+        final DataOutput dataOutput = output.getDataOutput();
+
+        if (kind != KIND_ARRAY && kind != KIND_FUNCTION && kind != KIND_INTERFACE
+                && kind != KIND_COMPONENT && kind != KIND_TYPE_DEFINITION) {
+            dataOutput.writeBoolean(type.isConstQualified());
+            dataOutput.writeBoolean(type.isVolatileQualified());
+        }
+
+        switch (kind) {
+            case KIND_VOID:
+            case KIND_TYPE_DEFINITION:
+                break;
+            case KIND_CHAR:
+            case KIND_SIGNED_CHAR:
+            case KIND_UNSIGNED_CHAR:
+            case KIND_SHORT:
+            case KIND_UNSIGNED_SHORT:
+            case KIND_INT:
+            case KIND_UNSIGNED_INT:
+            case KIND_LONG:
+            case KIND_UNSIGNED_LONG:
+            case KIND_LONG_LONG:
+            case KIND_UNSIGNED_LONG_LONG:
+            case KIND_FLOAT:
+            case KIND_DOUBLE:
+            case KIND_LONG_DOUBLE:
+                writeExternalScheme(((ArithmeticType) type).getExternalScheme(), output);
+                break;
+            case KIND_ENUMERATED:
+                output.writeObject(((EnumeratedType) type).getEnumDeclaration());
+                break;
+            case KIND_POINTER: {
+                final PointerType pointerType = (PointerType) type;
+                dataOutput.writeBoolean(pointerType.isRestrictQualified());
+                output.writeObject(pointerType.getReferencedType());
+                break;
+            }
+            case KIND_ARRAY: {
+                final ArrayType arrayType = (ArrayType) type;
+                output.writeObject(arrayType.getElementType());
+                output.writeNode(arrayType.getSize().orNull());
+                break;
+            }
+            case KIND_FUNCTION: {
+                final FunctionType functionType = (FunctionType) type;
+                output.writeObject(functionType.getReturnType());
+                writeTypes(functionType.getArgumentsTypes(), output);
+                dataOutput.writeBoolean(functionType.getVariableArguments());
+                break;
+            }
+            case KIND_STRUCTURE:
+            case KIND_EXTERNAL_STRUCTURE:
+            case KIND_UNION:
+            case KIND_EXTERNAL_UNION:
+                output.writeObject(((FieldTagType<?>) type).getDeclaration());
+                break;
+            case KIND_INTERFACE: {
+                final InterfaceType interfaceType = (InterfaceType) type;
+                output.writeString(interfaceType.getInterfaceName());
+                dataOutput.writeBoolean(interfaceType.getTypeParameters().isPresent());
+                if (interfaceType.getTypeParameters().isPresent()) {
+                    writeTypes(interfaceType.getTypeParameters().get(), output);
+                }
+                break;
+            }
+            case KIND_COMPONENT:
+                output.writeString(((ComponentType) type).getComponentName());
+                break;
+            case KIND_UNKNOWN:
+            case KIND_UNKNOWN_ARITHMETIC:
+            case KIND_UNKNOWN_INTEGER:
+                output.writeString(((UnknownType) type).getName());
+                break;
+            default:
+                throw new IllegalStateException("unexpected kind of a type " + kind);
+        }
+    }
+
+    private Type readType(byte kind, Input input) throws IOException {
+        final DataInput dataInput = input.getDataInput();
+        boolean constQualified = false, volatileQualified = false;
+
+        if (kind != KIND_ARRAY && kind != KIND_FUNCTION && kind != KIND_INTERFACE
+                && kind != KIND_COMPONENT && kind != KIND_TYPE_DEFINITION) {
+            constQualified = dataInput.readBoolean();
+            volatileQualified = dataInput.readBoolean();
+        }
+
+        switch (kind) {
+            case KIND_VOID:
+                return new VoidType(constQualified, volatileQualified);
+            case KIND_TYPE_DEFINITION:
+                return TypeDefinitionType.getInstance();
+            case KIND_CHAR:
+                return new CharType(constQualified, volatileQualified, readExternalScheme(input));
+            case KIND_SIGNED_CHAR:
+                return new SignedCharType(constQualified, volatileQualified, readExternalScheme(input));
+            case KIND_UNSIGNED_CHAR:
+                return new UnsignedCharType(constQualified, volatileQualified, readExternalScheme(input));
+            case KIND_SHORT:
+                return new ShortType(constQualified, volatileQualified, readExternalScheme(input));
+            case KIND_UNSIGNED_SHORT:
+                return new UnsignedShortType(constQualified, volatileQualified, readExternalScheme(input));
+            case KIND_INT:
+                return new IntType(constQualified, volatileQualified, readExternalScheme(input));
+            case KIND_UNSIGNED_INT:
+                return new UnsignedIntType(constQualified, volatileQualified, readExternalScheme(input));
+            case KIND_LONG:
+                return new LongType(constQualified, volatileQualified, readExternalScheme(input));
+            case KIND_UNSIGNED_LONG:
+                return new UnsignedLongType(constQualified, volatileQualified, readExternalScheme(input));
+            case KIND_LONG_LONG:
+                return new LongLongType(constQualified, volatileQualified, readExternalScheme(input));
+            case KIND_UNSIGNED_LONG_LONG:
+                return new UnsignedLongLongType(constQualified, volatileQualified, readExternalScheme(input));
+            case KIND_FLOAT:
+                return new FloatType(constQualified, volatileQualified, readExternalScheme(input));
+            case KIND_DOUBLE:
+                return new DoubleType(constQualified, volatileQualified, readExternalScheme(input));
+            case KIND_LONG_DOUBLE:
+                return new LongDoubleType(constQualified, volatileQualified, readExternalScheme(input));
+            case KIND_ENUMERATED:
+                return new EnumeratedType(constQualified, volatileQualified,
+                        readNotNull(EnumDeclaration.class, input));
+            case KIND_POINTER: {
+                final boolean restrictQualified = dataInput.readBoolean();
+                return new PointerType(constQualified, volatileQualified, restrictQualified,
+                        readNotNull(Type.class, input));
+            }
+            case KIND_ARRAY: {
+                final Type elementType = readNotNull(Type.class, input);
+                final Optional<Expression> size = Optional.fromNullable(input.readNode(Expression.class));
+                return new ArrayType(elementType, size);
+            }
+            case KIND_FUNCTION: {
+                final Type returnType = readNotNull(Type.class, input);
+                final List<Optional<Type>> argumentsTypes = readTypes(input);
+                return new FunctionType(returnType, argumentsTypes, dataInput.readBoolean());
+            }
+            case KIND_STRUCTURE:
+                return new StructureType(constQualified, volatileQualified,
+                        readNotNull(StructDeclaration.class, input));
+            case KIND_EXTERNAL_STRUCTURE:
+                return new ExternalStructureType(constQualified, volatileQualified,
+                        readNotNull(StructDeclaration.class, input));
+            case KIND_UNION:
+                return new UnionType(constQualified, volatileQualified,
+                        readNotNull(UnionDeclaration.class, input));
+            case KIND_EXTERNAL_UNION:
+                return new ExternalUnionType(constQualified, volatileQualified,
+                        readNotNull(UnionDeclaration.class, input));
+            case KIND_INTERFACE: {
+                final String interfaceName = input.readString();
+                final Optional<List<Optional<Type>>> typeParameters = dataInput.readBoolean()
+                        ? Optional.of(readTypes(input))
+                        : Optional.<List<Optional<Type>>>absent();
+                return new InterfaceType(interfaceName, typeParameters);
+            }
+            case KIND_COMPONENT:
+                return new ComponentType(input.readString());
+            case KIND_UNKNOWN:
+                return UnknownTypeFactory.newInstance()
+                        .setName(input.readString())
+                        .newUnknownType()
+                        .addQualifiers(constQualified, volatileQualified, false);
+            case KIND_UNKNOWN_ARITHMETIC:
+                return UnknownTypeFactory.newInstance()
+                        .setName(input.readString())
+                        .newUnknownArithmeticType()
+                        .addQualifiers(constQualified, volatileQualified, false);
+            case KIND_UNKNOWN_INTEGER:
+                return UnknownTypeFactory.newInstance()
+                        .setName(input.readString())
+                        .newUnknownIntegerType()
+                        .addQualifiers(constQualified, volatileQualified, false);
+            default:
+                throw new IOException("invalid kind of an external object: " + kind);
+        }
+    }
+
+    private void writeDeclaration(Declaration declaration, byte kind, Output output) throws IOException {
+        output.writeLocation(declaration.getLocation());
+
+        switch (kind) {
+            case KIND_VARIABLE_DECLARATION:
+                writeVariable((VariableDeclaration) declaration, output);
+                break;
+            case KIND_FUNCTION_DECLARATION:
+                writeFunction((FunctionDeclaration) declaration, output);
+                break;
+            case KIND_TYPENAME_DECLARATION:
+                writeTypename((TypenameDeclaration) declaration, output);
+                break;
+            case KIND_CONSTANT_DECLARATION:
+                writeConstant((ConstantDeclaration) declaration, output);
+                break;
+            case KIND_STRUCT_DECLARATION:
+            case KIND_UNION_DECLARATION:
+            case KIND_ATTRIBUTE_DECLARATION:
+                writeFieldTag((FieldTagDeclaration<?>) declaration, output);
+                break;
+            case KIND_ENUM_DECLARATION:
+                writeEnum((EnumDeclaration) declaration, output);
+                break;
+            case KIND_FIELD_DECLARATION:
+                writeField((FieldDeclaration) declaration, output);
+                break;
+            case KIND_LABEL_DECLARATION:
+                writeLabel((LabelDeclaration) declaration, output);
+                break;
+            default:
+                throw new IllegalStateException("unexpected kind of a declaration " + kind);
+        }
+    }
+
+    private Declaration readDeclaration(byte kind, Input input) throws IOException {
+        final Location location = input.readLocation();
+
+        switch (kind) {
+            case KIND_VARIABLE_DECLARATION:
+                return readVariable(location, input);
+            case KIND_FUNCTION_DECLARATION:
+                return readFunction(location, input);
+            case KIND_TYPENAME_DECLARATION:
+                return readTypename(location, input);
+            case KIND_CONSTANT_DECLARATION:
+                return readConstant(location, input);
+            case KIND_STRUCT_DECLARATION:
+                return readStruct(location, input);
+            case KIND_UNION_DECLARATION:
+                return readUnion(location, input);
+            case KIND_ATTRIBUTE_DECLARATION:
+                return readAttribute(location, input);
+            case KIND_ENUM_DECLARATION:
+                return readEnum(location, input);
+            case KIND_FIELD_DECLARATION:
+                return readField(location, input);
+            case KIND_LABEL_DECLARATION:
+                return readLabel(location, input);
+            default:
+                throw new IOException("invalid kind of an external object: " + kind);
+        }
+    }
+
+    private void writeVariable(VariableDeclaration variable, Output output) throws IOException {
+        output.writeString(variable.getName());
+        output.writeObject(variable.getType().orNull());
+        writeEnumConstant(variable.getLinkage().orNull(), output);
+        output.writeString(variable.getUniqueName());
+        output.getDataOutput().writeBoolean(variable.isGenericParameter());
+        output.writeString(variable.isExternalVariable()
+                ? variable.getOriginalExternalName()
+                : null);
+    }
+
+    private VariableDeclaration readVariable(Location location, Input input) throws IOException {
+        final VariableDeclaration.Builder builder = VariableDeclaration.builder();
+        builder.name(input.readString())
+                .startLocation(location);
+        builder.type(input.readObject(Type.class))
+                .linkage(readEnumConstant(Linkage.class, input));
+        builder.uniqueName(input.readString())
+                .isGenericParameter(input.getDataInput().readBoolean());
+
+        final String originalExternalName = input.readString();
+        if (originalExternalName != null) {
+            builder.external(originalExternalName);
+        }
+
+        return builder.build();
+    }
+
+    private void writeFunction(FunctionDeclaration function, Output output) throws IOException {
+        final DataOutput dataOutput = output.getDataOutput();
+
+        output.writeString(function.getFunctionName());
+        output.writeString(function.getIfaceName().orNull());
+        output.writeObject(function.getType().orNull());
+        writeEnumConstant(function.getLinkage().orNull(), output);
+        output.writeString(function.getUniqueName());
+        writeEnumConstant(function.getFunctionType(), output);
+        dataOutput.writeBoolean(function.getInstanceParameters().isPresent());
+        if (function.getInstanceParameters().isPresent()) {
+            writeTypes(function.getInstanceParameters().get(), output);
+        }
+
+        output.writeNode(function.getAstFunctionDeclarator());
+        dataOutput.writeBoolean(function.isDefined());
+        writeOptionalBoolean(function.isProvided(), output);
+        writeEnumConstant(function.getMinimalCallAssumptions(), output);
+        writeEnumConstant(function.getCallAssumptions(), output);
+    }
+
+    private FunctionDeclaration readFunction(Location location, Input input) throws IOException {
+        final DataInput dataInput = input.getDataInput();
+        final FunctionDeclaration.Builder builder = FunctionDeclaration.builder();
+
+        builder.name(input.readString())
+                .startLocation(location);
+        builder.interfaceName(input.readString());
+        builder.type(input.readObject(Type.class))
+                .linkage(readEnumConstant(Linkage.class, input));
+        builder.uniqueName(input.readString())
+                .functionType(readEnumConstant(FunctionDeclaration.FunctionType.class, input));
+        if (dataInput.readBoolean()) {
+            builder.instanceParameters(readTypes(input));
+        }
+
+        final FunctionDeclaration function = builder.build();
+        function.setAstFunctionDeclarator(input.readNode(FunctionDeclarator.class));
+        function.setDefined(dataInput.readBoolean());
+
+        final Optional<Boolean> isProvided = readOptionalBoolean(input);
+        if (isProvided.isPresent()) {
+            function.setProvided(isProvided.get());
+        }
+
+        function.setMinimalCallAssumptions(readNotNullEnumConstant(
+                FunctionDeclaration.CallAssumptions.class, input));
+        function.setCallAssumptions(readNotNullEnumConstant(
+                FunctionDeclaration.CallAssumptions.class, input));
+
+        return function;
+    }
+
+    private void writeTypename(TypenameDeclaration typename, Output output) throws IOException {
+        output.writeString(typename.getName());
+        output.writeObject(typename.getDenotedType().orNull());
+        output.writeString(typename.getUniqueName());
+        output.getDataOutput().writeBoolean(typename.isGenericParameter());
+    }
+
+    private TypenameDeclaration readTypename(Location location, Input input) throws IOException {
+        final TypenameDeclaration.Builder builder = TypenameDeclaration.builder();
+        builder.name(input.readString())
+                .startLocation(location);
+        return builder.denotedType(input.readObject(Type.class))
+                .uniqueName(input.readString())
+                .isGenericParameter(input.getDataInput().readBoolean())
+                .build();
+    }
+
+    private void writeConstant(ConstantDeclaration constant, Output output) throws IOException {
+        output.writeString(constant.getName());
+        output.writeString(constant.getUniqueName());
+        output.writeNode(constant.getEnumerator());
+
+        final DataOutput dataOutput = output.getDataOutput();
+        dataOutput.writeBoolean(constant.getValue().isPresent());
+        if (constant.getValue().isPresent()) {
+            final byte[] bytes = constant.getValue().get().toByteArray();
+            dataOutput.writeInt(bytes.length);
+            dataOutput.write(bytes);
+        }
+
+        output.writeObject(constant.hasOwner() ? constant.getOwner() : null);
+    }
+
+    private ConstantDeclaration readConstant(Location location, Input input) throws IOException {
+        final ConstantDeclaration.Builder builder = ConstantDeclaration.builder();
+        builder.name(input.readString())
+                .startLocation(location);
+        final ConstantDeclaration constant = builder.uniqueName(input.readString())
+                .enumerator(readNodeNotNull(Enumerator.class, input))
+                .build();
+
+        final DataInput dataInput = input.getDataInput();
+        if (dataInput.readBoolean()) {
+            final int length = dataInput.readInt();
+            if (length <= 0) {
+                throw new IOException("invalid length of a value of a constant: " + length);
+            }
+            final byte[] bytes = new byte[length];
+            dataInput.readFully(bytes);
+            constant.setValue(new BigInteger(bytes));
+        }
+
+        final EnumDeclaration owner = input.readObject(EnumDeclaration.class);
+        if (owner != null) {
+            constant.ownedBy(owner);
+        }
+
+        return constant;
+    }
+
+    private void writeTag(TagDeclaration tag, Output output) throws IOException {
+        final DataOutput dataOutput = output.getDataOutput();
+
+        writeEnumConstant(tag.getKind(), output);
+        output.writeString(tag.getName().orNull());
+        output.writeString(tag.getUniqueName().orNull());
+        output.writeNode(tag.getAstNode());
+
+        dataOutput.writeBoolean(tag.hasLayout());
+        if (tag.hasLayout()) {
+            dataOutput.writeInt(tag.getSize());
+            dataOutput.writeInt(tag.getAlignment());
+        }
+
+        writeOptionalBoolean(tag.isCorrect(), output);
+        dataOutput.writeBoolean(tag.isTransformed());
+        dataOutput.writeBoolean(tag.isDefined());
+    }
+
+    /**
+     * Read data written by {@link PortableObjectsCodec#writeTag} up to the AST
+     * node of the tag.
+     */
+    private TagData readTagData(Location location, Input input) throws IOException {
+        final TagData data = new TagData();
+        data.location = location;
+        data.kind = readNotNullEnumConstant(StructKind.class, input);
+        data.name = input.readString();
+        data.uniqueName = input.readString();
+        return data;
+    }
+
+    /**
+     * Read data written by {@link PortableObjectsCodec#writeTag} after the AST
+     * node of the tag and set it in the given declaration.
+     *
+     * @return Value indicating if the tag is defined.
+     */
+    private boolean readTagState(TagDeclaration tag, Input input) throws IOException {
+        final DataInput dataInput = input.getDataInput();
+
+        if (dataInput.readBoolean()) {
+            final int size = dataInput.readInt();
+            final int alignment = dataInput.readInt();
+            if (size < 0 || alignment <= 0) {
+                throw new IOException("invalid layout of a tag: size " + size
+                        + ", alignment " + alignment);
+            }
+            tag.setLayout(size, alignment);
+        }
+
+        final Optional<Boolean> isCorrect = readOptionalBoolean(input);
+        if (isCorrect.isPresent()) {
+            tag.setIsCorrect(isCorrect.get());
+        }
+        if (dataInput.readBoolean()) {
+            tag.transformed();
+        }
+
+        return dataInput.readBoolean();
+    }
+
+    private void writeFieldTag(final FieldTagDeclaration<?> fieldTag, final Output output) throws IOException {
+        writeTag(fieldTag, output);
+
+        if (fieldTag.isDefined()) {
+            output.defer(new DeferredWrite() {
+                @Override
+                public void write() throws IOException {
+                    writeTreeElements(fieldTag.getStructure().get(), output);
+                }
+            });
+        }
+    }
+
+    private StructDeclaration readStruct(Location location, Input input) throws IOException {
+        final TagData data = readTagData(location, input);
+        final StructRef astNode = readNodeNotNull(StructRef.class, input);
+        final boolean isExternal = checkKind(data.kind, StructKind.STRUCT, StructKind.NX_STRUCT);
+
+        final StructDeclaration.Builder builder = data.name == null
+                ? StructDeclaration.preDefinitionBuilder()
+                : StructDeclaration.declarationBuilder();
+        builder.isExternal(isExternal)
+                .astNode(astNode)
+                .name(data.name, data.uniqueName)
+                .startLocation(data.location);
+
+        return completeFieldTag(builder.build(), input);
+    }
+
+    private UnionDeclaration readUnion(Location location, Input input) throws IOException {
+        final TagData data = readTagData(location, input);
+        final UnionRef astNode = readNodeNotNull(UnionRef.class, input);
+        final boolean isExternal = checkKind(data.kind, StructKind.UNION, StructKind.NX_UNION);
+
+        final UnionDeclaration.Builder builder = data.name == null
+                ? UnionDeclaration.preDefinitionBuilder()
+                : UnionDeclaration.declarationBuilder();
+        builder.isExternal(isExternal)
+                .astNode(astNode)
+                .name(data.name, data.uniqueName)
+                .startLocation(data.location);
+
+        return completeFieldTag(builder.build(), input);
+    }
+
+    private AttributeDeclaration readAttribute(Location location, Input input) throws IOException {
+        final TagData data = readTagData(location, input);
+        final AttributeRef astNode = readNodeNotNull(AttributeRef.class, input);
+        checkKind(data.kind, StructKind.ATTRIBUTE, StructKind.ATTRIBUTE);
+
+        final AttributeDeclaration declaration = AttributeDeclaration.preDefinitionBuilder()
+                .astNode(astNode)
+                .name(data.name, data.uniqueName)
+                .startLocation(data.location)
+                .build();
+
+        return completeFieldTag(declaration, input);
+    }
+
+    private <T extends FieldTagDeclaration<?>> T completeFieldTag(final T fieldTag, final Input input)
+                throws IOException {
+        if (readTagState(fieldTag, input)) {
+            input.defer(new DeferredRead() {
+                @Override
+                public void read() throws IOException {
+                    fieldTag.define(readTreeElements(input));
+                }
+            });
+        }
+
+        return fieldTag;
+    }
+
+    private void writeTreeElements(List<TreeElement> elements, Output output) throws IOException {
+        output.getDataOutput().writeInt(elements.size());
+
+        for (TreeElement element : elements) {
+            if (element instanceof FieldElement) {
+                output.getDataOutput().writeByte(FIELD_ELEMENT_MARKER);
+                output.writeObject(((FieldElement) element).getFieldDeclaration());
+            } else {
+                final BlockElement blockElement = (BlockElement) element;
+                output.getDataOutput().writeByte(BLOCK_ELEMENT_MARKER);
+                writeEnumConstant(blockElement.getType(), output);
+                output.writeObject(blockElement.getDeclaration());
+                writeTreeElements(blockElement.getChildren(), output);
+            }
+        }
+    }
+
+    private List<TreeElement> readTreeElements(Input input) throws IOException {
+        final int count = readCount(input);
+        final ImmutableList.Builder<TreeElement> elementsBuilder = ImmutableList.builder();
+
+        for (int i = 0; i < count; ++i) {
+            final byte marker = input.getDataInput().readByte();
+
+            switch (marker) {
+                case FIELD_ELEMENT_MARKER:
+                    elementsBuilder.add(new FieldElement(readNotNull(FieldDeclaration.class, input)));
+                    break;
+                case BLOCK_ELEMENT_MARKER: {
+                    final BlockElement.BlockType blockType =
+                            readNotNullEnumConstant(BlockElement.BlockType.class, input);
+                    final FieldTagDeclaration<?> declaration = readNotNull(FieldTagDeclaration.class, input);
+                    elementsBuilder.add(new BlockElement(readTreeElements(input), blockType, declaration));
+                    break;
+                }
+                default:
+                    throw new IOException("invalid marker of a field tree element: " + marker);
+            }
+        }
+
+        return elementsBuilder.build();
+    }
+
+    private void writeEnum(final EnumDeclaration enumDeclaration, final Output output) throws IOException {
+        writeTag(enumDeclaration, output);
+
+        output.defer(new DeferredWrite() {
+            @Override
+            public void write() throws IOException {
+                output.writeObject(enumDeclaration.hasCompatibleType()
+                        ? enumDeclaration.getCompatibleType()
+                        : null);
+
+                if (enumDeclaration.isDefined()) {
+                    final List<ConstantDeclaration> constants = enumDeclaration.getConstants().get();
+                    output.getDataOutput().writeInt(constants.size());
+                    for (ConstantDeclaration constant : constants) {
+                        output.writeObject(constant);
+                    }
+                }
+            }
+        });
+    }
+
+    private EnumDeclaration readEnum(Location location, final Input input) throws IOException {
+        final TagData data = readTagData(location, input);
+        final EnumRef astNode = readNodeNotNull(EnumRef.class, input);
+        checkKind(data.kind, StructKind.ENUM, StructKind.ENUM);
+
+        final EnumDeclaration enumDeclaration = EnumDeclaration.declarationBuilder()
+                .astNode(astNode)
+                .name(data.name, data.uniqueName)
+                .startLocation(data.location)
+                .build();
+        final boolean isDefined = readTagState(enumDeclaration, input);
+
+        input.defer(new DeferredRead() {
+            @Override
+            public void read() throws IOException {
+                final IntegerType compatibleType = input.readObject(IntegerType.class);
+                if (compatibleType != null) {
+                    enumDeclaration.setCompatibleType(compatibleType);
+                }
+
+                if (isDefined) {
+                    final int count = readCount(input);
+                    final List<ConstantDeclaration> constants = new ArrayList<>(count);
+                    for (int i = 0; i < count; ++i) {
+                        constants.add(readNotNull(ConstantDeclaration.class, input));
+                    }
+                    enumDeclaration.define(constants);
+                }
+            }
+        });
+
+        return enumDeclaration;
+    }
+
+    private void writeField(final FieldDeclaration field, final Output output) throws IOException {
+        final DataOutput dataOutput = output.getDataOutput();
+
+        output.writeString(field.getName().orNull());
+        output.writeLocation(field.getEndLocation());
+        dataOutput.writeBoolean(field.isBitField());
+        output.writeNode(field.getAstField());
+
+        dataOutput.writeBoolean(field.hasLayout());
+        if (field.hasLayout()) {
+            dataOutput.writeInt(field.getOffsetInBits());
+            dataOutput.writeInt(field.getSizeInBits());
+            dataOutput.writeInt(field.getAlignmentInBits());
+        }
+
+        output.defer(new DeferredWrite() {
+            @Override
+            public void write() throws IOException {
+                output.getDataOutput().writeBoolean(field.hasType());
+                if (field.hasType()) {
+                    output.writeObject(field.getType().orNull());
+                }
+                output.writeObject(field.hasOwner() ? field.getOwner() : null);
+            }
+        });
+    }
+
+    private FieldDeclaration readField(Location location, final Input input) throws IOException {
+        final DataInput dataInput = input.getDataInput();
+
+        final Optional<String> name = Optional.fromNullable(input.readString());
+        final Location endLocation = input.readLocation();
+        final boolean isBitField = dataInput.readBoolean();
+        final FieldDecl astField = readNodeNotNull(FieldDecl.class, input);
+        final FieldDeclaration field = new FieldDeclaration(name, location, endLocation,
+                isBitField, astField);
+
+        if (dataInput.readBoolean()) {
+            final int offset = dataInput.readInt();
+            final int size = dataInput.readInt();
+            final int alignment = dataInput.readInt();
+            if (offset < 0 || size < 0 || alignment <= 0) {
+                throw new IOException("invalid layout of a field: offset " + offset
+                        + ", size " + size + ", alignment " + alignment);
+            }
+            field.setLayout(offset, size, alignment);
+        }
+
+        input.defer(new DeferredRead() {
+            @Override
+            public void read() throws IOException {
+                if (input.getDataInput().readBoolean()) {
+                    field.setType(Optional.fromNullable(input.readObject(Type.class)));
+                }
+
+                final FieldTagDeclaration<?> owner = input.readObject(FieldTagDeclaration.class);
+                if (owner != null) {
+                    field.ownedBy(owner);
+                }
+            }
+        });
+
+        return field;
+    }
+
+    private void writeLabel(LabelDeclaration label, Output output) throws IOException {
+        final DataOutput dataOutput = output.getDataOutput();
+        output.writeString(label.getName());
+        dataOutput.writeBoolean(label.isLocal());
+        dataOutput.writeBoolean(label.isDefined());
+        dataOutput.writeBoolean(label.isPlacedInsideAtomicArea());
+    }
+
+    private LabelDeclaration readLabel(Location location, Input input) throws IOException {
+        final DataInput dataInput = input.getDataInput();
+        final LabelDeclaration.Builder builder = LabelDeclaration.builder();
+        builder.name(input.readString())
+                .startLocation(location);
+
+        if (dataInput.readBoolean()) {
+            builder.local();
+        } else {
+            builder.nonlocal();
+        }
+
+        final boolean isDefined = dataInput.readBoolean();
+        builder.isPlacedInsideAnAtomicArea(dataInput.readBoolean());
+
+        final LabelDeclaration label = builder.build();
+        if (isDefined) {
+            label.defined();
+        }
+
+        return label;
+    }
+
+    private void writeTypes(List<Optional<Type>> types, Output output) throws IOException {
+        output.getDataOutput().writeInt(types.size());
+        for (Optional<Type> type : types) {
+            output.writeObject(type.orNull());
+        }
+    }
+
+    private List<Optional<Type>> readTypes(Input input) throws IOException {
+        final int count = readCount(input);
+        final List<Optional<Type>> types = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            types.add(Optional.fromNullable(input.readObject(Type.class)));
+        }
+        return types;
+    }
+
+    private void writeExternalScheme(Optional<ExternalScheme> scheme, Output output) throws IOException {
+        output.getDataOutput().writeBoolean(scheme.isPresent());
+        if (scheme.isPresent()) {
+            writeEnumConstant(scheme.get().getEndianness(), output);
+            output.writeString(scheme.get().getSuffix());
+        }
+    }
+
+    private Optional<ExternalScheme> readExternalScheme(Input input) throws IOException {
+        if (!input.getDataInput().readBoolean()) {
+            return Optional.absent();
+        }
+
+        final Endianness endianness = readNotNullEnumConstant(Endianness.class, input);
+        final String suffix = input.readString();
+        if (suffix == null || suffix.isEmpty()) {
+            throw new IOException("invalid suffix of an external scheme");
+        }
+
+        return Optional.of(new ExternalScheme(endianness, suffix));
+    }
+
+    private void writeOptionalBoolean(Optional<Boolean> value, Output output) throws IOException {
+        output.getDataOutput().writeByte(value.isPresent() ? (value.get() ? 2 : 1) : 0);
+    }
+
+    private Optional<Boolean> readOptionalBoolean(Input input) throws IOException {
+        final byte value = input.getDataInput().readByte();
+        switch (value) {
+            case 0:
+                return Optional.absent();
+            case 1:
+                return Optional.of(false);
+            case 2:
+                return Optional.of(true);
+            default:
+                throw new IOException("invalid value of an optional boolean: " + value);
+        }
+    }
+
+    private void writeEnumConstant(Enum<?> constant, Output output) throws IOException {
+        output.writeString(constant != null ? constant.name() : null);
+    }
+
+    private <E extends Enum<E>> E readEnumConstant(Class<E> enumClass, Input input) throws IOException {
+        final String name = input.readString();
+        if (name == null) {
+            return null;
+        }
+
+        try {
+            return Enum.valueOf(enumClass, name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid constant of " + enumClass.getSimpleName() + ": " + name);
+        }
+    }
+
+    private <E extends Enum<E>> E readNotNullEnumConstant(Class<E> enumClass, Input input) throws IOException {
+        final E constant = readEnumConstant(enumClass, input);
+        if (constant == null) {
+            throw new IOException("missing constant of " + enumClass.getSimpleName());
+        }
+        return constant;
+    }
+
+    private <T> T readNotNull(Class<T> objectClass, Input input) throws IOException {
+        final T object = input.readObject(objectClass);
+        if (object == null) {
+            throw new IOException("missing object of class " + objectClass.getSimpleName());
+        }
+        return object;
+    }
+
+    private <T extends Node> T readNodeNotNull(Class<T> nodeClass, Input input) throws IOException {
+        final T node = input.readNode(nodeClass);
+        if (node == null) {
+            throw new IOException("missing node of class " + nodeClass.getSimpleName());
+        }
+        return node;
+    }
+
+    private int readCount(Input input) throws IOException {
+        final int count = input.getDataInput().readInt();
+        if (count < 0) {
+            throw new IOException("invalid count of elements: " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Check if the read kind of a tag is one of the given ones.
+     *
+     * @return <code>true</code> if and only if the kind is the second one.
+     */
+    private boolean checkKind(StructKind kind, StructKind firstExpected, StructKind secondExpected)
+                throws IOException {
+        if (kind != firstExpected && kind != secondExpected) {
+            throw new IOException("unexpected kind of a tag: " + kind);
+        }
+        return kind == secondExpected && secondExpected != firstExpected;
+    }
+
+    /**
+     * Basic data of a tag declaration.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private static final class TagData {
+        private Location location;
+        private StructKind kind;
+        private String name;
+        private String uniqueName;
+    }
+}
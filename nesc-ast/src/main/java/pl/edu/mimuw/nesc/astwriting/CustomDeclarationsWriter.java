@@ -4,6 +4,7 @@ import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import pl.edu.mimuw.nesc.ast.Location;
 import pl.edu.mimuw.nesc.ast.gen.DataDecl;
@@ -23,6 +24,7 @@ import pl.edu.mimuw.nesc.declaration.object.FunctionDeclaration;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * Creator of header files that contain only declarations without definitions
@@ -32,9 +34,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public final class CustomDeclarationsWriter {
     /**
-     * Path to the header file that will be created.
+     * Path to the header file that will be created. It is absent if the
+     * declarations are written only to streams.
      */
-    private String outputFile;
+    private Optional<String> outputFile;
 
     /**
      * Value indicating whether forward declarations of functions will be outputted
@@ -64,7 +67,23 @@ public final class CustomDeclarationsWriter {
         checkNotNull(writeSettings, "write settings cannot be null");
         checkArgument(!outputFile.isEmpty(), "output file cannot be an empty string");
 
-        this.outputFile = outputFile;
+        this.outputFile = Optional.of(outputFile);
+        this.forwardDeclarations = functionsForwardDeclarations;
+        this.banking = banking;
+        this.prependedText = "";
+        this.writeSettings = writeSettings;
+    }
+
+    /**
+     * Create a writer without an output file. The output file must be set
+     * before writing declarations to a file.
+     */
+    public CustomDeclarationsWriter(boolean functionsForwardDeclarations, Banking banking,
+            WriteSettings writeSettings) {
+        checkNotNull(banking, "banking setting cannot be null");
+        checkNotNull(writeSettings, "write settings cannot be null");
+
+        this.outputFile = Optional.absent();
         this.forwardDeclarations = functionsForwardDeclarations;
         this.banking = banking;
         this.prependedText = "";
@@ -79,7 +98,7 @@ public final class CustomDeclarationsWriter {
     public void setOutputFile(String outputFile) {
         checkNotNull(outputFile, "output file cannot be null");
         checkArgument(!outputFile.isEmpty(), "output file cannot be an empty string");
-        this.outputFile = outputFile;
+        this.outputFile = Optional.of(outputFile);
     }
 
     public void setForwardDeclarations(boolean forwardDeclarations) {
@@ -105,7 +124,32 @@ public final class CustomDeclarationsWriter {
      */
     public void write(List<? extends Declaration> declarations) throws IOException {
         checkNotNull(declarations, "declarations cannot be null");
+        checkState(outputFile.isPresent(), "the output file has not been set");
+
+        try (final ASTWriter writer = new ASTWriter(outputFile.get(), writeSettings)) {
+            write(declarations, writer);
+        }
+    }
+
+    /**
+     * Write given declarations to the given stream instead of the output
+     * file in the same way as {@link CustomDeclarationsWriter#write(List)}.
+     * The stream is not closed.
+     *
+     * @param declarations Declarations that will be written.
+     * @param outputStream Stream the declarations will be written to.
+     */
+    public void write(List<? extends Declaration> declarations, OutputStream outputStream)
+            throws IOException {
+        checkNotNull(declarations, "declarations cannot be null");
+        checkNotNull(outputStream, "output stream cannot be null");
+
+        final ASTWriter writer = new ASTWriter(outputStream, writeSettings);
+        write(declarations, writer);
+        writer.flush();
+    }
 
+    private void write(List<? extends Declaration> declarations, ASTWriter writer) {
         final Optional<Boolean> isBanked = prepareIsBankedValue();
         final List<? extends Declaration> forWriting;
         final ImmutableMap<Node, Boolean> originalIsBanked;
@@ -125,7 +169,7 @@ public final class CustomDeclarationsWriter {
         }
 
         // Write declarations
-        try (final ASTWriter writer = new ASTWriter(outputFile, writeSettings)) {
+        try {
             writer.write(prependedText);
             writer.write(forWriting);
         } finally {
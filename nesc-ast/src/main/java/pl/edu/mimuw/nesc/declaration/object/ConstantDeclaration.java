@@ -93,6 +93,10 @@ public final class ConstantDeclaration extends ObjectDeclaration {
         this.value = Optional.of(value);
     }
 
+    public boolean hasOwner() {
+        return owner.isPresent();
+    }
+
     /**
      * Get the owner of this constant declaration. The owner is the enumeration
      * type that contains the definition of this constant.
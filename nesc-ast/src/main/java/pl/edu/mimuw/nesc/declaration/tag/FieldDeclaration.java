@@ -117,6 +117,10 @@ public class FieldDeclaration extends Declaration {
         return type.get();
     }
 
+    public boolean hasType() {
+        return type.isPresent();
+    }
+
     public void setType(Optional<Type> type) {
         checkNotNull(type, "type cannot be null");
         checkState(!this.type.isPresent(), "type has been already set");
@@ -169,6 +173,10 @@ public class FieldDeclaration extends Declaration {
         this.offsetInBits = Optional.of(offsetInBits.get() + increment);
     }
 
+    public boolean hasOwner() {
+        return owner.isPresent();
+    }
+
     /**
      * Get the owner of this field. The owner is the field tag that contains the
      * definition of the field. In case of fields defined in anonymous
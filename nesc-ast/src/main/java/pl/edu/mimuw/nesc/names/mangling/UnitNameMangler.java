@@ -0,0 +1,98 @@
+package pl.edu.mimuw.nesc.names.mangling;
+
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Name mangler used for a single unit of the program, e.g. a component or
+ * an external declaration, by a pass that can process different units in
+ * different threads. The unique suffix of a mangled name consists of the
+ * index of the unit and letters. Thus, names created by this mangler depend
+ * only on the unit and the order of calls for it and never collide with names
+ * created by manglers of other units or by {@link AlphabeticNameMangler}
+ * whose unique suffixes consist only of letters.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class UnitNameMangler extends AbstractNameMangler {
+    /**
+     * A string used to separate the name that is mangled and the unique suffix
+     * appended to it.
+     */
+    private static final String SEPARATOR = "__";
+
+    /**
+     * Names forbidden for all units. The set is not modified by this mangler
+     * so it can be shared by manglers used in different threads.
+     */
+    private final Set<String> sharedForbiddenNames;
+
+    /**
+     * Index of the unit this mangler is used for.
+     */
+    private final int unitIndex;
+
+    /**
+     * Number of the next letters suffix.
+     */
+    private int nextNumber = 0;
+
+    /**
+     * Initializes this mangler for the unit with given index.
+     *
+     * @param unitIndex Index of the unit.
+     * @param sharedForbiddenNames Names that are forbidden. The set must not
+     *                             be modified while this mangler is used.
+     * @throws IllegalArgumentException Index of the unit is negative.
+     */
+    public UnitNameMangler(int unitIndex, Set<String> sharedForbiddenNames) {
+        checkArgument(unitIndex >= 0, "index of the unit cannot be negative");
+        checkNotNull(sharedForbiddenNames, "shared forbidden names cannot be null");
+        this.unitIndex = unitIndex;
+        this.sharedForbiddenNames = sharedForbiddenNames;
+    }
+
+    @Override
+    public String mangle(String name) {
+        checkName(name);
+
+        String uniqueName;
+
+        do {
+            uniqueName = name + SEPARATOR + unitIndex + getLetters(nextNumber);
+            ++nextNumber;
+        } while (forbiddenNames.contains(uniqueName) || sharedForbiddenNames.contains(uniqueName));
+
+        return uniqueName;
+    }
+
+    @Override
+    public String remangle(String mangledName) {
+        checkName(mangledName);
+
+        final int separatorIndex = mangledName.lastIndexOf(SEPARATOR);
+        checkArgument(separatorIndex != -1, "name '%s' is not the result of mangling a name",
+                mangledName);
+
+        return mangle(mangledName.substring(0, separatorIndex));
+    }
+
+    /**
+     * Get the suffix with letters for the given number. Consecutive numbers
+     * correspond to suffixes in the same order as in
+     * {@link AlphabeticNameMangler}: 'a', ..., 'z', 'aa', 'ab', ...
+     */
+    private static String getLetters(int number) {
+        final StringBuilder builder = new StringBuilder();
+        int remainder = number;
+
+        do {
+            builder.append((char) ('a' + remainder % 26));
+            remainder = remainder / 26 - 1;
+        } while (remainder >= 0);
+
+        return builder.reverse().toString();
+    }
+}
@@ -77,6 +77,28 @@ public final class UnknownTypeFactory {
         return this;
     }
 
+    /**
+     * Create an unknown arithmetic type with the name set in this factory
+     * regardless of the added attributes. The returned type is not
+     * qualified.
+     *
+     * @return A newly created instance of an unknown arithmetic type.
+     */
+    public UnknownArithmeticType newUnknownArithmeticType() {
+        return new UnknownArithmeticType(name);
+    }
+
+    /**
+     * Create an unknown integer type with the name set in this factory
+     * regardless of the added attributes. The returned type is not
+     * qualified.
+     *
+     * @return A newly created instance of an unknown integer type.
+     */
+    public UnknownIntegerType newUnknownIntegerType() {
+        return new UnknownIntegerType(name);
+    }
+
     /**
      * <p>Create an unknown type that reflects the information provided to this
      * factory. It is created in the following way:</p>
@@ -4,6 +4,7 @@ from collections import OrderedDict
 from ast.util import first_to_cap, DST_LANGUAGE, tab, ast_nodes, ast_enums, \
     generic_nodes, mangle_nodes, unique_nodes, language_dispatch
 from ast.field_copy import *
+from ast.serializer import gen_serializer
 from ast.fields import BasicASTNodeField, BoolField, ReferenceField, \
     ReferenceListField, EnumField, EnumListField, StringField
 
@@ -99,7 +100,8 @@ class BasicASTNode(metaclass=ASTElemMetaclass):
                                          for f in const_fields])
 
         if lang == DST_LANGUAGE.JAVA:
-            body = "\n".join([2 * tab + "this.{0} = arg{1};".format(f, i)
+            fields_dict = self.build_fields_dict()
+            body = "\n".join([2 * tab + fields_dict[f].gen_init_code(lang, f, "arg{0}".format(i))
                               for i, f in enumerate(all_constructor_params)])
             body = "\n".join([2 * tab + "this.{0} = {1};".format(d, default_dict[d])
                               for d in default_fields if default_dict[d] is not None]) + "\n" + body
@@ -773,9 +775,15 @@ def gen_java_null_visitor(directory):
         f.write("public abstract class NullVisitor<R, A> implements Visitor<R, A> {\n")
         methods = []
 
+        # Hook called for nodes whose visit method is not overridden
+        method = tab + "protected R defaultVisit(Node node, A arg) {\n"
+        method += tab * 2 + "return null;\n"
+        method += tab + "}"
+        methods.append(method)
+
         for classname in ast_nodes.keys():
             method = tab + "public R visit{0}({0} node, A arg) {{\n".format(classname)
-            method += tab * 2 + "return null;\n"
+            method += tab * 2 + "return defaultVisit(node, arg);\n"
             method += tab + "}"
             methods.append(method)
 
@@ -1296,3 +1304,5 @@ def generate_java_code(directory):
 
     gen_attr_transformer(DST_LANGUAGE.JAVA, directory)
 
+    gen_serializer(DST_LANGUAGE.JAVA, directory)
+
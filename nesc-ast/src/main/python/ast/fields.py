@@ -1,5 +1,5 @@
 from ast.util import first_to_cap, DST_LANGUAGE, tab, ast_nodes, \
-    language_dispatch, is_subnode
+    language_dispatch, is_subnode, GENERATOR_OPTIONS
 from ast.field_copy import DEEP_COPY_MODE
 
 #the basic class from which all field classes must derive.
@@ -63,6 +63,14 @@ class BasicASTNodeField:
     def set_name(self, name):
         self.name = name
 
+    #expected result is a string with code that initializes the field in
+    #a constructor with the given value
+    def gen_init_code(self, lang, field_name, value):
+        if lang == DST_LANGUAGE.CPP:
+            return "this->{0} = {1};".format(field_name, value)
+        if lang == DST_LANGUAGE.JAVA:
+            return "this.{0} = {1};".format(field_name, value)
+
     def gen_getter_code(self, lang, type):
         code = None
 
@@ -953,6 +961,44 @@ class StringListField(BasicASTNodeField):
         return res, code
 
 
+class LocationField(ReferenceField):
+    """
+    Field with a location. In the compact layout the location is packed in
+    a single long value in Java and the getter creates the Location object.
+    """
+    def __init__(self, *args, **kwargs):
+        super(LocationField, self).__init__("Location", *args, **kwargs)
+
+    def is_packed(self, lang):
+        return lang == DST_LANGUAGE.JAVA and GENERATOR_OPTIONS.compact_layout
+
+    def gen_init_code(self, lang, field_name, value):
+        if not self.is_packed(lang):
+            return super(LocationField, self).gen_init_code(lang, field_name, value)
+        return "this.{0} = PackedLocations.pack({1});".format(field_name, value)
+
+    def generate_code(self, lang):
+        if not self.is_packed(lang):
+            return super(LocationField, self).generate_code(lang)
+
+        final = "final " if self.const else ""
+        res = "protected " + final + "long " + self.name + ";"
+
+        code = "/**\n"
+        code += " * Unpacks the location. It allocates a new object unless the location\n"
+        code += " * is the dummy location or it cannot be packed.\n"
+        code += " */\n"
+        code += "public Location get" + first_to_cap(self.name) + "() {\n"
+        code += tab + "return PackedLocations.unpack(this." + self.name + ");\n"
+        code += "}\n"
+        if not self.const:
+            code += "\npublic void set" + first_to_cap(self.name) + "(Location val) {\n"
+            code += tab + "this." + self.name + " = PackedLocations.pack(val);\n"
+            code += "}\n"
+
+        return res, code
+
+
 class ReferenceListField(BasicASTNodeField):
     def __init__(self, ref_type, name=None, const=False, deep_copy_mode=DEEP_COPY_MODE.ASSIGN_LIST_DEEP_COPY,
                  *args, **kwargs):
@@ -0,0 +1,925 @@
+from os import path
+import hashlib
+
+from ast.util import DST_LANGUAGE, tab, ast_nodes, java_enum_types, is_subnode, first_to_cap
+from ast.fields import BasicASTNodeField, LocationField
+
+# Version of the format of the binary representation. It shall be changed
+# after changing the generated code in a way that affects the format.
+FORMAT_VERSION = 2
+
+# Types of values written directly by methods of the writer and the reader.
+VALUE_TYPES = ["Boolean", "Integer", "Long", "Character", "String", "BigInteger", "Location"]
+
+JAVA_PACKAGE = "pl.edu.mimuw.nesc.ast.gen"
+
+JAVA_IMPORTS = [
+    "java.io.DataInput",
+    "java.io.DataInputStream",
+    "java.io.DataOutput",
+    "java.io.DataOutputStream",
+    "java.io.IOException",
+    "java.io.InputStream",
+    "java.io.OutputStream",
+    "java.math.BigInteger",
+    "java.nio.charset.StandardCharsets",
+    "java.util.ArrayDeque",
+    "java.util.ArrayList",
+    "java.util.HashMap",
+    "java.util.HashSet",
+    "java.util.IdentityHashMap",
+    "java.util.LinkedList",
+    "java.util.List",
+    "java.util.Map",
+    "java.util.Queue",
+    "java.util.Set",
+    "com.google.common.base.Optional",
+    "com.google.common.collect.ImmutableList",
+    "pl.edu.mimuw.nesc.ast.*",
+    "pl.edu.mimuw.nesc.astutil.ExternalObjectsCodec",
+    "pl.edu.mimuw.nesc.declaration.label.*",
+    "pl.edu.mimuw.nesc.declaration.nesc.*",
+    "pl.edu.mimuw.nesc.declaration.object.*",
+    "pl.edu.mimuw.nesc.declaration.tag.*",
+    "pl.edu.mimuw.nesc.environment.*",
+    "pl.edu.mimuw.nesc.facade.component.specification.ModuleTable",
+    "pl.edu.mimuw.nesc.type.*",
+]
+
+
+class TYPE_KIND:
+    NODE = 0
+    VALUE = 1
+    ENUM = 2
+    EXTERNAL = 3
+    OPTIONAL = 4
+    LIST = 5
+    IMMUTABLE_LIST = 6
+    SET = 7
+
+
+# Kinds of types of containers
+CONTAINER_KINDS = (TYPE_KIND.OPTIONAL, TYPE_KIND.LIST, TYPE_KIND.IMMUTABLE_LIST, TYPE_KIND.SET)
+
+
+def classify_type(java_type):
+    """Returns a pair with the kind of the given Java type and the type of
+    its elements (or the type itself if it is not a container)."""
+    for prefix, kind in (("Optional<", TYPE_KIND.OPTIONAL), ("LinkedList<", TYPE_KIND.LIST),
+                         ("ImmutableList<", TYPE_KIND.IMMUTABLE_LIST), ("Set<", TYPE_KIND.SET)):
+        if java_type.startswith(prefix):
+            return kind, java_type[len(prefix):-1]
+
+    if java_type in ast_nodes:
+        return TYPE_KIND.NODE, java_type
+    elif java_type in VALUE_TYPES:
+        return TYPE_KIND.VALUE, java_type
+    elif java_type in java_enum_types:
+        return TYPE_KIND.ENUM, java_type
+    elif java_type.isidentifier():
+        return TYPE_KIND.EXTERNAL, java_type
+    else:
+        raise Exception("cannot serialize values of type '{0}'".format(java_type))
+
+
+def mangle_type(java_type):
+    return java_type.replace("<", "").replace(">", "")
+
+
+def get_serialized_fields(node_cls):
+    """Returns a list of pairs with the name of the Java field and the field
+    object for all fields of the given node, including inherited ones."""
+    result = []
+
+    for name, field in sorted(node_cls().build_fields_dict().items()):
+        java_name = field.name if field.name is not None else name
+        if field.const:
+            raise Exception("cannot deserialize constant field '{0}' of class '{1}'"
+                            .format(java_name, node_cls.__name__))
+        result.append((java_name, field))
+
+    return result
+
+
+def compute_schema_hash():
+    """Returns the hash of the layout of all nodes as a signed 64-bit
+    integer."""
+    digest = hashlib.sha1()
+    digest.update("format {0}\n".format(FORMAT_VERSION).encode("utf-8"))
+
+    for class_name, node_cls in ast_nodes.items():
+        digest.update("class {0}\n".format(class_name).encode("utf-8"))
+        for field_name, field in get_serialized_fields(node_cls):
+            digest.update("{0} {1}\n".format(field.get_type(DST_LANGUAGE.JAVA), field_name)
+                          .encode("utf-8"))
+
+    return int.from_bytes(digest.digest()[:8], byteorder="big", signed=True)
+
+
+def collect_container_types(java_types):
+    """Returns the sorted list of all types of containers that occur in the
+    given types, including nested ones."""
+    result = set()
+    pending = list(java_types)
+
+    while pending:
+        java_type = pending.pop()
+        kind, element_type = classify_type(java_type)
+        if kind in CONTAINER_KINDS and java_type not in result:
+            result.add(java_type)
+            pending.append(element_type)
+
+    return sorted(result)
+
+
+def gen_write_stmt(java_type, value_expr):
+    kind, element_type = classify_type(java_type)
+
+    if kind == TYPE_KIND.NODE:
+        return "writeNode({0});".format(value_expr)
+    elif kind == TYPE_KIND.VALUE:
+        return "write{0}({1});".format(element_type, value_expr)
+    elif kind == TYPE_KIND.ENUM:
+        return "writeEnum({0});".format(value_expr)
+    elif kind == TYPE_KIND.EXTERNAL:
+        return "writeExternal({0});".format(value_expr)
+    else:
+        return "write{0}({1});".format(mangle_type(java_type), value_expr)
+
+
+def gen_read_expr(java_type):
+    kind, element_type = classify_type(java_type)
+
+    if kind == TYPE_KIND.NODE:
+        return "readNode({0}.class)".format(element_type)
+    elif kind == TYPE_KIND.VALUE:
+        return "read{0}()".format(element_type)
+    elif kind == TYPE_KIND.ENUM:
+        return "readEnum({0}.class)".format(element_type)
+    elif kind == TYPE_KIND.EXTERNAL:
+        return "readExternal({0}.class)".format(element_type)
+    else:
+        return "read{0}()".format(mangle_type(java_type))
+
+
+def gen_imports_java():
+    return "".join("import {0};\n".format(imported) for imported in JAVA_IMPORTS)
+
+
+def get_all_field_types():
+    return [field.get_type(DST_LANGUAGE.JAVA)
+            for node_cls in ast_nodes.values()
+            for _, field in get_serialized_fields(node_cls)
+            if not isinstance(field, LocationField)]
+
+
+def gen_serializer(lang, directory):
+    if lang == DST_LANGUAGE.JAVA:
+        gen_serializer_java(directory)
+    elif lang == DST_LANGUAGE.CPP:
+        gen_serializer_cpp(directory)
+    else:
+        raise Exception("unexpected destination language '{0}'".format(lang))
+
+
+def gen_serializer_cpp(directory):
+    # FIXME
+    raise NotImplementedError
+
+
+def gen_serializer_java(directory):
+    for class_name in ast_nodes.keys():
+        if not is_subnode(class_name, "Node"):
+            raise Exception("class '{0}' is not a subclass of Node".format(class_name))
+
+    container_types = collect_container_types(get_all_field_types())
+    gen_writer_java(directory, container_types)
+    gen_reader_java(directory, container_types)
+
+
+def gen_writer_java(directory, container_types):
+    lines = []
+    lines.append("package {0};".format(JAVA_PACKAGE))
+    lines.append("")
+    lines.append(gen_imports_java())
+    lines.append("import static com.google.common.base.Preconditions.checkNotNull;")
+    lines.append("")
+    lines.append("/**")
+    lines.append(" * <p>Writer of AST nodes in a binary form that can be read by")
+    lines.append(" * {@link AstReader}. Each node is written once and later occurrences of it")
+    lines.append(" * are written as references, so nodes shared in the written trees are")
+    lines.append(" * also shared after reading them. The identity of objects that are not")
+    lines.append(" * nodes, e.g. types and declarations, is preserved in the same way and")
+    lines.append(" * writing them is delegated to an external objects codec.</p>")
+    lines.append(" *")
+    lines.append(" * <p>Nodes written by the codec have only their classes written")
+    lines.append(" * immediately. Their fields and other data deferred by the codec are")
+    lines.append(" * written after the outermost external object, so cycles between nodes,")
+    lines.append(" * declarations and types can be read back.</p>")
+    lines.append(" *")
+    lines.append(" * <p>The stream starts with the hash of the schema of nodes. The reader")
+    lines.append(" * refuses to read streams written for a different schema.</p>")
+    lines.append(" */")
+    lines.append("public final class AstWriter {")
+    lines.append(tab + "/**")
+    lines.append(tab + " * Hash of the layout of all nodes and of the format of the stream.")
+    lines.append(tab + " */")
+    lines.append(tab + "public static final long SCHEMA_HASH = {0}L;".format(compute_schema_hash()))
+    lines.append("")
+    lines.append(tab + "static final int MAGIC = 0x4e415354;")
+    lines.append("")
+    lines.append(tab + "static final byte NULL_MARKER = 0;")
+    lines.append(tab + "static final byte REFERENCE_MARKER = 1;")
+    lines.append(tab + "static final byte NEW_OBJECT_MARKER = 2;")
+    lines.append(tab + "static final byte ABSENT_MARKER = 1;")
+    lines.append(tab + "static final byte PRESENT_MARKER = 2;")
+    lines.append(tab + "static final byte FALSE_MARKER = 1;")
+    lines.append(tab + "static final byte TRUE_MARKER = 2;")
+    lines.append(tab + "static final byte DUMMY_LOCATION_MARKER = 3;")
+    lines.append("")
+    lines.append(tab + "private static final Map<Class<?>, Integer> TAGS = new HashMap<>();")
+    lines.append(tab + "static {")
+    for tag, class_name in enumerate(ast_nodes.keys()):
+        lines.append(2 * tab + "TAGS.put({0}.class, {1});".format(class_name, tag))
+    lines.append(tab + "}")
+    lines.append("")
+    lines.append(tab + "private final DataOutputStream output;")
+    lines.append(tab + "private final ExternalObjectsCodec externalObjectsCodec;")
+    lines.append(tab + "private final Map<Node, Integer> nodesIds = new IdentityHashMap<>();")
+    lines.append(tab + "private final Map<Object, Integer> externalObjectsIds = new IdentityHashMap<>();")
+    lines.append(tab + "private final Map<String, Integer> stringsIds = new HashMap<>();")
+    lines.append(tab + "private final Queue<ExternalObjectsCodec.DeferredWrite> deferredWrites = new ArrayDeque<>();")
+    lines.append(tab + "private final ExternalObjectsCodec.Output codecOutput = new CodecOutput();")
+    lines.append(tab + "private int externalObjectsDepth = 0;")
+    lines.append(tab + "private boolean writingDeferred = false;")
+    lines.append("")
+    lines.append(tab + "public AstWriter(OutputStream stream, ExternalObjectsCodec externalObjectsCodec) throws IOException {")
+    lines.append(2 * tab + 'checkNotNull(stream, "stream cannot be null");')
+    lines.append(2 * tab + 'checkNotNull(externalObjectsCodec, "external objects codec cannot be null");')
+    lines.append(2 * tab + "this.output = new DataOutputStream(stream);")
+    lines.append(2 * tab + "this.externalObjectsCodec = externalObjectsCodec;")
+    lines.append(2 * tab + "this.output.writeInt(MAGIC);")
+    lines.append(2 * tab + "this.output.writeLong(SCHEMA_HASH);")
+    lines.append(tab + "}")
+    lines.append("")
+    lines.append(tab + "/**")
+    lines.append(tab + " * Write the given node and all nodes reachable from it. Nodes written")
+    lines.append(tab + " * by previous calls are written as references.")
+    lines.append(tab + " *")
+    lines.append(tab + " * @param node Node to write (may be <code>null</code>).")
+    lines.append(tab + " */")
+    lines.append(tab + "public void write(Node node) throws IOException {")
+    lines.append(2 * tab + "writeNode(node);")
+    lines.append(tab + "}")
+    lines.append("")
+    lines.append(tab + "public void flush() throws IOException {")
+    lines.append(2 * tab + "output.flush();")
+    lines.append(tab + "}")
+    lines.append("")
+    lines.append(tab + "private void writeNode(Node node) throws IOException {")
+    lines.append(2 * tab + "final Integer tag = writeNodeHeader(node);")
+    lines.append(2 * tab + "if (tag != null) {")
+    lines.append(3 * tab + "writeFields(node, tag);")
+    lines.append(2 * tab + "}")
+    lines.append(tab + "}")
+    lines.append("")
+    lines.append(tab + "private void writeNodeLater(final Node node) throws IOException {")
+    lines.append(2 * tab + "final Integer tag = writeNodeHeader(node);")
+    lines.append(2 * tab + "if (tag != null) {")
+    lines.append(3 * tab + "deferredWrites.add(new ExternalObjectsCodec.DeferredWrite() {")
+    lines.append(4 * tab + "@Override")
+    lines.append(4 * tab + "public void write() throws IOException {")
+    lines.append(5 * tab + "writeFields(node, tag);")
+    lines.append(4 * tab + "}")
+    lines.append(3 * tab + "});")
+    lines.append(2 * tab + "}")
+    lines.append(tab + "}")
+    lines.append("")
+    lines.append(tab + "/**")
+    lines.append(tab + " * Write the marker of the given node and its tag if it is a new one.")
+    lines.append(tab + " *")
+    lines.append(tab + " * @return Tag of the node if its fields are to be written,")
+    lines.append(tab + " *         <code>null</code> otherwise.")
+    lines.append(tab + " */")
+    lines.append(tab + "private Integer writeNodeHeader(Node node) throws IOException {")
+    lines.append(2 * tab + "if (node == null) {")
+    lines.append(3 * tab + "output.writeByte(NULL_MARKER);")
+    lines.append(3 * tab + "return null;")
+    lines.append(2 * tab + "}")
+    lines.append("")
+    lines.append(2 * tab + "final Integer id = nodesIds.get(node);")
+    lines.append(2 * tab + "if (id != null) {")
+    lines.append(3 * tab + "output.writeByte(REFERENCE_MARKER);")
+    lines.append(3 * tab + "output.writeInt(id);")
+    lines.append(3 * tab + "return null;")
+    lines.append(2 * tab + "}")
+    lines.append("")
+    lines.append(2 * tab + "final Integer tag = TAGS.get(node.getClass());")
+    lines.append(2 * tab + "if (tag == null) {")
+    lines.append(3 * tab + 'throw new IllegalArgumentException("cannot write a node of class "')
+    lines.append(5 * tab + "+ node.getClass().getCanonicalName());")
+    lines.append(2 * tab + "}")
+    lines.append("")
+    lines.append(2 * tab + "nodesIds.put(node, nodesIds.size());")
+    lines.append(2 * tab + "output.writeByte(NEW_OBJECT_MARKER);")
+    lines.append(2 * tab + "output.writeShort(tag);")
+    lines.append(2 * tab + "return tag;")
+    lines.append(tab + "}")
+    lines.append("")
+    lines.append(tab + "private void writeFields(Node node, int tag) throws IOException {")
+    lines.append(2 * tab + "switch (tag) {")
+    for tag, class_name in enumerate(ast_nodes.keys()):
+        lines.append(3 * tab + "case {0}:".format(tag))
+        lines.append(4 * tab + "writeFieldsOf{0}(({0}) node);".format(class_name))
+        lines.append(4 * tab + "break;")
+    lines.append(3 * tab + "default:")
+    lines.append(4 * tab + 'throw new IllegalStateException("unexpected tag " + tag);')
+    lines.append(2 * tab + "}")
+    lines.append(tab + "}")
+    lines.append("")
+
+    for class_name, node_cls in ast_nodes.items():
+        lines.append(tab + "private void writeFieldsOf{0}({0} node) throws IOException {{".format(class_name))
+        for field_name, field in get_serialized_fields(node_cls):
+            if isinstance(field, LocationField):
+                lines.append(2 * tab + "writeLocation(node.get{0}());".format(first_to_cap(field_name)))
+            else:
+                lines.append(2 * tab + gen_write_stmt(field.get_type(DST_LANGUAGE.JAVA),
+                                                      "node." + field_name))
+        lines.append(tab + "}")
+        lines.append("")
+
+    for container_type in container_types:
+        kind, element_type = classify_type(container_type)
+        lines.append(tab + "private void write{0}({1} value) throws IOException {{"
+                     .format(mangle_type(container_type), container_type))
+        if kind == TYPE_KIND.OPTIONAL:
+            lines.append(2 * tab + "if (value == null) {")
+            lines.append(3 * tab + "output.writeByte(NULL_MARKER);")
+            lines.append(2 * tab + "} else if (!value.isPresent()) {")
+            lines.append(3 * tab + "output.writeByte(ABSENT_MARKER);")
+            lines.append(2 * tab + "} else {")
+            lines.append(3 * tab + "output.writeByte(PRESENT_MARKER);")
+            lines.append(3 * tab + gen_write_stmt(element_type, "value.get()"))
+            lines.append(2 * tab + "}")
+        else:
+            lines.append(2 * tab + "if (value == null) {")
+            lines.append(3 * tab + "output.writeInt(-1);")
+            lines.append(3 * tab + "return;")
+            lines.append(2 * tab + "}")
+            lines.append("")
+            lines.append(2 * tab + "output.writeInt(value.size());")
+            lines.append(2 * tab + "for ({0} element : value) {{".format(element_type))
+            lines.append(3 * tab + gen_write_stmt(element_type, "element"))
+            lines.append(2 * tab + "}")
+        lines.append(tab + "}")
+        lines.append("")
+
+    lines.extend(map(lambda line: tab + line if line else line, WRITER_VALUE_METHODS.split("\n")))
+    lines.append("}")
+
+    with open(path.join(directory, "AstWriter.java"), "w") as f:
+        f.write("\n".join(lines) + "\n")
+
+
+def gen_reader_java(directory, container_types):
+    lines = []
+    lines.append("package {0};".format(JAVA_PACKAGE))
+    lines.append("")
+    lines.append(gen_imports_java())
+    lines.append("import static com.google.common.base.Preconditions.checkNotNull;")
+    lines.append("import static {0}.AstWriter.*;".format(JAVA_PACKAGE))
+    lines.append("")
+    lines.append("/**")
+    lines.append(" * <p>Reader of AST nodes written by {@link AstWriter}. The external objects")
+    lines.append(" * codec shall be able to read objects written by the codec used by the")
+    lines.append(" * writer.</p>")
+    lines.append(" */")
+    lines.append("public final class AstReader {")
+    lines.append(tab + "private final DataInputStream input;")
+    lines.append(tab + "private final ExternalObjectsCodec externalObjectsCodec;")
+    lines.append(tab + "private final List<Node> nodes = new ArrayList<>();")
+    lines.append(tab + "private final List<Object> externalObjects = new ArrayList<>();")
+    lines.append(tab + "private final List<String> strings = new ArrayList<>();")
+    lines.append(tab + "private final Queue<ExternalObjectsCodec.DeferredRead> deferredReads = new ArrayDeque<>();")
+    lines.append(tab + "private final ExternalObjectsCodec.Input codecInput = new CodecInput();")
+    lines.append(tab + "private int externalObjectsDepth = 0;")
+    lines.append(tab + "private boolean readingDeferred = false;")
+    lines.append("")
+    lines.append(tab + "public AstReader(InputStream stream, ExternalObjectsCodec externalObjectsCodec) throws IOException {")
+    lines.append(2 * tab + 'checkNotNull(stream, "stream cannot be null");')
+    lines.append(2 * tab + 'checkNotNull(externalObjectsCodec, "external objects codec cannot be null");')
+    lines.append(2 * tab + "this.input = new DataInputStream(stream);")
+    lines.append(2 * tab + "this.externalObjectsCodec = externalObjectsCodec;")
+    lines.append("")
+    lines.append(2 * tab + "if (this.input.readInt() != MAGIC) {")
+    lines.append(3 * tab + 'throw new IOException("the stream does not contain AST nodes");')
+    lines.append(2 * tab + "}")
+    lines.append(2 * tab + "final long schemaHash = this.input.readLong();")
+    lines.append(2 * tab + "if (schemaHash != SCHEMA_HASH) {")
+    lines.append(3 * tab + 'throw new IOException("the stream has been written for a different schema of nodes ("')
+    lines.append(5 * tab + '+ Long.toHexString(schemaHash) + ", expected " + Long.toHexString(SCHEMA_HASH) + ")");')
+    lines.append(2 * tab + "}")
+    lines.append(tab + "}")
+    lines.append("")
+    lines.append(tab + "/**")
+    lines.append(tab + " * Read the next node written by {@link AstWriter#write}.")
+    lines.append(tab + " *")
+    lines.append(tab + " * @return The read node (may be <code>null</code>).")
+    lines.append(tab + " */")
+    lines.append(tab + "public Node read() throws IOException {")
+    lines.append(2 * tab + "return readNode(Node.class);")
+    lines.append(tab + "}")
+    lines.append("")
+    lines.append(tab + "private <T extends Node> T readNode(Class<T> nodeClass) throws IOException {")
+    lines.append(2 * tab + "return readNode(nodeClass, false);")
+    lines.append(tab + "}")
+    lines.append("")
+    lines.append(tab + "private <T extends Node> T readNode(Class<T> nodeClass, boolean deferFields) throws IOException {")
+    lines.append(2 * tab + "final byte marker = input.readByte();")
+    lines.append(2 * tab + "switch (marker) {")
+    lines.append(3 * tab + "case NULL_MARKER:")
+    lines.append(4 * tab + "return null;")
+    lines.append(3 * tab + "case REFERENCE_MARKER:")
+    lines.append(4 * tab + "return castNode(getElement(nodes, input.readInt()), nodeClass);")
+    lines.append(3 * tab + "case NEW_OBJECT_MARKER:")
+    lines.append(4 * tab + "break;")
+    lines.append(3 * tab + "default:")
+    lines.append(4 * tab + "throw invalidMarker(marker);")
+    lines.append(2 * tab + "}")
+    lines.append("")
+    lines.append(2 * tab + "final int tag = input.readUnsignedShort();")
+    lines.append(2 * tab + "final Node node = newNode(tag);")
+    lines.append(2 * tab + "nodes.add(node);")
+    lines.append("")
+    lines.append(2 * tab + "if (deferFields) {")
+    lines.append(3 * tab + "deferredReads.add(new ExternalObjectsCodec.DeferredRead() {")
+    lines.append(4 * tab + "@Override")
+    lines.append(4 * tab + "public void read() throws IOException {")
+    lines.append(5 * tab + "readFields(node, tag);")
+    lines.append(4 * tab + "}")
+    lines.append(3 * tab + "});")
+    lines.append(2 * tab + "} else {")
+    lines.append(3 * tab + "readFields(node, tag);")
+    lines.append(2 * tab + "}")
+    lines.append("")
+    lines.append(2 * tab + "return castNode(node, nodeClass);")
+    lines.append(tab + "}")
+    lines.append("")
+    lines.append(tab + "private Node newNode(int tag) throws IOException {")
+    lines.append(2 * tab + "switch (tag) {")
+    for tag, class_name in enumerate(ast_nodes.keys()):
+        lines.append(3 * tab + "case {0}:".format(tag))
+        lines.append(4 * tab + "return new {0}();".format(class_name))
+    lines.append(3 * tab + "default:")
+    lines.append(4 * tab + 'throw new IOException("invalid tag of a node: " + tag);')
+    lines.append(2 * tab + "}")
+    lines.append(tab + "}")
+    lines.append("")
+    lines.append(tab + "private void readFields(Node node, int tag) throws IOException {")
+    lines.append(2 * tab + "switch (tag) {")
+    for tag, class_name in enumerate(ast_nodes.keys()):
+        lines.append(3 * tab + "case {0}:".format(tag))
+        lines.append(4 * tab + "readFieldsOf{0}(({0}) node);".format(class_name))
+        lines.append(4 * tab + "break;")
+    lines.append(3 * tab + "default:")
+    lines.append(4 * tab + 'throw new IllegalStateException("unexpected tag " + tag);')
+    lines.append(2 * tab + "}")
+    lines.append(tab + "}")
+    lines.append("")
+
+    for class_name, node_cls in ast_nodes.items():
+        lines.append(tab + "private void readFieldsOf{0}({0} node) throws IOException {{".format(class_name))
+        for field_name, field in get_serialized_fields(node_cls):
+            if isinstance(field, LocationField):
+                lines.append(2 * tab + "node.set{0}(readLocation());".format(first_to_cap(field_name)))
+            else:
+                lines.append(2 * tab + "node.{0} = {1};".format(
+                    field_name, gen_read_expr(field.get_type(DST_LANGUAGE.JAVA))))
+        lines.append(tab + "}")
+        lines.append("")
+
+    for container_type in container_types:
+        kind, element_type = classify_type(container_type)
+        lines.append(tab + "private {0} read{1}() throws IOException {{"
+                     .format(container_type, mangle_type(container_type)))
+        if kind == TYPE_KIND.OPTIONAL:
+            lines.append(2 * tab + "final byte marker = input.readByte();")
+            lines.append(2 * tab + "switch (marker) {")
+            lines.append(3 * tab + "case NULL_MARKER:")
+            lines.append(4 * tab + "return null;")
+            lines.append(3 * tab + "case ABSENT_MARKER:")
+            lines.append(4 * tab + "return Optional.absent();")
+            lines.append(3 * tab + "case PRESENT_MARKER:")
+            lines.append(4 * tab + "return Optional.of({0});".format(gen_read_expr(element_type)))
+            lines.append(3 * tab + "default:")
+            lines.append(4 * tab + "throw invalidMarker(marker);")
+            lines.append(2 * tab + "}")
+        elif kind == TYPE_KIND.IMMUTABLE_LIST:
+            lines.append(2 * tab + "final int size = readSize();")
+            lines.append(2 * tab + "if (size == -1) {")
+            lines.append(3 * tab + "return null;")
+            lines.append(2 * tab + "}")
+            lines.append("")
+            lines.append(2 * tab + "final ImmutableList.Builder<{0}> builder = ImmutableList.builder();"
+                         .format(element_type))
+            lines.append(2 * tab + "for (int i = 0; i < size; ++i) {")
+            lines.append(3 * tab + "builder.add({0});".format(gen_read_expr(element_type)))
+            lines.append(2 * tab + "}")
+            lines.append(2 * tab + "return builder.build();")
+        else:
+            lines.append(2 * tab + "final int size = readSize();")
+            lines.append(2 * tab + "if (size == -1) {")
+            lines.append(3 * tab + "return null;")
+            lines.append(2 * tab + "}")
+            lines.append("")
+            lines.append(2 * tab + "final {0} result = new {1}<>();".format(
+                container_type, "HashSet" if kind == TYPE_KIND.SET else "LinkedList"))
+            lines.append(2 * tab + "for (int i = 0; i < size; ++i) {")
+            lines.append(3 * tab + "result.add({0});".format(gen_read_expr(element_type)))
+            lines.append(2 * tab + "}")
+            lines.append(2 * tab + "return result;")
+        lines.append(tab + "}")
+        lines.append("")
+
+    lines.extend(map(lambda line: tab + line if line else line, READER_VALUE_METHODS.split("\n")))
+    lines.append("}")
+
+    with open(path.join(directory, "AstReader.java"), "w") as f:
+        f.write("\n".join(lines) + "\n")
+
+
+WRITER_VALUE_METHODS = """\
+private void writeExternal(Object object) throws IOException {
+    if (object == null) {
+        output.writeByte(NULL_MARKER);
+        return;
+    }
+
+    final Integer id = externalObjectsIds.get(object);
+    if (id != null) {
+        output.writeByte(REFERENCE_MARKER);
+        output.writeInt(id);
+    } else {
+        externalObjectsIds.put(object, externalObjectsIds.size());
+        output.writeByte(NEW_OBJECT_MARKER);
+        ++externalObjectsDepth;
+        externalObjectsCodec.writeObject(object, codecOutput);
+        --externalObjectsDepth;
+
+        if (externalObjectsDepth == 0) {
+            writeDeferred();
+        }
+    }
+}
+
+private void writeDeferred() throws IOException {
+    if (writingDeferred) {
+        return;
+    }
+
+    writingDeferred = true;
+    while (!deferredWrites.isEmpty()) {
+        deferredWrites.remove().write();
+    }
+    writingDeferred = false;
+}
+
+private void writeEnum(Enum<?> value) throws IOException {
+    writeString(value != null ? value.name() : null);
+}
+
+private void writeLocation(Location location) throws IOException {
+    if (location == null) {
+        output.writeByte(NULL_MARKER);
+    } else if (location == Location.getDummyLocation()) {
+        output.writeByte(DUMMY_LOCATION_MARKER);
+    } else {
+        output.writeByte(PRESENT_MARKER);
+        writeString(location.getFilePath());
+        output.writeInt(location.getLine());
+        output.writeInt(location.getColumn());
+    }
+}
+
+private void writeString(String value) throws IOException {
+    if (value == null) {
+        output.writeByte(NULL_MARKER);
+        return;
+    }
+
+    final Integer id = stringsIds.get(value);
+    if (id != null) {
+        output.writeByte(REFERENCE_MARKER);
+        output.writeInt(id);
+    } else {
+        stringsIds.put(value, stringsIds.size());
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeByte(NEW_OBJECT_MARKER);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+}
+
+private void writeBoolean(Boolean value) throws IOException {
+    output.writeByte(value == null
+            ? NULL_MARKER
+            : (value ? TRUE_MARKER : FALSE_MARKER));
+}
+
+private void writeInteger(Integer value) throws IOException {
+    if (value == null) {
+        output.writeByte(NULL_MARKER);
+    } else {
+        output.writeByte(PRESENT_MARKER);
+        output.writeInt(value);
+    }
+}
+
+private void writeLong(Long value) throws IOException {
+    if (value == null) {
+        output.writeByte(NULL_MARKER);
+    } else {
+        output.writeByte(PRESENT_MARKER);
+        output.writeLong(value);
+    }
+}
+
+private void writeCharacter(Character value) throws IOException {
+    if (value == null) {
+        output.writeByte(NULL_MARKER);
+    } else {
+        output.writeByte(PRESENT_MARKER);
+        output.writeChar(value);
+    }
+}
+
+private void writeBigInteger(BigInteger value) throws IOException {
+    if (value == null) {
+        output.writeByte(NULL_MARKER);
+    } else {
+        final byte[] bytes = value.toByteArray();
+        output.writeByte(PRESENT_MARKER);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+}
+
+/**
+ * Output given to the external objects codec.
+ */
+private final class CodecOutput implements ExternalObjectsCodec.Output {
+    @Override
+    public DataOutput getDataOutput() {
+        return output;
+    }
+
+    @Override
+    public void writeString(String value) throws IOException {
+        AstWriter.this.writeString(value);
+    }
+
+    @Override
+    public void writeLocation(Location location) throws IOException {
+        AstWriter.this.writeLocation(location);
+    }
+
+    @Override
+    public void writeNode(Node node) throws IOException {
+        writeNodeLater(node);
+    }
+
+    @Override
+    public void writeObject(Object object) throws IOException {
+        writeExternal(object);
+    }
+
+    @Override
+    public void defer(ExternalObjectsCodec.DeferredWrite write) {
+        checkNotNull(write, "deferred write cannot be null");
+        deferredWrites.add(write);
+    }
+}"""
+
+
+READER_VALUE_METHODS = """\
+private <T> T readExternal(Class<T> objectClass) throws IOException {
+    final byte marker = input.readByte();
+    switch (marker) {
+        case NULL_MARKER:
+            return null;
+        case REFERENCE_MARKER:
+            final Object referencedObject = getElement(externalObjects, input.readInt());
+            if (referencedObject == null) {
+                throw new IOException("reference to an external object that is being read");
+            }
+            return castObject(referencedObject, objectClass);
+        case NEW_OBJECT_MARKER:
+            final int id = externalObjects.size();
+            externalObjects.add(null);
+            ++externalObjectsDepth;
+            final Object object = externalObjectsCodec.readObject(codecInput);
+            --externalObjectsDepth;
+            if (object == null) {
+                throw new IOException("the external objects codec has read null");
+            }
+            externalObjects.set(id, object);
+
+            if (externalObjectsDepth == 0) {
+                readDeferred();
+            }
+            return castObject(object, objectClass);
+        default:
+            throw invalidMarker(marker);
+    }
+}
+
+private void readDeferred() throws IOException {
+    if (readingDeferred) {
+        return;
+    }
+
+    readingDeferred = true;
+    while (!deferredReads.isEmpty()) {
+        deferredReads.remove().read();
+    }
+    readingDeferred = false;
+}
+
+private <E extends Enum<E>> E readEnum(Class<E> enumClass) throws IOException {
+    final String name = readString();
+    if (name == null) {
+        return null;
+    }
+
+    try {
+        return Enum.valueOf(enumClass, name);
+    } catch (IllegalArgumentException e) {
+        throw new IOException("invalid constant of " + enumClass.getSimpleName() + ": " + name);
+    }
+}
+
+private Location readLocation() throws IOException {
+    final byte marker = input.readByte();
+    switch (marker) {
+        case NULL_MARKER:
+            return null;
+        case DUMMY_LOCATION_MARKER:
+            return Location.getDummyLocation();
+        case PRESENT_MARKER:
+            final String filePath = readString();
+            final int line = input.readInt();
+            final int column = input.readInt();
+            return new Location(filePath, line, column);
+        default:
+            throw invalidMarker(marker);
+    }
+}
+
+private String readString() throws IOException {
+    final byte marker = input.readByte();
+    switch (marker) {
+        case NULL_MARKER:
+            return null;
+        case REFERENCE_MARKER:
+            return getElement(strings, input.readInt());
+        case NEW_OBJECT_MARKER:
+            final String value = new String(readBytes(), StandardCharsets.UTF_8);
+            strings.add(value);
+            return value;
+        default:
+            throw invalidMarker(marker);
+    }
+}
+
+private Boolean readBoolean() throws IOException {
+    final byte marker = input.readByte();
+    switch (marker) {
+        case NULL_MARKER:
+            return null;
+        case FALSE_MARKER:
+            return false;
+        case TRUE_MARKER:
+            return true;
+        default:
+            throw invalidMarker(marker);
+    }
+}
+
+private Integer readInteger() throws IOException {
+    return readValueMarker()
+            ? input.readInt()
+            : null;
+}
+
+private Long readLong() throws IOException {
+    return readValueMarker()
+            ? input.readLong()
+            : null;
+}
+
+private Character readCharacter() throws IOException {
+    return readValueMarker()
+            ? input.readChar()
+            : null;
+}
+
+private BigInteger readBigInteger() throws IOException {
+    return readValueMarker()
+            ? new BigInteger(readBytes())
+            : null;
+}
+
+private boolean readValueMarker() throws IOException {
+    final byte marker = input.readByte();
+    switch (marker) {
+        case NULL_MARKER:
+            return false;
+        case PRESENT_MARKER:
+            return true;
+        default:
+            throw invalidMarker(marker);
+    }
+}
+
+private int readSize() throws IOException {
+    final int size = input.readInt();
+    if (size < -1) {
+        throw new IOException("invalid size of a collection: " + size);
+    }
+    return size;
+}
+
+private byte[] readBytes() throws IOException {
+    final int length = input.readInt();
+    if (length < 0) {
+        throw new IOException("invalid length of an array: " + length);
+    }
+
+    final byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return bytes;
+}
+
+private <T> T getElement(List<T> list, int id) throws IOException {
+    if (id < 0 || id >= list.size()) {
+        throw new IOException("invalid reference to an object: " + id);
+    }
+    return list.get(id);
+}
+
+private <T extends Node> T castNode(Node node, Class<T> nodeClass) throws IOException {
+    if (node != null && !nodeClass.isInstance(node)) {
+        throw new IOException("expected a node of class " + nodeClass.getSimpleName()
+                + " but read " + node.getClass().getSimpleName());
+    }
+    return nodeClass.cast(node);
+}
+
+private <T> T castObject(Object object, Class<T> objectClass) throws IOException {
+    if (!objectClass.isInstance(object)) {
+        throw new IOException("expected an object of class " + objectClass.getSimpleName()
+                + " but read " + (object != null ? object.getClass().getSimpleName() : "null"));
+    }
+    return objectClass.cast(object);
+}
+
+private IOException invalidMarker(byte marker) {
+    return new IOException("invalid marker in the stream: " + marker);
+}
+
+/**
+ * Input given to the external objects codec.
+ */
+private final class CodecInput implements ExternalObjectsCodec.Input {
+    @Override
+    public DataInput getDataInput() {
+        return input;
+    }
+
+    @Override
+    public String readString() throws IOException {
+        return AstReader.this.readString();
+    }
+
+    @Override
+    public Location readLocation() throws IOException {
+        return AstReader.this.readLocation();
+    }
+
+    @Override
+    public <T extends Node> T readNode(Class<T> nodeClass) throws IOException {
+        return AstReader.this.readNode(nodeClass, true);
+    }
+
+    @Override
+    public <T> T readObject(Class<T> objectClass) throws IOException {
+        return readExternal(objectClass);
+    }
+
+    @Override
+    public void defer(ExternalObjectsCodec.DeferredRead read) {
+        checkNotNull(read, "deferred read cannot be null");
+        deferredReads.add(read);
+    }
+}"""
@@ -39,6 +39,12 @@ def is_subnode(classname, maybe_ancestor):
 #defines the width of the indentation in the generated code
 tab = " " * 4
 
+
+#options of the generation of code
+class GENERATOR_OPTIONS:
+    #if True, the generated nodes use the compact layout of fields
+    compact_layout = False
+
 #A dictionary of all nodes of the abstract syntax tree
 ast_nodes = OrderedDict()
 ast_enums = OrderedDict()
@@ -51,3 +57,6 @@ mangle_nodes = {}
 
 #Dictionary with nodes that have a unique indicator
 unique_nodes = {}
+
+#Names of Java enumeration types that are used as types of fields
+java_enum_types = set()
@@ -4,6 +4,8 @@ from ast.core import BasicASTNode, generate_code, GenericIndicator, MangleIndica
     UniqueIndicator
 from ast.field_copy import DEEP_COPY_MODE
 from ast.fields import *
+from ast.util import GENERATOR_OPTIONS, java_enum_types
+import sys
 
 #==============================================================================
 #                             
@@ -35,6 +37,11 @@ from ast.fields import *
 #    variable, and that access is guaranteed to be atomic (e.g., a single byte)
 #    NOT_ATOMIC otherwise
 
+# Java enumeration types used in fields of nodes. The binary writer saves
+# their values as names of constants.
+java_enum_types.update(["RID", "AtomicType", "NescCallKind", "IntegerCstSuffix",
+                        "IntegerCstKind", "CallDirection", "StructSemantics"])
+
 #==============================================================================
 #                                    Base types
 #==============================================================================
@@ -42,9 +49,9 @@ from ast.fields import *
 
 class Node(BasicASTNode):
     """ A common superclass of all AST nodes. """
-    location = ReferenceField("Location", visitable=False, deep_copy_mode=DEEP_COPY_MODE.ASSIGN_REFERENCE_COPY)
-    endLocation = ReferenceField("Location", constructor_variable=False, visitable=False,
-                                 deep_copy_mode=DEEP_COPY_MODE.ASSIGN_REFERENCE_COPY)
+    location = LocationField(visitable=False, deep_copy_mode=DEEP_COPY_MODE.ASSIGN_REFERENCE_COPY)
+    endLocation = LocationField(constructor_variable=False, visitable=False,
+                                deep_copy_mode=DEEP_COPY_MODE.ASSIGN_REFERENCE_COPY)
     next = ReferenceField("Node", constructor_variable=False, visitable=False,
                           deep_copy_mode=DEEP_COPY_MODE.ASSIGN_NULL)
     isPasted = BoolField(constructor_variable=False)
@@ -1636,4 +1643,12 @@ class TypeArgument(BasicASTNode):
 #==============================================================================
 #==============================================================================
 if __name__ == "__main__":
+    # The layout of nodes can be chosen with '--layout=standard' (default) or
+    # '--layout=compact'.
+    for arg in sys.argv[1:]:
+        if arg == "--layout=compact":
+            GENERATOR_OPTIONS.compact_layout = True
+        elif arg != "--layout=standard":
+            sys.exit("unknown argument '{0}'".format(arg))
+
     generate_code(DST_LANGUAGE.JAVA, "pl/edu/mimuw/nesc/ast/gen")
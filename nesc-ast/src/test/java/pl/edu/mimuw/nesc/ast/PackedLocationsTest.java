@@ -0,0 +1,60 @@
+package pl.edu.mimuw.nesc.ast;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class PackedLocationsTest {
+    @Test
+    public void locationRestored() {
+        final Location location = new Location("dir/first.nc", 12, 7);
+        final Location unpackedLocation = PackedLocations.unpack(PackedLocations.pack(location));
+
+        assertEquals("dir/first.nc", unpackedLocation.getFilePath());
+        assertEquals(12, unpackedLocation.getLine());
+        assertEquals(7, unpackedLocation.getColumn());
+    }
+
+    @Test
+    public void nullAndDummyLocationRestored() {
+        assertNull(PackedLocations.unpack(PackedLocations.pack(null)));
+        assertSame(Location.getDummyLocation(), PackedLocations.unpack(
+                PackedLocations.pack(Location.getDummyLocation())));
+    }
+
+    @Test
+    public void locationWithoutFileRestored() {
+        final Location unpackedLocation = PackedLocations.unpack(
+                PackedLocations.pack(new Location(null, 3, 4)));
+
+        assertNull(unpackedLocation.getFilePath());
+        assertEquals(3, unpackedLocation.getLine());
+        assertEquals(4, unpackedLocation.getColumn());
+    }
+
+    @Test
+    public void pathsInterned() {
+        final long first = PackedLocations.pack(new Location(new String("dir/second.nc"), 1, 1));
+        final long second = PackedLocations.pack(new Location(new String("dir/second.nc"), 1, 1));
+        final long other = PackedLocations.pack(new Location("dir/third.nc", 1, 1));
+
+        assertEquals(first, second);
+        assertNotEquals(first, other);
+    }
+
+    @Test
+    public void unpackableLocationsInterned() {
+        final Location location = new Location("dir/fourth.nc", 1 << 21, 5);
+        final long first = PackedLocations.pack(location);
+        final long second = PackedLocations.pack(new Location("dir/fourth.nc", 1 << 21, 5));
+        final long otherFile = PackedLocations.pack(new Location("dir/fifth.nc", 1 << 21, 5));
+
+        assertEquals(first, second);
+        assertNotEquals(first, otherFile);
+        assertSame(location, PackedLocations.unpack(first));
+        assertEquals("dir/fifth.nc", PackedLocations.unpack(otherFile).getFilePath());
+    }
+}
@@ -0,0 +1,109 @@
+package pl.edu.mimuw.nesc.ast.gen;
+
+import com.google.common.base.Optional;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.LinkedList;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.mimuw.nesc.ast.IntegerCstKind;
+import pl.edu.mimuw.nesc.ast.IntegerCstSuffix;
+import pl.edu.mimuw.nesc.ast.Location;
+import pl.edu.mimuw.nesc.astutil.ObjectsTableCodec;
+import pl.edu.mimuw.nesc.type.IntType;
+import pl.edu.mimuw.nesc.type.Type;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for writing and reading nodes with the generated {@link AstWriter}
+ * and {@link AstReader}.
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class AstWriterTest {
+    private ObjectsTableCodec codec;
+
+    @Before
+    public void setUp() {
+        this.codec = new ObjectsTableCodec();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        final Type type = new IntType();
+        final Location location = new Location("test.nc", 3, 7);
+        final Identifier identifier = new Identifier(location, "x");
+        identifier.setType(Optional.of(type));
+        identifier.setEndLocation(Location.getDummyLocation());
+        identifier.setUniqueName(Optional.<String>absent());
+        final IntegerCst constant = new IntegerCst(location, "0x10", Optional.of(BigInteger.valueOf(16)),
+                IntegerCstKind.HEXADECIMAL, IntegerCstSuffix.NO_SUFFIX);
+        constant.setType(Optional.of(type));
+        final Plus plus = new Plus(location, identifier, constant);
+
+        final Plus copy = (Plus) readBack(plus);
+
+        assertNotSame(plus, copy);
+        final Identifier identifierCopy = (Identifier) copy.getLeftArgument();
+        final IntegerCst constantCopy = (IntegerCst) copy.getRightArgument();
+        assertEquals("x", identifierCopy.getName());
+        assertEquals(location, identifierCopy.getLocation());
+        assertSame(Location.getDummyLocation(), identifierCopy.getEndLocation());
+        assertFalse(identifierCopy.getUniqueName().isPresent());
+        assertNull(identifierCopy.getIsLvalue());
+        assertNull(copy.getType());
+        assertEquals("0x10", constantCopy.getString());
+        assertEquals(BigInteger.valueOf(16), constantCopy.getValue().get());
+        assertSame(IntegerCstKind.HEXADECIMAL, constantCopy.getKind());
+        assertSame(IntegerCstSuffix.NO_SUFFIX, constantCopy.getSuffix());
+        assertSame(type, identifierCopy.getType().get());
+        assertSame(type, constantCopy.getType().get());
+        assertEquals(1, codec.size());
+    }
+
+    @Test
+    public void sharedNodes() throws IOException {
+        final Identifier identifier = new Identifier(Location.getDummyLocation(), "y");
+        final LinkedList<Statement> statements = new LinkedList<>();
+        statements.add(new ExpressionStmt(Location.getDummyLocation(), identifier));
+        statements.add(new ExpressionStmt(Location.getDummyLocation(), identifier));
+        final CompoundStmt stmt = new CompoundStmt(Location.getDummyLocation(),
+                new LinkedList<IdLabel>(), new LinkedList<Declaration>(), statements);
+
+        final CompoundStmt copy = (CompoundStmt) readBack(stmt);
+
+        assertEquals(2, copy.getStatements().size());
+        assertTrue(copy.getDeclarations().isEmpty());
+        final Expression first = ((ExpressionStmt) copy.getStatements().get(0)).getExpression();
+        final Expression second = ((ExpressionStmt) copy.getStatements().get(1)).getExpression();
+        assertNotSame(identifier, first);
+        assertSame(first, second);
+    }
+
+    @Test(expected = IOException.class)
+    public void differentSchema() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new AstWriter(output, codec).write(new Identifier(Location.getDummyLocation(), "z"));
+        final byte[] bytes = output.toByteArray();
+        bytes[4] ^= 1;
+        new AstReader(new ByteArrayInputStream(bytes), codec);
+    }
+
+    private Node readBack(Node node) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final AstWriter writer = new AstWriter(output, codec);
+        writer.write(node);
+        writer.flush();
+
+        final AstReader reader = new AstReader(new ByteArrayInputStream(output.toByteArray()), codec);
+        return reader.read();
+    }
+}
@@ -0,0 +1,39 @@
+package pl.edu.mimuw.nesc.astutil;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import java.math.BigInteger;
+import java.util.LinkedList;
+import org.junit.Test;
+import pl.edu.mimuw.nesc.ast.IntegerCstKind;
+import pl.edu.mimuw.nesc.ast.IntegerCstSuffix;
+import pl.edu.mimuw.nesc.ast.Location;
+import pl.edu.mimuw.nesc.ast.gen.Expression;
+import pl.edu.mimuw.nesc.ast.gen.ExpressionStmt;
+import pl.edu.mimuw.nesc.ast.gen.Identifier;
+import pl.edu.mimuw.nesc.ast.gen.IntegerCst;
+import pl.edu.mimuw.nesc.ast.gen.Node;
+import pl.edu.mimuw.nesc.ast.gen.Plus;
+import pl.edu.mimuw.nesc.ast.gen.ReturnStmt;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class AstUtilsTest {
+    private static final Location LOCATION = new Location("test.c", 1, 1);
+
+    @Test
+    public void countNodes() {
+        final Plus sum = new Plus(LOCATION, new Identifier(LOCATION, "x"),
+                new IntegerCst(LOCATION, "1", Optional.of(BigInteger.ONE),
+                        IntegerCstKind.DECIMAL, IntegerCstSuffix.NO_SUFFIX));
+        final ExpressionStmt stmt = new ExpressionStmt(LOCATION, sum);
+        final ReturnStmt returnStmt = new ReturnStmt(LOCATION, Optional.<Expression>absent());
+
+        assertEquals(4, AstUtils.countNodes(ImmutableList.<Node>of(stmt)));
+        assertEquals(5, AstUtils.countNodes(ImmutableList.<Node>of(stmt, returnStmt)));
+        assertEquals(0, AstUtils.countNodes(new LinkedList<Node>()));
+    }
+}
@@ -0,0 +1,210 @@
+package pl.edu.mimuw.nesc.astutil;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.LinkedList;
+import org.junit.Test;
+import pl.edu.mimuw.nesc.ast.Location;
+import pl.edu.mimuw.nesc.ast.StructSemantics;
+import pl.edu.mimuw.nesc.ast.gen.AstReader;
+import pl.edu.mimuw.nesc.ast.gen.AstWriter;
+import pl.edu.mimuw.nesc.ast.gen.Attribute;
+import pl.edu.mimuw.nesc.ast.gen.CompoundStmt;
+import pl.edu.mimuw.nesc.ast.gen.Declaration;
+import pl.edu.mimuw.nesc.ast.gen.Declarator;
+import pl.edu.mimuw.nesc.ast.gen.EnumRef;
+import pl.edu.mimuw.nesc.ast.gen.Enumerator;
+import pl.edu.mimuw.nesc.ast.gen.Expression;
+import pl.edu.mimuw.nesc.ast.gen.FieldDecl;
+import pl.edu.mimuw.nesc.ast.gen.IdLabel;
+import pl.edu.mimuw.nesc.ast.gen.Identifier;
+import pl.edu.mimuw.nesc.ast.gen.Node;
+import pl.edu.mimuw.nesc.ast.gen.Statement;
+import pl.edu.mimuw.nesc.ast.gen.StructRef;
+import pl.edu.mimuw.nesc.ast.gen.Word;
+import pl.edu.mimuw.nesc.declaration.object.ConstantDeclaration;
+import pl.edu.mimuw.nesc.declaration.object.Linkage;
+import pl.edu.mimuw.nesc.declaration.object.VariableDeclaration;
+import pl.edu.mimuw.nesc.declaration.tag.EnumDeclaration;
+import pl.edu.mimuw.nesc.declaration.tag.FieldDeclaration;
+import pl.edu.mimuw.nesc.declaration.tag.StructDeclaration;
+import pl.edu.mimuw.nesc.declaration.tag.fieldtree.FieldElement;
+import pl.edu.mimuw.nesc.declaration.tag.fieldtree.TreeElement;
+import pl.edu.mimuw.nesc.environment.DefaultEnvironment;
+import pl.edu.mimuw.nesc.type.ArrayType;
+import pl.edu.mimuw.nesc.type.EnumeratedType;
+import pl.edu.mimuw.nesc.type.IntType;
+import pl.edu.mimuw.nesc.type.PointerType;
+import pl.edu.mimuw.nesc.type.StructureType;
+import pl.edu.mimuw.nesc.type.Type;
+import pl.edu.mimuw.nesc.type.UnsignedCharType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for writing and reading types and declarations with
+ * {@link PortableObjectsCodec}. Data is always read with a different codec
+ * object than the one that has written it.
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class PortableObjectsCodecTest {
+    private static final Location LOCATION = new Location("list.h", 2, 8);
+
+    @Test
+    public void selfReferencingStructure() throws IOException {
+        final StructRef structRef = new StructRef(LOCATION, new LinkedList<Attribute>(),
+                new LinkedList<Declaration>(), new Word(LOCATION, "node"), StructSemantics.DEFINITION);
+        final StructDeclaration struct = StructDeclaration.preDefinitionBuilder()
+                .astNode(structRef)
+                .name("node", "node__1")
+                .startLocation(LOCATION)
+                .build();
+        structRef.setDeclaration(struct);
+
+        final FieldDeclaration next = newField("next", new PointerType(struct.getType(false, false)));
+        final FieldDeclaration value = newField("value", new IntType());
+        next.setLayout(0, 16, 16);
+        value.setLayout(16, 16, 16);
+        struct.define(ImmutableList.<TreeElement>of(new FieldElement(next), new FieldElement(value)));
+        struct.ownContents();
+        struct.setLayout(4, 2);
+
+        final Type headType = new PointerType(struct.getType(true, false));
+        final Identifier head = new Identifier(LOCATION, "head");
+        head.setType(Optional.of(headType));
+        head.setDeclaration(VariableDeclaration.builder()
+                .uniqueName("head__2")
+                .type(headType)
+                .linkage(Linkage.EXTERNAL)
+                .name("head")
+                .startLocation(LOCATION)
+                .build());
+
+        final Identifier copy = (Identifier) readBack(head);
+
+        final VariableDeclaration headCopy = (VariableDeclaration) copy.getDeclaration();
+        assertEquals("head__2", headCopy.getUniqueName());
+        assertSame(Linkage.EXTERNAL, headCopy.getLinkage().get());
+        assertSame(copy.getType().get(), headCopy.getType().get());
+
+        final StructureType structType = (StructureType)
+                ((PointerType) copy.getType().get()).getReferencedType();
+        assertTrue(structType.isConstQualified());
+        final StructDeclaration structCopy = structType.getDeclaration();
+        assertNotSame(struct, structCopy);
+        assertEquals("node__1", structCopy.getUniqueName().get());
+        assertEquals(4, structCopy.getSize());
+        assertEquals(2, structCopy.getAlignment());
+        assertSame(structCopy, structCopy.getAstNode().getDeclaration());
+        assertSame(StructSemantics.DEFINITION, structCopy.getAstNode().getSemantics());
+        assertEquals("node", structCopy.getAstNode().getName().getName());
+
+        assertEquals(2, structCopy.getAllFields().get().size());
+        final FieldDeclaration nextCopy = structCopy.findField("next").get();
+        final FieldDeclaration valueCopy = structCopy.findField("value").get();
+        assertSame(structCopy, ((StructureType) ((PointerType) nextCopy.getType().get())
+                .getReferencedType()).getDeclaration());
+        assertSame(structCopy, nextCopy.getOwner());
+        assertSame(nextCopy, nextCopy.getAstField().getDeclaration());
+        assertTrue(valueCopy.getType().get() instanceof IntType);
+        assertEquals(16, valueCopy.getOffsetInBits());
+        assertEquals(16, valueCopy.getSizeInBits());
+    }
+
+    @Test
+    public void enumeration() throws IOException {
+        final Enumerator red = new Enumerator(LOCATION, "RED", Optional.<Expression>absent());
+        final Enumerator green = new Enumerator(LOCATION, "GREEN", Optional.<Expression>absent());
+        final LinkedList<Declaration> enumerators = new LinkedList<>();
+        enumerators.add(red);
+        enumerators.add(green);
+        final EnumRef enumRef = new EnumRef(LOCATION, new LinkedList<Attribute>(), enumerators,
+                new Word(LOCATION, "color"), StructSemantics.DEFINITION);
+
+        final ConstantDeclaration redConstant = newConstant(red, 0);
+        final ConstantDeclaration greenConstant = newConstant(green, 5);
+        final EnumDeclaration enumDeclaration = EnumDeclaration.definitionBuilder()
+                .addConstant(redConstant)
+                .addConstant(greenConstant)
+                .astNode(enumRef)
+                .name("color", "color__3")
+                .startLocation(LOCATION)
+                .build();
+        enumDeclaration.ownContents();
+        enumDeclaration.setCompatibleType(new UnsignedCharType());
+        enumRef.setDeclaration(enumDeclaration);
+
+        final Identifier identifier = new Identifier(LOCATION, "GREEN");
+        identifier.setDeclaration(greenConstant);
+        identifier.setType(Optional.<Type>of(new ArrayType(enumDeclaration.getType(false, false),
+                Optional.<Expression>of(identifier))));
+
+        final Identifier copy = (Identifier) readBack(identifier);
+
+        final ConstantDeclaration greenCopy = (ConstantDeclaration) copy.getDeclaration();
+        assertEquals(BigInteger.valueOf(5), greenCopy.getValue().get());
+        assertEquals("GREEN", greenCopy.getEnumerator().getName());
+        assertSame(greenCopy, greenCopy.getEnumerator().getDeclaration());
+
+        final ArrayType arrayType = (ArrayType) copy.getType().get();
+        assertSame(copy, arrayType.getSize().get());
+        final EnumDeclaration enumCopy = ((EnumeratedType) arrayType.getElementType()).getEnumDeclaration();
+        assertSame(enumCopy, greenCopy.getOwner());
+        assertEquals(2, enumCopy.getConstants().get().size());
+        assertSame(greenCopy, enumCopy.getConstants().get().get(1));
+        assertSame(enumCopy, enumCopy.getConstants().get().get(0).getOwner());
+        assertTrue(enumCopy.getCompatibleType() instanceof UnsignedCharType);
+        assertSame(enumCopy, enumCopy.getAstNode().getDeclaration());
+        assertEquals(2, enumCopy.getAstNode().getFields().size());
+        assertFalse(enumCopy.isTransformed());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedObject() throws IOException {
+        final CompoundStmt stmt = new CompoundStmt(LOCATION, new LinkedList<IdLabel>(),
+                new LinkedList<Declaration>(), new LinkedList<Statement>());
+        stmt.setEnvironment(new DefaultEnvironment());
+        readBack(stmt);
+    }
+
+    private FieldDeclaration newField(String name, Type type) {
+        final FieldDecl fieldDecl = new FieldDecl(LOCATION, Optional.<Declarator>absent(),
+                new LinkedList<Attribute>(), Optional.<Expression>absent());
+        final FieldDeclaration field = new FieldDeclaration(Optional.of(name), LOCATION, LOCATION,
+                Optional.of(type), false, fieldDecl);
+        fieldDecl.setDeclaration(field);
+        return field;
+    }
+
+    private ConstantDeclaration newConstant(Enumerator enumerator, int value) {
+        final ConstantDeclaration.Builder builder = ConstantDeclaration.builder();
+        builder.uniqueName(enumerator.getName() + "__4")
+                .enumerator(enumerator)
+                .name(enumerator.getName())
+                .startLocation(LOCATION);
+        final ConstantDeclaration constant = builder.build();
+        constant.setValue(BigInteger.valueOf(value));
+        enumerator.setDeclaration(constant);
+        return constant;
+    }
+
+    private Node readBack(Node node) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final AstWriter writer = new AstWriter(output, new PortableObjectsCodec());
+        writer.write(node);
+        writer.flush();
+
+        final AstReader reader = new AstReader(new ByteArrayInputStream(output.toByteArray()),
+                new PortableObjectsCodec());
+        return reader.read();
+    }
+}
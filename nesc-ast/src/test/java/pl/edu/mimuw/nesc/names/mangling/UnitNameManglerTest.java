@@ -0,0 +1,76 @@
+package pl.edu.mimuw.nesc.names.mangling;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the name mangler of a single unit.
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ * @see UnitNameMangler
+ */
+public final class UnitNameManglerTest {
+    @Test
+    public void namesContainIndexOfUnit() {
+        final UnitNameMangler mangler = new UnitNameMangler(7, ImmutableSet.<String>of());
+
+        assertEquals("tmp__7a", mangler.mangle("tmp"));
+        assertEquals("tmp__7b", mangler.mangle("tmp"));
+        assertEquals("x__7c", mangler.mangle("x"));
+        assertEquals("x__7d", mangler.remangle("x__7c"));
+    }
+
+    @Test
+    public void lettersFollowAlphabeticOrder() {
+        final UnitNameMangler mangler = new UnitNameMangler(0, ImmutableSet.<String>of());
+        String name = null;
+
+        for (int i = 0; i < 27; ++i) {
+            name = mangler.mangle("n");
+            if (i == 25) {
+                assertEquals("n__0z", name);
+            }
+        }
+
+        assertEquals("n__0aa", name);
+    }
+
+    @Test
+    public void forbiddenNamesSkipped() {
+        final UnitNameMangler mangler = new UnitNameMangler(1, ImmutableSet.of("a__1a", "a__1c"));
+        mangler.addForbiddenName("a__1b");
+
+        assertEquals("a__1d", mangler.mangle("a"));
+    }
+
+    @Test
+    public void namesIndependentOfOtherUnits() {
+        final Set<String> forbiddenNames = ImmutableSet.of();
+        final UnitNameMangler first = new UnitNameMangler(1, forbiddenNames);
+        final UnitNameMangler second = new UnitNameMangler(11, forbiddenNames);
+        final AlphabeticNameMangler global = new AlphabeticNameMangler();
+        final Set<String> names = new HashSet<>();
+
+        for (int i = 0; i < 1000; ++i) {
+            assertTrue(names.add(first.mangle("v")));
+            assertTrue(names.add(second.mangle("v")));
+            assertTrue(names.add(global.mangle("v")));
+        }
+
+        // the same sequence of calls gives the same names
+        final UnitNameMangler firstAgain = new UnitNameMangler(1, forbiddenNames);
+        assertFalse(names.add(firstAgain.mangle("v")));
+        assertEquals("v__1b", firstAgain.mangle("v"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeIndexRejected() {
+        new UnitNameMangler(-1, ImmutableSet.<String>of());
+    }
+}
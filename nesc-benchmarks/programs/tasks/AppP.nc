@@ -0,0 +1,19 @@
+module AppP {
+    uses interface Counter as First;
+    uses interface Counter as Second;
+    uses interface Scheduler;
+}
+implementation {
+    int main() @C() @spontaneous() {
+        int i;
+
+        for (i = 0; i < 10; ++i) {
+            call First.increment();
+            call Second.increment();
+            while (call Scheduler.runNextTask()) {
+            }
+        }
+
+        return call First.get() + call Second.get();
+    }
+}
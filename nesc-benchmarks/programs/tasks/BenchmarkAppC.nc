@@ -0,0 +1,11 @@
+configuration BenchmarkAppC {
+}
+implementation {
+    components AppP, SchedulerP;
+    components new CounterC(1) as FirstCounterC;
+    components new CounterC(2) as SecondCounterC;
+
+    AppP.Scheduler -> SchedulerP;
+    AppP.First -> FirstCounterC;
+    AppP.Second -> SecondCounterC;
+}
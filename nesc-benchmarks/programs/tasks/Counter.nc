@@ -0,0 +1,4 @@
+interface Counter {
+    command void increment();
+    command int get();
+}
@@ -0,0 +1,8 @@
+generic configuration CounterC(int step) {
+    provides interface Counter;
+}
+implementation {
+    components new CounterP(step);
+
+    Counter = CounterP;
+}
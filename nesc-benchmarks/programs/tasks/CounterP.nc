@@ -0,0 +1,18 @@
+generic module CounterP(int step) {
+    provides interface Counter;
+}
+implementation {
+    int value = 0;
+
+    task void incrementTask() {
+        value += step;
+    }
+
+    command void Counter.increment() {
+        post incrementTask();
+    }
+
+    command int Counter.get() {
+        return value;
+    }
+}
@@ -0,0 +1,3 @@
+interface Scheduler {
+    command int runNextTask();
+}
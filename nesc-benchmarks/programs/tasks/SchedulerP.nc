@@ -0,0 +1,43 @@
+module SchedulerP {
+    provides interface TaskBasic[unsigned char id];
+    provides interface Scheduler;
+}
+implementation {
+    enum {
+        QUEUE_SIZE = 16,
+        NO_TASK = 255
+    };
+
+    unsigned char queue[QUEUE_SIZE];
+    unsigned char head = 0;
+    unsigned char tail = 0;
+
+    async command unsigned char TaskBasic.postTask[unsigned char id]() {
+        atomic {
+            queue[tail] = id;
+            tail = (tail + 1) % QUEUE_SIZE;
+        }
+        return 0;
+    }
+
+    command int Scheduler.runNextTask() {
+        unsigned char id = NO_TASK;
+
+        atomic {
+            if (head != tail) {
+                id = queue[head];
+                head = (head + 1) % QUEUE_SIZE;
+            }
+        }
+
+        if (id == NO_TASK) {
+            return 0;
+        }
+
+        signal TaskBasic.runTask[id]();
+        return 1;
+    }
+
+    default event void TaskBasic.runTask[unsigned char id]() {
+    }
+}
@@ -0,0 +1,4 @@
+interface TaskBasic {
+    async command unsigned char postTask();
+    event void runTask();
+}
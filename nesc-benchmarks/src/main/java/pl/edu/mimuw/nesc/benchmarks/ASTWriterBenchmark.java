@@ -0,0 +1,21 @@
+package pl.edu.mimuw.nesc.benchmarks;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import pl.edu.mimuw.nesc.astwriting.ASTWriter;
+
+/**
+ * <p>Benchmark of writing the C code of the final program by
+ * {@link ASTWriter}. The code is written to a stream that discards it.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class ASTWriterBenchmark extends AbstractCompiledProgramBenchmark {
+    @Benchmark
+    public void write() throws IOException {
+        try (ASTWriter writer = new ASTWriter(ByteStreams.nullOutputStream(), WRITE_SETTINGS)) {
+            writer.write(compilationResult.getDeclarations());
+        }
+    }
+}
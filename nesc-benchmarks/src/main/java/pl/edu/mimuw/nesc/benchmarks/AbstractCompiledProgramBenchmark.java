@@ -0,0 +1,42 @@
+package pl.edu.mimuw.nesc.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import pl.edu.mimuw.nesc.astwriting.WriteSettings;
+import pl.edu.mimuw.nesc.compilation.CompilationExecutor;
+import pl.edu.mimuw.nesc.compilation.CompilationResult;
+import pl.edu.mimuw.nesc.compilation.ErroneousIssueException;
+import pl.edu.mimuw.nesc.exception.InvalidOptionsException;
+
+/**
+ * <p>Base class for benchmarks of stages performed on the final list of
+ * declarations of the program. The program is compiled once before the
+ * benchmark.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public abstract class AbstractCompiledProgramBenchmark extends AbstractProgramBenchmark {
+    /**
+     * Settings of writing the code used by the default backend.
+     */
+    protected static final WriteSettings WRITE_SETTINGS = WriteSettings.builder()
+            .charset("UTF-8")
+            .indentWithSpaces(3)
+            .nameMode(WriteSettings.NameMode.USE_UNIQUE_NAMES)
+            .uniqueMode(WriteSettings.UniqueMode.OUTPUT_VALUES)
+            .build();
+
+    /**
+     * Result of compiling the program.
+     */
+    protected CompilationResult compilationResult;
+
+    @Setup(Level.Trial)
+    public void compileProgram() {
+        try {
+            this.compilationResult = new CompilationExecutor(false).compile(getFrontendArgs());
+        } catch (ErroneousIssueException | InvalidOptionsException e) {
+            throw new IllegalStateException("cannot compile the benchmarked program", e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package pl.edu.mimuw.nesc.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Level;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.edu.mimuw.nesc.common.util.VariousUtils;
+import pl.edu.mimuw.nesc.compilation.CompilationExecutor;
+
+/**
+ * <p>Base class for benchmarks of stages of the compiler performed for
+ * a single NesC program. The program is specified by parameters of the
+ * benchmark. By default, it is the program from directory
+ * <code>nesc-benchmarks/programs/tasks</code>, so benchmarks shall be run in
+ * the root directory of the project. Other programs can be benchmarked by
+ * overriding parameters, e.g.
+ * <code>-p directory=path -p mainEntity=AppC -p scheduler=...</code>.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public abstract class AbstractProgramBenchmark {
+    /**
+     * Directory with the program.
+     */
+    @Param("nesc-benchmarks/programs/tasks")
+    public String directory;
+
+    /**
+     * Name of the main configuration of the program.
+     */
+    @Param("BenchmarkAppC")
+    public String mainEntity;
+
+    /**
+     * Specification of the scheduler for the program. The scheduler is not
+     * used if the specification is empty.
+     */
+    @Param("SchedulerP,SchedulerP.TaskBasic,TaskBasic,TaskBasic,runTask,postTask")
+    public String scheduler;
+
+    /**
+     * Get parameters for the frontend that specify the benchmarked program.
+     *
+     * @return Array with parameters for the frontend.
+     */
+    protected String[] getFrontendArgs() {
+        final List<String> args = new ArrayList<>();
+        args.add("-p");
+        args.add(directory);
+        args.add("-m");
+        args.add(mainEntity);
+
+        if (!scheduler.isEmpty()) {
+            args.add("-s");
+            args.add(scheduler);
+        }
+
+        return args.toArray(new String[args.size()]);
+    }
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void turnOffLogging() {
+        VariousUtils.setLoggingLevel(Level.OFF);
+    }
+
+    /**
+     * Create an executor that can be used for many compilations.
+     *
+     * @return Newly created executor.
+     */
+    protected static CompilationExecutor newExecutor() {
+        return new CompilationExecutor(false);
+    }
+}
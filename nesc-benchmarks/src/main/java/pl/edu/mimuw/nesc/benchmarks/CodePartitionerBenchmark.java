@@ -0,0 +1,110 @@
+package pl.edu.mimuw.nesc.benchmarks;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import pl.edu.mimuw.nesc.ast.gen.FunctionDecl;
+import pl.edu.mimuw.nesc.astutil.DeclaratorUtils;
+import pl.edu.mimuw.nesc.codepartition.BComponentsCodePartitioner;
+import pl.edu.mimuw.nesc.codepartition.BankSchema;
+import pl.edu.mimuw.nesc.codepartition.BankTable;
+import pl.edu.mimuw.nesc.codepartition.CodePartitioner;
+import pl.edu.mimuw.nesc.codepartition.GreedyCodePartitioner;
+import pl.edu.mimuw.nesc.codepartition.PartitionImpossibleException;
+import pl.edu.mimuw.nesc.codepartition.SimpleCodePartitioner;
+import pl.edu.mimuw.nesc.codepartition.TabuSearchCodePartitioner;
+import pl.edu.mimuw.nesc.codesize.CodeSizeEstimation;
+import pl.edu.mimuw.nesc.codesize.SDCCCodeSizeEstimatorFactory;
+import pl.edu.mimuw.nesc.codesize.StaticCostModel;
+import pl.edu.mimuw.nesc.common.AtomicSpecification;
+import pl.edu.mimuw.nesc.compilation.DefaultCompilationListener;
+
+/**
+ * <p>Benchmark of partitioning functions of the final program into code
+ * banks by each {@link CodePartitioner}. The partitioners use the call graph
+ * recorded in the references graph of the program and sizes of functions
+ * estimated statically, so SDCC is not necessary. The heuristic is specified
+ * in the same way as in the 8051 backend.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class CodePartitionerBenchmark extends AbstractCompiledProgramBenchmark {
+    @Param({"simple", "bcomponents", "greedy-2", "tmsearch-1000-100"})
+    public String partitionHeuristic;
+
+    /**
+     * Capacity of each of the 8 banks.
+     */
+    @Param("32768")
+    public int bankCapacity;
+
+    private ImmutableList<FunctionDecl> functions;
+    private CodeSizeEstimation estimation;
+    private CodePartitioner partitioner;
+
+    @Setup(Level.Trial)
+    public void prepareFunctions() {
+        this.estimation = new SDCCCodeSizeEstimatorFactory(compilationResult.getDeclarations(),
+                    WRITE_SETTINGS)
+                .newStaticEstimator(compilationResult.getABI(), StaticCostModel.getDefault())
+                .estimate();
+        this.functions = FluentIterable.from(compilationResult.getDeclarations())
+                .filter(FunctionDecl.class)
+                .filter(new Predicate<FunctionDecl>() {
+                    @Override
+                    public boolean apply(FunctionDecl function) {
+                        return !estimation.getInlineFunctions().contains(
+                                DeclaratorUtils.getUniqueName(function.getDeclarator()).get());
+                    }
+                })
+                .toList();
+
+        this.partitioner = newPartitioner(partitionHeuristic, bankCapacity,
+                compilationResult.getAtomicSpecification());
+    }
+
+    /**
+     * Create the partitioner for the given heuristic and 8 banks with the
+     * given capacity.
+     *
+     * @param partitionHeuristic Heuristic specified as in the 8051 backend.
+     * @param bankCapacity Capacity of each bank.
+     * @param atomicSpecification Atomic specification of the program.
+     * @return Newly created partitioner.
+     */
+    static CodePartitioner newPartitioner(String partitionHeuristic, int bankCapacity,
+                AtomicSpecification atomicSpecification) {
+        final BankSchema.Builder bankSchemaBuilder = BankSchema.builder("HOME", bankCapacity);
+        for (int i = 1; i < 8; ++i) {
+            bankSchemaBuilder.addBank("BANK" + i, bankCapacity);
+        }
+        final BankSchema bankSchema = bankSchemaBuilder.build();
+
+        if (partitionHeuristic.equals("simple")) {
+            return new SimpleCodePartitioner(bankSchema, atomicSpecification);
+        } else if (partitionHeuristic.equals("bcomponents")) {
+            return new BComponentsCodePartitioner(bankSchema, atomicSpecification,
+                    new DefaultCompilationListener());
+        } else if (partitionHeuristic.startsWith("tmsearch-")) {
+            final int lastDashPos = partitionHeuristic.lastIndexOf('-');
+            return new TabuSearchCodePartitioner(bankSchema, atomicSpecification,
+                    Integer.parseInt(partitionHeuristic.substring(9, lastDashPos)),
+                    Integer.parseInt(partitionHeuristic.substring(lastDashPos + 1)));
+        } else if (partitionHeuristic.startsWith("greedy-")) {
+            return new GreedyCodePartitioner(bankSchema, atomicSpecification,
+                    Integer.parseInt(partitionHeuristic.substring(7)));
+        } else {
+            throw new IllegalStateException("unexpected partition heuristic '"
+                    + partitionHeuristic + "'");
+        }
+    }
+
+    @Benchmark
+    public BankTable partition() throws PartitionImpossibleException {
+        return partitioner.partition(functions, estimation, compilationResult.getReferencesGraph());
+    }
+}
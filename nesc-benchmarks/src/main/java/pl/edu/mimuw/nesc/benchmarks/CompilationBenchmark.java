@@ -0,0 +1,29 @@
+package pl.edu.mimuw.nesc.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import pl.edu.mimuw.nesc.compilation.CompilationExecutor;
+import pl.edu.mimuw.nesc.compilation.CompilationResult;
+import pl.edu.mimuw.nesc.compilation.ErroneousIssueException;
+import pl.edu.mimuw.nesc.exception.InvalidOptionsException;
+
+/**
+ * <p>Benchmark of all stages performed by {@link CompilationExecutor}. It is
+ * the baseline for benchmarks of single stages.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class CompilationBenchmark extends AbstractProgramBenchmark {
+    private CompilationExecutor executor;
+
+    @Setup(Level.Trial)
+    public void createExecutor() {
+        this.executor = new CompilationExecutor(false);
+    }
+
+    @Benchmark
+    public CompilationResult compile() throws ErroneousIssueException, InvalidOptionsException {
+        return executor.compile(getFrontendArgs());
+    }
+}
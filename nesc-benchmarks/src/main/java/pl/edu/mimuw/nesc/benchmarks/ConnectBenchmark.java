@@ -0,0 +1,44 @@
+package pl.edu.mimuw.nesc.benchmarks;
+
+import com.google.common.collect.Multimap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import pl.edu.mimuw.nesc.ast.gen.FunctionDecl;
+import pl.edu.mimuw.nesc.compilation.CompilationExecutor;
+import pl.edu.mimuw.nesc.compilation.ErroneousIssueException;
+import pl.edu.mimuw.nesc.exception.InvalidOptionsException;
+import pl.edu.mimuw.nesc.intermediate.TraversingIntermediateGenerator;
+import pl.edu.mimuw.nesc.wiresgraph.WiresGraph;
+
+/**
+ * <p>Benchmark of building the {@link WiresGraph} and generating
+ * intermediate functions by {@link TraversingIntermediateGenerator}. The
+ * program is prepared once because neither stage modifies it.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class ConnectBenchmark extends AbstractProgramBenchmark {
+    private CompilationExecutor.PhasedCompilation compilation;
+
+    @Setup(Level.Trial)
+    public void prepareProgram() throws ErroneousIssueException, InvalidOptionsException {
+        this.compilation = newExecutor().startCompilation(getFrontendArgs());
+        compilation.basicReduce();
+        compilation.collectUniqueNames();
+        compilation.instantiate();
+        compilation.fold();
+        compilation.performFinalAnalysis();
+    }
+
+    @Benchmark
+    public WiresGraph connect() {
+        return compilation.connect();
+    }
+
+    @Benchmark
+    public Multimap<String, FunctionDecl> connectAndGenerateIntermediateFunctions() {
+        compilation.connect();
+        return compilation.generateIntermediateFuns();
+    }
+}
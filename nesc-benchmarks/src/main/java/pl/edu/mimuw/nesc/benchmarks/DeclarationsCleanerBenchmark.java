@@ -0,0 +1,42 @@
+package pl.edu.mimuw.nesc.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import pl.edu.mimuw.nesc.ast.gen.Declaration;
+import pl.edu.mimuw.nesc.common.AtomicSpecification;
+import pl.edu.mimuw.nesc.optimization.DeclarationsCleaner;
+import pl.edu.mimuw.nesc.refsgraph.ReferencesGraph;
+
+/**
+ * <p>Benchmark of removing unused declarations by
+ * {@link DeclarationsCleaner}. The cleaner removes nodes from the references
+ * graph, so a new graph is built before each invocation. Declarations of
+ * the final program have been already cleaned by the compiler, so the
+ * benchmark measures mainly finding used entities.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class DeclarationsCleanerBenchmark extends AbstractCompiledProgramBenchmark {
+    private ReferencesGraph refsGraph;
+
+    @Setup(Level.Invocation)
+    public void buildReferencesGraph() {
+        this.refsGraph = ReferencesGraph.builder()
+                .addDeclarations(compilationResult.getDeclarations())
+                .build();
+    }
+
+    @Benchmark
+    public ImmutableList<Declaration> clean() {
+        final AtomicSpecification atomicSpecification = compilationResult.getAtomicSpecification();
+        return DeclarationsCleaner.builder(refsGraph)
+                .addDeclarations(compilationResult.getDeclarations())
+                .addPreservedObject(atomicSpecification.getTypename())
+                .addPreservedObject(atomicSpecification.getStartFunctionName())
+                .addPreservedObject(atomicSpecification.getEndFunctionName())
+                .build()
+                .clean();
+    }
+}
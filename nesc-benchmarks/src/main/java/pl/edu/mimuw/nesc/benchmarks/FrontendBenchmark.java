@@ -0,0 +1,30 @@
+package pl.edu.mimuw.nesc.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import pl.edu.mimuw.nesc.NescFrontend;
+import pl.edu.mimuw.nesc.ProjectData;
+import pl.edu.mimuw.nesc.compilation.CompilationExecutor;
+import pl.edu.mimuw.nesc.compilation.ErroneousIssueException;
+import pl.edu.mimuw.nesc.exception.InvalidOptionsException;
+
+/**
+ * <p>Benchmark of parsing and analysis of the whole program performed by
+ * {@link NescFrontend#build}.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class FrontendBenchmark extends AbstractProgramBenchmark {
+    private CompilationExecutor executor;
+
+    @Setup(Level.Trial)
+    public void createExecutor() {
+        this.executor = newExecutor();
+    }
+
+    @Benchmark
+    public ProjectData build() throws ErroneousIssueException, InvalidOptionsException {
+        return executor.startCompilation(getFrontendArgs()).getProjectData();
+    }
+}
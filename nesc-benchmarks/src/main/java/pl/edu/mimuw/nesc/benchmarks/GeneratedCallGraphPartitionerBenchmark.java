@@ -0,0 +1,83 @@
+package pl.edu.mimuw.nesc.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.edu.mimuw.nesc.ast.gen.FunctionDecl;
+import pl.edu.mimuw.nesc.benchmarks.generator.ApplicationGenerator;
+import pl.edu.mimuw.nesc.benchmarks.generator.CallGraphFixture;
+import pl.edu.mimuw.nesc.codepartition.BankTable;
+import pl.edu.mimuw.nesc.codepartition.CodePartitioner;
+import pl.edu.mimuw.nesc.codepartition.PartitionImpossibleException;
+import pl.edu.mimuw.nesc.codesize.CodeSizeEstimation;
+import pl.edu.mimuw.nesc.common.AtomicSpecification;
+import pl.edu.mimuw.nesc.refsgraph.ReferencesGraph;
+
+/**
+ * <p>Benchmark of each {@link CodePartitioner} for call graph fixtures of
+ * applications created by {@link ApplicationGenerator} with increasing size.
+ * The application is not compiled, so the benchmark can be performed for
+ * call graphs larger than those of programs that can be compiled in
+ * a reasonable time.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GeneratedCallGraphPartitionerBenchmark {
+    @Param({"simple", "bcomponents", "greedy-2", "tmsearch-1000-100"})
+    public String partitionHeuristic;
+
+    /**
+     * Count of non-generic modules in the application. The count of generic
+     * modules is ten times smaller and each one is instantiated 4 times.
+     */
+    @Param({"100", "300", "1000"})
+    public int modules;
+
+    /**
+     * Capacity of each of the 8 banks.
+     */
+    @Param("32768")
+    public int bankCapacity;
+
+    private ImmutableList<FunctionDecl> functions;
+    private CodeSizeEstimation estimation;
+    private CodePartitioner partitioner;
+    private ReferencesGraph refsGraph;
+
+    @Setup(Level.Trial)
+    public void prepareFixture() {
+        final CallGraphFixture fixture = ApplicationGenerator.builder()
+                .modules(modules)
+                .generics(modules / 10)
+                .fanOut(4)
+                .build()
+                .newCallGraphFixture();
+        this.functions = fixture.newFunctions();
+        this.estimation = fixture.newCodeSizeEstimation();
+        this.refsGraph = fixture.newReferencesGraph(functions);
+        this.partitioner = CodePartitionerBenchmark.newPartitioner(partitionHeuristic,
+                bankCapacity, AtomicSpecification.DEFAULT_SPECIFICATION);
+    }
+
+    @Benchmark
+    public BankTable partition() throws PartitionImpossibleException {
+        return partitioner.partition(functions, estimation, refsGraph);
+    }
+}
@@ -0,0 +1,102 @@
+package pl.edu.mimuw.nesc.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Level;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.edu.mimuw.nesc.ProjectData;
+import pl.edu.mimuw.nesc.benchmarks.generator.ApplicationGenerator;
+import pl.edu.mimuw.nesc.common.util.VariousUtils;
+import pl.edu.mimuw.nesc.compilation.CompilationExecutor;
+import pl.edu.mimuw.nesc.compilation.CompilationResult;
+import pl.edu.mimuw.nesc.compilation.ErroneousIssueException;
+import pl.edu.mimuw.nesc.exception.InvalidOptionsException;
+
+/**
+ * <p>Benchmark of the frontend and of all stages performed by
+ * {@link CompilationExecutor} for applications created by
+ * {@link ApplicationGenerator} with increasing size. Comparing results for
+ * different sizes shows stages that scale superlinearly. The application is
+ * generated to a temporary directory before the benchmark.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GeneratedProgramBenchmark {
+    /**
+     * Count of non-generic modules in the application. The count of generic
+     * modules is ten times smaller and each one is instantiated 4 times.
+     */
+    @Param({"25", "100", "400"})
+    public int modules;
+
+    /**
+     * Count of configurations in the application.
+     */
+    @Param("8")
+    public int configurations;
+
+    private File directory;
+    private String[] frontendArgs;
+    private CompilationExecutor executor;
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void generateProgram() throws IOException {
+        VariousUtils.setLoggingLevel(Level.OFF);
+
+        this.directory = Files.createTempDirectory("nesc-generated").toFile();
+        ApplicationGenerator.builder()
+                .modules(modules)
+                .generics(modules / 10)
+                .fanOut(4)
+                .configurations(configurations)
+                .build()
+                .generate(directory);
+
+        this.frontendArgs = new String[] {
+                "-p", directory.getPath(),
+                "-m", ApplicationGenerator.MAIN_CONFIGURATION,
+                "-s", ApplicationGenerator.SCHEDULER_SPECIFICATION,
+        };
+        this.executor = AbstractProgramBenchmark.newExecutor();
+    }
+
+    @TearDown(org.openjdk.jmh.annotations.Level.Trial)
+    public void deleteProgram() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public ProjectData build() throws ErroneousIssueException, InvalidOptionsException {
+        return executor.startCompilation(frontendArgs).getProjectData();
+    }
+
+    @Benchmark
+    public CompilationResult compile() throws ErroneousIssueException, InvalidOptionsException {
+        return executor.compile(frontendArgs);
+    }
+}
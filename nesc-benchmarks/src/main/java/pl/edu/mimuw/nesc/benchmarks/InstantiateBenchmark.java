@@ -0,0 +1,40 @@
+package pl.edu.mimuw.nesc.benchmarks;
+
+import java.util.NavigableSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import pl.edu.mimuw.nesc.ast.gen.Component;
+import pl.edu.mimuw.nesc.compilation.CompilationExecutor;
+import pl.edu.mimuw.nesc.compilation.ErroneousIssueException;
+import pl.edu.mimuw.nesc.exception.InvalidOptionsException;
+import pl.edu.mimuw.nesc.instantiation.InstantiateExecutor;
+
+/**
+ * <p>Benchmark of the instantiation of generic components performed by
+ * {@link InstantiateExecutor}. The instantiation modifies the program, so
+ * it is loaded and reduced again before each invocation.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class InstantiateBenchmark extends AbstractProgramBenchmark {
+    private CompilationExecutor executor;
+    private CompilationExecutor.PhasedCompilation compilation;
+
+    @Setup(Level.Trial)
+    public void createExecutor() {
+        this.executor = newExecutor();
+    }
+
+    @Setup(Level.Invocation)
+    public void loadProgram() throws ErroneousIssueException, InvalidOptionsException {
+        this.compilation = executor.startCompilation(getFrontendArgs());
+        compilation.basicReduce();
+        compilation.collectUniqueNames();
+    }
+
+    @Benchmark
+    public NavigableSet<Component> instantiate() throws ErroneousIssueException {
+        return compilation.instantiate();
+    }
+}
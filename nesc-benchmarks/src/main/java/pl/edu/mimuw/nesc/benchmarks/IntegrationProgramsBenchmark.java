@@ -0,0 +1,85 @@
+package pl.edu.mimuw.nesc.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.edu.mimuw.nesc.ProjectData;
+import pl.edu.mimuw.nesc.common.util.VariousUtils;
+import pl.edu.mimuw.nesc.compilation.CompilationExecutor;
+import pl.edu.mimuw.nesc.compilation.ErroneousIssueException;
+import pl.edu.mimuw.nesc.exception.InvalidOptionsException;
+
+/**
+ * <p>Benchmark of loading all correct programs used by integration tests of
+ * the frontend. The programs are small, so the benchmark shows mainly the
+ * fixed cost of creating a context and loading a program. They do not use
+ * a scheduler, so the core stages cannot be benchmarked for them.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IntegrationProgramsBenchmark {
+    /**
+     * Name of the main configuration of each integration program.
+     */
+    private static final String MAIN_ENTITY_NAME = "C";
+
+    @Param("nesc-frontend/src/test/resources/integration/programs/good")
+    public String programsDirectory;
+
+    private ImmutableList<String> programs;
+    private CompilationExecutor executor;
+
+    @Setup(Level.Trial)
+    public void collectPrograms() {
+        VariousUtils.setLoggingLevel(org.apache.log4j.Level.OFF);
+
+        final File[] directories = new File(programsDirectory).listFiles();
+        if (directories == null) {
+            throw new IllegalStateException("cannot list directory '" + programsDirectory + "'");
+        }
+
+        final ImmutableList.Builder<String> programsBuilder = ImmutableList.builder();
+        for (File directory : directories) {
+            if (directory.isDirectory() && directory.getName().matches("^good.+$")) {
+                programsBuilder.add(directory.getPath());
+            }
+        }
+
+        this.programs = programsBuilder.build();
+        this.executor = AbstractProgramBenchmark.newExecutor();
+    }
+
+    /**
+     * @return Count of files in all loaded programs.
+     */
+    @Benchmark
+    public int build() throws ErroneousIssueException, InvalidOptionsException {
+        int filesCount = 0;
+
+        for (String program : programs) {
+            final ProjectData projectData = executor.startCompilation(
+                    new String[] { "-p", program, "-m", MAIN_ENTITY_NAME }).getProjectData();
+            filesCount += projectData.getFileDatas().size();
+        }
+
+        return filesCount;
+    }
+}
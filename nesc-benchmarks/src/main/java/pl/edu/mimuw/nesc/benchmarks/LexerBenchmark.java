@@ -0,0 +1,66 @@
+package pl.edu.mimuw.nesc.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import pl.edu.mimuw.nesc.exception.LexerException;
+import pl.edu.mimuw.nesc.lexer.NescLexer;
+import pl.edu.mimuw.nesc.parser.Parser;
+
+/**
+ * <p>Benchmark of the throughput of {@link NescLexer}. All NesC and C header
+ * files from the directory of the program are tokenized separately.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class LexerBenchmark extends AbstractProgramBenchmark {
+    /**
+     * Files that are tokenized in each invocation.
+     */
+    private ImmutableList<String> files;
+
+    @Setup(Level.Trial)
+    public void collectFiles() {
+        final File[] directoryFiles = new File(directory).listFiles();
+        if (directoryFiles == null) {
+            throw new IllegalStateException("cannot list files in directory '" + directory + "'");
+        }
+
+        final ImmutableList.Builder<String> filesBuilder = ImmutableList.builder();
+        for (File file : directoryFiles) {
+            if (file.isFile() && (file.getName().endsWith(".nc") || file.getName().endsWith(".h"))) {
+                filesBuilder.add(file.getPath());
+            }
+        }
+
+        this.files = filesBuilder.build();
+    }
+
+    /**
+     * @return Count of all tokens in all files.
+     */
+    @Benchmark
+    public int tokenize() throws IOException, LexerException {
+        int tokensCount = 0;
+
+        for (String file : files) {
+            final NescLexer lexer = NescLexer.builder()
+                    .mainFile(file)
+                    .userIncludePaths(Collections.singletonList(directory))
+                    .build();
+            lexer.start();
+
+            while (lexer.nextToken().getSymbolCode() != Parser.Lexer.EOF) {
+                ++tokensCount;
+            }
+
+            lexer.close();
+        }
+
+        return tokensCount;
+    }
+}
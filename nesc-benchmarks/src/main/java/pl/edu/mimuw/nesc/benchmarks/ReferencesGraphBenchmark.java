@@ -0,0 +1,19 @@
+package pl.edu.mimuw.nesc.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import pl.edu.mimuw.nesc.refsgraph.ReferencesGraph;
+
+/**
+ * <p>Benchmark of building the {@link ReferencesGraph} of the final
+ * program.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class ReferencesGraphBenchmark extends AbstractCompiledProgramBenchmark {
+    @Benchmark
+    public ReferencesGraph build() {
+        return ReferencesGraph.builder()
+                .addDeclarations(compilationResult.getDeclarations())
+                .build();
+    }
+}
@@ -0,0 +1,947 @@
+package pl.edu.mimuw.nesc.benchmarks.generator;
+
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * <p>Generator of synthetic NesC applications whose size and structure are
+ * controlled by parameters. It allows observing how stages of the compiler
+ * scale with the size of the program. A generated application consists
+ * of:</p>
+ * <ul>
+ *     <li>non-generic modules and instances of generic modules that provide
+ *     interface <code>Work</code> and use it a fixed number of times; the uses
+ *     are wired so that the call graph of the commands is acyclic and all of
+ *     them are reachable from <code>main</code>,</li>
+ *     <li>configurations that are nested in a chain; each one instantiates
+ *     generic modules and wires a contiguous part of the application,</li>
+ *     <li>service modules that provide a parameterised interface; each module
+ *     is wired to it with a new <code>unique</code> identifier and the service
+ *     allocates its data using <code>uniqueCount</code>,</li>
+ *     <li>tasks and atomic blocks in each module and a scheduler,</li>
+ *     <li>a header with external base types and <code>nx_struct</code> types
+ *     used by the modules,</li>
+ *     <li>configuration {@link #MAIN_CONFIGURATION} that is the main entity
+ *     of the application.</li>
+ * </ul>
+ *
+ * <p>The generator also creates the fixture with the call graph of the
+ * application that can be used as the input for code partitioners without
+ * compiling the application.</p>
+ *
+ * <p>The generator is deterministic: the same parameters always produce the
+ * same application.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class ApplicationGenerator {
+    /**
+     * Name of the main configuration of generated applications.
+     */
+    public static final String MAIN_CONFIGURATION = "BenchmarkAppC";
+
+    /**
+     * Specification of the scheduler of generated applications.
+     */
+    public static final String SCHEDULER_SPECIFICATION =
+            "SchedulerP,SchedulerP.TaskBasic,TaskBasic,TaskBasic,runTask,postTask";
+
+    /**
+     * Name of the header with external types.
+     */
+    private static final String MESSAGES_HEADER = "Messages.h";
+
+    /**
+     * Names of functions of the scheduler in the call graph fixture.
+     */
+    private static final String FUNCTION_POST_TASK = "SchedulerP__TaskBasic__postTask";
+    private static final String FUNCTION_RUN_NEXT_TASK = "SchedulerP__Scheduler__runNextTask";
+    private static final String FUNCTION_SINK = "SinkP__Work__run";
+
+    /**
+     * Index of the dependency that is wired to the sink module.
+     */
+    private static final int SINK = -1;
+
+    /**
+     * Index of the service of a module that does not use any service.
+     */
+    private static final int NO_SERVICE = -1;
+
+    /**
+     * Parameters of the generated application.
+     */
+    private final int modulesCount;
+    private final int genericModulesCount;
+    private final int instantiationFanOut;
+    private final int configurationsCount;
+    private final int wiringDensity;
+    private final int servicesCount;
+    private final int atomicBlocksCount;
+    private final int nxStructsCount;
+    private final int helperFunctionsCount;
+
+    /**
+     * Modules and instances of generic modules of the application in the
+     * order of the acyclic call graph.
+     */
+    private final ImmutableList<Node> nodes;
+
+    /**
+     * Get a new builder that will create a generator.
+     *
+     * @return Newly created builder of a generator.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Generate an application in the directory given as the first parameter.
+     * Other parameters have form <code>NAME=VALUE</code> and specify values
+     * of parameters of the generator. Names are the same as names of methods
+     * of the builder.
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("usage: ApplicationGenerator DIRECTORY [PARAMETER=VALUE]...");
+            System.exit(1);
+        }
+
+        final Builder builder = builder();
+
+        try {
+            for (int i = 1; i < args.length; ++i) {
+                final int equalsPos = args[i].indexOf('=');
+                if (equalsPos == -1) {
+                    throw new IllegalArgumentException("expected PARAMETER=VALUE instead of '"
+                            + args[i] + "'");
+                }
+                builder.set(args[i].substring(0, equalsPos),
+                        Integer.parseInt(args[i].substring(equalsPos + 1)));
+            }
+
+            final ApplicationGenerator generator = builder.build();
+            final File directory = new File(args[0]);
+            generator.generate(directory);
+            generator.newCallGraphFixture().write(directory);
+        } catch (IllegalArgumentException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("error: cannot write the application: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private ApplicationGenerator(Builder builder) {
+        this.modulesCount = builder.modulesCount;
+        this.genericModulesCount = builder.genericModulesCount;
+        this.instantiationFanOut = builder.instantiationFanOut;
+        this.configurationsCount = builder.configurationsCount;
+        this.wiringDensity = builder.wiringDensity;
+        this.servicesCount = builder.servicesCount;
+        this.atomicBlocksCount = builder.atomicBlocksCount;
+        this.nxStructsCount = builder.nxStructsCount;
+        this.helperFunctionsCount = builder.helperFunctionsCount;
+        this.nodes = createNodes(builder.seed);
+    }
+
+    private ImmutableList<Node> createNodes(long seed) {
+        final Random random = new Random(seed);
+        final List<Node> nodesList = new ArrayList<>();
+
+        for (int i = 0; i < modulesCount; ++i) {
+            nodesList.add(new Node("Mod" + i + "P", "Mod" + i + "P", i, false));
+        }
+        for (int i = 0; i < genericModulesCount; ++i) {
+            for (int j = 1; j <= instantiationFanOut; ++j) {
+                nodesList.add(new Node("Gen" + i + "P", "Gen" + i + "P_" + j, j, true));
+            }
+        }
+
+        Collections.shuffle(nodesList, random);
+
+        /* Dependencies of nodes form a complete tree rooted at the first node
+           to make all nodes reachable. Remaining dependencies refer to random
+           subsequent nodes. */
+        final int totalCount = nodesList.size();
+        final int[] exportsCounts = new int[configurationsCount];
+
+        for (int i = 0; i < totalCount; ++i) {
+            final Node node = nodesList.get(i);
+            node.configuration = (int) ((long) i * configurationsCount / totalCount);
+            node.service = servicesCount > 0 ? i % servicesCount : NO_SERVICE;
+            if (node.isInstance) {
+                node.exportIndex = exportsCounts[node.configuration]++;
+            }
+
+            for (int j = 0; j < wiringDensity; ++j) {
+                final int child = wiringDensity * i + 1 + j;
+
+                if (child < totalCount) {
+                    node.dependencies.add(child);
+                } else if (i + 1 < totalCount) {
+                    node.dependencies.add(i + 1 + random.nextInt(totalCount - i - 1));
+                } else {
+                    node.dependencies.add(SINK);
+                }
+            }
+        }
+
+        return ImmutableList.copyOf(nodesList);
+    }
+
+    /**
+     * Get the count of modules and instances of generic modules in the
+     * generated application.
+     *
+     * @return Count of nodes of the call graph of the application.
+     */
+    public int getComponentsCount() {
+        return nodes.size();
+    }
+
+    /**
+     * Write files of the application to the given directory. It is created
+     * if it does not exist. Existing files are overwritten.
+     *
+     * @param directory Directory for the application.
+     * @throws IOException Writing a file fails.
+     */
+    public void generate(File directory) throws IOException {
+        checkNotNull(directory, "directory cannot be null");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create directory '" + directory + "'");
+        }
+
+        writeInterfaces(directory);
+        writeScheduler(directory);
+        writeSink(directory);
+        writeServices(directory);
+        writeMessagesHeader(directory);
+        writeModules(directory);
+        writeConfigurations(directory);
+        writeApplication(directory);
+    }
+
+    /**
+     * Create the fixture with the call graph of the generated application.
+     * Names of functions are formed from the names of the components,
+     * interfaces and commands and sizes of functions are approximate.
+     *
+     * @return Newly created fixture with the call graph.
+     */
+    public CallGraphFixture newCallGraphFixture() {
+        final CallGraphFixture.Builder builder = CallGraphFixture.builder();
+        final boolean usesMessages = nxStructsCount > 0;
+
+        // Functions
+
+        builder.addFunction("main", 40)
+                .addFunction(FUNCTION_RUN_NEXT_TASK, 72)
+                .addFunction(FUNCTION_POST_TASK, 64)
+                .addFunction(FUNCTION_SINK, 8);
+        for (int i = 0; i < servicesCount; ++i) {
+            builder.addFunction(getServiceFunction(i), 40);
+        }
+        for (Node node : nodes) {
+            builder.addFunction(getRunFunction(node), 32 + (atomicBlocksCount > 0 ? 8 : 0)
+                        + (usesMessages ? 24 : 0))
+                    .addFunction(getTaskFunction(node), 16 + 12 * wiringDensity
+                        + 8 * atomicBlocksCount);
+            for (int i = 0; i < helperFunctionsCount; ++i) {
+                builder.addFunction(getHelperFunction(node, i), 20);
+            }
+        }
+
+        // Calls
+
+        builder.addCall("main", getRunFunction(nodes.get(0)))
+                .addCall("main", FUNCTION_RUN_NEXT_TASK);
+        for (Node node : nodes) {
+            final String taskFunction = getTaskFunction(node);
+
+            builder.addCall(getRunFunction(node), FUNCTION_POST_TASK)
+                    .addCall(FUNCTION_RUN_NEXT_TASK, taskFunction);
+            for (int i = 1; i < helperFunctionsCount; ++i) {
+                builder.addCall(getHelperFunction(node, i), getHelperFunction(node, i - 1));
+            }
+            if (helperFunctionsCount > 0) {
+                builder.addCall(taskFunction, getHelperFunction(node, helperFunctionsCount - 1));
+            }
+            for (int dependency : node.dependencies) {
+                builder.addCall(taskFunction, dependency != SINK
+                        ? getRunFunction(nodes.get(dependency))
+                        : FUNCTION_SINK);
+            }
+            if (node.service != NO_SERVICE) {
+                builder.addCall(taskFunction, getServiceFunction(node.service));
+            }
+        }
+
+        return builder.build();
+    }
+
+    private String getRunFunction(Node node) {
+        return node.refName + "__Work__run";
+    }
+
+    private String getTaskFunction(Node node) {
+        return node.refName + "__workTask__runTask";
+    }
+
+    private String getHelperFunction(Node node, int index) {
+        return node.refName + "__helper" + index;
+    }
+
+    private String getServiceFunction(int service) {
+        return "Service" + service + "P__Service__request";
+    }
+
+    private void writeInterfaces(File directory) throws IOException {
+        try (final PrintWriter writer = newWriter(directory, "Work.nc")) {
+            writer.println("interface Work {");
+            writer.println("    command int run(int arg);");
+            writer.println("}");
+        }
+
+        try (final PrintWriter writer = newWriter(directory, "Service.nc")) {
+            writer.println("interface Service {");
+            writer.println("    command int request(int value);");
+            writer.println("}");
+        }
+
+        try (final PrintWriter writer = newWriter(directory, "TaskBasic.nc")) {
+            writer.println("interface TaskBasic {");
+            writer.println("    async command unsigned char postTask();");
+            writer.println("    event void runTask();");
+            writer.println("}");
+        }
+
+        try (final PrintWriter writer = newWriter(directory, "Scheduler.nc")) {
+            writer.println("interface Scheduler {");
+            writer.println("    command int runNextTask();");
+            writer.println("}");
+        }
+    }
+
+    private void writeScheduler(File directory) throws IOException {
+        /* Tasks are queued in a list stored in array 'next'. Slot of a task
+           is its identifier increased by one and zero denotes no task. */
+        try (final PrintWriter writer = newWriter(directory, "SchedulerP.nc")) {
+            writer.println("module SchedulerP {");
+            writer.println("    provides interface TaskBasic[unsigned int id];");
+            writer.println("    provides interface Scheduler;");
+            writer.println("}");
+            writer.println("implementation {");
+            writer.println("    enum {");
+            writer.println("        TASKS_COUNT = uniqueCount(\"SchedulerP.TaskBasic\")");
+            writer.println("    };");
+            writer.println();
+            writer.println("    unsigned int next[TASKS_COUNT + 1];");
+            writer.println("    unsigned int head = 0;");
+            writer.println("    unsigned int tail = 0;");
+            writer.println();
+            writer.println("    async command unsigned char TaskBasic.postTask[unsigned int id]() {");
+            writer.println("        unsigned char result = 1;");
+            writer.println();
+            writer.println("        atomic {");
+            writer.println("            if (next[id + 1] == 0 && tail != id + 1) {");
+            writer.println("                if (head == 0) {");
+            writer.println("                    head = id + 1;");
+            writer.println("                } else {");
+            writer.println("                    next[tail] = id + 1;");
+            writer.println("                }");
+            writer.println("                tail = id + 1;");
+            writer.println("                result = 0;");
+            writer.println("            }");
+            writer.println("        }");
+            writer.println();
+            writer.println("        return result;");
+            writer.println("    }");
+            writer.println();
+            writer.println("    command int Scheduler.runNextTask() {");
+            writer.println("        unsigned int slot;");
+            writer.println();
+            writer.println("        atomic {");
+            writer.println("            slot = head;");
+            writer.println("            if (slot != 0) {");
+            writer.println("                head = next[slot];");
+            writer.println("                next[slot] = 0;");
+            writer.println("                if (head == 0) {");
+            writer.println("                    tail = 0;");
+            writer.println("                }");
+            writer.println("            }");
+            writer.println("        }");
+            writer.println();
+            writer.println("        if (slot == 0) {");
+            writer.println("            return 0;");
+            writer.println("        }");
+            writer.println();
+            writer.println("        signal TaskBasic.runTask[slot - 1]();");
+            writer.println("        return 1;");
+            writer.println("    }");
+            writer.println();
+            writer.println("    default event void TaskBasic.runTask[unsigned int id]() {");
+            writer.println("    }");
+            writer.println("}");
+        }
+    }
+
+    private void writeSink(File directory) throws IOException {
+        try (final PrintWriter writer = newWriter(directory, "SinkP.nc")) {
+            writer.println("module SinkP {");
+            writer.println("    provides interface Work;");
+            writer.println("}");
+            writer.println("implementation {");
+            writer.println("    command int Work.run(int arg) {");
+            writer.println("        return arg;");
+            writer.println("    }");
+            writer.println("}");
+        }
+    }
+
+    private void writeServices(File directory) throws IOException {
+        for (int i = 0; i < servicesCount; ++i) {
+            try (final PrintWriter writer = newWriter(directory, "Service" + i + "P.nc")) {
+                writer.println("module Service" + i + "P {");
+                writer.println("    provides interface Service[unsigned int client];");
+                writer.println("}");
+                writer.println("implementation {");
+                writer.println("    enum {");
+                writer.println("        CLIENTS_COUNT = uniqueCount(\"Service" + i + "P.Service\")");
+                writer.println("    };");
+                writer.println();
+                writer.println("    int totals[CLIENTS_COUNT + 1];");
+                writer.println();
+                writer.println("    command int Service.request[unsigned int client](int value) {");
+                writer.println("        int result;");
+                writer.println();
+                writer.println("        atomic {");
+                writer.println("            totals[client] += value;");
+                writer.println("            result = totals[client];");
+                writer.println("        }");
+                writer.println();
+                writer.println("        return result;");
+                writer.println("    }");
+                writer.println("}");
+            }
+        }
+    }
+
+    private void writeMessagesHeader(File directory) throws IOException {
+        if (nxStructsCount == 0) {
+            return;
+        }
+
+        try (final PrintWriter writer = newWriter(directory, MESSAGES_HEADER)) {
+            writer.println("#ifndef MESSAGES_H");
+            writer.println("#define MESSAGES_H");
+            writer.println();
+            writer.println("typedef unsigned char uint8_t;");
+            writer.println("typedef unsigned short uint16_t;");
+            writer.println();
+            writer.println("typedef uint8_t nx_uint8_t __attribute__((nx_base_be(uint8_t)));");
+            writer.println("typedef uint16_t nx_uint16_t __attribute__((nx_base_be(uint16_t)));");
+            writer.println();
+            writer.println("inline uint8_t __nesc_ntoh_uint8_t(const void *source) {");
+            writer.println("    const uint8_t *base = source;");
+            writer.println("    return base[0];");
+            writer.println("}");
+            writer.println();
+            writer.println("inline uint8_t __nesc_hton_uint8_t(void *target, uint8_t value) {");
+            writer.println("    uint8_t *base = target;");
+            writer.println("    base[0] = value;");
+            writer.println("    return value;");
+            writer.println("}");
+            writer.println();
+            writer.println("inline uint16_t __nesc_ntoh_uint16_t(const void *source) {");
+            writer.println("    const uint8_t *base = source;");
+            writer.println("    return (uint16_t) (base[0] << 8 | base[1]);");
+            writer.println("}");
+            writer.println();
+            writer.println("inline uint16_t __nesc_hton_uint16_t(void *target, uint16_t value) {");
+            writer.println("    uint8_t *base = target;");
+            writer.println("    base[0] = value >> 8;");
+            writer.println("    base[1] = value;");
+            writer.println("    return value;");
+            writer.println("}");
+
+            for (int i = 0; i < nxStructsCount; ++i) {
+                writer.println();
+                writer.println("typedef nx_struct msg" + i + " {");
+                writer.println("    nx_uint16_t value;");
+                writer.println("    nx_uint8_t flags;");
+                writer.println("    nx_uint8_t payload[" + (i % 8 + 1) + "];");
+                writer.println("} msg" + i + "_t;");
+            }
+
+            writer.println();
+            writer.println("#endif");
+        }
+    }
+
+    private void writeModules(File directory) throws IOException {
+        for (int i = 0; i < modulesCount; ++i) {
+            writeModule(directory, "Mod" + i + "P", i, false);
+        }
+        for (int i = 0; i < genericModulesCount; ++i) {
+            writeModule(directory, "Gen" + i + "P", i, true);
+        }
+    }
+
+    private void writeModule(File directory, String name, int index, boolean isGeneric)
+                throws IOException {
+        final String step = isGeneric ? "step" : Integer.toString(index + 1);
+
+        try (final PrintWriter writer = newWriter(directory, name + ".nc")) {
+            if (nxStructsCount > 0) {
+                writer.println("#include \"" + MESSAGES_HEADER + "\"");
+                writer.println();
+            }
+
+            writer.println(isGeneric
+                    ? "generic module " + name + "(int step) {"
+                    : "module " + name + " {");
+            writer.println("    provides interface Work;");
+            for (int i = 0; i < wiringDensity; ++i) {
+                writer.println("    uses interface Work as Dep" + i + ";");
+            }
+            if (servicesCount > 0) {
+                writer.println("    uses interface Service;");
+            }
+            writer.println("}");
+            writer.println("implementation {");
+            writer.println("    int state = 0;");
+            writer.println("    unsigned int pending = 0;");
+            if (nxStructsCount > 0) {
+                writer.println("    msg" + index % nxStructsCount + "_t message;");
+            }
+
+            // Helper functions
+
+            for (int i = 0; i < helperFunctionsCount; ++i) {
+                writer.println();
+                writer.println("    int helper" + i + "(int value) {");
+                writer.println(i == 0
+                        ? "        return value * 3 + " + step + ";"
+                        : "        return helper" + (i - 1) + "(value) ^ (value >> 1);");
+                writer.println("    }");
+            }
+
+            // Task
+
+            writer.println();
+            writer.println("    task void workTask() {");
+            writer.println(helperFunctionsCount > 0
+                    ? "        int result = helper" + (helperFunctionsCount - 1) + "(state);"
+                    : "        int result = state;");
+            for (int i = 1; i < atomicBlocksCount; ++i) {
+                writer.println();
+                writer.println("        atomic {");
+                writer.println("            pending ^= " + i + ";");
+                writer.println("        }");
+            }
+            writer.println();
+            for (int i = 0; i < wiringDensity; ++i) {
+                writer.println("        result += call Dep" + i + ".run(result);");
+            }
+            writer.println(servicesCount > 0
+                    ? "        state = call Service.request(result);"
+                    : "        state = result;");
+            writer.println("    }");
+
+            // Command
+
+            writer.println();
+            writer.println("    command int Work.run(int arg) {");
+            if (atomicBlocksCount > 0) {
+                writer.println("        atomic {");
+                writer.println("            state += arg + " + step + ";");
+                writer.println("            ++pending;");
+                writer.println("        }");
+            } else {
+                writer.println("        state += arg + " + step + ";");
+                writer.println("        ++pending;");
+            }
+            if (nxStructsCount > 0) {
+                writer.println("        message.value = arg;");
+                writer.println("        message.flags = pending;");
+            }
+            writer.println("        post workTask();");
+            writer.println(nxStructsCount > 0
+                    ? "        return state + message.value;"
+                    : "        return state;");
+            writer.println("    }");
+            writer.println("}");
+        }
+    }
+
+    private void writeConfigurations(File directory) throws IOException {
+        for (int i = 0; i < configurationsCount; ++i) {
+            final List<Node> ownedNodes = new ArrayList<>();
+            for (Node node : nodes) {
+                if (node.configuration == i) {
+                    ownedNodes.add(node);
+                }
+            }
+
+            final Set<String> components = new LinkedHashSet<>();
+            final List<String> instantiations = new ArrayList<>();
+            final List<String> connections = new ArrayList<>();
+
+            if (i + 1 < configurationsCount) {
+                components.add("Conf" + (i + 1) + "C");
+            }
+
+            for (Node node : ownedNodes) {
+                if (node.isInstance) {
+                    instantiations.add("new " + node.componentName + "(" + node.argument
+                            + ") as " + node.refName);
+                    connections.add("Export" + node.exportIndex + " = " + node.refName + ".Work;");
+                } else {
+                    components.add(node.refName);
+                }
+
+                for (int j = 0; j < node.dependencies.size(); ++j) {
+                    final int dependency = node.dependencies.get(j);
+                    final String target;
+
+                    if (dependency == SINK) {
+                        components.add("SinkP");
+                        target = "SinkP.Work";
+                    } else {
+                        target = getEndpoint(nodes.get(dependency), i, components);
+                    }
+
+                    connections.add(node.refName + ".Dep" + j + " -> " + target + ";");
+                }
+
+                if (node.service != NO_SERVICE) {
+                    final String serviceName = "Service" + node.service + "P";
+                    components.add(serviceName);
+                    connections.add(node.refName + ".Service -> " + serviceName
+                            + ".Service[unique(\"" + serviceName + ".Service\")];");
+                }
+            }
+
+            try (final PrintWriter writer = newWriter(directory, "Conf" + i + "C.nc")) {
+                writer.println("configuration Conf" + i + "C {");
+                for (Node node : ownedNodes) {
+                    if (node.isInstance) {
+                        writer.println("    provides interface Work as Export" + node.exportIndex + ";");
+                    }
+                }
+                writer.println("}");
+                writer.println("implementation {");
+                for (String component : components) {
+                    writer.println("    components " + component + ";");
+                }
+                for (String instantiation : instantiations) {
+                    writer.println("    components " + instantiation + ";");
+                }
+                writer.println();
+                for (String connection : connections) {
+                    writer.println("    " + connection);
+                }
+                writer.println("}");
+            }
+        }
+    }
+
+    private String getEndpoint(Node node, int configuration, Set<String> components) {
+        if (!node.isInstance) {
+            components.add(node.refName);
+            return node.refName + ".Work";
+        } else if (node.configuration == configuration) {
+            return node.refName + ".Work";
+        } else {
+            checkState(node.configuration > configuration, "a configuration refers to a preceding configuration");
+            final String configurationName = "Conf" + node.configuration + "C";
+            components.add(configurationName);
+            return configurationName + ".Export" + node.exportIndex;
+        }
+    }
+
+    private void writeApplication(File directory) throws IOException {
+        try (final PrintWriter writer = newWriter(directory, "AppP.nc")) {
+            writer.println("module AppP {");
+            writer.println("    uses interface Work as Root;");
+            writer.println("    uses interface Scheduler;");
+            writer.println("}");
+            writer.println("implementation {");
+            writer.println("    int main() @C() @spontaneous() {");
+            writer.println("        int i, result = 0;");
+            writer.println();
+            writer.println("        for (i = 0; i < 10; ++i) {");
+            writer.println("            result += call Root.run(i);");
+            writer.println("            while (call Scheduler.runNextTask()) {");
+            writer.println("            }");
+            writer.println("        }");
+            writer.println();
+            writer.println("        return result;");
+            writer.println("    }");
+            writer.println("}");
+        }
+
+        final Set<String> components = new LinkedHashSet<>();
+        components.add("AppP");
+        components.add("SchedulerP");
+        components.add("Conf0C");
+        final String rootEndpoint = getEndpoint(nodes.get(0), -1, components);
+
+        try (final PrintWriter writer = newWriter(directory, MAIN_CONFIGURATION + ".nc")) {
+            writer.println("configuration " + MAIN_CONFIGURATION + " {");
+            writer.println("}");
+            writer.println("implementation {");
+            for (String component : components) {
+                writer.println("    components " + component + ";");
+            }
+            writer.println();
+            writer.println("    AppP.Scheduler -> SchedulerP;");
+            writer.println("    AppP.Root -> " + rootEndpoint + ";");
+            writer.println("}");
+        }
+    }
+
+    private PrintWriter newWriter(File directory, String fileName) throws IOException {
+        return new PrintWriter(new OutputStreamWriter(new FileOutputStream(
+                new File(directory, fileName)), "UTF-8"));
+    }
+
+    /**
+     * A module or an instance of a generic module in the application.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private static final class Node {
+        private final String componentName;
+        private final String refName;
+        private final int argument;
+        private final boolean isInstance;
+        private final List<Integer> dependencies = new ArrayList<>();
+        private int configuration;
+        private int exportIndex;
+        private int service;
+
+        private Node(String componentName, String refName, int argument, boolean isInstance) {
+            this.componentName = componentName;
+            this.refName = refName;
+            this.argument = argument;
+            this.isInstance = isInstance;
+        }
+    }
+
+    /**
+     * Builder of a generator. All parameters have default values.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    public static final class Builder {
+        /**
+         * Data needed to build a generator.
+         */
+        private int modulesCount = 20;
+        private int genericModulesCount = 5;
+        private int instantiationFanOut = 3;
+        private int configurationsCount = 4;
+        private int wiringDensity = 2;
+        private int servicesCount = 2;
+        private int atomicBlocksCount = 2;
+        private int nxStructsCount = 2;
+        private int helperFunctionsCount = 2;
+        private long seed = 0L;
+
+        private Builder() {
+        }
+
+        /**
+         * Set the count of non-generic modules that provide interface
+         * <code>Work</code>.
+         *
+         * @param count Count of non-generic modules.
+         * @return <code>this</code>
+         */
+        public Builder modules(int count) {
+            this.modulesCount = count;
+            return this;
+        }
+
+        /**
+         * Set the count of generic modules that provide interface
+         * <code>Work</code>.
+         *
+         * @param count Count of generic modules.
+         * @return <code>this</code>
+         */
+        public Builder generics(int count) {
+            this.genericModulesCount = count;
+            return this;
+        }
+
+        /**
+         * Set the count of instances created for each generic module.
+         *
+         * @param count Count of instances of each generic module.
+         * @return <code>this</code>
+         */
+        public Builder fanOut(int count) {
+            this.instantiationFanOut = count;
+            return this;
+        }
+
+        /**
+         * Set the count of configurations. Configurations are nested in
+         * a chain, so it is also the depth of the nesting.
+         *
+         * @param count Count of configurations.
+         * @return <code>this</code>
+         */
+        public Builder configurations(int count) {
+            this.configurationsCount = count;
+            return this;
+        }
+
+        /**
+         * Set the count of uses of interface <code>Work</code> in each
+         * module.
+         *
+         * @param count Count of used interfaces in each module.
+         * @return <code>this</code>
+         */
+        public Builder density(int count) {
+            this.wiringDensity = count;
+            return this;
+        }
+
+        /**
+         * Set the count of modules that provide a parameterised interface
+         * wired with <code>unique</code>. If it is zero, modules do not use
+         * the service.
+         *
+         * @param count Count of service modules.
+         * @return <code>this</code>
+         */
+        public Builder services(int count) {
+            this.servicesCount = count;
+            return this;
+        }
+
+        /**
+         * Set the count of atomic blocks in each module.
+         *
+         * @param count Count of atomic blocks in each module.
+         * @return <code>this</code>
+         */
+        public Builder atomics(int count) {
+            this.atomicBlocksCount = count;
+            return this;
+        }
+
+        /**
+         * Set the count of <code>nx_struct</code> types. If it is zero,
+         * external types are not used.
+         *
+         * @param count Count of external structures.
+         * @return <code>this</code>
+         */
+        public Builder nxStructs(int count) {
+            this.nxStructsCount = count;
+            return this;
+        }
+
+        /**
+         * Set the count of helper functions in each module.
+         *
+         * @param count Count of helper functions in each module.
+         * @return <code>this</code>
+         */
+        public Builder helpers(int count) {
+            this.helperFunctionsCount = count;
+            return this;
+        }
+
+        /**
+         * Set the seed for choosing the order of components and their
+         * wiring.
+         *
+         * @param seed Seed for the random numbers generator.
+         * @return <code>this</code>
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Set the parameter with the given name. Names are the same as names
+         * of methods of the builder.
+         *
+         * @param name Name of the parameter.
+         * @param value Value of the parameter.
+         * @return <code>this</code>
+         * @throws IllegalArgumentException There is no parameter with given
+         *                                  name.
+         */
+        public Builder set(String name, int value) {
+            checkNotNull(name, "name cannot be null");
+
+            switch (name) {
+                case "modules":
+                    return modules(value);
+                case "generics":
+                    return generics(value);
+                case "fanOut":
+                    return fanOut(value);
+                case "configurations":
+                    return configurations(value);
+                case "density":
+                    return density(value);
+                case "services":
+                    return services(value);
+                case "atomics":
+                    return atomics(value);
+                case "nxStructs":
+                    return nxStructs(value);
+                case "helpers":
+                    return helpers(value);
+                case "seed":
+                    return seed(value);
+                default:
+                    throw new IllegalArgumentException("unknown parameter '" + name + "'");
+            }
+        }
+
+        private void validate() {
+            checkArgument(modulesCount >= 1, "count of modules must be positive");
+            checkArgument(genericModulesCount >= 0, "count of generic modules cannot be negative");
+            checkArgument(instantiationFanOut >= 1, "instantiation fan-out must be positive");
+            checkArgument(configurationsCount >= 1, "count of configurations must be positive");
+            checkArgument(wiringDensity >= 1, "wiring density must be positive");
+            checkArgument(servicesCount >= 0, "count of services cannot be negative");
+            checkArgument(atomicBlocksCount >= 0, "count of atomic blocks cannot be negative");
+            checkArgument(nxStructsCount >= 0, "count of external structures cannot be negative");
+            checkArgument(helperFunctionsCount >= 0, "count of helper functions cannot be negative");
+        }
+
+        public ApplicationGenerator build() {
+            validate();
+            return new ApplicationGenerator(this);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package pl.edu.mimuw.nesc.benchmarks.generator;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Range;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import pl.edu.mimuw.nesc.ast.Location;
+import pl.edu.mimuw.nesc.ast.RID;
+import pl.edu.mimuw.nesc.ast.gen.Attribute;
+import pl.edu.mimuw.nesc.ast.gen.Declaration;
+import pl.edu.mimuw.nesc.ast.gen.Declarator;
+import pl.edu.mimuw.nesc.ast.gen.FunctionDecl;
+import pl.edu.mimuw.nesc.ast.gen.FunctionDeclarator;
+import pl.edu.mimuw.nesc.ast.gen.TypeElement;
+import pl.edu.mimuw.nesc.astutil.AstUtils;
+import pl.edu.mimuw.nesc.codesize.CodeSizeEstimation;
+import pl.edu.mimuw.nesc.common.util.list.Lists;
+import pl.edu.mimuw.nesc.refsgraph.Reference;
+import pl.edu.mimuw.nesc.refsgraph.ReferencesGraph;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * <p>Call graph with sizes of functions that is the input for code
+ * partitioners. It is stored in a directory in two files:</p>
+ * <ul>
+ *     <li>{@link #CALL_GRAPH_FILE} with the call graph in the format written
+ *     by {@link ReferencesGraph#writeCallGraph(java.io.OutputStream)},</li>
+ *     <li>{@link #FUNCTIONS_FILE} with a line for each function that contains
+ *     its number used in the call graph, its unique name and its size in
+ *     bytes.</li>
+ * </ul>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class CallGraphFixture {
+    /**
+     * Names of files of a fixture.
+     */
+    public static final String CALL_GRAPH_FILE = "callgraph.txt";
+    public static final String FUNCTIONS_FILE = "functions.txt";
+
+    /**
+     * Unique names and sizes of functions. Numbers of functions are their
+     * indices increased by one.
+     */
+    private final ImmutableList<String> functionsNames;
+    private final ImmutableList<Integer> functionsSizes;
+
+    /**
+     * Multimap with indices of called functions for indices of calling
+     * functions.
+     */
+    private final ImmutableListMultimap<Integer, Integer> calls;
+
+    /**
+     * Get a new builder that will create a fixture.
+     *
+     * @return Newly created builder of a fixture.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Read the fixture from the given directory.
+     *
+     * @param directory Directory with files of the fixture.
+     * @return Fixture read from the directory.
+     * @throws IOException Reading files fails or they are invalid.
+     */
+    public static CallGraphFixture read(File directory) throws IOException {
+        checkNotNull(directory, "directory cannot be null");
+        final Builder builder = builder();
+        final List<String> names;
+
+        try (final BufferedReader reader = newReader(directory, FUNCTIONS_FILE)) {
+            String line;
+            int expectedNumber = 1;
+
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.trim().split("\\s+");
+                if (fields.length != 3 || parseInt(fields[0]) != expectedNumber) {
+                    throw new IOException("invalid line of file '" + FUNCTIONS_FILE
+                            + "': " + line);
+                }
+                builder.addFunction(fields[1], parseInt(fields[2]));
+                ++expectedNumber;
+            }
+
+            names = builder.functionsNamesBuilder.build();
+        }
+
+        try (final BufferedReader reader = newReader(directory, CALL_GRAPH_FILE)) {
+            final int[] counts = parseLine(reader.readLine(), 2);
+            if (counts[0] != names.size()) {
+                throw new IOException("count of functions in file '" + CALL_GRAPH_FILE
+                        + "' is different from the count of functions in file '"
+                        + FUNCTIONS_FILE + "'");
+            }
+
+            for (int i = 0; i < counts[1]; ++i) {
+                final int[] edge = parseLine(reader.readLine(), 2);
+                if (edge[0] < 1 || edge[0] > names.size() || edge[1] < 1 || edge[1] > names.size()) {
+                    throw new IOException("invalid number of a function in file '"
+                            + CALL_GRAPH_FILE + "'");
+                }
+                builder.addCall(names.get(edge[0] - 1), names.get(edge[1] - 1));
+            }
+        }
+
+        return builder.build();
+    }
+
+    private static BufferedReader newReader(File directory, String fileName) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(
+                new File(directory, fileName)), "UTF-8"));
+    }
+
+    private static int[] parseLine(String line, int expectedCount) throws IOException {
+        if (line == null) {
+            throw new IOException("unexpected end of file '" + CALL_GRAPH_FILE + "'");
+        }
+
+        final String[] fields = line.trim().split("\\s+");
+        if (fields.length != expectedCount) {
+            throw new IOException("invalid line of file '" + CALL_GRAPH_FILE + "': " + line);
+        }
+
+        final int[] result = new int[fields.length];
+        for (int i = 0; i < fields.length; ++i) {
+            result[i] = parseInt(fields[i]);
+        }
+        return result;
+    }
+
+    private static int parseInt(String value) throws IOException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("invalid number '" + value + "'", e);
+        }
+    }
+
+    private CallGraphFixture(ImmutableList<String> functionsNames, ImmutableList<Integer> functionsSizes,
+                ImmutableListMultimap<Integer, Integer> calls) {
+        this.functionsNames = functionsNames;
+        this.functionsSizes = functionsSizes;
+        this.calls = calls;
+    }
+
+    /**
+     * Get the count of functions in the fixture.
+     *
+     * @return Count of functions.
+     */
+    public int getFunctionsCount() {
+        return functionsNames.size();
+    }
+
+    /**
+     * Get the count of calls in the fixture.
+     *
+     * @return Count of edges of the call graph.
+     */
+    public int getCallsCount() {
+        return calls.size();
+    }
+
+    /**
+     * Write files of the fixture to the given directory. Existing files are
+     * overwritten.
+     *
+     * @param directory Directory for the fixture.
+     * @throws IOException Writing a file fails.
+     */
+    public void write(File directory) throws IOException {
+        checkNotNull(directory, "directory cannot be null");
+
+        try (final PrintWriter writer = newWriter(directory, FUNCTIONS_FILE)) {
+            for (int i = 0; i < functionsNames.size(); ++i) {
+                writer.print(i + 1);
+                writer.print(' ');
+                writer.print(functionsNames.get(i));
+                writer.print(' ');
+                writer.println(functionsSizes.get(i));
+            }
+            checkWriter(writer);
+        }
+
+        try (final PrintWriter writer = newWriter(directory, CALL_GRAPH_FILE)) {
+            writer.print(functionsNames.size());
+            writer.print(' ');
+            writer.println(calls.size());
+            for (Map.Entry<Integer, Integer> call : calls.entries()) {
+                writer.print(call.getKey() + 1);
+                writer.print(' ');
+                writer.println(call.getValue() + 1);
+            }
+            checkWriter(writer);
+        }
+    }
+
+    private PrintWriter newWriter(File directory, String fileName) throws IOException {
+        return new PrintWriter(new OutputStreamWriter(new FileOutputStream(
+                new File(directory, fileName)), "UTF-8"));
+    }
+
+    private void checkWriter(PrintWriter writer) throws IOException {
+        if (writer.checkError()) {
+            throw new IOException("error while writing data");
+        }
+    }
+
+    /**
+     * Create definitions of functions from the fixture. They have no
+     * parameters and empty bodies.
+     *
+     * @return Newly created list with definitions of all functions.
+     */
+    public ImmutableList<FunctionDecl> newFunctions() {
+        final ImmutableList.Builder<FunctionDecl> functionsBuilder = ImmutableList.builder();
+
+        for (String name : functionsNames) {
+            final FunctionDeclarator declarator = new FunctionDeclarator(
+                    Location.getDummyLocation(),
+                    Optional.<Declarator>of(AstUtils.newIdentifierDeclarator(name, true, false)),
+                    Lists.<Declaration>newList(),
+                    Optional.<LinkedList<Declaration>>absent(),
+                    Lists.<TypeElement>newList()
+            );
+
+            final FunctionDecl function = new FunctionDecl(
+                    Location.getDummyLocation(),
+                    declarator,
+                    AstUtils.newRidsList(RID.VOID),
+                    Lists.<Attribute>newList(),
+                    AstUtils.newEmptyCompoundStmt(),
+                    false
+            );
+            function.setOldParms(Lists.<Declaration>newList());
+
+            functionsBuilder.add(function);
+        }
+
+        return functionsBuilder.build();
+    }
+
+    /**
+     * Create the estimation of sizes of functions from the fixture. Each
+     * function has its exact size and no function is inline.
+     *
+     * @return Newly created estimation of sizes of functions.
+     */
+    public CodeSizeEstimation newCodeSizeEstimation() {
+        final CodeSizeEstimation.Builder estimationBuilder = CodeSizeEstimation.builder();
+
+        for (int i = 0; i < functionsNames.size(); ++i) {
+            estimationBuilder.putFunctionSize(functionsNames.get(i),
+                    Range.closed(functionsSizes.get(i), functionsSizes.get(i)));
+        }
+
+        return estimationBuilder.build();
+    }
+
+    /**
+     * Create the references graph with calls from the fixture. Calls are
+     * not present in bodies of the functions.
+     *
+     * @param functions Functions created by {@link #newFunctions()}.
+     * @return Newly created references graph of the given functions.
+     */
+    public ReferencesGraph newReferencesGraph(List<FunctionDecl> functions) {
+        checkNotNull(functions, "functions cannot be null");
+        checkArgument(functions.size() == functionsNames.size(),
+                "invalid count of functions %s, expected %s", functions.size(),
+                functionsNames.size());
+
+        final ReferencesGraph refsGraph = ReferencesGraph.builder()
+                .addDeclarations(ImmutableList.<Declaration>copyOf(functions))
+                .build();
+
+        for (Map.Entry<Integer, Integer> call : calls.entries()) {
+            final String calleeName = functionsNames.get(call.getValue());
+            refsGraph.addReferenceOrdinaryToOrdinary(functionsNames.get(call.getKey()),
+                    calleeName, Reference.Type.CALL, AstUtils.newNormalCall(calleeName),
+                    false, false, 0, 0);
+        }
+
+        return refsGraph;
+    }
+
+    /**
+     * Builder of a call graph fixture.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    public static final class Builder {
+        /**
+         * Data needed to build a fixture.
+         */
+        private final ImmutableList.Builder<String> functionsNamesBuilder = ImmutableList.builder();
+        private final ImmutableList.Builder<Integer> functionsSizesBuilder = ImmutableList.builder();
+        private final ImmutableListMultimap.Builder<Integer, Integer> callsBuilder =
+                ImmutableListMultimap.builder();
+
+        /**
+         * Indices of added functions.
+         */
+        private final Map<String, Integer> functionsIndices = new HashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Add a function to the call graph.
+         *
+         * @param uniqueName Unique name of the function.
+         * @param size Size of the function in bytes.
+         * @return <code>this</code>
+         */
+        public Builder addFunction(String uniqueName, int size) {
+            checkNotNull(uniqueName, "unique name cannot be null");
+            checkArgument(!uniqueName.isEmpty(), "unique name cannot be an empty string");
+            checkArgument(size >= 0, "size cannot be negative");
+            checkState(!functionsIndices.containsKey(uniqueName),
+                    "function '%s' has been already added", uniqueName);
+
+            functionsIndices.put(uniqueName, functionsIndices.size());
+            functionsNamesBuilder.add(uniqueName);
+            functionsSizesBuilder.add(size);
+            return this;
+        }
+
+        /**
+         * Add a call to the call graph. Both functions must have been already
+         * added.
+         *
+         * @param caller Unique name of the calling function.
+         * @param callee Unique name of the called function.
+         * @return <code>this</code>
+         */
+        public Builder addCall(String caller, String callee) {
+            checkNotNull(caller, "caller cannot be null");
+            checkNotNull(callee, "callee cannot be null");
+            checkState(functionsIndices.containsKey(caller), "unknown function '%s'", caller);
+            checkState(functionsIndices.containsKey(callee), "unknown function '%s'", callee);
+
+            callsBuilder.put(functionsIndices.get(caller), functionsIndices.get(callee));
+            return this;
+        }
+
+        public CallGraphFixture build() {
+            return new CallGraphFixture(functionsNamesBuilder.build(),
+                    functionsSizesBuilder.build(), callsBuilder.build());
+        }
+    }
+}
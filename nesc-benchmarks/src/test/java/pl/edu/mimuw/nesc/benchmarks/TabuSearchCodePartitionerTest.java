@@ -0,0 +1,145 @@
+package pl.edu.mimuw.nesc.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+import pl.edu.mimuw.nesc.ast.gen.FunctionDecl;
+import pl.edu.mimuw.nesc.astutil.DeclaratorUtils;
+import pl.edu.mimuw.nesc.benchmarks.generator.ApplicationGenerator;
+import pl.edu.mimuw.nesc.benchmarks.generator.CallGraphFixture;
+import pl.edu.mimuw.nesc.codepartition.BankSchema;
+import pl.edu.mimuw.nesc.codepartition.BankTable;
+import pl.edu.mimuw.nesc.codepartition.TabuSearchCodePartitioner;
+import pl.edu.mimuw.nesc.codesize.CodeSizeEstimation;
+import pl.edu.mimuw.nesc.common.AtomicSpecification;
+import pl.edu.mimuw.nesc.refsgraph.ReferencesGraph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link TabuSearchCodePartitioner} for call graph fixtures of
+ * applications created by {@link ApplicationGenerator}.
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class TabuSearchCodePartitionerTest {
+    private static final int BANKS_COUNT = 4;
+    private static final int MAXIMUM_ITERATIONS_COUNT = 200;
+    private static final int MAXIMUM_FRUITLESS_ITERATIONS_COUNT = 40;
+
+    @Test
+    public void partitionsRespectCapacities() throws Exception {
+        for (int modules : new int[] {10, 30, 60}) {
+            final CallGraphFixture fixture = newFixture(modules);
+            final BankSchema bankSchema = newBankSchema(fixture);
+
+            for (int searchesCount : new int[] {1, 3}) {
+                final Map<String, String> allocation = partition(fixture, bankSchema,
+                        searchesCount, 2, 7L);
+                assertEquals(fixture.getFunctionsCount(), allocation.size());
+            }
+        }
+    }
+
+    @Test
+    public void partitionIndependentOfThreadsCount() throws Exception {
+        final CallGraphFixture fixture = newFixture(40);
+        final BankSchema bankSchema = newBankSchema(fixture);
+
+        for (int searchesCount : new int[] {1, 3, 6}) {
+            final Map<String, String> expectedAllocation = partition(fixture, bankSchema,
+                    searchesCount, 1, 11L);
+            for (int threadsCount : new int[] {2, 4, 8}) {
+                assertEquals(expectedAllocation, partition(fixture, bankSchema,
+                        searchesCount, threadsCount, 11L));
+            }
+        }
+    }
+
+    @Test
+    public void singleSearchSameAsDefault() throws Exception {
+        final CallGraphFixture fixture = newFixture(40);
+        final BankSchema bankSchema = newBankSchema(fixture);
+        final TabuSearchCodePartitioner defaultPartitioner = new TabuSearchCodePartitioner(
+                bankSchema, AtomicSpecification.DEFAULT_SPECIFICATION,
+                MAXIMUM_ITERATIONS_COUNT, MAXIMUM_FRUITLESS_ITERATIONS_COUNT);
+
+        assertEquals(partition(fixture, bankSchema, defaultPartitioner),
+                partition(fixture, bankSchema, 1, 4, 123L));
+    }
+
+    private static CallGraphFixture newFixture(int modules) {
+        return ApplicationGenerator.builder()
+                .modules(modules)
+                .generics(Math.max(modules / 10, 1))
+                .fanOut(3)
+                .build()
+                .newCallGraphFixture();
+    }
+
+    /**
+     * Create the bank schema whose total capacity exceeds the total size of
+     * functions of the fixture by a half, so functions must be spread among
+     * banks.
+     */
+    private static BankSchema newBankSchema(CallGraphFixture fixture) {
+        int totalSize = 0;
+        for (Range<Integer> size : fixture.newCodeSizeEstimation().getFunctionsSizes().values()) {
+            totalSize += size.upperEndpoint();
+        }
+
+        final int bankCapacity = (3 * totalSize) / (2 * BANKS_COUNT) + 1;
+        final BankSchema.Builder builder = BankSchema.builder("HOME", bankCapacity);
+        for (int i = 1; i < BANKS_COUNT; ++i) {
+            builder.addBank("BANK" + i, bankCapacity);
+        }
+        return builder.build();
+    }
+
+    private static Map<String, String> partition(CallGraphFixture fixture, BankSchema bankSchema,
+                int searchesCount, int threadsCount, long seed) throws Exception {
+        return partition(fixture, bankSchema, new TabuSearchCodePartitioner(bankSchema,
+                AtomicSpecification.DEFAULT_SPECIFICATION, MAXIMUM_ITERATIONS_COUNT,
+                MAXIMUM_FRUITLESS_ITERATIONS_COUNT, searchesCount, threadsCount, seed));
+    }
+
+    /**
+     * Partition functions of the fixture, check that each function is
+     * allocated exactly once and capacities of banks are not exceeded.
+     *
+     * @return Map with names of banks of functions.
+     */
+    private static Map<String, String> partition(CallGraphFixture fixture, BankSchema bankSchema,
+                TabuSearchCodePartitioner partitioner) throws Exception {
+        final ImmutableList<FunctionDecl> functions = fixture.newFunctions();
+        final CodeSizeEstimation estimation = fixture.newCodeSizeEstimation();
+        final ReferencesGraph refsGraph = fixture.newReferencesGraph(functions);
+        final BankTable bankTable = partitioner.partition(functions, estimation, refsGraph);
+
+        final Map<String, String> allocation = new HashMap<>();
+        for (String bankName : bankTable.getBanksNames()) {
+            int usedSpace = 0;
+            for (FunctionDecl function : bankTable.getBankContents(bankName)) {
+                final String uniqueName = DeclaratorUtils.getUniqueName(function.getDeclarator()).get();
+                assertTrue("function '" + uniqueName + "' allocated twice",
+                        allocation.put(uniqueName, bankName) == null);
+                usedSpace += estimation.getFunctionsSizes().get(uniqueName).upperEndpoint();
+            }
+            assertTrue("capacity of bank '" + bankName + "' exceeded",
+                    usedSpace <= bankSchema.getBankCapacity(bankName));
+        }
+
+        final Set<String> functionsNames = new HashSet<>();
+        for (FunctionDecl function : functions) {
+            functionsNames.add(DeclaratorUtils.getUniqueName(function.getDeclarator()).get());
+        }
+        assertEquals(functionsNames, allocation.keySet());
+
+        return allocation;
+    }
+}
@@ -0,0 +1,76 @@
+package pl.edu.mimuw.nesc.benchmarks.generator;
+
+import com.google.common.base.Optional;
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pl.edu.mimuw.nesc.ast.gen.Declaration;
+import pl.edu.mimuw.nesc.ast.gen.FunctionDecl;
+import pl.edu.mimuw.nesc.astutil.DeclaratorUtils;
+import pl.edu.mimuw.nesc.compilation.CompilationExecutor;
+import pl.edu.mimuw.nesc.compilation.CompilationResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Smoke tests of {@link ApplicationGenerator}. A small application is
+ * generated and compiled to check that the generator produces correct
+ * programs.
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class ApplicationGeneratorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void generatedApplicationCompiles() throws Exception {
+        final File directory = folder.newFolder("app");
+        newGenerator().generate(directory);
+
+        final CompilationResult result = new CompilationExecutor(false).compile(new String[] {
+                "-p", directory.getPath(),
+                "-m", ApplicationGenerator.MAIN_CONFIGURATION,
+                "-s", ApplicationGenerator.SCHEDULER_SPECIFICATION,
+        });
+
+        final Set<String> definedFunctions = new HashSet<>();
+        for (Declaration declaration : result.getDeclarations()) {
+            if (declaration instanceof FunctionDecl) {
+                final Optional<String> uniqueName = DeclaratorUtils.getUniqueName(
+                        ((FunctionDecl) declaration).getDeclarator());
+                if (uniqueName.isPresent()) {
+                    definedFunctions.add(uniqueName.get());
+                }
+            }
+        }
+
+        assertTrue(definedFunctions.contains("main"));
+        assertTrue(definedFunctions.size() > newGenerator().getComponentsCount());
+    }
+
+    @Test
+    public void callGraphFixtureReadBack() throws Exception {
+        final File directory = folder.newFolder("fixture");
+        final CallGraphFixture fixture = newGenerator().newCallGraphFixture();
+        fixture.write(directory);
+
+        final CallGraphFixture readFixture = CallGraphFixture.read(directory);
+        assertEquals(fixture.getFunctionsCount(), readFixture.getFunctionsCount());
+        assertEquals(fixture.getCallsCount(), readFixture.getCallsCount());
+        assertEquals(fixture.getFunctionsCount(), readFixture.newFunctions().size());
+    }
+
+    private ApplicationGenerator newGenerator() {
+        return ApplicationGenerator.builder()
+                .modules(6)
+                .generics(2)
+                .fanOut(2)
+                .configurations(2)
+                .build();
+    }
+}
@@ -158,6 +158,32 @@ public final class ABI {
         this(new FileInputStream(xmlFileName));
     }
 
+    /**
+     * Create a copy of the given ABI. The copy is equal to the original but
+     * it is a distinct object, so state kept for the identity of an ABI,
+     * e.g. a cache of layouts of types, is not shared with the original.
+     *
+     * @param abi ABI to copy.
+     */
+    public ABI(ABI abi) {
+        checkNotNull(abi, "ABI cannot be null");
+
+        this.endianness = abi.endianness;
+        this.typeChar = abi.typeChar;
+        this.typeShort = abi.typeShort;
+        this.typeInt = abi.typeInt;
+        this.typeLong = abi.typeLong;
+        this.typeLongLong = abi.typeLongLong;
+        this.typeFloat = abi.typeFloat;
+        this.typeDouble = abi.typeDouble;
+        this.typeLongDouble = abi.typeLongDouble;
+        this.typePointer = abi.typePointer;
+        this.typeSizeT = abi.typeSizeT;
+        this.typePtrdiffT = abi.typePtrdiffT;
+        this.typeFieldTag = abi.typeFieldTag;
+        this.attributesAssumptions = abi.attributesAssumptions;
+    }
+
     public Endianness getEndianness() {
         return endianness;
     }
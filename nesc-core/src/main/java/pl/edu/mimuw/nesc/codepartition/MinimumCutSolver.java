@@ -0,0 +1,362 @@
+package pl.edu.mimuw.nesc.codepartition;
+
+import com.google.common.base.Optional;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * <p>Implementation of the Stoer-Wagner algorithm for the minimum cut
+ * problem. Vertices of the graph are identified by consecutive integers
+ * and the graph is represented by adjacency arrays. Each phase of the
+ * algorithm uses an indexed binary heap of vertices not added yet, so the
+ * complexity of the algorithm is <code>O(V·E·log V)</code>.</p>
+ *
+ * <p>Vertices merged in previous phases are represented by one of them.
+ * Adjacency arrays of merged vertices are combined but adjacency arrays of
+ * other vertices are not updated, so identifiers in them are translated to
+ * representatives before use.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+final class MinimumCutSolver {
+    /**
+     * Adjacency arrays of vertices. Only arrays of representatives are
+     * valid. Weights of edges are in the corresponding elements of
+     * <code>weights</code>.
+     */
+    private final int[][] neighbours;
+    private final int[][] weights;
+
+    /**
+     * Representatives of sets of merged vertices.
+     */
+    private final int[] representatives;
+
+    /**
+     * Lists of vertices merged into representatives. The next element of
+     * a list is in <code>nextMerged</code> (-1 ends the list) and the last
+     * element of the list of a representative is in
+     * <code>lastMerged</code>.
+     */
+    private final int[] nextMerged;
+    private final int[] lastMerged;
+
+    /**
+     * Heap used in phases of the algorithm.
+     */
+    private final VerticesHeap heap;
+
+    /**
+     * Arrays used for combining adjacency arrays of merged vertices.
+     * Elements of <code>combinedWeights</code> and <code>isCombined</code>
+     * are zero and <code>false</code> between merges.
+     */
+    private final int[] combinedNeighbours;
+    private final int[] combinedWeights;
+    private final boolean[] isCombined;
+    private int combinedNeighboursCount;
+
+    /**
+     * Initialize the solver for the undirected graph with given adjacency
+     * arrays. Each edge must be present in adjacency arrays of both its
+     * vertices with the same weight. The arrays are copied.
+     *
+     * @param neighbours Identifiers of neighbours of each vertex.
+     * @param weights Weights of edges to the neighbours in the corresponding
+     *                elements.
+     */
+    MinimumCutSolver(int[][] neighbours, int[][] weights) {
+        checkNotNull(neighbours, "neighbours cannot be null");
+        checkNotNull(weights, "weights cannot be null");
+        checkArgument(neighbours.length == weights.length,
+                "counts of adjacency arrays of neighbours and weights differ");
+
+        final int verticesCount = neighbours.length;
+        this.neighbours = new int[verticesCount][];
+        this.weights = new int[verticesCount][];
+        this.representatives = new int[verticesCount];
+        this.nextMerged = new int[verticesCount];
+        this.lastMerged = new int[verticesCount];
+        this.heap = new VerticesHeap(verticesCount);
+        this.combinedNeighbours = new int[verticesCount];
+        this.combinedWeights = new int[verticesCount];
+        this.isCombined = new boolean[verticesCount];
+        this.combinedNeighboursCount = 0;
+
+        for (int vertexId = 0; vertexId < verticesCount; ++vertexId) {
+            checkArgument(neighbours[vertexId].length == weights[vertexId].length,
+                    "adjacency arrays of vertex %s have different lengths", vertexId);
+            for (int i = 0; i < neighbours[vertexId].length; ++i) {
+                checkArgument(neighbours[vertexId][i] >= 0 && neighbours[vertexId][i] < verticesCount,
+                        "invalid neighbour %s of vertex %s", neighbours[vertexId][i], vertexId);
+                checkArgument(weights[vertexId][i] >= 0, "weight of an edge cannot be negative");
+            }
+
+            this.neighbours[vertexId] = neighbours[vertexId].clone();
+            this.weights[vertexId] = weights[vertexId].clone();
+            this.representatives[vertexId] = vertexId;
+            this.nextMerged[vertexId] = -1;
+            this.lastMerged[vertexId] = vertexId;
+        }
+    }
+
+    /**
+     * Compute the minimum cut. This method can be called only once.
+     *
+     * @return The minimum cut of the graph. The object is absent if the
+     *         graph has less than two vertices.
+     */
+    Optional<Cut> solve() {
+        final int verticesCount = representatives.length;
+        int bestCutValue = -1;
+        int bestCutVertex = -1;
+        boolean[] bestCutMembership = null;
+
+        for (int phase = verticesCount; phase > 1; --phase) {
+            // Add the vertices to the heap
+            for (int vertexId = 0; vertexId < verticesCount; ++vertexId) {
+                if (representatives[vertexId] == vertexId) {
+                    heap.insert(vertexId);
+                }
+            }
+
+            // Extract the vertices in the order of the connectivity
+            int lastVertex = -1, previousVertex = -1, lastVertexWeight = 0;
+            while (!heap.isEmpty()) {
+                previousVertex = lastVertex;
+                lastVertexWeight = heap.getMaximumKey();
+                lastVertex = heap.extractMaximum();
+
+                for (int i = 0; i < neighbours[lastVertex].length; ++i) {
+                    final int neighbour = representatives[neighbours[lastVertex][i]];
+                    if (heap.contains(neighbour)) {
+                        heap.increaseKey(neighbour, weights[lastVertex][i]);
+                    }
+                }
+            }
+
+            // Remember the cut of the phase if it is the best one
+            if (bestCutVertex == -1 || lastVertexWeight < bestCutValue) {
+                bestCutValue = lastVertexWeight;
+                bestCutVertex = lastVertex;
+                bestCutMembership = new boolean[verticesCount];
+                for (int vertexId = lastVertex; vertexId != -1; vertexId = nextMerged[vertexId]) {
+                    bestCutMembership[vertexId] = true;
+                }
+            }
+
+            merge(previousVertex, lastVertex);
+        }
+
+        return bestCutVertex != -1
+                ? Optional.of(new Cut(bestCutMembership, bestCutValue))
+                : Optional.<Cut>absent();
+    }
+
+    /**
+     * Merge the vertex with the second given representative into the
+     * vertex with the first one.
+     */
+    private void merge(int target, int source) {
+        // Update representatives and lists of merged vertices
+        for (int vertexId = source; vertexId != -1; vertexId = nextMerged[vertexId]) {
+            representatives[vertexId] = target;
+        }
+        nextMerged[lastMerged[target]] = source;
+        lastMerged[target] = lastMerged[source];
+
+        // Combine adjacency arrays
+        combinedNeighboursCount = 0;
+        addNeighbours(target, target);
+        addNeighbours(source, target);
+
+        neighbours[target] = new int[combinedNeighboursCount];
+        weights[target] = new int[combinedNeighboursCount];
+        for (int i = 0; i < combinedNeighboursCount; ++i) {
+            final int neighbour = combinedNeighbours[i];
+            neighbours[target][i] = neighbour;
+            weights[target][i] = combinedWeights[neighbour];
+            combinedWeights[neighbour] = 0;
+            isCombined[neighbour] = false;
+        }
+
+        neighbours[source] = null;
+        weights[source] = null;
+    }
+
+    private void addNeighbours(int vertexId, int representative) {
+        for (int i = 0; i < neighbours[vertexId].length; ++i) {
+            final int neighbour = representatives[neighbours[vertexId][i]];
+            if (neighbour != representative) {
+                if (!isCombined[neighbour]) {
+                    isCombined[neighbour] = true;
+                    combinedNeighbours[combinedNeighboursCount++] = neighbour;
+                }
+                combinedWeights[neighbour] += weights[vertexId][i];
+            }
+        }
+    }
+
+    /**
+     * Minimum cut of a graph. It divides vertices into two non-empty sets.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    static final class Cut {
+        private final boolean[] membership;
+        private final int value;
+
+        private Cut(boolean[] membership, int value) {
+            this.membership = membership;
+            this.value = value;
+        }
+
+        /**
+         * Check if the given vertex belongs to the first set of the cut.
+         *
+         * @param vertexId Identifier of a vertex.
+         * @return <code>true</code> if and only if the vertex belongs to the
+         *         first set. Otherwise, it belongs to the second set.
+         */
+        boolean isInFirstSet(int vertexId) {
+            return membership[vertexId];
+        }
+
+        /**
+         * Get the sum of weights of edges between vertices from different
+         * sets.
+         *
+         * @return Value of the cut.
+         */
+        int getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Binary max-heap of vertices identified by integers that allows
+     * increasing keys of contained vertices. Vertices with the same key are
+     * ordered by their identifiers (the smallest is the first).
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private static final class VerticesHeap {
+        /**
+         * Vertices in the heap order.
+         */
+        private final int[] heap;
+
+        /**
+         * Positions of vertices in the heap (-1 if a vertex is not in the
+         * heap).
+         */
+        private final int[] positions;
+
+        /**
+         * Keys of vertices.
+         */
+        private final int[] keys;
+
+        private int size;
+
+        private VerticesHeap(int verticesCount) {
+            this.heap = new int[verticesCount];
+            this.positions = new int[verticesCount];
+            this.keys = new int[verticesCount];
+            this.size = 0;
+            Arrays.fill(this.positions, -1);
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private boolean contains(int vertexId) {
+            return positions[vertexId] != -1;
+        }
+
+        /**
+         * Insert the given vertex with zero key.
+         */
+        private void insert(int vertexId) {
+            checkState(!contains(vertexId), "the vertex is already in the heap");
+            keys[vertexId] = 0;
+            heap[size] = vertexId;
+            positions[vertexId] = size;
+            siftUp(size++);
+        }
+
+        private int getMaximumKey() {
+            checkState(size > 0, "the heap is empty");
+            return keys[heap[0]];
+        }
+
+        private int extractMaximum() {
+            checkState(size > 0, "the heap is empty");
+            final int maximum = heap[0];
+            positions[maximum] = -1;
+
+            if (--size > 0) {
+                heap[0] = heap[size];
+                positions[heap[0]] = 0;
+                siftDown(0);
+            }
+
+            return maximum;
+        }
+
+        private void increaseKey(int vertexId, int value) {
+            checkState(contains(vertexId), "the vertex is not in the heap");
+            keys[vertexId] += value;
+            siftUp(positions[vertexId]);
+        }
+
+        private boolean precedes(int vertexId1, int vertexId2) {
+            return keys[vertexId1] > keys[vertexId2]
+                    || keys[vertexId1] == keys[vertexId2] && vertexId1 < vertexId2;
+        }
+
+        private void siftUp(int position) {
+            while (position > 0) {
+                final int parent = (position - 1) / 2;
+                if (!precedes(heap[position], heap[parent])) {
+                    break;
+                }
+                swap(position, parent);
+                position = parent;
+            }
+        }
+
+        private void siftDown(int position) {
+            while (true) {
+                final int left = 2 * position + 1, right = left + 1;
+                int first = position;
+
+                if (left < size && precedes(heap[left], heap[first])) {
+                    first = left;
+                }
+                if (right < size && precedes(heap[right], heap[first])) {
+                    first = right;
+                }
+                if (first == position) {
+                    break;
+                }
+
+                swap(position, first);
+                position = first;
+            }
+        }
+
+        private void swap(int position1, int position2) {
+            final int vertexId1 = heap[position1];
+            final int vertexId2 = heap[position2];
+            heap[position1] = vertexId2;
+            heap[position2] = vertexId1;
+            positions[vertexId2] = position1;
+            positions[vertexId1] = position2;
+        }
+    }
+}
@@ -1,31 +1,37 @@
 package pl.edu.mimuw.nesc.codepartition;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Range;
 import com.google.common.collect.TreeMultimap;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Random;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import pl.edu.mimuw.nesc.ast.gen.FunctionDecl;
 import pl.edu.mimuw.nesc.astutil.DeclaratorUtils;
 import pl.edu.mimuw.nesc.codepartition.context.DynamicPartitionContext;
 import pl.edu.mimuw.nesc.codesize.CodeSizeEstimation;
 import pl.edu.mimuw.nesc.common.AtomicSpecification;
-import pl.edu.mimuw.nesc.common.util.FindUnionSet;
 import pl.edu.mimuw.nesc.common.util.NavigableInverseMap;
 import pl.edu.mimuw.nesc.refsgraph.EntityNode;
 import pl.edu.mimuw.nesc.refsgraph.Reference;
@@ -42,6 +48,17 @@ import static com.google.common.base.Preconditions.checkState;
  * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
  */
 public final class TabuSearchCodePartitioner implements CodePartitioner {
+    /**
+     * Value returned by the correction of a neighbour if it is impossible.
+     */
+    private static final int CORRECTION_IMPOSSIBLE = -2;
+
+    /**
+     * Count of movable functions divided by this value is the count of
+     * random moves made to perturb the initial solution of a search.
+     */
+    private static final int PERTURBATION_MOVES_DIVISOR = 8;
+
     /**
      * Bank schema used by this partitioner.
      */
@@ -69,17 +86,59 @@ public final class TabuSearchCodePartitioner implements CodePartitioner {
      */
     private final int maximumFruitlessIterationsCount;
 
+    /**
+     * Count of independent searches whose best solution is the result of the
+     * partition.
+     */
+    private final int searchesCount;
+
+    /**
+     * Maximum count of threads that perform the searches.
+     */
+    private final int threadsCount;
+
+    /**
+     * Seed for the random generators used to perturb initial solutions of
+     * searches.
+     */
+    private final long seed;
+
     public TabuSearchCodePartitioner(BankSchema bankSchema, AtomicSpecification atomicSpec,
             int maximumIterationsCount, int maximumFruitlessIterationsCount) {
+        this(bankSchema, atomicSpec, maximumIterationsCount, maximumFruitlessIterationsCount,
+                1, 1, 0L);
+    }
+
+    /**
+     * Create a partitioner that performs multiple searches. The first search
+     * starts from the initial solution and each other search starts from
+     * its random perturbation. The searches are independent and the best
+     * solution found by all of them is the result (if multiple searches find
+     * equally good solutions, the one found by the search with the smallest
+     * index is chosen). The result depends only on the count of searches and
+     * the seed and not on the count of threads.
+     *
+     * @param searchesCount Count of searches to perform.
+     * @param threadsCount Maximum count of threads that perform the searches.
+     * @param seed Seed for perturbations of the initial solution.
+     */
+    public TabuSearchCodePartitioner(BankSchema bankSchema, AtomicSpecification atomicSpec,
+            int maximumIterationsCount, int maximumFruitlessIterationsCount,
+            int searchesCount, int threadsCount, long seed) {
         checkNotNull(bankSchema, "bank schema cannot be null");
         checkNotNull(atomicSpec, "atomic specification cannot be null");
         checkArgument(maximumIterationsCount >= 0, "maximum iterations count cannot be negative");
         checkArgument(maximumFruitlessIterationsCount >= 0, "maximum fruitless iterations count cannot negative");
+        checkArgument(searchesCount > 0, "searches count must be positive");
+        checkArgument(threadsCount > 0, "threads count must be positive");
         this.bankSchema = bankSchema;
         this.commonBankAllocator = new CommonBankAllocator(atomicSpec);
         this.solutionComparator = new SolutionComparator();
         this.maximumIterationsCount = maximumIterationsCount;
         this.maximumFruitlessIterationsCount = maximumFruitlessIterationsCount;
+        this.searchesCount = searchesCount;
+        this.threadsCount = threadsCount;
+        this.seed = seed;
     }
 
     @Override
@@ -166,94 +225,57 @@ public final class TabuSearchCodePartitioner implements CodePartitioner {
     private Optional<Cut> computeMinimumCut(SwitchingGraph.Subgraph graph) {
         checkNotNull(graph, "graph cannot be null");
 
-        Optional<Cut> currentMin = Optional.absent();
-        final FindUnionSet<String> verticesSet = new FindUnionSet<>(graph.getVertices());
-
-        while (verticesSet.size() > 1) {
-            final String currentSet = Collections.min(verticesSet.getAllRepresentatives());
-            final ImmutableSortedMap<String, Integer> weightsToOtherSets =
-                    computeWeightsToOtherSets(currentSet, verticesSet, graph);
-
-            int totalWeight = 0;
-            Optional<Map.Entry<String, Integer>> maximumEntry = Optional.absent();
-
-            for (Map.Entry<String, Integer> weightEntry : weightsToOtherSets.entrySet()) {
-                totalWeight += weightEntry.getValue();
-                if (!maximumEntry.isPresent() || weightEntry.getValue() > maximumEntry.get().getValue()) {
-                    maximumEntry = Optional.of(weightEntry);
-                }
-            }
-
-            if (!currentMin.isPresent() || totalWeight < currentMin.get().getValue()) {
-                currentMin = Optional.of(generateCut(currentSet, verticesSet, graph, totalWeight));
-            }
-
-            verticesSet.union(currentSet, maximumEntry.get().getKey());
+        // Identify vertices by consecutive integers
+        final ImmutableList<String> verticesNames = ImmutableList.copyOf(new TreeSet<>(graph.getVertices()));
+        final Map<String, Integer> verticesIds = new HashMap<>();
+        for (int vertexId = 0; vertexId < verticesNames.size(); ++vertexId) {
+            verticesIds.put(verticesNames.get(vertexId), vertexId);
         }
 
-        return currentMin;
-    }
-
-    private ImmutableSortedMap<String, Integer> computeWeightsToOtherSets(String currentSet,
-                FindUnionSet<String> verticesSet, SwitchingGraph.Subgraph graph) {
-        currentSet = verticesSet.find(currentSet);
-        final Map<String, Integer> weightsToOtherSets = new HashMap<>();
+        // Build adjacency arrays
+        final int[][] neighbours = new int[verticesNames.size()][];
+        final int[][] weights = new int[verticesNames.size()][];
+        final List<SwitchingActionEdge> edges = new ArrayList<>();
+        for (int vertexId = 0; vertexId < verticesNames.size(); ++vertexId) {
+            final String vertexName = verticesNames.get(vertexId);
 
-        // Initialize the weights to zero
-        for (String representative : verticesSet.getAllRepresentatives()) {
-            if (!representative.equals(currentSet)) {
-                weightsToOtherSets.put(representative, 0);
+            edges.clear();
+            for (SwitchingActionEdge edge : graph.getNeighbours(vertexName)) {
+                edges.add(edge);
             }
-        }
 
-        // Compute the weights
-        for (String vertex : graph.getVertices()) {
-            for (SwitchingActionEdge edge : graph.getNeighbours(vertex)) {
-                final String firstSet = verticesSet.find(edge.getFirstVertex().getFunctionUniqueName());
-                final String secondSet = verticesSet.find(edge.getSecondVertex().getFunctionUniqueName());
-                final Optional<String> otherSet;
-
-                /* The last condition in these if statements is to ensure that
-                   each edge contributes only once to the result. */
-                if (firstSet.equals(currentSet) && !secondSet.equals(currentSet)
-                        && vertex.equals(edge.getFirstVertex().getFunctionUniqueName())) {
-                    otherSet = Optional.of(secondSet);
-                } else if (!firstSet.equals(currentSet) && secondSet.equals(currentSet)
-                        && vertex.equals(edge.getFirstVertex().getFunctionUniqueName())) {
-                    otherSet = Optional.of(firstSet);
-                } else {
-                    otherSet = Optional.absent();
-                }
-
-                if (otherSet.isPresent()) {
-                    weightsToOtherSets.put(otherSet.get(), weightsToOtherSets.get(otherSet.get())
-                            + edge.getWeight());
-                }
+            neighbours[vertexId] = new int[edges.size()];
+            weights[vertexId] = new int[edges.size()];
+            for (int i = 0; i < edges.size(); ++i) {
+                final SwitchingActionEdge edge = edges.get(i);
+                final String neighbourName = edge.getFirstVertex().getFunctionUniqueName().equals(vertexName)
+                        ? edge.getSecondVertex().getFunctionUniqueName()
+                        : edge.getFirstVertex().getFunctionUniqueName();
+                neighbours[vertexId][i] = verticesIds.get(neighbourName);
+                weights[vertexId][i] = edge.getWeight();
             }
         }
 
-        return ImmutableSortedMap.copyOf(weightsToOtherSets);
-    }
+        final Optional<MinimumCutSolver.Cut> cut = new MinimumCutSolver(neighbours, weights).solve();
+        if (!cut.isPresent()) {
+            return Optional.absent();
+        }
 
-    private Cut generateCut(String extractedSet, FindUnionSet<String> verticesSets,
-                    SwitchingGraph.Subgraph graph, int value) {
-        extractedSet = verticesSets.find(extractedSet);
-        final ImmutableSet.Builder<String> firstSubgraphVerticesBuilder =
-                ImmutableSet.builder();
-        final ImmutableSet.Builder<String> secondSubgraphVerticesBuilder =
-                ImmutableSet.builder();
-
-        for (String vertex : graph.getVertices()) {
-            if (verticesSets.find(vertex).equals(extractedSet)) {
-                firstSubgraphVerticesBuilder.add(vertex);
+        final ImmutableSet.Builder<String> firstSubgraphVerticesBuilder = ImmutableSet.builder();
+        final ImmutableSet.Builder<String> secondSubgraphVerticesBuilder = ImmutableSet.builder();
+        for (int vertexId = 0; vertexId < verticesNames.size(); ++vertexId) {
+            if (cut.get().isInFirstSet(vertexId)) {
+                firstSubgraphVerticesBuilder.add(verticesNames.get(vertexId));
             } else {
-                secondSubgraphVerticesBuilder.add(vertex);
+                secondSubgraphVerticesBuilder.add(verticesNames.get(vertexId));
             }
         }
 
-        return new Cut(graph.getSwitchingGraph().newSubgraph(firstSubgraphVerticesBuilder.build()),
+        return Optional.of(new Cut(
+                graph.getSwitchingGraph().newSubgraph(firstSubgraphVerticesBuilder.build()),
                 graph.getSwitchingGraph().newSubgraph(secondSubgraphVerticesBuilder.build()),
-                value);
+                cut.get().getValue()
+        ));
     }
 
     private void tune(TabuSearchPartitionContext context) throws PartitionImpossibleException {
@@ -445,23 +467,107 @@ public final class TabuSearchCodePartitioner implements CodePartitioner {
     }
 
     private void tmsearch(TabuSearchPartitionContext context) {
-        final TabuList tabuList = new TabuList(context.functions.size(),
-                context.functions.size(), bankSchema.getBanksNames().size());
-        Solution current = new Solution(context);
-        Solution best = current;
-        int iterationsCount = 0, fruitlessIterationsCount = 0;
+        final TabuSearchProblem problem = new TabuSearchProblem(context, bankSchema);
+        final MutableSolution initialSolution = new MutableSolution(problem, context);
+        final BestSolutionHolder bestSolutionHolder = new BestSolutionHolder(
+                initialSolution.toSolution(), problem.getFunctionsCount(), solutionComparator);
 
-        while (iterationsCount < maximumIterationsCount
-                && fruitlessIterationsCount < maximumFruitlessIterationsCount) {
-            final Optional<Solution> bestAllowedNeighbour = computeBestAllowedNeighbour(context,
-                    current, tabuList, context.referencesGraph);
+        if (searchesCount == 1) {
+            search(problem, initialSolution, 0, bestSolutionHolder);
+        } else {
+            runSearches(problem, initialSolution, bestSolutionHolder);
+        }
 
-            if (bestAllowedNeighbour.isPresent()) {
-                current = bestAllowedNeighbour.get();
+        final Solution best = bestSolutionHolder.getBestSolution();
+
+        /* Remove all functions before assigning them again to avoid
+           exceeding the capacity of a bank in an intermediate state. */
+        for (int funId = 0; funId < problem.getFunctionsCount(); ++funId) {
+            context.remove(context.functions.get(problem.getFunctionName(funId)));
+        }
+        for (int funId = 0; funId < problem.getFunctionsCount(); ++funId) {
+            context.assign(context.functions.get(problem.getFunctionName(funId)),
+                    problem.getBankName(best.getBank(funId)));
+        }
+    }
+
+    /**
+     * Run all searches in multiple threads. The current thread also performs
+     * searches.
+     */
+    private void runSearches(final TabuSearchProblem problem, final MutableSolution initialSolution,
+                final BestSolutionHolder bestSolutionHolder) {
+        final AtomicInteger nextSearchIndex = new AtomicInteger(0);
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        final Runnable searchingRunnable = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int searchIndex;
+                    while ((searchIndex = nextSearchIndex.getAndIncrement()) < searchesCount
+                            && failure.get() == null) {
+                        search(problem, initialSolution, searchIndex, bestSolutionHolder);
+                    }
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
             }
+        };
+
+        final Thread[] threads = new Thread[Math.min(threadsCount, searchesCount) - 1];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(searchingRunnable, "tmsearch_thread" + (i + 1));
+            threads[i].start();
+        }
+
+        searchingRunnable.run();
+
+        for (Thread thread : threads) {
+            Uninterruptibles.joinUninterruptibly(thread);
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Perform a single tabu search. The first search starts from the given
+     * initial solution and other searches start from its random
+     * perturbations. The random generator for a search depends only on the
+     * seed and the index of the search, so the result of the partition does
+     * not depend on the count of threads.
+     *
+     * @param problem Problem to solve.
+     * @param initialSolution Solution that is the basis for the first
+     *                        solution of the search. It is not modified.
+     * @param searchIndex Index of the search.
+     * @param bestSolutionHolder Holder of the best solution found by all
+     *                           searches.
+     */
+    private void search(TabuSearchProblem problem, MutableSolution initialSolution,
+                int searchIndex, BestSolutionHolder bestSolutionHolder) {
+        final TabuList tabuList = new TabuList(problem.getFunctionsCount(),
+                problem.getFunctionsCount(), problem.getBanksCount(),
+                problem.getFunctionsCount());
+        final MutableSolution current = new MutableSolution(initialSolution);
+        if (searchIndex != 0) {
+            perturb(problem, current, new Random(seed + searchIndex));
+        }
+
+        Solution best = current.toSolution();
+        bestSolutionHolder.offer(best, searchIndex);
+        int iterationsCount = 0, fruitlessIterationsCount = 0;
+
+        while (iterationsCount < maximumIterationsCount
+                && fruitlessIterationsCount < maximumFruitlessIterationsCount
+                && !bestSolutionHolder.isOptimumFoundBefore(searchIndex)) {
+            final Optional<Solution> bestAllowedNeighbour = moveToBestAllowedNeighbour(problem,
+                    current, tabuList);
 
             if (bestAllowedNeighbour.isPresent() && solutionComparator.compare(bestAllowedNeighbour.get(), best) > 0) {
                 best = bestAllowedNeighbour.get();
+                bestSolutionHolder.offer(best, searchIndex);
                 fruitlessIterationsCount = 0;
             } else {
                 ++fruitlessIterationsCount;
@@ -470,117 +576,140 @@ public final class TabuSearchCodePartitioner implements CodePartitioner {
             tabuList.incrementTime();
             ++iterationsCount;
         }
+    }
 
-        for (Map.Entry<String, String> allocationEntry : best.getAllocation().entrySet()) {
-            context.remove(context.functions.get(allocationEntry.getKey()));
-            context.assign(context.functions.get(allocationEntry.getKey()),
-                    allocationEntry.getValue());
+    /**
+     * Move randomly chosen functions to randomly chosen banks. Only moves
+     * that do not make the solution infeasible are performed.
+     */
+    private void perturb(TabuSearchProblem problem, MutableSolution solution, Random random) {
+        final int[] movableFunctions = problem.getMovableFunctions();
+        if (movableFunctions.length == 0 || problem.getBanksCount() < 2) {
+            return;
+        }
+
+        final int movesCount = Math.max(1, movableFunctions.length / PERTURBATION_MOVES_DIVISOR);
+        for (int i = 0; i < movesCount; ++i) {
+            final int funId = movableFunctions[random.nextInt(movableFunctions.length)];
+            final int targetBank = random.nextInt(problem.getBanksCount());
+
+            if (targetBank != solution.getBank(funId)
+                    && solution.getFreeSpace(targetBank) >= problem.getFunctionSize(funId)) {
+                solution.move(funId, targetBank);
+            }
         }
     }
 
-    private Optional<Solution> computeBestAllowedNeighbour(TabuSearchPartitionContext context,
-                Solution startSolution, TabuList tabu, ReferencesGraph refsGraph) {
-        final MutableSolution neighbourhood = new MutableSolution(startSolution, refsGraph);
-        Optional<Solution> bestNeighbourhood = Optional.absent();
-        Optional<ImmutableSet<String>> bestMovedFunctions = Optional.absent();
-        final Set<String> movedFunctions = new HashSet<>();
+    /**
+     * Find the best neighbour of the given solution that is allowed by the
+     * tabu list and move the solution to it. Neighbours are evaluated by
+     * moving a function to another bank (and possibly moving another function
+     * in the opposite direction to make the neighbour feasible) in the given
+     * mutable solution and reverting the move.
+     *
+     * @return Snapshot of the new solution. The object is absent if all
+     *         neighbours are forbidden or infeasible. In such case the given
+     *         solution is not modified.
+     */
+    private Optional<Solution> moveToBestAllowedNeighbour(TabuSearchProblem problem,
+                MutableSolution solution, TabuList tabu) {
+        int bestMovedFunction = -1, bestTargetBank = -1, bestCorrectingFunction = -1;
+        int bestNonBankedFunctionsCount = -1;
 
-        for (Map.Entry<String, String> allocationEntry : startSolution.getAllocation().entrySet()) {
-            if (context.fixedFunctions.contains(allocationEntry.getKey())) {
+        for (int funId = 0; funId < problem.getFunctionsCount(); ++funId) {
+            if (problem.isFixed(funId)) {
                 continue;
             }
 
-            for (String bankName : bankSchema.getBanksNames()) {
-                if (bankName.equals(allocationEntry.getValue())) {
+            final int originalBank = solution.getBank(funId);
+
+            for (int bankId : problem.getBanksInSchemaOrder()) {
+                if (bankId == originalBank) {
                     continue;
                 }
 
-                // Update the set of moved functions
-                movedFunctions.clear();
-                movedFunctions.add(allocationEntry.getKey());
-
                 // Move the function to the new bank
-                neighbourhood.move(allocationEntry.getKey(), bankName);
+                solution.move(funId, bankId);
 
                 /* Check if the solution is feasible and if no, try to correct
                    it. */
-                if (!correctNeighbourhood(context, neighbourhood, allocationEntry.getValue(),
-                        bankName, allocationEntry.getKey(), movedFunctions)) {
-                    neighbourhood.move(allocationEntry.getKey(), allocationEntry.getValue());
+                final int correctingFunction = correctNeighbour(problem, solution,
+                        originalBank, bankId, funId);
+                if (correctingFunction == CORRECTION_IMPOSSIBLE) {
+                    solution.move(funId, originalBank);
                     continue;
                 }
 
-                if ((!bestNeighbourhood.isPresent()
-                        || bestNeighbourhood.get().getNonBankedFunctionsCount() < neighbourhood.nonBankedFunctionsCount)
-                        && tabu.isAllowed(neighbourhood.allocation, movedFunctions)) {
-                    bestNeighbourhood = Optional.of(new Solution(neighbourhood));
-                    bestMovedFunctions = Optional.of(ImmutableSet.copyOf(movedFunctions));
+                if ((bestMovedFunction == -1
+                        || bestNonBankedFunctionsCount < solution.getNonBankedFunctionsCount())
+                        && tabu.isAllowed(solution, funId, correctingFunction)) {
+                    bestMovedFunction = funId;
+                    bestTargetBank = bankId;
+                    bestCorrectingFunction = correctingFunction;
+                    bestNonBankedFunctionsCount = solution.getNonBankedFunctionsCount();
                 }
 
-                restoreSolution(neighbourhood, allocationEntry.getKey(), allocationEntry.getValue(),
-                        bankName, movedFunctions);
+                // Restore the solution
+                if (correctingFunction != -1) {
+                    solution.move(correctingFunction, bankId);
+                }
+                solution.move(funId, originalBank);
             }
         }
 
-        if (bestNeighbourhood.isPresent()) {
-            tabu.update(bestNeighbourhood.get(), bestMovedFunctions.get());
+        if (bestMovedFunction == -1) {
+            return Optional.absent();
         }
 
-        return bestNeighbourhood;
-    }
+        if (bestCorrectingFunction != -1) {
+            solution.move(bestCorrectingFunction, solution.getBank(bestMovedFunction));
+        }
+        solution.move(bestMovedFunction, bestTargetBank);
 
-    private boolean correctNeighbourhood(TabuSearchPartitionContext context, MutableSolution neighbourhood,
-                String targetBankName, String sourceBankName, String fixedFunction,
-                Set<String> movedFunctions) {
-        if (neighbourhood.freeSpace.get(sourceBankName) < 0) {
-            final int surplus = -neighbourhood.freeSpace.get(sourceBankName);
-            final SortedMap<Integer, NavigableSet<String>> correctingFunctions =
-                    neighbourhood.functionsSizes.get(sourceBankName).inverseMap().tailMap(surplus);
-            Optional<String> correctingFunction = Optional.absent();
-
-            for (Map.Entry<Integer, NavigableSet<String>> correctingEntry : correctingFunctions.entrySet()) {
-                if (correctingEntry.getKey() > neighbourhood.freeSpace.get(targetBankName)) {
-                    break;
-                }
-                for (String correctingFunctionCandidate : correctingEntry.getValue()) {
-                    if (!correctingFunctionCandidate.equals(fixedFunction)
-                            && !context.fixedFunctions.contains(correctingFunctionCandidate)) {
-                        correctingFunction = Optional.of(correctingFunctionCandidate);
-                        break;
-                    }
-                }
-            }
+        final Solution newSolution = solution.toSolution();
+        tabu.update(newSolution, bestMovedFunction, bestCorrectingFunction);
+        return Optional.of(newSolution);
+    }
 
-            if (correctingFunction.isPresent()) {
-                movedFunctions.add(correctingFunction.get());
-                neighbourhood.move(correctingFunction.get(), targetBankName);
-                if (neighbourhood.freeSpace.get(sourceBankName) < 0
-                        || neighbourhood.freeSpace.get(targetBankName) < 0) {
+    /**
+     * Make the given solution feasible after moving a function from
+     * <code>targetBank</code> to <code>sourceBank</code> by moving another
+     * function from <code>sourceBank</code> to <code>targetBank</code>. The
+     * function is the biggest one that fits (if there are multiple such
+     * functions, the one with the lexicographically smallest name is chosen).
+     *
+     * @return Identifier of the function moved to correct the solution, -1 if
+     *         the solution is feasible without correction or
+     *         {@link TabuSearchCodePartitioner#CORRECTION_IMPOSSIBLE} if the
+     *         solution cannot be corrected.
+     */
+    private int correctNeighbour(TabuSearchProblem problem, MutableSolution neighbour,
+                int targetBank, int sourceBank, int fixedFunction) {
+        if (neighbour.getFreeSpace(sourceBank) >= 0) {
+            return -1;
+        }
+
+        final int surplus = -neighbour.getFreeSpace(sourceBank);
+        final int availableSpace = neighbour.getFreeSpace(targetBank);
+        final int[] functionsBySize = problem.getFunctionsBySize();
+
+        for (int i = problem.findFirstFunctionNotBiggerThan(availableSpace);
+                i < functionsBySize.length && problem.getFunctionSize(functionsBySize[i]) >= surplus;
+                ++i) {
+            final int candidate = functionsBySize[i];
+
+            if (neighbour.getBank(candidate) == sourceBank && candidate != fixedFunction
+                    && !problem.isFixed(candidate)) {
+                neighbour.move(candidate, targetBank);
+                if (neighbour.getFreeSpace(sourceBank) < 0
+                        || neighbour.getFreeSpace(targetBank) < 0) {
                     throw new RuntimeException("overloaded bank after correction");
                 }
-                return true;
-            } else {
-                return false;
+                return candidate;
             }
-        } else {
-            return true;
         }
-    }
 
-    private void restoreSolution(MutableSolution neighbourhood, String originalFunction,
-                String originalBank, String newBank, Set<String> movedFunctions) {
-        int restoredFunsCount = 0;
-        for (String movedFun : movedFunctions) {
-            if (restoredFunsCount == 2) {
-                throw new RuntimeException("too many moved functions: " + movedFunctions.size());
-            }
-            if (movedFun.equals(originalFunction)) {
-                neighbourhood.move(movedFun, originalBank);
-            } else {
-                neighbourhood.move(movedFun, newBank);
-            }
-            ++restoredFunsCount;
-        }
+        return CORRECTION_IMPOSSIBLE;
     }
 
     /**
@@ -1091,306 +1220,334 @@ public final class TabuSearchCodePartitioner implements CodePartitioner {
     }
 
     /**
-     * A single partition of functions into banks.
+     * Data of the partition problem solved by the tabu search in which
+     * functions and banks are identified by consecutive integers. Identifiers
+     * of functions and banks follow the lexicographic order of their names.
      *
      * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
      */
-    private static final class Solution implements Comparable<Solution> {
+    private static final class TabuSearchProblem {
         /**
-         * Map from names of functions to names of banks they are allocated to.
+         * Names of functions and banks. Identifiers are indices in the lists.
          */
-        private final ImmutableSortedMap<String, String> allocation;
+        private final ImmutableList<String> functionsNames;
+        private final ImmutableList<String> banksNames;
 
         /**
-         * Map from names of functions to counts of calls made by callers of
-         * these functions from other banks.
+         * Identifiers of banks in the order of the bank schema.
          */
-        private final ImmutableMap<String, Integer> callsFromOtherBanks;
+        private final int[] banksInSchemaOrder;
 
         /**
-         * Count of non-banked functions in this solution.
+         * Sizes of functions.
          */
-        private final int nonBankedFunctionsCount;
+        private final int[] functionsSizes;
 
         /**
-         * Map from names of banks to amounts of free space in them in this
-         * partition.
+         * Identifiers of all functions in descending order of sizes (functions
+         * with the same size are in ascending order of identifiers).
          */
-        private final ImmutableMap<String, Integer> freeSpace;
+        private final int[] functionsBySize;
 
         /**
-         * Map from names of banks to maps with sizes for functions allocated to
-         * these banks.
+         * Array that indicates functions whose allocation cannot be changed.
          */
-        private final ImmutableMap<String, NavigableInverseMap<String, Integer>> functionsSizes;
+        private final boolean[] fixedFunctions;
 
-        private Solution(TabuSearchPartitionContext context) {
+        /**
+         * Identifiers of functions whose allocation can be changed.
+         */
+        private final int[] movableFunctions;
+
+        /**
+         * Arrays with identifiers of functions that call a function (the
+         * number of occurrences of an identifier is the number of calls). A
+         * function that is not partitioned is represented by -1. Recursive
+         * calls are not included.
+         */
+        private final int[][] callers;
+
+        /**
+         * Arrays with identifiers of functions called by a function
+         * (analogous to {@link TabuSearchProblem#callers}) without functions
+         * that are not partitioned.
+         */
+        private final int[][] callees;
+
+        private TabuSearchProblem(TabuSearchPartitionContext context, BankSchema bankSchema) {
             checkNotNull(context, "context cannot be null");
-            final PrivateBuilder builder = new FromTabuSearchContextBuilder(context);
-            this.allocation = builder.buildAllocation();
-            this.callsFromOtherBanks = builder.buildCallsFromOtherBanks();
-            this.nonBankedFunctionsCount = builder.buildNonBankedFunctionsCount();
-            this.freeSpace = builder.buildFreeSpace();
-            this.functionsSizes = builder.buildFunctionsSizes();
-        }
+            checkNotNull(bankSchema, "bank schema cannot be null");
 
-        private Solution(MutableSolution mutableSolution) {
-            checkNotNull(mutableSolution, "mutable solution cannot be null");
-            final PrivateBuilder builder = new FromMutableSolutionBuilder(mutableSolution);
-            this.allocation = builder.buildAllocation();
-            this.callsFromOtherBanks = builder.buildCallsFromOtherBanks();
-            this.nonBankedFunctionsCount = builder.buildNonBankedFunctionsCount();
-            this.freeSpace = builder.buildFreeSpace();
-            this.functionsSizes = builder.buildFunctionsSizes();
-        }
+            // Identifiers of functions
+            this.functionsNames = ImmutableList.copyOf(new TreeSet<>(context.functions.keySet()));
+            final Map<String, Integer> functionsIds = new HashMap<>();
+            for (int funId = 0; funId < functionsNames.size(); ++funId) {
+                functionsIds.put(functionsNames.get(funId), funId);
+            }
 
-        private ImmutableMap<String, String> getAllocation() {
-            return allocation;
+            // Identifiers of banks
+            this.banksNames = ImmutableList.copyOf(new TreeSet<>(bankSchema.getBanksNames()));
+            this.banksInSchemaOrder = new int[banksNames.size()];
+            int schemaIndex = 0;
+            for (String bankName : bankSchema.getBanksNames()) {
+                this.banksInSchemaOrder[schemaIndex++] = banksNames.indexOf(bankName);
+            }
+
+            // Sizes and fixed functions
+            this.functionsSizes = new int[functionsNames.size()];
+            this.fixedFunctions = new boolean[functionsNames.size()];
+            final Integer[] sortedFunctions = new Integer[functionsNames.size()];
+            for (int funId = 0; funId < functionsNames.size(); ++funId) {
+                this.functionsSizes[funId] = context.getFunctionSize(functionsNames.get(funId));
+                this.fixedFunctions[funId] = context.fixedFunctions.contains(functionsNames.get(funId));
+                sortedFunctions[funId] = funId;
+            }
+            Arrays.sort(sortedFunctions, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer funId1, Integer funId2) {
+                    final int sizesResult = Integer.compare(functionsSizes[funId2], functionsSizes[funId1]);
+                    return sizesResult != 0
+                            ? sizesResult
+                            : Integer.compare(funId1, funId2);
+                }
+            });
+            this.functionsBySize = new int[functionsNames.size()];
+            for (int i = 0; i < sortedFunctions.length; ++i) {
+                this.functionsBySize[i] = sortedFunctions[i];
+            }
+            final List<Integer> movableFunctionsList = new ArrayList<>();
+            for (int funId = 0; funId < functionsNames.size(); ++funId) {
+                if (!fixedFunctions[funId]) {
+                    movableFunctionsList.add(funId);
+                }
+            }
+            this.movableFunctions = toArray(movableFunctionsList);
+
+            // Calls between functions
+            this.callers = new int[functionsNames.size()][];
+            this.callees = new int[functionsNames.size()][];
+            final List<Integer> buffer = new ArrayList<>();
+            for (int funId = 0; funId < functionsNames.size(); ++funId) {
+                final EntityNode funNode = context.referencesGraph.getOrdinaryIds()
+                        .get(functionsNames.get(funId));
+
+                buffer.clear();
+                for (Reference predecessorReference : funNode.getPredecessors()) {
+                    if (!predecessorReference.isInsideNotEvaluatedExpr()
+                            && predecessorReference.getType() == Reference.Type.CALL
+                            && predecessorReference.getReferencingNode().getKind() == EntityNode.Kind.FUNCTION) {
+                        final Integer callerId = functionsIds.get(
+                                predecessorReference.getReferencingNode().getUniqueName());
+                        if (callerId == null) {
+                            buffer.add(-1);
+                        } else if (callerId != funId) {
+                            buffer.add(callerId);
+                        }
+                    }
+                }
+                this.callers[funId] = toArray(buffer);
+
+                buffer.clear();
+                for (Reference successorReference : funNode.getSuccessors()) {
+                    if (!successorReference.isInsideNotEvaluatedExpr()
+                            && successorReference.getType() == Reference.Type.CALL
+                            && successorReference.getReferencedNode().getKind() == EntityNode.Kind.FUNCTION) {
+                        final Integer calleeId = functionsIds.get(
+                                successorReference.getReferencedNode().getUniqueName());
+                        if (calleeId != null && calleeId != funId) {
+                            buffer.add(calleeId);
+                        }
+                    }
+                }
+                this.callees[funId] = toArray(buffer);
+            }
         }
 
-        private ImmutableMap<String, Integer> getCallsFromOtherBanks() {
-            return callsFromOtherBanks;
+        private static int[] toArray(List<Integer> list) {
+            final int[] result = new int[list.size()];
+            for (int i = 0; i < result.length; ++i) {
+                result[i] = list.get(i);
+            }
+            return result;
         }
 
-        private int getNonBankedFunctionsCount() {
-            return nonBankedFunctionsCount;
+        private int getFunctionsCount() {
+            return functionsNames.size();
         }
 
-        private ImmutableMap<String, Integer> getFreeSpace() {
-            return freeSpace;
+        private int getBanksCount() {
+            return banksNames.size();
         }
 
-        private ImmutableMap<String, NavigableInverseMap<String, Integer>> getFunctionsSizes() {
-            return functionsSizes;
+        private String getFunctionName(int funId) {
+            return functionsNames.get(funId);
         }
 
-        @Override
-        public boolean equals(Object other) {
-            return other != null && getClass() == other.getClass()
-                    && allocation.equals(((Solution) other).allocation);
+        private String getBankName(int bankId) {
+            return banksNames.get(bankId);
         }
 
-        @Override
-        public int hashCode() {
-            return allocation.hashCode();
+        private int getBankId(String bankName) {
+            return banksNames.indexOf(bankName);
         }
 
-        @Override
-        public int compareTo(Solution otherSolution) {
-            checkNotNull(otherSolution, "the other solution cannot be null");
+        private int[] getBanksInSchemaOrder() {
+            return banksInSchemaOrder;
+        }
 
-            final Iterator<Map.Entry<String, String>> thisIt = allocation.entrySet().iterator(),
-                otherIt = otherSolution.getAllocation().entrySet().iterator();
+        private int getFunctionSize(int funId) {
+            return functionsSizes[funId];
+        }
 
-            /* For each iteration the key returned by an iterator is greater
-               than the key returned in the previous iteration because
-               allocations are represented by sorted maps. */
-            while (thisIt.hasNext() && otherIt.hasNext()) {
-                final Map.Entry<String, String> thisEntry = thisIt.next(),
-                        otherEntry = otherIt.next();
+        private int[] getFunctionsBySize() {
+            return functionsBySize;
+        }
 
-                final int funNameResult = thisEntry.getKey().compareTo(otherEntry.getKey());
-                if (funNameResult != 0) {
-                    return funNameResult;
-                }
+        private boolean isFixed(int funId) {
+            return fixedFunctions[funId];
+        }
 
-                final int targetBankResult = thisEntry.getValue().compareTo(otherEntry.getValue());
-                if (targetBankResult != 0) {
-                    return targetBankResult;
-                }
-            }
+        private int[] getMovableFunctions() {
+            return movableFunctions;
+        }
 
-            return thisIt.hasNext()
-                    ? 1
-                    : (otherIt.hasNext() ? -1 : 0);
+        private int[] getCallers(int funId) {
+            return callers[funId];
         }
 
-        /**
-         * Interface for building particular elements of a solution.
-         *
-         * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
-         */
-        private interface PrivateBuilder {
-            ImmutableSortedMap<String, String> buildAllocation();
-            ImmutableMap<String, Integer> buildCallsFromOtherBanks();
-            int buildNonBankedFunctionsCount();
-            ImmutableMap<String, Integer> buildFreeSpace();
-            ImmutableMap<String, NavigableInverseMap<String, Integer>> buildFunctionsSizes();
+        private int[] getCallees(int funId) {
+            return callees[funId];
         }
 
         /**
-         * Implementation of the builder for constructing a solution from
-         * a tabu search context.
+         * Get the smallest index in the array of functions sorted by sizes of
+         * a function whose size is not greater than the given one.
          *
-         * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+         * @param size Maximum size of the function.
+         * @return Index of the first function not bigger than the given size.
+         *         If all functions are bigger, the length of the array is
+         *         returned.
          */
-        private final static class FromTabuSearchContextBuilder implements PrivateBuilder {
-            private final TabuSearchPartitionContext context;
-            private boolean callsFromOtherBanksBuilt;
-            private final Map<String, Integer> callsFromOtherBanks;
-
-            private FromTabuSearchContextBuilder(TabuSearchPartitionContext context) {
-                checkNotNull(context, "context cannot be null");
-                this.context = context;
-                this.callsFromOtherBanksBuilt = false;
-                this.callsFromOtherBanks = new HashMap<>();
-            }
-
-            @Override
-            public ImmutableSortedMap<String, String> buildAllocation() {
-                final ImmutableSortedMap.Builder<String, String> allocationBuilder =
-                        ImmutableSortedMap.naturalOrder();
-                for (String bankName : context.getBankTable().getSchema().getBanksNames()) {
-                    for (FunctionDecl function : context.getBankContents(bankName)) {
-                        final String funUniqueName = DeclaratorUtils.getUniqueName(
-                                function.getDeclarator()).get();
-                        allocationBuilder.put(funUniqueName, bankName);
-                    }
+        private int findFirstFunctionNotBiggerThan(int size) {
+            int low = 0, high = functionsBySize.length;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (functionsSizes[functionsBySize[middle]] > size) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
                 }
-                return allocationBuilder.build();
-            }
-
-            @Override
-            public ImmutableMap<String, Integer> buildCallsFromOtherBanks() {
-                addCallsFromOtherBanks();
-                return ImmutableMap.copyOf(callsFromOtherBanks);
             }
+            return low;
+        }
 
-            private void addCallsFromOtherBanks() {
-                if (callsFromOtherBanksBuilt) {
-                    return;
-                }
-
-                callsFromOtherBanksBuilt = true;
-
-                for (String bankName : context.getBankTable().getSchema().getBanksNames()) {
-                    final Set<FunctionDecl> bankContents = context.getBankContents(bankName);
+        /**
+         * Get the component of the hash of an allocation that corresponds to
+         * allocation of the given function to the given bank.
+         */
+        private long getAllocationHash(int funId, int bankId) {
+            // Finalizer of the SplitMix64 generator
+            long z = ((long) funId * banksNames.size() + bankId + 1) * 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
 
-                    for (FunctionDecl function : context.getBankContents(bankName)) {
-                        final String funUniqueName = DeclaratorUtils.getUniqueName(
-                                function.getDeclarator()).get();
-                        callsFromOtherBanks.put(funUniqueName, 0);
+    /**
+     * A single partition of functions into banks. Its natural ordering is the
+     * lexicographic order of allocations.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private static final class Solution implements Comparable<Solution> {
+        /**
+         * Array with identifiers of banks functions are allocated to.
+         */
+        private final int[] allocation;
 
-                        for (Reference predecessorReference : context.referencesGraph.getOrdinaryIds().get(funUniqueName).getPredecessors()) {
-                            if (!predecessorReference.isInsideNotEvaluatedExpr()
-                                    && predecessorReference.getType() == Reference.Type.CALL
-                                    && predecessorReference.getReferencingNode().getKind() == EntityNode.Kind.FUNCTION
-                                    && !bankContents.contains(context.functions.get(predecessorReference.getReferencingNode().getUniqueName()))) {
-                                callsFromOtherBanks.put(funUniqueName, callsFromOtherBanks.get(funUniqueName) + 1);
-                            }
-                        }
-                    }
-                }
-            }
+        /**
+         * Count of non-banked functions in this solution.
+         */
+        private final int nonBankedFunctionsCount;
 
-            @Override
-            public int buildNonBankedFunctionsCount() {
-                addCallsFromOtherBanks();
-                int nonBankedFunctionsCount = 0;
-                for (int otherBanksCallsCount : callsFromOtherBanks.values()) {
-                    if (otherBanksCallsCount == 0) {
-                        ++nonBankedFunctionsCount;
-                    }
-                }
-                return nonBankedFunctionsCount;
-            }
+        /**
+         * Hash of the allocation.
+         */
+        private final long allocationHash;
 
-            @Override
-            public ImmutableMap<String, Integer> buildFreeSpace() {
-                final ImmutableMap.Builder<String, Integer> freeSpaceBuilder =
-                        ImmutableMap.builder();
-                for (String bankName : context.getBankTable().getSchema().getBanksNames()) {
-                    freeSpaceBuilder.put(bankName, context.getFreeSpace(bankName));
-                }
-                return freeSpaceBuilder.build();
-            }
+        private Solution(int[] allocation, int nonBankedFunctionsCount, long allocationHash) {
+            this.allocation = allocation;
+            this.nonBankedFunctionsCount = nonBankedFunctionsCount;
+            this.allocationHash = allocationHash;
+        }
 
-            @Override
-            public ImmutableMap<String, NavigableInverseMap<String, Integer>> buildFunctionsSizes() {
-                final ImmutableMap.Builder<String, NavigableInverseMap<String, Integer>> functionsSizesBuilder =
-                        ImmutableMap.builder();
-                for (String bankName : context.getBankTable().getBanksNames()) {
-                    final NavigableInverseMap<String, Integer> bankFunctionsSizes =
-                            new NavigableInverseMap<>();
-                    functionsSizesBuilder.put(bankName, bankFunctionsSizes);
-
-                    for (FunctionDecl function : context.getBankContents(bankName)) {
-                        final String funUniqueName = DeclaratorUtils.getUniqueName(
-                                function.getDeclarator()).get();
-                        bankFunctionsSizes.put(funUniqueName, context.getFunctionSize(function));
-                    }
-                }
-                return functionsSizesBuilder.build();
-            }
+        private int getBank(int funId) {
+            return allocation[funId];
         }
 
-        /**
-         * Implementation of a builder that creates elements of a solution
-         * from a mutable solution.
-         *
-         * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
-         */
-        private static final class FromMutableSolutionBuilder implements PrivateBuilder {
-            private final MutableSolution mutableSolution;
+        private int getNonBankedFunctionsCount() {
+            return nonBankedFunctionsCount;
+        }
 
-            private FromMutableSolutionBuilder(MutableSolution mutableSolution) {
-                checkNotNull(mutableSolution, "mutable solution cannot be null");
-                this.mutableSolution = mutableSolution;
-            }
+        private long getAllocationHash() {
+            return allocationHash;
+        }
 
-            @Override
-            public ImmutableSortedMap<String, String> buildAllocation() {
-                return ImmutableSortedMap.copyOf(mutableSolution.allocation);
-            }
+        private boolean hasAllocation(int[] otherAllocation, long otherAllocationHash) {
+            return allocationHash == otherAllocationHash
+                    && Arrays.equals(allocation, otherAllocation);
+        }
 
-            @Override
-            public ImmutableMap<String, Integer> buildCallsFromOtherBanks() {
-                return ImmutableMap.copyOf(mutableSolution.callsFromOtherBanks);
-            }
+        @Override
+        public boolean equals(Object other) {
+            return other != null && getClass() == other.getClass()
+                    && Arrays.equals(allocation, ((Solution) other).allocation);
+        }
 
-            @Override
-            public int buildNonBankedFunctionsCount() {
-                return mutableSolution.nonBankedFunctionsCount;
-            }
+        @Override
+        public int hashCode() {
+            return (int) (allocationHash ^ (allocationHash >>> 32));
+        }
 
-            @Override
-            public ImmutableMap<String, Integer> buildFreeSpace() {
-                return ImmutableMap.copyOf(mutableSolution.freeSpace);
-            }
+        @Override
+        public int compareTo(Solution otherSolution) {
+            checkNotNull(otherSolution, "the other solution cannot be null");
 
-            @Override
-            public ImmutableMap<String, NavigableInverseMap<String, Integer>> buildFunctionsSizes() {
-                final ImmutableMap.Builder<String, NavigableInverseMap<String, Integer>> functionsSizesBuilder =
-                        ImmutableMap.builder();
-                for (Map.Entry<String, NavigableInverseMap<String, Integer>> sizeEntry : mutableSolution.functionsSizes.entrySet()) {
-                    functionsSizesBuilder.put(sizeEntry.getKey(), new NavigableInverseMap<>(sizeEntry.getValue()));
+            final int commonLength = Math.min(allocation.length, otherSolution.allocation.length);
+            for (int i = 0; i < commonLength; ++i) {
+                if (allocation[i] != otherSolution.allocation[i]) {
+                    return Integer.compare(allocation[i], otherSolution.allocation[i]);
                 }
-                return functionsSizesBuilder.build();
             }
+
+            return Integer.compare(allocation.length, otherSolution.allocation.length);
         }
     }
 
     /**
-     * Mutable data structures from an ordinary solution.
+     * Partition of functions into banks that is modified by the tabu search.
+     * All its data is updated incrementally when a function is moved.
      *
      * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
      */
     private static final class MutableSolution {
+        private final TabuSearchProblem problem;
+
         /**
-         * Graph of references between entities in the program.
+         * Array with identifiers of banks functions are allocated to.
          */
-        private final ReferencesGraph refsGraph;
+        private final int[] allocation;
 
         /**
-         * Map from names of functions to names of banks they are allocated to.
+         * Counts of calls made to functions by callers from other banks.
          */
-        private final Map<String, String> allocation;
+        private final int[] callsFromOtherBanks;
 
         /**
-         * Map from names of functions to counts of calls made by callers of
-         * these functions from other banks.
+         * Amounts of free space in banks.
          */
-        private final Map<String, Integer> callsFromOtherBanks;
+        private final int[] freeSpace;
 
         /**
          * Count of non-banked functions in this solution.
@@ -1398,109 +1555,118 @@ public final class TabuSearchCodePartitioner implements CodePartitioner {
         private int nonBankedFunctionsCount;
 
         /**
-         * Map from names of banks to amounts of free space in them in this
-         * partition.
+         * Hash of the allocation.
          */
-        private final Map<String, Integer> freeSpace;
+        private long allocationHash;
 
-        /**
-         * Map from names of banks to maps with sizes for functions allocated to
-         * these banks.
-         */
-        private final Map<String, NavigableInverseMap<String, Integer>> functionsSizes;
+        private MutableSolution(TabuSearchProblem problem, TabuSearchPartitionContext context) {
+            checkNotNull(problem, "problem cannot be null");
+            checkNotNull(context, "context cannot be null");
 
-        private MutableSolution(Solution solution, ReferencesGraph refsGraph) {
-            checkNotNull(solution, "solution cannot be null");
-            checkNotNull(refsGraph, "references graph cannot be null");
-            this.refsGraph = refsGraph;
-            this.allocation = new HashMap<>(solution.getAllocation());
-            this.callsFromOtherBanks = new HashMap<>(solution.getCallsFromOtherBanks());
-            this.nonBankedFunctionsCount = solution.getNonBankedFunctionsCount();
-            this.freeSpace = new HashMap<>(solution.getFreeSpace());
-            this.functionsSizes = new HashMap<>();
-            for (Map.Entry<String, NavigableInverseMap<String, Integer>> bankEntry : solution.getFunctionsSizes().entrySet()) {
-                this.functionsSizes.put(bankEntry.getKey(), new NavigableInverseMap<>(bankEntry.getValue()));
+            this.problem = problem;
+            this.allocation = new int[problem.getFunctionsCount()];
+            this.callsFromOtherBanks = new int[problem.getFunctionsCount()];
+            this.freeSpace = new int[problem.getBanksCount()];
+            this.nonBankedFunctionsCount = 0;
+            this.allocationHash = 0L;
+
+            for (int bankId = 0; bankId < problem.getBanksCount(); ++bankId) {
+                freeSpace[bankId] = context.getFreeSpace(problem.getBankName(bankId));
+            }
+
+            for (int funId = 0; funId < problem.getFunctionsCount(); ++funId) {
+                final FunctionDecl function = context.functions.get(problem.getFunctionName(funId));
+                allocation[funId] = problem.getBankId(context.getTargetBank(function).get());
+                allocationHash ^= problem.getAllocationHash(funId, allocation[funId]);
+            }
+
+            for (int funId = 0; funId < problem.getFunctionsCount(); ++funId) {
+                callsFromOtherBanks[funId] = countCallsFromOtherBanks(funId, allocation[funId]);
+                if (callsFromOtherBanks[funId] == 0) {
+                    ++nonBankedFunctionsCount;
+                }
             }
         }
 
-        private void move(String funUniqueName, String targetBankName) {
-            checkNotNull(funUniqueName, "unique name of the function cannot be null");
-            checkNotNull(targetBankName, "name of the target bank cannot be null");
-            checkState(allocation.containsKey(funUniqueName), "function with given name is not assigned to any bank");
-            checkArgument(freeSpace.containsKey(targetBankName), "name of the target bank is invalid");
+        private MutableSolution(MutableSolution otherSolution) {
+            checkNotNull(otherSolution, "the other solution cannot be null");
+
+            this.problem = otherSolution.problem;
+            this.allocation = otherSolution.allocation.clone();
+            this.callsFromOtherBanks = otherSolution.callsFromOtherBanks.clone();
+            this.freeSpace = otherSolution.freeSpace.clone();
+            this.nonBankedFunctionsCount = otherSolution.nonBankedFunctionsCount;
+            this.allocationHash = otherSolution.allocationHash;
+        }
 
-            final String sourceBankName = allocation.get(funUniqueName);
+        private int getBank(int funId) {
+            return allocation[funId];
+        }
+
+        private int getFreeSpace(int bankId) {
+            return freeSpace[bankId];
+        }
+
+        private int getNonBankedFunctionsCount() {
+            return nonBankedFunctionsCount;
+        }
+
+        private boolean hasAllocationOf(Solution solution) {
+            return solution.hasAllocation(allocation, allocationHash);
+        }
+
+        private Solution toSolution() {
+            return new Solution(allocation.clone(), nonBankedFunctionsCount, allocationHash);
+        }
 
-            if (sourceBankName.equals(targetBankName)) {
+        private void move(int funId, int targetBank) {
+            final int sourceBank = allocation[funId];
+
+            if (sourceBank == targetBank) {
                 return;
             }
 
-            updateCallsFromOtherBanks(funUniqueName, targetBankName);
-            allocation.put(funUniqueName, targetBankName);
-
-            final int funSize = functionsSizes.get(sourceBankName).get(funUniqueName);
-            freeSpace.put(sourceBankName, freeSpace.get(sourceBankName) + funSize);
-            freeSpace.put(targetBankName, freeSpace.get(targetBankName) - funSize);
-            functionsSizes.get(sourceBankName).remove(funUniqueName);
-            functionsSizes.get(targetBankName).put(funUniqueName, funSize);
-        }
-
-        private void updateCallsFromOtherBanks(String funUniqueName, String targetBankName) {
-            final String sourceBankName = allocation.get(funUniqueName);
-            final int originalCallsCount = callsFromOtherBanks.get(funUniqueName);
-
-            // Iterate over successors
-            for (Reference successorReference : refsGraph.getOrdinaryIds().get(funUniqueName).getSuccessors()) {
-                if (!successorReference.isInsideNotEvaluatedExpr()
-                        && successorReference.getType() == Reference.Type.CALL
-                        && successorReference.getReferencedNode().getKind() == EntityNode.Kind.FUNCTION
-                        && allocation.containsKey(successorReference.getReferencedNode().getUniqueName())
-                        && !successorReference.getReferencedNode().getUniqueName().equals(funUniqueName)) {
-                    final String successorFunBank = allocation.get(successorReference.getReferencedNode().getUniqueName());
-                    final int previousValue = callsFromOtherBanks.get(successorReference.getReferencedNode().getUniqueName());
-                    final Optional<Integer> newValue;
-
-                    if (successorFunBank.equals(targetBankName)) {
-                        newValue = Optional.of(previousValue - 1);
-                    } else if (successorFunBank.equals(sourceBankName)) {
-                        newValue = Optional.of(previousValue + 1);
-                    } else {
-                        newValue = Optional.absent();
-                    }
+            // Update counts of calls to called functions
+            for (int calleeId : problem.getCallees(funId)) {
+                final int calleeBank = allocation[calleeId];
 
-                    if (newValue.isPresent()) {
-                        if (newValue.get() < 0) {
-                            throw new RuntimeException("new value of count of calls from other banks is negative");
-                        }
-                        callsFromOtherBanks.put(successorReference.getReferencedNode().getUniqueName(),
-                                newValue.get());
-                        if (previousValue == 0) {
-                            --nonBankedFunctionsCount;
-                        } else if (newValue.get() == 0) {
-                            ++nonBankedFunctionsCount;
-                        }
+                if (calleeBank == targetBank) {
+                    if (--callsFromOtherBanks[calleeId] == 0) {
+                        ++nonBankedFunctionsCount;
+                    }
+                } else if (calleeBank == sourceBank) {
+                    if (callsFromOtherBanks[calleeId]++ == 0) {
+                        --nonBankedFunctionsCount;
                     }
                 }
             }
 
-            // Iterate over predecessors
-            int newCallsCount = 0;
-            for (Reference predecessorReference : refsGraph.getOrdinaryIds().get(funUniqueName).getPredecessors()) {
-                if (!predecessorReference.isInsideNotEvaluatedExpr()
-                        && predecessorReference.getType() == Reference.Type.CALL
-                        && predecessorReference.getReferencingNode().getKind() == EntityNode.Kind.FUNCTION
-                        && !allocation.get(predecessorReference.getReferencingNode().getUniqueName()).equals(targetBankName)) {
-                    ++newCallsCount;
-                }
+            // Update count of calls to the moved function
+            final int originalCallsCount = callsFromOtherBanks[funId];
+            final int newCallsCount = countCallsFromOtherBanks(funId, targetBank);
+            callsFromOtherBanks[funId] = newCallsCount;
+            if (originalCallsCount == 0 && newCallsCount != 0) {
+                --nonBankedFunctionsCount;
+            } else if (originalCallsCount != 0 && newCallsCount == 0) {
+                ++nonBankedFunctionsCount;
             }
-            callsFromOtherBanks.put(funUniqueName, newCallsCount);
-            if (newCallsCount != originalCallsCount) {
-                if (newCallsCount == 0) {
-                    ++nonBankedFunctionsCount;
-                } else if (originalCallsCount == 0) {
-                    --nonBankedFunctionsCount;
+
+            // Update the allocation and free space
+            allocation[funId] = targetBank;
+            allocationHash ^= problem.getAllocationHash(funId, sourceBank)
+                    ^ problem.getAllocationHash(funId, targetBank);
+            freeSpace[sourceBank] += problem.getFunctionSize(funId);
+            freeSpace[targetBank] -= problem.getFunctionSize(funId);
+        }
+
+        private int countCallsFromOtherBanks(int funId, int funBank) {
+            int callsCount = 0;
+            for (int callerId : problem.getCallers(funId)) {
+                if (callerId == -1 || allocation[callerId] != funBank) {
+                    ++callsCount;
                 }
             }
+            return callsCount;
         }
     }
 
@@ -1528,25 +1694,34 @@ public final class TabuSearchCodePartitioner implements CodePartitioner {
         private final int functionExpirationTime;
 
         /**
-         * Set with allocations from forbidden solutions.
+         * Multimap from hashes of allocations of forbidden solutions to these
+         * solutions.
          */
-        private final Set<Map<String, String>> forbiddenAllocations;
+        private final ListMultimap<Long, Solution> forbiddenAllocations;
 
         /**
-         * Multimap the a rating of a solution maps to solutions with that
-         * rating.
+         * Forbidden solutions sorted from the worst to the best one.
          */
-        private final TreeMultimap<Integer, Solution> sortedForbiddenSolutions;
+        private final NavigableSet<Solution> sortedForbiddenSolutions;
 
         /**
-         * Map from forbidden solutions to their expiration times.
+         * Forbidden solutions in the order of adding them to the list. Because
+         * the expiration time is the same for all solutions, it is also the
+         * order of their expiration times. Some of the solutions may have been
+         * already removed from the list because of exceeding the limit.
          */
-        private final NavigableInverseMap<Solution, Integer> forbiddenSolutionsExpirationTimes;
+        private final Queue<Solution> forbiddenSolutionsQueue;
 
         /**
-         * Map from vertices that cannot be moved to their expiration times.
+         * Expiration times of solutions from the queue.
          */
-        private final NavigableInverseMap<String, Integer> forbiddenFunctions;
+        private final Queue<Integer> forbiddenSolutionsExpirationTimes;
+
+        /**
+         * Array with expiration times of functions. A function cannot be
+         * moved if its expiration time is not less than the current time.
+         */
+        private final int[] functionsExpirationTimes;
 
         /**
          * The actual value of the time.
@@ -1554,111 +1729,156 @@ public final class TabuSearchCodePartitioner implements CodePartitioner {
         private int currentTime;
 
         private TabuList(int forbiddenSolutionsCount, int solutionExpirationTime,
-                    int functionExpirationTime) {
+                    int functionExpirationTime, int functionsCount) {
             checkArgument(forbiddenSolutionsCount > 0, "count of forbidden solutions must be positive");
             checkArgument(solutionExpirationTime > 0, "solution expiration time must be positive");
             checkArgument(functionExpirationTime > 0, "vertex expiration time must be positive");
             this.forbiddenSolutionsCount = forbiddenSolutionsCount;
             this.solutionExpirationTime = solutionExpirationTime;
             this.functionExpirationTime = functionExpirationTime;
-            this.forbiddenAllocations = new HashSet<>();
-            this.sortedForbiddenSolutions = TreeMultimap.create();
-            this.forbiddenSolutionsExpirationTimes = new NavigableInverseMap<>();
-            this.forbiddenFunctions = new NavigableInverseMap<>();
+            this.forbiddenAllocations = ArrayListMultimap.create();
+            this.sortedForbiddenSolutions = new TreeSet<>(new SolutionsOrderComparator());
+            this.forbiddenSolutionsQueue = new ArrayDeque<>();
+            this.forbiddenSolutionsExpirationTimes = new ArrayDeque<>();
+            this.functionsExpirationTimes = new int[functionsCount];
+            Arrays.fill(this.functionsExpirationTimes, Integer.MIN_VALUE);
             this.currentTime = 0;
         }
 
-        private boolean isAllowed(Map<String, String> allocation, Set<String> movedFunctions) {
-            checkNotNull(allocation, "allocation cannot be null");
-            checkNotNull(movedFunctions, "moved functions cannot be null");
-            return !forbiddenAllocations.contains(allocation)
-                    && Collections.disjoint(forbiddenFunctions.keySet(), movedFunctions);
+        private boolean isAllowed(MutableSolution solution, int movedFunction, int correctingFunction) {
+            checkNotNull(solution, "solution cannot be null");
+            return !isFunctionForbidden(movedFunction)
+                    && (correctingFunction == -1 || !isFunctionForbidden(correctingFunction))
+                    && !isAllocationForbidden(solution);
         }
 
-        private void incrementTime() {
-            ++currentTime;
-            removeExpiredSolutions();
-            removeExpiredFunctions();
+        private boolean isFunctionForbidden(int funId) {
+            return functionsExpirationTimes[funId] >= currentTime;
         }
 
-        private void removeExpiredSolutions() {
-            final List<Solution> solutionsForRemoval = new LinkedList<>();
-            final SortedMap<Integer, NavigableSet<Solution>> expiredSolutions =
-                    forbiddenSolutionsExpirationTimes.inverseMap().headMap(currentTime);
-
-            // Collect expired solutions
-            for (Map.Entry<Integer, NavigableSet<Solution>> expiredEntry : expiredSolutions.entrySet()) {
-                solutionsForRemoval.addAll(expiredEntry.getValue());
-            }
-
-            // Remove expired solutions
-            for (Solution expiredSolution : solutionsForRemoval) {
-                if (!forbiddenAllocations.remove(expiredSolution.getAllocation())) {
-                    throw new RuntimeException("allocation from an expired solution not contained in the set of allocations");
-                }
-                if (!sortedForbiddenSolutions.remove(expiredSolution.getNonBankedFunctionsCount(), expiredSolution)) {
-                    throw new RuntimeException("an expired solution not contained in the set of forbidden solutions");
-                }
-                if (forbiddenSolutionsExpirationTimes.remove(expiredSolution) == null) {
-                    throw new RuntimeException("an expired solution not contained in the map of forbidden solutions");
+        private boolean isAllocationForbidden(MutableSolution solution) {
+            for (Solution forbiddenSolution : forbiddenAllocations.get(solution.allocationHash)) {
+                if (solution.hasAllocationOf(forbiddenSolution)) {
+                    return true;
                 }
             }
+            return false;
         }
 
-        private void removeExpiredFunctions() {
-            final List<String> functionsForRemoval = new LinkedList<>();
-            final SortedMap<Integer, NavigableSet<String>> expiredFunctions =
-                    forbiddenFunctions.inverseMap().headMap(currentTime);
-
-            // Collect expired functions
-            for (Map.Entry<Integer, NavigableSet<String>> expiredEntry : expiredFunctions.entrySet()) {
-                functionsForRemoval.addAll(expiredEntry.getValue());
-            }
+        private void incrementTime() {
+            ++currentTime;
+            removeExpiredSolutions();
+        }
 
-            // Remove expired functions
-            for (String expiredFunction : functionsForRemoval) {
-                if (forbiddenFunctions.remove(expiredFunction) == null) {
-                    throw new RuntimeException("an expired function not contained in the map of forbidden functions");
+        private void removeExpiredSolutions() {
+            while (!forbiddenSolutionsQueue.isEmpty()
+                    && forbiddenSolutionsExpirationTimes.element() < currentTime) {
+                final Solution expiredSolution = forbiddenSolutionsQueue.remove();
+                forbiddenSolutionsExpirationTimes.remove();
+
+                // The solution could have been removed because of the limit
+                if (sortedForbiddenSolutions.remove(expiredSolution)) {
+                    removeForbiddenAllocation(expiredSolution);
                 }
             }
         }
 
-        private void update(Solution newForbiddenSolution, Set<String> newForbiddenFunctions) {
+        private void update(Solution newForbiddenSolution, int movedFunction, int correctingFunction) {
             checkNotNull(newForbiddenSolution, "solution cannot be null");
-            checkNotNull(newForbiddenFunctions, "moved functions cannot be null");
-            checkState(!forbiddenAllocations.contains(newForbiddenSolution.getAllocation()),
+            checkState(!sortedForbiddenSolutions.contains(newForbiddenSolution),
                     "the given solution is already forbidden");
-            checkState(Collections.disjoint(newForbiddenFunctions, forbiddenFunctions.keySet()),
+            checkState(!isFunctionForbidden(movedFunction) && (correctingFunction == -1
+                    || !isFunctionForbidden(correctingFunction)),
                     "one of the given functions is already forbidden");
 
             // Add forbidden functions
-            for (String newForbiddenFunction : newForbiddenFunctions) {
-                forbiddenFunctions.put(newForbiddenFunction,
-                        currentTime + functionExpirationTime);
+            functionsExpirationTimes[movedFunction] = currentTime + functionExpirationTime;
+            if (correctingFunction != -1) {
+                functionsExpirationTimes[correctingFunction] = currentTime + functionExpirationTime;
             }
 
             // Add the forbidden solution
-            forbiddenAllocations.add(newForbiddenSolution.getAllocation());
-            sortedForbiddenSolutions.put(newForbiddenSolution.getNonBankedFunctionsCount(),
-                    newForbiddenSolution);
-            forbiddenSolutionsExpirationTimes.put(newForbiddenSolution,
-                    currentTime + solutionExpirationTime);
+            forbiddenAllocations.put(newForbiddenSolution.getAllocationHash(), newForbiddenSolution);
+            sortedForbiddenSolutions.add(newForbiddenSolution);
+            forbiddenSolutionsQueue.add(newForbiddenSolution);
+            forbiddenSolutionsExpirationTimes.add(currentTime + solutionExpirationTime);
 
             /* Remove the worst solution if the count limit of forbidden
                solutions is exceeded. */
             if (sortedForbiddenSolutions.size() > forbiddenSolutionsCount) {
-                final Map.Entry<Integer, Solution> worstSolutionEntry = sortedForbiddenSolutions.entries().iterator().next();
-                sortedForbiddenSolutions.remove(worstSolutionEntry.getKey(), worstSolutionEntry.getValue());
-                if (!forbiddenAllocations.remove(worstSolutionEntry.getValue().getAllocation())) {
-                    throw new RuntimeException("allocation from superfluous solution is not contained in the set of forbidden allocations");
-                }
-                if (forbiddenSolutionsExpirationTimes.remove(worstSolutionEntry.getValue()) == null) {
-                    throw new RuntimeException("superfluous solution is absent in the map of forbidden solutions");
-                }
+                removeForbiddenAllocation(sortedForbiddenSolutions.pollFirst());
             }
             checkState(sortedForbiddenSolutions.size() <= forbiddenSolutionsCount,
                     "count of forbidden solutions exceeds the limit after removal of the superfluous solutions");
         }
+
+        private void removeForbiddenAllocation(Solution solution) {
+            if (!forbiddenAllocations.remove(solution.getAllocationHash(), solution)) {
+                throw new RuntimeException("allocation from a removed solution not contained in the set of allocations");
+            }
+        }
+    }
+
+    /**
+     * Holder of the best solution found by all searches. It is safe to use
+     * it by multiple threads.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private static final class BestSolutionHolder {
+        /**
+         * Count of non-banked functions in a solution that cannot be
+         * improved.
+         */
+        private final int optimalNonBankedFunctionsCount;
+
+        /**
+         * Comparator used to identify better solutions.
+         */
+        private final Comparator<Solution> solutionComparator;
+
+        /**
+         * The best solution and the index of the search that has found it.
+         */
+        private Solution bestSolution;
+        private int bestSearchIndex;
+
+        private BestSolutionHolder(Solution initialSolution, int optimalNonBankedFunctionsCount,
+                    Comparator<Solution> solutionComparator) {
+            checkNotNull(initialSolution, "initial solution cannot be null");
+            checkNotNull(solutionComparator, "solution comparator cannot be null");
+            this.optimalNonBankedFunctionsCount = optimalNonBankedFunctionsCount;
+            this.solutionComparator = solutionComparator;
+            this.bestSolution = initialSolution;
+            this.bestSearchIndex = 0;
+        }
+
+        /**
+         * Replace the best solution with the given one if it is better or if
+         * it is equally good and found by a search with a smaller index.
+         */
+        private synchronized void offer(Solution solution, int searchIndex) {
+            checkNotNull(solution, "solution cannot be null");
+            final int result = solutionComparator.compare(solution, bestSolution);
+            if (result > 0 || result == 0 && searchIndex < bestSearchIndex) {
+                bestSolution = solution;
+                bestSearchIndex = searchIndex;
+            }
+        }
+
+        /**
+         * Check if a solution that cannot be improved has been found by
+         * a search with index smaller than the given one. If so, the search
+         * with the given index cannot affect the result.
+         */
+        private synchronized boolean isOptimumFoundBefore(int searchIndex) {
+            return bestSolution.getNonBankedFunctionsCount() == optimalNonBankedFunctionsCount
+                    && bestSearchIndex < searchIndex;
+        }
+
+        private synchronized Solution getBestSolution() {
+            return bestSolution;
+        }
     }
 
     /**
@@ -1677,4 +1897,23 @@ public final class TabuSearchCodePartitioner implements CodePartitioner {
                     solution2.getNonBankedFunctionsCount());
         }
     }
+
+    /**
+     * Comparator that orders solutions by counts of non-banked functions and
+     * then by the natural ordering of solutions. Contrary to
+     * {@link SolutionComparator}, it is consistent with equals.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private static final class SolutionsOrderComparator implements Comparator<Solution> {
+        private final Comparator<Solution> solutionComparator = new SolutionComparator();
+
+        @Override
+        public int compare(Solution solution1, Solution solution2) {
+            final int result = solutionComparator.compare(solution1, solution2);
+            return result != 0
+                    ? result
+                    : solution1.compareTo(solution2);
+        }
+    }
 }
@@ -0,0 +1,589 @@
+package pl.edu.mimuw.nesc.codesize;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Range;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import pl.edu.mimuw.nesc.ast.gen.AttributeRef;
+import pl.edu.mimuw.nesc.ast.gen.Declaration;
+import pl.edu.mimuw.nesc.ast.gen.Declarator;
+import pl.edu.mimuw.nesc.ast.gen.EnumRef;
+import pl.edu.mimuw.nesc.ast.gen.Enumerator;
+import pl.edu.mimuw.nesc.ast.gen.FunctionDecl;
+import pl.edu.mimuw.nesc.ast.gen.FunctionDeclarator;
+import pl.edu.mimuw.nesc.ast.gen.IdentityVisitor;
+import pl.edu.mimuw.nesc.ast.gen.NxStructRef;
+import pl.edu.mimuw.nesc.ast.gen.NxUnionRef;
+import pl.edu.mimuw.nesc.ast.gen.StructRef;
+import pl.edu.mimuw.nesc.ast.gen.TagRef;
+import pl.edu.mimuw.nesc.ast.gen.UnionRef;
+import pl.edu.mimuw.nesc.ast.gen.VariableDecl;
+import pl.edu.mimuw.nesc.astutil.DeclaratorUtils;
+import pl.edu.mimuw.nesc.astwriting.ASTWriter;
+import pl.edu.mimuw.nesc.astwriting.CustomDeclarationsWriter;
+import pl.edu.mimuw.nesc.astwriting.WriteSettings;
+import pl.edu.mimuw.nesc.common.util.ProcessConsumer;
+import pl.edu.mimuw.nesc.external.ExternalConstants;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * <p>On-disk cache of estimated sizes of functions. Each entry is a file
+ * whose name is a key computed from:</p>
+ * <ul>
+ *     <li>the text of the function definition as it is written for the
+ *     estimation</li>
+ *     <li>texts of declarations from the header files included in the file
+ *     with the function that the function depends on, in both banked and
+ *     non-banked versions</li>
+ *     <li>the SDCC executable, its version, the memory model, parameters
+ *     passed to SDCC and the kind of the estimator</li>
+ * </ul>
+ * <p>A function depends on each header declaration that declares a name
+ * present in the text of the function and, transitively, on declarations
+ * that declare names present in texts of such declarations. Names of tags
+ * are not distinguished from other names, so the set can be larger than
+ * necessary but it is never smaller. Declarations that declare no names are
+ * taken into account for all functions. Thanks to that, an edit of
+ * a declaration invalidates only entries of functions that depend on it.</p>
+ * <p>An entry contains the lower and upper bound of the size of the function.
+ * Entries are never removed by the cache. It can be safely used by multiple
+ * threads and processes at once because entries are created atomically.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+final class EstimationCache {
+    /**
+     * Hash function used for computing keys.
+     */
+    private static final HashFunction HASH_FUNCTION = Hashing.sha1();
+
+    /**
+     * Directory with entries of the cache.
+     */
+    private final String directory;
+
+    /**
+     * Path to the SDCC executable whose version will be a part of keys.
+     */
+    private final String sdccExecutablePath;
+
+    /**
+     * Other settings of the estimation that affect sizes of functions.
+     */
+    private final ImmutableList<String> settings;
+
+    /**
+     * Hash of the settings and the version of SDCC. The object is absent if
+     * the cache has not been opened yet.
+     */
+    private Optional<HashCode> settingsHash;
+
+    /**
+     * Counters of found and missing entries.
+     */
+    private final AtomicInteger hitsCount;
+    private final AtomicInteger missesCount;
+
+    EstimationCache(String directory, String sdccExecutablePath, ImmutableList<String> settings) {
+        checkNotNull(directory, "directory cannot be null");
+        checkNotNull(sdccExecutablePath, "SDCC executable path cannot be null");
+        checkNotNull(settings, "settings cannot be null");
+        checkArgument(!directory.isEmpty(), "directory cannot be an empty string");
+
+        this.directory = directory;
+        this.sdccExecutablePath = sdccExecutablePath;
+        this.settings = settings;
+        this.settingsHash = Optional.absent();
+        this.hitsCount = new AtomicInteger(0);
+        this.missesCount = new AtomicInteger(0);
+    }
+
+    /**
+     * Create the directory of the cache if it does not exist and compute the
+     * hash of settings. SDCC is invoked to get its version. This method must
+     * be called before any other method of the cache.
+     *
+     * @throws EstimationProgramFailedException SDCC has failed when asked for
+     *                                          its version.
+     */
+    void open() throws EstimationProgramFailedException, InterruptedException, IOException {
+        if (settingsHash.isPresent()) {
+            return;
+        }
+
+        Files.createDirectories(Paths.get(directory));
+
+        final ProcessConsumer sdccProcessConsumer = new ProcessConsumer(
+                new ProcessBuilder(sdccExecutablePath, "--version")
+                        .redirectErrorStream(true)
+                        .start());
+        final int returnCode = sdccProcessConsumer.consume();
+        if (returnCode != 0) {
+            throw EstimationProgramFailedException.newInstance("SDCC", returnCode,
+                    sdccProcessConsumer.getProcessOutput());
+        }
+
+        final Hasher hasher = HASH_FUNCTION.newHasher();
+        putString(hasher, sdccExecutablePath);
+        hasher.putBytes(sdccProcessConsumer.getProcessOutput());
+        for (String setting : settings) {
+            putString(hasher, setting);
+        }
+        putString(hasher, ExternalConstants.getExternalDefines());
+
+        settingsHash = Optional.of(hasher.hash());
+    }
+
+    /**
+     * Look for sizes of given functions in the cache.
+     *
+     * @param functions Functions whose sizes are looked for.
+     * @param headerDeclarations Declarations written to the header files
+     *                           included in files with the functions by
+     *                           {@link CustomDeclarationsWriter} with forward
+     *                           declarations of functions.
+     * @param headerInlineFunctions Definitions of functions appended to the
+     *                              header files.
+     * @param writeSettings Settings used for writing the functions for the
+     *                      estimation.
+     * @return Result of the lookup that allows storing sizes of functions
+     *         missing in the cache.
+     */
+    Lookup lookup(List<FunctionDecl> functions, List<? extends Declaration> headerDeclarations,
+            List<FunctionDecl> headerInlineFunctions, WriteSettings writeSettings) throws IOException {
+        checkNotNull(functions, "functions cannot be null");
+        checkNotNull(headerDeclarations, "header declarations cannot be null");
+        checkNotNull(headerInlineFunctions, "header inline functions cannot be null");
+        checkNotNull(writeSettings, "write settings cannot be null");
+        checkState(settingsHash.isPresent(), "the cache has not been opened");
+
+        final HeaderIndex headerIndex = new HeaderIndex(headerDeclarations,
+                headerInlineFunctions, writeSettings);
+
+        final ImmutableMap.Builder<String, Range<Integer>> cachedSizesBuilder = ImmutableMap.builder();
+        final ImmutableList.Builder<FunctionDecl> missingFunctionsBuilder = ImmutableList.builder();
+        final ImmutableMap.Builder<String, HashCode> missingKeysBuilder = ImmutableMap.builder();
+
+        for (FunctionDecl function : functions) {
+            final String uniqueName = DeclaratorUtils.getUniqueName(function.getDeclarator()).get();
+            final byte[] functionText = writeDeclaration(function, writeSettings);
+            final Hasher keyHasher = HASH_FUNCTION.newHasher()
+                    .putBytes(settingsHash.get().asBytes())
+                    .putBytes(functionText);
+            headerIndex.putDependencies(keyHasher, functionText);
+            final HashCode key = keyHasher.hash();
+            final Optional<Range<Integer>> cachedSize = read(key);
+
+            if (cachedSize.isPresent()) {
+                cachedSizesBuilder.put(uniqueName, cachedSize.get());
+            } else {
+                missingFunctionsBuilder.add(function);
+                missingKeysBuilder.put(uniqueName, key);
+            }
+        }
+
+        final Lookup lookup = new Lookup(cachedSizesBuilder.build(), missingFunctionsBuilder.build(),
+                missingKeysBuilder.build());
+        hitsCount.addAndGet(lookup.cachedSizes.size());
+        missesCount.addAndGet(lookup.missingFunctions.size());
+        return lookup;
+    }
+
+    /**
+     * Save sizes of functions that have been missing during the given lookup.
+     *
+     * @param lookup Lookup performed earlier.
+     * @param sizes Map with estimated sizes of functions. It can contain sizes
+     *              of functions not missing during the lookup.
+     */
+    void store(Lookup lookup, Map<String, Range<Integer>> sizes) throws IOException {
+        checkNotNull(lookup, "lookup cannot be null");
+        checkNotNull(sizes, "sizes cannot be null");
+
+        for (Map.Entry<String, HashCode> missingKey : lookup.missingKeys.entrySet()) {
+            final Range<Integer> size = sizes.get(missingKey.getKey());
+            if (size != null) {
+                write(missingKey.getValue(), size);
+            }
+        }
+    }
+
+    /**
+     * Get the count of functions whose sizes have been found in the cache.
+     *
+     * @return Count of hits of the cache.
+     */
+    int getHitsCount() {
+        return hitsCount.get();
+    }
+
+    /**
+     * Get the count of functions whose sizes have not been found in the
+     * cache.
+     *
+     * @return Count of misses of the cache.
+     */
+    int getMissesCount() {
+        return missesCount.get();
+    }
+
+    private static byte[] writeDeclaration(Declaration declaration, WriteSettings writeSettings)
+                throws IOException {
+        final ByteArrayOutputStream byteOutStream = new ByteArrayOutputStream();
+        try (final ASTWriter writer = new ASTWriter(byteOutStream, writeSettings)) {
+            writer.write(declaration);
+        }
+        return byteOutStream.toByteArray();
+    }
+
+    private Path getEntryPath(HashCode key) {
+        final String keyText = key.toString();
+        return Paths.get(directory, keyText.substring(0, 2), keyText.substring(2));
+    }
+
+    private Optional<Range<Integer>> read(HashCode key) throws IOException {
+        final Path entryPath = getEntryPath(key);
+        if (!Files.isRegularFile(entryPath)) {
+            return Optional.absent();
+        }
+
+        final String[] bounds = new String(Files.readAllBytes(entryPath), Charsets.US_ASCII)
+                .trim().split(" ");
+        if (bounds.length != 2) {
+            return Optional.absent();
+        }
+
+        try {
+            final int lowerBound = Integer.parseInt(bounds[0]);
+            final int upperBound = Integer.parseInt(bounds[1]);
+            return lowerBound <= upperBound
+                    ? Optional.of(Range.closed(lowerBound, upperBound))
+                    : Optional.<Range<Integer>>absent();
+        } catch (NumberFormatException e) {
+            return Optional.absent();
+        }
+    }
+
+    private void write(HashCode key, Range<Integer> size) throws IOException {
+        final Path entryPath = getEntryPath(key);
+        Files.createDirectories(entryPath.getParent());
+
+        // Write to a temporary file first to make the entry appear atomically
+        final Path tempPath = Files.createTempFile(entryPath.getParent(), "entry", ".tmp");
+        try {
+            Files.write(tempPath, (size.lowerEndpoint() + " " + size.upperEndpoint() + "\n")
+                    .getBytes(Charsets.US_ASCII));
+            Files.move(tempPath, entryPath, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    private static void putString(Hasher hasher, String value) {
+        hasher.putInt(value.length());
+        hasher.putString(value, Charsets.UTF_8);
+    }
+
+    /**
+     * Add names of identifiers present in the given text to the given set.
+     * Keywords and parts of numbers are added, too, but it does not matter
+     * because they are not declared.
+     */
+    private static void addIdentifiers(byte[] text, Set<String> identifiers) {
+        int position = 0;
+
+        while (position < text.length) {
+            final char c = (char) text[position];
+            if (isIdentifierStart(c)) {
+                final int start = position;
+                while (position < text.length && isIdentifierPart((char) text[position])) {
+                    ++position;
+                }
+                identifiers.add(new String(text, start, position - start, Charsets.US_ASCII));
+            } else if (Character.isDigit(c)) {
+                // Skip the whole number, e.g. 0x1F or 10UL
+                while (position < text.length && isIdentifierPart((char) text[position])) {
+                    ++position;
+                }
+            } else {
+                ++position;
+            }
+        }
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || c >= '0' && c <= '9';
+    }
+
+    /**
+     * Index of declarations from the header files used for finding the
+     * declarations a function depends on. Each declaration is written once
+     * for all functions.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private static final class HeaderIndex {
+        /**
+         * Hashes of texts of declarations in the order of the headers.
+         */
+        private final List<HashCode> declarationsHashes = new ArrayList<>();
+
+        /**
+         * Names present in texts of declarations.
+         */
+        private final List<Set<String>> declarationsIdentifiers = new ArrayList<>();
+
+        /**
+         * Indices of declarations that declare the names.
+         */
+        private final ListMultimap<String, Integer> declaringDeclarations = ArrayListMultimap.create();
+
+        /**
+         * Indices of declarations that declare no names.
+         */
+        private final List<Integer> anonymousDeclarations = new ArrayList<>();
+
+        private HeaderIndex(List<? extends Declaration> headerDeclarations,
+                List<FunctionDecl> headerInlineFunctions, WriteSettings writeSettings)
+                throws IOException {
+            final CustomDeclarationsWriter nonbankedWriter = new CustomDeclarationsWriter(true,
+                    CustomDeclarationsWriter.Banking.DEFINED_NOT_BANKED, writeSettings);
+            final CustomDeclarationsWriter bankedWriter = new CustomDeclarationsWriter(true,
+                    CustomDeclarationsWriter.Banking.DEFINED_BANKED, writeSettings);
+
+            for (Declaration declaration : headerDeclarations) {
+                final ImmutableList<Declaration> declarationList = ImmutableList.of(declaration);
+                final ByteArrayOutputStream nonbankedText = new ByteArrayOutputStream();
+                final ByteArrayOutputStream bankedText = new ByteArrayOutputStream();
+                nonbankedWriter.write(declarationList, nonbankedText);
+                bankedWriter.write(declarationList, bankedText);
+                addDeclaration(declaration, nonbankedText.toByteArray(), bankedText.toByteArray());
+            }
+
+            for (FunctionDecl inlineFunction : headerInlineFunctions) {
+                final byte[] text = writeDeclaration(inlineFunction, writeSettings);
+                addDeclaration(inlineFunction, text, text);
+            }
+        }
+
+        private void addDeclaration(Declaration declaration, byte[] nonbankedText,
+                    byte[] bankedText) {
+            final int index = declarationsHashes.size();
+            declarationsHashes.add(HASH_FUNCTION.newHasher()
+                    .putInt(nonbankedText.length)
+                    .putBytes(nonbankedText)
+                    .putBytes(bankedText)
+                    .hash());
+
+            final Set<String> identifiers = new HashSet<>();
+            addIdentifiers(nonbankedText, identifiers);
+            declarationsIdentifiers.add(identifiers);
+
+            final DeclaredNamesVisitor namesVisitor = new DeclaredNamesVisitor();
+            declaration.traverse(namesVisitor, false);
+            if (namesVisitor.names.isEmpty()) {
+                anonymousDeclarations.add(index);
+            }
+            for (String name : namesVisitor.names) {
+                declaringDeclarations.put(name, index);
+            }
+        }
+
+        /**
+         * Put hashes of all declarations the function with given text
+         * depends on to the given hasher in the order of the headers.
+         */
+        private void putDependencies(Hasher hasher, byte[] functionText) {
+            final BitSet dependencies = new BitSet(declarationsHashes.size());
+            final Set<String> visitedNames = new HashSet<>();
+            final Queue<String> namesQueue = new ArrayDeque<>();
+
+            for (int index : anonymousDeclarations) {
+                dependencies.set(index);
+            }
+
+            final Set<String> functionIdentifiers = new HashSet<>();
+            addIdentifiers(functionText, functionIdentifiers);
+            visitedNames.addAll(functionIdentifiers);
+            namesQueue.addAll(functionIdentifiers);
+
+            while (!namesQueue.isEmpty()) {
+                for (int index : declaringDeclarations.get(namesQueue.remove())) {
+                    if (!dependencies.get(index)) {
+                        dependencies.set(index);
+                        for (String identifier : declarationsIdentifiers.get(index)) {
+                            if (visitedNames.add(identifier)) {
+                                namesQueue.add(identifier);
+                            }
+                        }
+                    }
+                }
+            }
+
+            for (int index = dependencies.nextSetBit(0); index >= 0;
+                    index = dependencies.nextSetBit(index + 1)) {
+                hasher.putBytes(declarationsHashes.get(index).asBytes());
+            }
+        }
+    }
+
+    /**
+     * Visitor that collects names declared by a declaration at the file
+     * scope: names of variables, functions, type definitions, enumeration
+     * constants and tags. Names of parameters and fields are not collected.
+     * The argument indicates if the visited node is a part of a list of
+     * parameters.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private static final class DeclaredNamesVisitor extends IdentityVisitor<Boolean> {
+        private final Set<String> names = new HashSet<>();
+
+        @Override
+        public Boolean visitFunctionDecl(FunctionDecl declaration, Boolean inParameters) {
+            addDeclaratorNames(declaration.getDeclarator());
+            return inParameters;
+        }
+
+        @Override
+        public Boolean visitVariableDecl(VariableDecl declaration, Boolean inParameters) {
+            if (!inParameters && declaration.getDeclarator().isPresent()) {
+                addDeclaratorNames(declaration.getDeclarator().get());
+            }
+            return inParameters;
+        }
+
+        @Override
+        public Boolean visitFunctionDeclarator(FunctionDeclarator declarator, Boolean inParameters) {
+            return true;
+        }
+
+        @Override
+        public Boolean visitEnumerator(Enumerator enumerator, Boolean inParameters) {
+            names.add(enumerator.getName());
+            if (enumerator.getUniqueName() != null) {
+                names.add(enumerator.getUniqueName());
+            }
+            return inParameters;
+        }
+
+        @Override
+        public Boolean visitStructRef(StructRef tagRef, Boolean inParameters) {
+            addTagNames(tagRef);
+            return inParameters;
+        }
+
+        @Override
+        public Boolean visitUnionRef(UnionRef tagRef, Boolean inParameters) {
+            addTagNames(tagRef);
+            return inParameters;
+        }
+
+        @Override
+        public Boolean visitEnumRef(EnumRef tagRef, Boolean inParameters) {
+            addTagNames(tagRef);
+            return inParameters;
+        }
+
+        @Override
+        public Boolean visitNxStructRef(NxStructRef tagRef, Boolean inParameters) {
+            addTagNames(tagRef);
+            return inParameters;
+        }
+
+        @Override
+        public Boolean visitNxUnionRef(NxUnionRef tagRef, Boolean inParameters) {
+            addTagNames(tagRef);
+            return inParameters;
+        }
+
+        @Override
+        public Boolean visitAttributeRef(AttributeRef tagRef, Boolean inParameters) {
+            addTagNames(tagRef);
+            return inParameters;
+        }
+
+        private void addDeclaratorNames(Declarator declarator) {
+            names.addAll(DeclaratorUtils.getDeclaratorName(declarator).asSet());
+            names.addAll(DeclaratorUtils.getUniqueName(declarator).asSet());
+        }
+
+        private void addTagNames(TagRef tagRef) {
+            if (tagRef.getName() != null) {
+                names.add(tagRef.getName().getName());
+            }
+            if (tagRef.getUniqueName() != null && tagRef.getUniqueName().isPresent()) {
+                names.add(tagRef.getUniqueName().get());
+            }
+        }
+    }
+
+
+    /**
+     * Result of looking for sizes of functions in the cache.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    static final class Lookup {
+        /**
+         * Sizes of functions found in the cache.
+         */
+        private final ImmutableMap<String, Range<Integer>> cachedSizes;
+
+        /**
+         * Functions whose sizes have not been found.
+         */
+        private final ImmutableList<FunctionDecl> missingFunctions;
+
+        /**
+         * Keys of functions whose sizes have not been found.
+         */
+        private final ImmutableMap<String, HashCode> missingKeys;
+
+        private Lookup(ImmutableMap<String, Range<Integer>> cachedSizes,
+                ImmutableList<FunctionDecl> missingFunctions,
+                ImmutableMap<String, HashCode> missingKeys) {
+            this.cachedSizes = cachedSizes;
+            this.missingFunctions = missingFunctions;
+            this.missingKeys = missingKeys;
+        }
+
+        ImmutableMap<String, Range<Integer>> getCachedSizes() {
+            return cachedSizes;
+        }
+
+        ImmutableList<FunctionDecl> getMissingFunctions() {
+            return missingFunctions;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package pl.edu.mimuw.nesc.codesize;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import pl.edu.mimuw.nesc.ast.gen.FunctionDecl;
+import pl.edu.mimuw.nesc.astutil.AstUtils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Utility methods for dividing functions whose sizes are estimated into
+ * units of work for estimation threads. The size of an AST of a function,
+ * i.e. the count of its nodes, is used as the estimated cost of compiling
+ * it.</p>
+ *
+ * <p>Units are ordered from the most expensive ones to make threads that
+ * take units in that order finish at similar times.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+final class EstimationUnits {
+    /**
+     * Count of units created for each thread if there are enough functions.
+     */
+    private static final int UNITS_PER_THREAD = 4;
+
+    /**
+     * Sort functions by sizes of their ASTs in descending order. The order of
+     * functions with equal sizes is preserved.
+     *
+     * @param functions Functions to sort.
+     * @return Newly created list with the given functions sorted by their
+     *         sizes.
+     */
+    static ImmutableList<FunctionDecl> sortBySize(List<FunctionDecl> functions) {
+        checkNotNull(functions, "functions cannot be null");
+
+        final List<SizedFunction> sizedFunctions = computeSizes(functions);
+        final ImmutableList.Builder<FunctionDecl> sortedFunctionsBuilder = ImmutableList.builder();
+        for (SizedFunction sizedFunction : sizedFunctions) {
+            sortedFunctionsBuilder.add(sizedFunction.function);
+        }
+
+        return sortedFunctionsBuilder.build();
+    }
+
+    /**
+     * Divide given functions into units of similar sizes. Each function
+     * bigger than the size of a unit forms a separate unit and smaller
+     * functions are grouped together.
+     *
+     * @param functions Functions to divide.
+     * @param threadsCount Count of threads that will estimate the units.
+     * @return List with units ordered by their sizes in descending order.
+     */
+    static ImmutableList<ImmutableList<FunctionDecl>> divide(List<FunctionDecl> functions,
+                int threadsCount) {
+        checkNotNull(functions, "functions cannot be null");
+        checkArgument(threadsCount > 0, "count of threads must be positive");
+
+        final List<SizedFunction> sizedFunctions = computeSizes(functions);
+        long totalSize = 0L;
+        for (SizedFunction sizedFunction : sizedFunctions) {
+            totalSize += sizedFunction.size;
+        }
+        final long unitSize = Math.max(1L, totalSize / ((long) threadsCount * UNITS_PER_THREAD));
+
+        // Functions are sorted so units are created in the descending order of sizes
+        final ImmutableList.Builder<ImmutableList<FunctionDecl>> unitsBuilder = ImmutableList.builder();
+        ImmutableList.Builder<FunctionDecl> currentUnitBuilder = ImmutableList.builder();
+        long currentUnitSize = 0L;
+
+        for (SizedFunction sizedFunction : sizedFunctions) {
+            currentUnitBuilder.add(sizedFunction.function);
+            currentUnitSize += sizedFunction.size;
+
+            if (currentUnitSize >= unitSize) {
+                unitsBuilder.add(currentUnitBuilder.build());
+                currentUnitBuilder = ImmutableList.builder();
+                currentUnitSize = 0L;
+            }
+        }
+
+        final ImmutableList<FunctionDecl> lastUnit = currentUnitBuilder.build();
+        if (!lastUnit.isEmpty()) {
+            unitsBuilder.add(lastUnit);
+        }
+
+        return unitsBuilder.build();
+    }
+
+    private static List<SizedFunction> computeSizes(List<FunctionDecl> functions) {
+        final List<SizedFunction> sizedFunctions = new ArrayList<>();
+        for (FunctionDecl function : functions) {
+            sizedFunctions.add(new SizedFunction(function,
+                    AstUtils.countNodes(ImmutableList.of(function))));
+        }
+
+        Collections.sort(sizedFunctions, new Comparator<SizedFunction>() {
+            @Override
+            public int compare(SizedFunction sizedFunction1, SizedFunction sizedFunction2) {
+                return Integer.compare(sizedFunction2.size, sizedFunction1.size);
+            }
+        });
+
+        return sizedFunctions;
+    }
+
+    /**
+     * Private constructor to prevent instantiating this class.
+     */
+    private EstimationUnits() {
+    }
+
+    /**
+     * Function with the size of its AST.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private static final class SizedFunction {
+        private final FunctionDecl function;
+        private final int size;
+
+        private SizedFunction(FunctionDecl function, int size) {
+            this.function = function;
+            this.size = size;
+        }
+    }
+}
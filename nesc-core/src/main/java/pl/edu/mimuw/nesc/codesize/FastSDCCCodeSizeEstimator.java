@@ -8,15 +8,23 @@ import com.google.common.collect.Range;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import pl.edu.mimuw.nesc.ast.RID;
 import pl.edu.mimuw.nesc.ast.gen.Declaration;
 import pl.edu.mimuw.nesc.ast.gen.FunctionDecl;
 import pl.edu.mimuw.nesc.ast.gen.TypeElement;
+import pl.edu.mimuw.nesc.astutil.DeclaratorUtils;
 import pl.edu.mimuw.nesc.astutil.TypeElementUtils;
 import pl.edu.mimuw.nesc.astutil.TypeElementsAdjuster;
 import pl.edu.mimuw.nesc.astutil.TypeElementsPreserver;
@@ -28,11 +36,22 @@ import pl.edu.mimuw.nesc.external.ExternalConstants;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
- * SDCC code size estimator that estimates sizes of multiple functions
+ * <p>SDCC code size estimator that estimates sizes of multiple functions
  * simultaneously which is significantly faster than estimation of a single
- * function at once.
+ * function at once.</p>
+ *
+ * <p>Functions are divided into shards that are estimated by multiple
+ * threads. Each thread uses its own subdirectory of the temporary directory
+ * and invokes SDCC for the non-banked and banked variant of a shard
+ * concurrently. If SDCC fails for a shard, the shard is divided into two
+ * halves that are estimated independently. The estimation fails if SDCC
+ * fails for a single function.</p>
+ *
+ * <p>If a cache is given, SDCC is invoked only for functions whose sizes
+ * are not found in it and the estimated sizes are saved in the cache.</p>
  *
  * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
  */
@@ -49,22 +68,35 @@ final class FastSDCCCodeSizeEstimator implements CodeSizeEstimator {
     private static final String NAME_BANKED_HEADER = "banked_decls.h";
 
     /**
-     * Name of the file with functions whose sizes are estimated that will be
-     * created.
+     * Names of files with functions whose sizes are estimated that will be
+     * created in the directory of each thread.
      */
-    private static final String NAME_CODE_FILE = "fun.c";
+    private static final String NAME_NONBANKED_CODE_FILE = "fun-nonbanked.c";
+    private static final String NAME_BANKED_CODE_FILE = "fun-banked.c";
 
     /**
-     * Name of the file created as the result of compilation by SDCC with
+     * Names of files created as the result of compilation by SDCC with
      * functions sizes.
      */
-    private static final String NAME_REL_FILE = "fun.rel";
+    private static final String NAME_NONBANKED_REL_FILE = "fun-nonbanked.rel";
+    private static final String NAME_BANKED_REL_FILE = "fun-banked.rel";
+
+    /**
+     * Prefix of the name of the subdirectory of the temporary directory used
+     * by a single thread.
+     */
+    private static final String PREFIX_THREAD_DIRECTORY = "fast-estimate-";
 
     /**
      * Name of the code segment with functions whose sizes are estimated.
      */
     private static final String NAME_CODE_SEGMENT = "CODESEG";
 
+    /**
+     * Shard that signals a thread that it should terminate.
+     */
+    private static final Shard TERMINATION_SHARD = new Shard(0, 0);
+
     /**
      * Memory model that is used for estimating sizes of functions. If the
      * object is absent, then the default model implied by SDCC is used.
@@ -86,6 +118,11 @@ final class FastSDCCCodeSizeEstimator implements CodeSizeEstimator {
      */
     private final String tempDirectory;
 
+    /**
+     * Count of threads to use for the estimation.
+     */
+    private final int threadsCount;
+
     /**
      * Settings for writing AST nodes for the estimation.
      */
@@ -102,30 +139,41 @@ final class FastSDCCCodeSizeEstimator implements CodeSizeEstimator {
     private final ImmutableList<FunctionDecl> functions;
 
     /**
-     * Index of the next function in {@link FastSDCCCodeSizeEstimator#functions}
-     * whose size is to be estimated.
+     * Functions whose sizes are actually estimated by invoking SDCC, i.e.
+     * functions whose sizes have not been found in the cache.
      */
-    private int nextFunIndex;
+    private ImmutableList<FunctionDecl> pendingFunctions;
 
     /**
-     * Count of functions whose sizes are estimated simultaneously.
+     * Cache of sizes of functions consulted before the estimation.
      */
-    private int estimationUnit;
+    private final Optional<EstimationCache> cache;
 
     /**
-     * Object responsible for preserving the state of AST nodes.
+     * Queue with shards that are waiting for the estimation.
      */
-    private final TypeElementsPreserver specifiersPreserver;
+    private final BlockingDeque<Shard> shardsQueue;
+
+    /**
+     * Count of shards that have been added to the queue but not estimated
+     * yet.
+     */
+    private final AtomicInteger pendingShardsCount;
 
     /**
-     * Object used for invoking SDCC.
+     * Sizes of functions estimated so far.
      */
-    private final ProcessBuilder sdccProcessBuilder;
+    private final ConcurrentMap<String, Range<Integer>> functionsSizes;
 
     /**
-     * Object for reading .REL files and computing sizes of functions.
+     * The first exception thrown by an estimating thread.
      */
-    private final FunctionsSizesResolver functionsSizesResolver;
+    private final AtomicReference<Exception> failure;
+
+    /**
+     * Object responsible for preserving the state of AST nodes.
+     */
+    private final TypeElementsPreserver specifiersPreserver;
 
     /**
      * Result of the estimation operation.
@@ -139,7 +187,9 @@ final class FastSDCCCodeSizeEstimator implements CodeSizeEstimator {
             ImmutableList<String> sdccParameters,
             Optional<SDCCMemoryModel> memoryModel,
             String tempDirectory,
-            WriteSettings writeSettings
+            int threadsCount,
+            WriteSettings writeSettings,
+            Optional<EstimationCache> cache
     ) {
         checkNotNull(declarations, "declarations cannot be null");
         checkNotNull(functions, "functions cannot be null");
@@ -148,21 +198,26 @@ final class FastSDCCCodeSizeEstimator implements CodeSizeEstimator {
         checkNotNull(memoryModel, "SDCC memory model cannot be null");
         checkNotNull(tempDirectory, "temporary directory cannot be null");
         checkNotNull(writeSettings, "write settings cannot be null");
+        checkNotNull(cache, "cache cannot be null");
         checkArgument(!sdccExecutablePath.isEmpty(), "SDCC executable path cannot be an empty string");
         checkArgument(!tempDirectory.isEmpty(), "temporary directory cannot be null");
+        checkArgument(threadsCount > 0, "threads count must be positive");
 
         this.allDeclarations = declarations;
         this.sdccExecutablePath = sdccExecutablePath;
         this.sdccParameters = sdccParameters;
         this.memoryModel = memoryModel;
         this.tempDirectory = tempDirectory;
+        this.threadsCount = threadsCount;
         this.writeSettings = writeSettings;
         this.functions = functions;
-        this.nextFunIndex = 0;
-        this.estimationUnit = this.functions.size();
+        this.pendingFunctions = functions;
+        this.cache = cache;
+        this.shardsQueue = new LinkedBlockingDeque<>();
+        this.pendingShardsCount = new AtomicInteger(0);
+        this.functionsSizes = new ConcurrentHashMap<>();
+        this.failure = new AtomicReference<>();
         this.specifiersPreserver = new TypeElementsPreserver(new FunctionSpecifiersAdjuster());
-        this.sdccProcessBuilder = new ProcessBuilder();
-        this.functionsSizesResolver = new FunctionsSizesResolver(NAME_CODE_SEGMENT);
         this.estimation = Optional.absent();
     }
 
@@ -174,10 +229,12 @@ final class FastSDCCCodeSizeEstimator implements CodeSizeEstimator {
         }
 
         prepareDeclarations();
-        createHeaderFiles();
-        configureProcessBuilder();
-        performEstimation();
-        restoreDeclarations();
+        try {
+            createHeaderFiles();
+            performEstimation();
+        } finally {
+            restoreDeclarations();
+        }
 
         return estimation.get();
     }
@@ -213,109 +270,116 @@ final class FastSDCCCodeSizeEstimator implements CodeSizeEstimator {
         declsWriter.write(allDeclarations);
     }
 
-    private void configureProcessBuilder() {
-        // Create SDCC command invocation
-        final List<String> sdccCmdList = new ArrayList<>();
-        sdccCmdList.add(sdccExecutablePath);
-        if (memoryModel.isPresent()) {
-            sdccCmdList.add(memoryModel.get().getOption());
+    private void performEstimation() throws EstimationProgramFailedException,
+                InterruptedException, IOException {
+        final Optional<EstimationCache.Lookup> lookup = lookupCachedSizes();
+        addInitialShards();
+
+        // Create and start threads
+        final Thread[] threads = new Thread[this.threadsCount - 1];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(new EstimatingRunnable(i + 1), "fast-estimate-thread-" + (i + 1));
+            threads[i].start();
+        }
+
+        // One of the estimating threads is the main thread
+        new EstimatingRunnable(this.threadsCount).run();
+
+        // Wait for all threads to finish
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        rethrowFailure();
+
+        if (lookup.isPresent()) {
+            cache.get().store(lookup.get(), functionsSizes);
+            functionsSizes.putAll(lookup.get().getCachedSizes());
         }
-        sdccCmdList.add("-c");
-        sdccCmdList.add("-mmcs51");
-        sdccCmdList.addAll(sdccParameters);
-        sdccCmdList.add(Paths.get(tempDirectory, NAME_CODE_FILE).toString());
-
-        // Update the builder
-        this.sdccProcessBuilder.command(sdccCmdList)
-                .directory(new File(tempDirectory))
-                .redirectErrorStream(true);
+
+        estimation = Optional.of(createResultEstimation());
     }
 
-    private void performEstimation() throws EstimationProgramFailedException,
+    private Optional<EstimationCache.Lookup> lookupCachedSizes() throws EstimationProgramFailedException,
                 InterruptedException, IOException {
-        final CodeSizeEstimation.Builder estimationBuilder =
-                CodeSizeEstimation.builder();
-
-        while (nextFunIndex < functions.size()) {
-            runSDCC(false);
-            final ImmutableMap<String, Integer> lowerBounds = determineFunctionsSizes();
-            runSDCC(true);
-            final ImmutableMap<String, Integer> upperBounds = determineFunctionsSizes();
-            accumulateSizes(estimationBuilder, lowerBounds, upperBounds);
-            nextFunIndex += estimationUnit;
+        if (!cache.isPresent()) {
+            pendingFunctions = functions;
+            return Optional.absent();
         }
 
-        estimation = Optional.of(estimationBuilder.build());
+        cache.get().open();
+        final EstimationCache.Lookup lookup = cache.get().lookup(functions, allDeclarations,
+                ImmutableList.<FunctionDecl>of(), writeSettings);
+        pendingFunctions = lookup.getMissingFunctions();
+        return Optional.of(lookup);
     }
 
-    private void runSDCC(boolean isBanked) throws EstimationProgramFailedException,
-                IOException, InterruptedException {
-        final CustomDeclarationsWriter.Banking banking = isBanked
-                ? CustomDeclarationsWriter.Banking.DEFINED_BANKED
-                : CustomDeclarationsWriter.Banking.DEFINED_NOT_BANKED;
-        final String includedHeader = isBanked
-                ? NAME_BANKED_HEADER
-                : NAME_NONBANKED_HEADER;
-        final CustomDeclarationsWriter declsWriter = new CustomDeclarationsWriter(
-                Paths.get(tempDirectory, NAME_CODE_FILE).toString(),
-                false,
-                banking,
-                writeSettings
-        );
+    private void addInitialShards() {
+        shardsQueue.clear();
+        functionsSizes.clear();
+        failure.set(null);
 
-        int returnCode;
-        int initialEstimationUnit;
-        ProcessConsumer sdccProcessConsumer;
+        if (pendingFunctions.isEmpty()) {
+            terminateThreads();
+            return;
+        }
 
-        do {
-            initialEstimationUnit = estimationUnit;
+        final int shardsCount = Math.min(threadsCount, pendingFunctions.size());
+        final int functionsPerShard = pendingFunctions.size() / shardsCount;
+        int remainderFunctionsCount = pendingFunctions.size() % shardsCount;
+        int startIndex = 0;
 
-            // Write declarations to file
-            final int endIndex = Math.min(nextFunIndex + estimationUnit, functions.size());
-            declsWriter.setPrependedText(Optional.of("#include \"" + includedHeader
-                    + "\"\n#pragma codeseg " + NAME_CODE_SEGMENT + "\n\n"));
-            declsWriter.write(functions.subList(nextFunIndex, endIndex));
+        pendingShardsCount.set(shardsCount);
 
-            // Run SDCC
-            sdccProcessConsumer = new ProcessConsumer(sdccProcessBuilder.start());
-            returnCode = sdccProcessConsumer.consume();
-            if (returnCode != 0) {
-                estimationUnit = Math.max(estimationUnit / 2, 1);
+        while (startIndex < pendingFunctions.size()) {
+            int endIndex = startIndex + functionsPerShard;
+            if (remainderFunctionsCount > 0) {
+                ++endIndex;
+                --remainderFunctionsCount;
             }
-        } while (returnCode != 0 && initialEstimationUnit != 1);
 
-        if (returnCode != 0) {
-            throw EstimationProgramFailedException.newInstance("SDCC", returnCode,
-                    sdccProcessConsumer.getProcessOutput());
+            shardsQueue.addLast(new Shard(startIndex, endIndex));
+            startIndex = endIndex;
         }
     }
 
-    private ImmutableMap<String, Integer> determineFunctionsSizes() throws FileNotFoundException {
-        return functionsSizesResolver.resolve(Paths.get(tempDirectory, NAME_REL_FILE).toString());
+    private void terminateThreads() {
+        for (int i = 0; i < threadsCount; ++i) {
+            shardsQueue.addFirst(TERMINATION_SHARD);
+        }
     }
 
-    private void accumulateSizes(CodeSizeEstimation.Builder estimationBuilder,
-                ImmutableMap<String, Integer> lowerBounds, ImmutableMap<String, Integer> upperBounds) {
-        if (lowerBounds.size() != upperBounds.size()) {
-            throw new RuntimeException("size of lower bounds map " + lowerBounds.size() +
-                    "differs from the size of the upper bounds map " + upperBounds.size());
-        } else if (lowerBounds.size() != estimationUnit
-                && lowerBounds.size() != functions.size() - nextFunIndex) {
-            throw new RuntimeException("actual size of maps with lower and upper bounds "
-                    + lowerBounds.size() + " differs from the estimation unit "
-                    + estimationUnit + " and from the count of all remaining functions "
-                    + (functions.size() - nextFunIndex));
+    private void rethrowFailure() throws EstimationProgramFailedException,
+                InterruptedException, IOException {
+        final Exception exception = failure.get();
+
+        if (exception == null) {
+            return;
+        } else if (exception instanceof EstimationProgramFailedException) {
+            throw (EstimationProgramFailedException) exception;
+        } else if (exception instanceof InterruptedException) {
+            throw (InterruptedException) exception;
+        } else if (exception instanceof IOException) {
+            throw (IOException) exception;
+        } else if (exception instanceof RuntimeException) {
+            throw (RuntimeException) exception;
+        } else {
+            throw new RuntimeException("estimation operation failed", exception);
         }
+    }
 
-        for (Map.Entry<String, Integer> lowerBoundEntry : lowerBounds.entrySet()) {
-            if (!upperBounds.containsKey(lowerBoundEntry.getKey())) {
-                throw new RuntimeException("cannot find entry in the upper bounds map for function '"
-                        + lowerBoundEntry.getKey() + "'");
-            }
+    private CodeSizeEstimation createResultEstimation() {
+        checkState(functionsSizes.size() == functions.size(),
+                "some estimation operations have failed");
 
-            estimationBuilder.putFunctionSize(lowerBoundEntry.getKey(), Range.closed(
-                    lowerBoundEntry.getValue(), upperBounds.get(lowerBoundEntry.getKey())));
+        // Add sizes in the order of functions to make the result deterministic
+        final CodeSizeEstimation.Builder estimationBuilder = CodeSizeEstimation.builder();
+        for (FunctionDecl function : functions) {
+            final String uniqueName = DeclaratorUtils.getUniqueName(function.getDeclarator()).get();
+            estimationBuilder.putFunctionSize(uniqueName, functionsSizes.get(uniqueName));
         }
+
+        return estimationBuilder.build();
     }
 
     private void restoreDeclarations() {
@@ -344,4 +408,166 @@ final class FastSDCCCodeSizeEstimator implements CodeSizeEstimator {
             }
         }
     }
+
+    /**
+     * Code of a thread that estimates sizes of functions from shards taken
+     * from the queue.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private final class EstimatingRunnable implements Runnable {
+        /**
+         * Directory used only by this thread.
+         */
+        private final String threadDirectory;
+
+        /**
+         * Builders for SDCC processes that compile the non-banked and banked
+         * variant of a shard.
+         */
+        private final ProcessBuilder nonbankedProcessBuilder;
+        private final ProcessBuilder bankedProcessBuilder;
+
+        /**
+         * Object for reading .REL files and computing sizes of functions.
+         */
+        private final FunctionsSizesResolver functionsSizesResolver;
+
+        private EstimatingRunnable(int id) {
+            checkArgument(id > 0, "identifier must be positive");
+
+            this.threadDirectory = Paths.get(tempDirectory, PREFIX_THREAD_DIRECTORY + id).toString();
+            this.nonbankedProcessBuilder = newSDCCProcessBuilder(NAME_NONBANKED_CODE_FILE);
+            this.bankedProcessBuilder = newSDCCProcessBuilder(NAME_BANKED_CODE_FILE);
+            this.functionsSizesResolver = new FunctionsSizesResolver(NAME_CODE_SEGMENT);
+        }
+
+        private ProcessBuilder newSDCCProcessBuilder(String codeFileName) {
+            // Create SDCC command invocation
+            final List<String> sdccCmdList = new ArrayList<>();
+            sdccCmdList.add(sdccExecutablePath);
+            if (memoryModel.isPresent()) {
+                sdccCmdList.add(memoryModel.get().getOption());
+            }
+            sdccCmdList.add("-c");
+            sdccCmdList.add("-mmcs51");
+            sdccCmdList.addAll(sdccParameters);
+            sdccCmdList.add(Paths.get(threadDirectory, codeFileName).toString());
+
+            return new ProcessBuilder(sdccCmdList)
+                    .directory(new File(threadDirectory))
+                    .redirectErrorStream(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                Files.createDirectories(Paths.get(threadDirectory));
+
+                for (Shard shard = shardsQueue.take(); shard != TERMINATION_SHARD;
+                        shard = shardsQueue.take()) {
+                    estimate(shard);
+                }
+            } catch (Exception e) {
+                // Save the exception and terminate all threads
+                if (failure.compareAndSet(null, e)) {
+                    terminateThreads();
+                }
+            }
+        }
+
+        private void estimate(Shard shard) throws EstimationProgramFailedException,
+                    InterruptedException, IOException {
+            // Write both variants of the shard
+            writeCodeFile(shard, NAME_NONBANKED_CODE_FILE, NAME_NONBANKED_HEADER,
+                    CustomDeclarationsWriter.Banking.DEFINED_NOT_BANKED);
+            writeCodeFile(shard, NAME_BANKED_CODE_FILE, NAME_BANKED_HEADER,
+                    CustomDeclarationsWriter.Banking.DEFINED_BANKED);
+
+            // Run SDCC for both variants at once
+            final ProcessConsumer nonbankedConsumer = new ProcessConsumer(nonbankedProcessBuilder.start());
+            final ProcessConsumer bankedConsumer = new ProcessConsumer(bankedProcessBuilder.start());
+            final int nonbankedReturnCode = nonbankedConsumer.consume();
+            final int bankedReturnCode = bankedConsumer.consume();
+
+            if (nonbankedReturnCode == 0 && bankedReturnCode == 0) {
+                accumulateSizes(shard, determineFunctionsSizes(NAME_NONBANKED_REL_FILE),
+                        determineFunctionsSizes(NAME_BANKED_REL_FILE));
+                if (pendingShardsCount.decrementAndGet() == 0) {
+                    terminateThreads();
+                }
+            } else if (shard.size() > 1) {
+                // Estimate both halves independently
+                final int middleIndex = shard.startIndex + shard.size() / 2;
+                pendingShardsCount.incrementAndGet();
+                shardsQueue.addFirst(new Shard(middleIndex, shard.endIndex));
+                shardsQueue.addFirst(new Shard(shard.startIndex, middleIndex));
+            } else if (nonbankedReturnCode != 0) {
+                throw EstimationProgramFailedException.newInstance("SDCC", nonbankedReturnCode,
+                        nonbankedConsumer.getProcessOutput());
+            } else {
+                throw EstimationProgramFailedException.newInstance("SDCC", bankedReturnCode,
+                        bankedConsumer.getProcessOutput());
+            }
+        }
+
+        private void writeCodeFile(Shard shard, String codeFileName, String includedHeader,
+                    CustomDeclarationsWriter.Banking banking) throws IOException {
+            final CustomDeclarationsWriter declsWriter = new CustomDeclarationsWriter(
+                    Paths.get(threadDirectory, codeFileName).toString(),
+                    false,
+                    banking,
+                    writeSettings
+            );
+            declsWriter.setPrependedText(Optional.of("#include \"../" + includedHeader
+                    + "\"\n#pragma codeseg " + NAME_CODE_SEGMENT + "\n\n"));
+            declsWriter.write(pendingFunctions.subList(shard.startIndex, shard.endIndex));
+        }
+
+        private ImmutableMap<String, Integer> determineFunctionsSizes(String relFileName)
+                    throws FileNotFoundException {
+            return functionsSizesResolver.resolve(Paths.get(threadDirectory, relFileName).toString());
+        }
+
+        private void accumulateSizes(Shard shard, ImmutableMap<String, Integer> lowerBounds,
+                    ImmutableMap<String, Integer> upperBounds) {
+            if (lowerBounds.size() != upperBounds.size()) {
+                throw new RuntimeException("size of lower bounds map " + lowerBounds.size() +
+                        " differs from the size of the upper bounds map " + upperBounds.size());
+            } else if (lowerBounds.size() != shard.size()) {
+                throw new RuntimeException("actual size of maps with lower and upper bounds "
+                        + lowerBounds.size() + " differs from the size of the shard "
+                        + shard.size());
+            }
+
+            for (Map.Entry<String, Integer> lowerBoundEntry : lowerBounds.entrySet()) {
+                if (!upperBounds.containsKey(lowerBoundEntry.getKey())) {
+                    throw new RuntimeException("cannot find entry in the upper bounds map for function '"
+                            + lowerBoundEntry.getKey() + "'");
+                }
+
+                functionsSizes.put(lowerBoundEntry.getKey(), Range.closed(
+                        lowerBoundEntry.getValue(), upperBounds.get(lowerBoundEntry.getKey())));
+            }
+        }
+    }
+
+    /**
+     * Range of indices of functions that are estimated together.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private static final class Shard {
+        private final int startIndex;
+        private final int endIndex;
+
+        private Shard(int startIndex, int endIndex) {
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+        }
+
+        private int size() {
+            return endIndex - startIndex;
+        }
+    }
 }
@@ -19,7 +19,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
 import pl.edu.mimuw.nesc.ast.RID;
 import pl.edu.mimuw.nesc.ast.gen.DataDecl;
@@ -161,14 +163,21 @@ final class InliningSDCCCodeSizeEstimator implements CodeSizeEstimator {
     private ImmutableList<Thread> threads;
 
     /**
-     * Queue that contains requests to the threads.
+     * Deque that contains requests to the threads. Idle threads take requests
+     * from its head. Requests for parts of a chunk that could not be
+     * estimated are added at the head.
      */
-    private final BlockingQueue<Request> requestsQueue;
+    private final BlockingDeque<Request> requestsQueue;
 
     /**
      * Queue for responses coming from threads.
      */
     private final BlockingQueue<Response> responsesQueue;
+
+    /**
+     * Cache of sizes of functions consulted before each estimation of chunks.
+     */
+    private final Optional<EstimationCache> cache;
     /**
      * Result of the estimation operation.
      */
@@ -186,7 +195,8 @@ final class InliningSDCCCodeSizeEstimator implements CodeSizeEstimator {
             int threadsCount,
             WriteSettings writeSettings,
             boolean isInlineRelaxed,
-            int maximumInlineFunSize
+            int maximumInlineFunSize,
+            Optional<EstimationCache> cache
     ) {
         checkNotNull(declarations, "declarations cannot be null");
         checkNotNull(functions, "functions cannot be null");
@@ -197,6 +207,7 @@ final class InliningSDCCCodeSizeEstimator implements CodeSizeEstimator {
         checkNotNull(memoryModel, "memory model cannot be null");
         checkNotNull(tempDirectory, "temporary directory cannot be null");
         checkNotNull(writeSettings, "write settings cannot be null");
+        checkNotNull(cache, "cache cannot be null");
         checkArgument(!sdccExecutablePath.isEmpty(), "SDCC executable path cannot be an empty string");
         checkArgument(!sdasExecutablePath.isEmpty(), "SDAS executable path cannot be an empty string");
         checkArgument(!tempDirectory.isEmpty(), "temporary directory cannot be an empty string");
@@ -221,8 +232,9 @@ final class InliningSDCCCodeSizeEstimator implements CodeSizeEstimator {
         this.inlineFunctionsNames = new HashSet<>();
         this.astStatePreserver = new TypeElementsPreserver(new FunctionSpecifiersAdjuster());
         this.threads = ImmutableList.of();
-        this.requestsQueue = new LinkedBlockingQueue<>();
+        this.requestsQueue = new LinkedBlockingDeque<>();
         this.responsesQueue = new LinkedBlockingQueue<>();
+        this.cache = cache;
         this.estimation = Optional.absent();
     }
 
@@ -237,21 +249,22 @@ final class InliningSDCCCodeSizeEstimator implements CodeSizeEstimator {
         addInitialInlineFunctionsNames();
         createFunctionsLists();
 
-        int initialInlineFunctionsCount;
+        ImmutableList<String> newInlineFunctions;
         final Map<String, Range<Integer>> currentEstimation = new HashMap<>();
 
+        /* After the first round only functions that call newly inline
+           functions, directly or through other inline functions, are
+           estimated again. Sizes of remaining functions are reused from
+           previous rounds because they cannot change. */
         do {
-            initialInlineFunctionsCount = inlineFunctionsNames.size();
-
             prepareDeclarations();
             createHeaderFiles();
             final ImmutableMap<String, Range<Integer>> estimationDelta =
                     performEstimation();
             currentEstimation.putAll(estimationDelta);
-            final ImmutableList<String> newInlineFunctions =
-                    updateInlineFunctions(currentEstimation);
+            newInlineFunctions = updateInlineFunctions(currentEstimation);
             updateFunctionsLists(newInlineFunctions);
-        } while (initialInlineFunctionsCount != inlineFunctionsNames.size());
+        } while (!newInlineFunctions.isEmpty() && !normalFunctions.isEmpty());
 
         restoreDeclarations();
         terminateThreads();
@@ -413,39 +426,51 @@ final class InliningSDCCCodeSizeEstimator implements CodeSizeEstimator {
     }
 
     private ImmutableMap<String, Range<Integer>> performEstimation()
-                throws EstimationProgramFailedException, InterruptedException {
-        final int adjustedThreadsCount = threadsCount % 2 == 0
-                ? threadsCount / 2
-                : (threadsCount + 1) / 2;
-        final int functionsPerThread = normalFunctions.size() / adjustedThreadsCount;
-        int remainderFunctionsCount = normalFunctions.size() % adjustedThreadsCount;
-        int startIndex = 0;
-        int requestsCount = 0;
-
-        // Add requests for threads
-        while (startIndex < normalFunctions.size()) {
-            int endIndex = startIndex + functionsPerThread;
-            if (remainderFunctionsCount > 0) {
-                ++endIndex;
-                --remainderFunctionsCount;
-            }
-
-            final ImmutableList<FunctionDecl> functionsChunk =
-                    normalFunctions.subList(startIndex, endIndex);
-            requestsQueue.add(new EstimateRequest(functionsChunk, true));
-            requestsQueue.add(new EstimateRequest(functionsChunk, false));
-            requestsCount += 2;
-
-            startIndex = endIndex;
+                throws EstimationProgramFailedException, InterruptedException, IOException {
+        // Functions whose sizes are in the cache are not estimated again
+        final Optional<EstimationCache.Lookup> lookup = lookupCachedSizes();
+        final ImmutableList<FunctionDecl> pendingFunctions = lookup.isPresent()
+                ? lookup.get().getMissingFunctions()
+                : normalFunctions;
+
+        /* Divide functions into small chunks ordered by sizes to balance the
+           load of threads. Each chunk is estimated twice: as banked and
+           non-banked. */
+        final ImmutableList<ImmutableList<FunctionDecl>> chunks =
+                EstimationUnits.divide(pendingFunctions, threadsCount);
+        for (ImmutableList<FunctionDecl> chunk : chunks) {
+            requestsQueue.addLast(new EstimateRequest(chunk, true));
+            requestsQueue.addLast(new EstimateRequest(chunk, false));
         }
 
         // Receive results
-        final ResponseCollectingVisitor collectingVisitor = new ResponseCollectingVisitor();
-        for (; requestsCount > 0; --requestsCount) {
+        final ResponseCollectingVisitor collectingVisitor =
+                new ResponseCollectingVisitor(2 * chunks.size());
+        while (!collectingVisitor.isComplete()) {
             responsesQueue.take().accept(collectingVisitor, null);
         }
 
-        return collectingVisitor.getEstimation();
+        final ImmutableMap<String, Range<Integer>> estimation = collectingVisitor.getEstimation();
+        if (!lookup.isPresent()) {
+            return estimation;
+        }
+
+        cache.get().store(lookup.get(), estimation);
+        return ImmutableMap.<String, Range<Integer>>builder()
+                .putAll(estimation)
+                .putAll(lookup.get().getCachedSizes())
+                .build();
+    }
+
+    private Optional<EstimationCache.Lookup> lookupCachedSizes() throws EstimationProgramFailedException,
+                InterruptedException, IOException {
+        if (!cache.isPresent()) {
+            return Optional.absent();
+        }
+
+        cache.get().open();
+        return Optional.of(cache.get().lookup(normalFunctions, allDeclarations,
+                inlineFunctions, writeSettings));
     }
 
     private ImmutableList<String> updateInlineFunctions(Map<String, Range<Integer>> currentEstimation) {
@@ -655,8 +680,22 @@ final class InliningSDCCCodeSizeEstimator implements CodeSizeEstimator {
                         cleanedAssemblyFileFullPath,
                         relocationFileFullPath
                 );
-                responsesQueue.add(new EstimationResponse(chunkEstimator.estimate(),
-                        request.isBanked()));
+                final Optional<ImmutableMap<String, Integer>> estimation = chunkEstimator.estimate();
+
+                if (estimation.isPresent()) {
+                    responsesQueue.add(new EstimationResponse(estimation.get(), request.isBanked()));
+                } else {
+                    /* Divide the chunk and put its parts at the head of the
+                       deque to be estimated by the first idle threads. */
+                    final ImmutableList<FunctionDecl> functions = request.getFunctions();
+                    final int middleIndex = functions.size() / 2;
+                    requestsQueue.addFirst(new EstimateRequest(functions.subList(middleIndex,
+                            functions.size()), request.isBanked()));
+                    requestsQueue.addFirst(new EstimateRequest(functions.subList(0, middleIndex),
+                            request.isBanked()));
+                    responsesQueue.add(new ChunkDividedResponse());
+                }
+
                 return null;
             } catch (InterruptedException | IOException e) {
                 throw new RuntimeException("estimation operation failed", e);
@@ -714,8 +753,6 @@ final class InliningSDCCCodeSizeEstimator implements CodeSizeEstimator {
         private final String cleanedAssemblyFileFullPath;
         private final String relocationFileFullPath;
         private final ImmutableList<FunctionDecl> chunk;
-        private int estimationUnit;
-        private int nextFunIndex;
 
         private ChunkEstimator(ImmutableList<FunctionDecl> chunk, boolean isBanked,
                     ProcessBuilder sdccProcessBuilder, ProcessBuilder sdasProcessBuilder,
@@ -731,27 +768,31 @@ final class InliningSDCCCodeSizeEstimator implements CodeSizeEstimator {
             this.cleanedAssemblyFileFullPath = cleanedAssemblyFileFullPath;
             this.relocationFileFullPath = relocationFileFullPath;
             this.chunk = chunk;
-            this.estimationUnit = chunk.size();
-            this.nextFunIndex = 0;
         }
 
-        private ImmutableMap<String, Integer> estimate() throws EstimationProgramFailedException,
+        /**
+         * Estimate sizes of functions from the chunk.
+         *
+         * @return Sizes of functions from the chunk. The object is absent if
+         *         SDCC has failed for a chunk with multiple functions and it
+         *         should be divided.
+         */
+        private Optional<ImmutableMap<String, Integer>> estimate() throws EstimationProgramFailedException,
                     InterruptedException, IOException {
+            if (!runSDCC()) {
+                return Optional.absent();
+            }
+
             final ImmutableMap.Builder<String, Integer> estimationBuilder =
                     ImmutableMap.builder();
+            removeInlineFunctions();
+            runAssembler();
+            readFunctionsSizes(estimationBuilder);
 
-            while (nextFunIndex < chunk.size()) {
-                runSDCC();
-                removeInlineFunctions();
-                runAssembler();
-                readFunctionsSizes(estimationBuilder);
-                nextFunIndex = Math.min(chunk.size(), nextFunIndex + estimationUnit);
-            }
-
-            return estimationBuilder.build();
+            return Optional.of(estimationBuilder.build());
         }
 
-        private void runSDCC() throws EstimationProgramFailedException, InterruptedException, IOException {
+        private boolean runSDCC() throws EstimationProgramFailedException, InterruptedException, IOException {
             final String includedHeader = isBanked
                     ? NAME_BANKED_HEADER
                     : NAME_NONBANKED_HEADER;
@@ -764,29 +805,19 @@ final class InliningSDCCCodeSizeEstimator implements CodeSizeEstimator {
             declsWriter.setPrependedText(Optional.of("#include \"" + includedHeader
                     + "\"\n#pragma codeseg " + NAME_CODE_SEGMENT + "\n\n"));
 
-            int returnCode;
-            int initialEstimationUnit;
-            ProcessConsumer sdccProcessConsumer;
-
-            do {
-                initialEstimationUnit = estimationUnit;
+            // Write declarations
+            declsWriter.write(chunk);
 
-                // Write declarations
-                final int endIndex = Math.min(nextFunIndex + estimationUnit, chunk.size());
-                declsWriter.write(chunk.subList(nextFunIndex, endIndex));
+            // Run SDCC
+            final ProcessConsumer sdccProcessConsumer = new ProcessConsumer(sdccProcessBuilder.start());
+            final int returnCode = sdccProcessConsumer.consume();
 
-                // Run SDCC
-                sdccProcessConsumer = new ProcessConsumer(sdccProcessBuilder.start());
-                returnCode = sdccProcessConsumer.consume();
-                if (returnCode != 0) {
-                    estimationUnit = Math.max(estimationUnit / 2, 1);
-                }
-            } while (returnCode != 0 && initialEstimationUnit != 1);
-
-            if (returnCode != 0) {
+            if (returnCode != 0 && chunk.size() == 1) {
                 throw EstimationProgramFailedException.newInstance("SDCC", returnCode,
                         sdccProcessConsumer.getProcessOutput());
             }
+
+            return returnCode == 0;
         }
 
         private void removeInlineFunctions() throws IOException {
@@ -883,6 +914,7 @@ final class InliningSDCCCodeSizeEstimator implements CodeSizeEstimator {
 
         public interface Visitor<R, A> {
             R visit(EstimationResponse response, A arg) throws EstimationProgramFailedException;
+            R visit(ChunkDividedResponse response, A arg) throws EstimationProgramFailedException;
             R visit(EstimationProgramFailedResponse response, A arg) throws EstimationProgramFailedException;
             R visit(ExceptionResponse response, A arg) throws EstimationProgramFailedException;
         }
@@ -917,6 +949,22 @@ final class InliningSDCCCodeSizeEstimator implements CodeSizeEstimator {
         }
     }
 
+    /**
+     * Response sent instead of the estimation if a chunk has been divided and
+     * requests for its parts have been added to the requests deque.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private static final class ChunkDividedResponse extends Response {
+        private ChunkDividedResponse() {
+        }
+
+        @Override
+        public <R, A> R accept(Visitor<R, A> visitor, A arg) throws EstimationProgramFailedException {
+            return visitor.visit(this, arg);
+        }
+    }
+
     /**
      * Response sent when an external program used for the estimation fails.
      * External programs that are currently used: SDAS, SDCC.
@@ -974,14 +1022,27 @@ final class InliningSDCCCodeSizeEstimator implements CodeSizeEstimator {
         private final ImmutableMap.Builder<String, Range<Integer>> estimationBuilder = ImmutableMap.builder();
         private final Map<String, Integer> lowerBounds = new HashMap<>();
         private final Map<String, Integer> upperBounds = new HashMap<>();
+        private int remainingResponsesCount;
+
+        private ResponseCollectingVisitor(int expectedResponsesCount) {
+            checkArgument(expectedResponsesCount >= 0, "expected count of responses cannot be negative");
+            this.remainingResponsesCount = expectedResponsesCount;
+        }
+
+        private boolean isComplete() {
+            return remainingResponsesCount == 0;
+        }
 
         private ImmutableMap<String, Range<Integer>> getEstimation() {
+            checkState(isComplete(), "not all responses have been received");
             checkState(lowerBounds.isEmpty() && upperBounds.isEmpty(), "unpaired results are present");
             return estimationBuilder.build();
         }
 
         @Override
         public Void visit(EstimationResponse response, Void arg) {
+            --remainingResponsesCount;
+
             // Prepare maps
             final Map<String, Integer> destinationMap;
             final Map<String, Integer> otherMap;
@@ -1010,6 +1071,13 @@ final class InliningSDCCCodeSizeEstimator implements CodeSizeEstimator {
             return null;
         }
 
+        @Override
+        public Void visit(ChunkDividedResponse response, Void arg) {
+            // Responses for both parts of the chunk will come
+            ++remainingResponsesCount;
+            return null;
+        }
+
         @Override
         public Void visit(EstimationProgramFailedResponse response, Void arg) throws EstimationProgramFailedException {
             throw response.getException();
@@ -3,6 +3,10 @@ package pl.edu.mimuw.nesc.codesize;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import pl.edu.mimuw.nesc.abi.ABI;
 import pl.edu.mimuw.nesc.ast.gen.DataDecl;
 import pl.edu.mimuw.nesc.ast.gen.Declaration;
 import pl.edu.mimuw.nesc.ast.gen.ExceptionVisitor;
@@ -39,6 +43,12 @@ public final class SDCCCodeSizeEstimatorFactory {
     private Optional<SDCCMemoryModel> memoryModel;
     private Optional<String> sdccExecutablePath;
     private Optional<String> temporaryDirectory;
+    private Optional<String> cacheDirectory;
+
+    /**
+     * Caches of estimated sizes used by created estimators.
+     */
+    private final List<EstimationCache> caches;
 
     public SDCCCodeSizeEstimatorFactory(ImmutableList<Declaration> declarations,
             WriteSettings writeSettings) {
@@ -51,6 +61,8 @@ public final class SDCCCodeSizeEstimatorFactory {
         this.memoryModel = Optional.absent();
         this.sdccExecutablePath = Optional.absent();
         this.temporaryDirectory = Optional.absent();
+        this.cacheDirectory = Optional.absent();
+        this.caches = new ArrayList<>();
     }
 
     /**
@@ -118,6 +130,21 @@ public final class SDCCCodeSizeEstimatorFactory {
         return this;
     }
 
+    /**
+     * Set the directory of the cache of estimated sizes of functions. Created
+     * estimators look for sizes of functions in the cache before invoking
+     * SDCC and save the estimated sizes in it. The argument can be
+     * <code>null</code>. In such case the cache is not used. The directory is
+     * created if it does not exist.
+     *
+     * @param cacheDir Directory of the cache of sizes of functions.
+     * @return <code>this</code>
+     */
+    public SDCCCodeSizeEstimatorFactory setCacheDirectory(String cacheDir) {
+        this.cacheDirectory = Optional.fromNullable(cacheDir);
+        return this;
+    }
+
     /**
      * Set the settings for writing declarations used by the created SDCC code
      * size estimator.
@@ -170,22 +197,37 @@ public final class SDCCCodeSizeEstimatorFactory {
         return new UnitarySDCCCodeSizeEstimator(declarations, extractFunctions(),
                 sdccExecutablePath.or(DEFAULT_SDCC_EXEC), sdccParameters,
                 memoryModel, temporaryDirectory.or(DEFAULT_TMP_DIR), threadsCount,
-                writeSettings);
+                writeSettings, newCache(sdccParameters, "unitary"));
     }
 
     /**
-     * Create a new fast SDCC code size estimator according to the configuration
-     * of the factory.
+     * Create a new fast SDCC code size estimator that will use the default
+     * count of threads. The default value is the count of cores in the system
+     * as obtained by calling {@link java.lang.Runtime#availableProcessors}.
      *
      * @return Newly created fast SDCC code size estimator.
      */
     public CodeSizeEstimator newFastEstimator() {
+        return newFastEstimator(DEFAULT_THREADS_COUNT);
+    }
+
+    /**
+     * Create a new fast SDCC code size estimator according to the configuration
+     * of the factory that will use the given number of threads for estimating
+     * the code size. The argument must be positive.
+     *
+     * @param threadsCount Count of threads used for estimation.
+     * @return Newly created fast SDCC code size estimator.
+     * @throws IllegalArgumentException Count of threads is not positive.
+     */
+    public CodeSizeEstimator newFastEstimator(int threadsCount) {
+        checkArgument(threadsCount > 0, "threads count must be positive");
         final ImmutableList<String> sdccParameters = sdccParametersBuilder.build();
         validate(sdccParameters);
         return new FastSDCCCodeSizeEstimator(declarations, extractFunctions(),
                 sdccExecutablePath.or(DEFAULT_SDCC_EXEC), sdccParameters,
-                memoryModel, temporaryDirectory.or(DEFAULT_TMP_DIR),
-                writeSettings);
+                memoryModel, temporaryDirectory.or(DEFAULT_TMP_DIR), threadsCount,
+                writeSettings, newCache(sdccParameters, "fast"));
     }
 
     /**
@@ -219,7 +261,89 @@ public final class SDCCCodeSizeEstimatorFactory {
                 refsGraph, sdccExecutablePath.or(DEFAULT_SDCC_EXEC), sdccParameters,
                 sdasExecutablePath.or(DEFAULT_SDAS_EXEC), memoryModel,
                 temporaryDirectory.or(DEFAULT_TMP_DIR), threadsCount.or(DEFAULT_THREADS_COUNT),
-                writeSettings, isInlineRelaxed, maximumInlineFunSize.or(DEFAULT_MAXIMUM_INLINE_SIZE));
+                writeSettings, isInlineRelaxed, maximumInlineFunSize.or(DEFAULT_MAXIMUM_INLINE_SIZE),
+                newCache(sdccParameters, "inlining", sdasExecutablePath.or(DEFAULT_SDAS_EXEC)));
+    }
+
+    /**
+     * Create a new static code size estimator that computes sizes of
+     * functions using the given model without invoking SDCC. The SDCC
+     * settings of the factory are not used by the created estimator.
+     *
+     * @param abi ABI used for computing sizes of types.
+     * @param model Model used for computing sizes of functions.
+     * @return Newly created static code size estimator.
+     */
+    public CodeSizeEstimator newStaticEstimator(ABI abi, StaticCostModel model) {
+        checkNotNull(abi, "ABI cannot be null");
+        checkNotNull(model, "model cannot be null");
+        return new StaticCodeSizeEstimator(extractFunctions(), abi, model);
+    }
+
+    /**
+     * Fit a model for static code size estimators to sizes of functions
+     * estimated by SDCC. The sizes are estimated by a fast SDCC code size
+     * estimator created according to the configuration of the factory.
+     *
+     * @param abi ABI used for computing sizes of types.
+     * @param threadsCount Count of threads used for the estimation by SDCC.
+     * @return Newly created model fitted to sizes of functions estimated by
+     *         SDCC.
+     * @throws EstimationProgramFailedException SDCC has failed.
+     */
+    public StaticCostModel calibrateStaticModel(ABI abi, int threadsCount)
+                throws EstimationProgramFailedException, InterruptedException, IOException {
+        checkNotNull(abi, "ABI cannot be null");
+        checkArgument(threadsCount > 0, "threads count must be positive");
+
+        final CodeSizeEstimation referenceEstimation = newFastEstimator(threadsCount).estimate();
+        return new StaticCodeSizeEstimator(extractFunctions(), abi, StaticCostModel.getDefault())
+                .calibrate(referenceEstimation);
+    }
+
+    /**
+     * Get the count of functions whose sizes have been found in the cache by
+     * all estimators created by this factory.
+     *
+     * @return Count of hits of the cache of estimated sizes.
+     */
+    public int getCacheHitsCount() {
+        int hitsCount = 0;
+        for (EstimationCache cache : caches) {
+            hitsCount += cache.getHitsCount();
+        }
+        return hitsCount;
+    }
+
+    /**
+     * Get the count of functions whose sizes have not been found in the cache
+     * by all estimators created by this factory.
+     *
+     * @return Count of misses of the cache of estimated sizes.
+     */
+    public int getCacheMissesCount() {
+        int missesCount = 0;
+        for (EstimationCache cache : caches) {
+            missesCount += cache.getMissesCount();
+        }
+        return missesCount;
+    }
+
+    private Optional<EstimationCache> newCache(ImmutableList<String> sdccParameters,
+                String... estimatorSettings) {
+        if (!cacheDirectory.isPresent()) {
+            return Optional.absent();
+        }
+
+        final ImmutableList<String> settings = ImmutableList.<String>builder()
+                .add(estimatorSettings)
+                .add(memoryModel.isPresent() ? memoryModel.get().getOption() : "")
+                .addAll(sdccParameters)
+                .build();
+        final EstimationCache cache = new EstimationCache(cacheDirectory.get(),
+                sdccExecutablePath.or(DEFAULT_SDCC_EXEC), settings);
+        caches.add(cache);
+        return Optional.of(cache);
     }
 
     private void validate(ImmutableList<String> sdccParameters) {
@@ -234,6 +358,15 @@ public final class SDCCCodeSizeEstimatorFactory {
                     + temporaryDirectory.get() + "'");
         }
 
+        // Check if the cache directory is a writable directory if it exists
+        if (cacheDirectory.isPresent()) {
+            final File cacheDir = new File(cacheDirectory.get());
+            checkState(!cacheDir.exists() || cacheDir.isDirectory(), "'"
+                    + cacheDirectory.get() + "' is not a directory");
+            checkState(!cacheDir.exists() || cacheDir.canWrite(), "lack of write permission for '"
+                    + cacheDirectory.get() + "'");
+        }
+
         // Check if SDCC parameters are correct
         for (String parameter : sdccParameters) {
             checkState(parameter != null, "a null SDCC parameter is added");
@@ -0,0 +1,254 @@
+package pl.edu.mimuw.nesc.codesize;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Range;
+import java.util.ArrayList;
+import java.util.List;
+import pl.edu.mimuw.nesc.abi.ABI;
+import pl.edu.mimuw.nesc.ast.gen.*;
+import pl.edu.mimuw.nesc.astutil.DeclaratorUtils;
+import pl.edu.mimuw.nesc.type.Type;
+import pl.edu.mimuw.nesc.typelayout.UniversalTypeLayoutCalculator;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Code size estimator that computes sizes of functions from their abstract
+ * syntax trees using a {@link StaticCostModel}. No external programs are
+ * invoked so the estimation is fast but less accurate than the estimation
+ * performed by SDCC.</p>
+ *
+ * <p>The lower bound of the size of a function is its size computed by the
+ * model for the function as not banked and all called functions as not
+ * banked. The upper bound is its size if the function and all called
+ * functions defined in the program are banked.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+final class StaticCodeSizeEstimator implements CodeSizeEstimator {
+    /**
+     * Functions whose sizes will be estimated.
+     */
+    private final ImmutableList<FunctionDecl> functions;
+
+    /**
+     * Unique names of all functions defined in the program.
+     */
+    private final ImmutableSet<String> definedFunctions;
+
+    /**
+     * ABI used for computing sizes of types.
+     */
+    private final ABI abi;
+
+    /**
+     * Model used for computing sizes of functions.
+     */
+    private final StaticCostModel model;
+
+    /**
+     * Result of the estimation.
+     */
+    private Optional<CodeSizeEstimation> estimation;
+
+    StaticCodeSizeEstimator(ImmutableList<FunctionDecl> functions, ABI abi, StaticCostModel model) {
+        checkNotNull(functions, "functions cannot be null");
+        checkNotNull(abi, "ABI cannot be null");
+        checkNotNull(model, "model cannot be null");
+
+        final ImmutableSet.Builder<String> definedFunctionsBuilder = ImmutableSet.builder();
+        for (FunctionDecl function : functions) {
+            definedFunctionsBuilder.add(DeclaratorUtils.getUniqueName(function.getDeclarator()).get());
+        }
+
+        this.functions = functions;
+        this.definedFunctions = definedFunctionsBuilder.build();
+        this.abi = abi;
+        this.model = model;
+        this.estimation = Optional.absent();
+    }
+
+    @Override
+    public CodeSizeEstimation estimate() {
+        if (estimation.isPresent()) {
+            return estimation.get();
+        }
+
+        final CodeSizeEstimation.Builder estimationBuilder = CodeSizeEstimation.builder();
+
+        for (FunctionDecl function : functions) {
+            final int lowerBound = Math.max(1, (int) Math.round(
+                    model.computeSize(computeFeatures(function, false))));
+            final int upperBound = Math.max(lowerBound, (int) Math.round(
+                    model.computeSize(computeFeatures(function, true))));
+            estimationBuilder.putFunctionSize(DeclaratorUtils.getUniqueName(
+                    function.getDeclarator()).get(), Range.closed(lowerBound, upperBound));
+        }
+
+        estimation = Optional.of(estimationBuilder.build());
+        return estimation.get();
+    }
+
+    /**
+     * Fit a model to sizes of functions estimated by another estimator. The
+     * lower bound of the size of each function is assumed to be its size if
+     * it is not banked and the upper bound its size if it is banked.
+     *
+     * @param referenceEstimation Sizes of functions given at construction,
+     *                            e.g. estimated by SDCC.
+     * @return Newly created model fitted to the given sizes.
+     */
+    StaticCostModel calibrate(CodeSizeEstimation referenceEstimation) {
+        checkNotNull(referenceEstimation, "reference estimation cannot be null");
+
+        final ImmutableMap<String, Range<Integer>> referenceSizes =
+                referenceEstimation.getFunctionsSizes();
+        final List<double[]> samples = new ArrayList<>();
+        final List<Integer> sizes = new ArrayList<>();
+
+        for (FunctionDecl function : functions) {
+            final Range<Integer> referenceSize = referenceSizes.get(
+                    DeclaratorUtils.getUniqueName(function.getDeclarator()).get());
+            if (referenceSize != null) {
+                samples.add(computeFeatures(function, false));
+                sizes.add(referenceSize.lowerEndpoint());
+                samples.add(computeFeatures(function, true));
+                sizes.add(referenceSize.upperEndpoint());
+            }
+        }
+
+        checkArgument(!samples.isEmpty(), "the reference estimation does not contain any function");
+        return StaticCostModel.fit(samples, sizes);
+    }
+
+    /**
+     * Compute features of the given function.
+     *
+     * @param function Function whose features will be computed.
+     * @param isBanked Value indicating if the function and functions it
+     *                 calls are assumed to be banked.
+     * @return Values of features indexed by ordinals of features.
+     */
+    double[] computeFeatures(FunctionDecl function, boolean isBanked) {
+        final FeaturesCollectingVisitor collectingVisitor = new FeaturesCollectingVisitor(isBanked);
+        function.traverse(collectingVisitor, null);
+
+        collectingVisitor.add(StaticCostModel.Feature.FUNCTION, 1.0);
+        if (isBanked) {
+            collectingVisitor.add(StaticCostModel.Feature.BANKED_FUNCTION, 1.0);
+        }
+
+        return collectingVisitor.features;
+    }
+
+    private int getWidth(Expression expression) {
+        final Optional<Type> type = expression.getType();
+        return type.isPresent() && type.get().isScalarType() && type.get().isComplete()
+                ? Math.max(1, new UniversalTypeLayoutCalculator(abi, type.get()).calculate().getSize())
+                : 1;
+    }
+
+    private static boolean isFloating(Expression expression) {
+        return expression.getType().isPresent() && expression.getType().get().isFloatingType();
+    }
+
+    /**
+     * Visitor that computes features of a function.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private final class FeaturesCollectingVisitor extends NullVisitor<Void, Void> {
+        private final double[] features = new double[StaticCostModel.Feature.values().length];
+        private final boolean isBanked;
+
+        private FeaturesCollectingVisitor(boolean isBanked) {
+            this.isBanked = isBanked;
+        }
+
+        private void add(StaticCostModel.Feature feature, double value) {
+            features[feature.ordinal()] += value;
+        }
+
+        @Override
+        protected Void defaultVisit(Node node, Void arg) {
+            if (node instanceof Expression) {
+                collectExpressionFeatures((Expression) node);
+            } else if (node instanceof Statement) {
+                collectStatementFeatures((Statement) node);
+            } else {
+                add(StaticCostModel.Feature.OTHER, 1.0);
+            }
+
+            return null;
+        }
+
+        private void collectExpressionFeatures(Expression expression) {
+            if (expression instanceof FunctionCall) {
+                final FunctionCall call = (FunctionCall) expression;
+                add(StaticCostModel.Feature.CALL, 1.0);
+                for (Expression argument : call.getArguments()) {
+                    add(StaticCostModel.Feature.CALL_ARGUMENT_BYTES, getWidth(argument));
+                }
+                if (isBanked && call.getFunction() instanceof Identifier) {
+                    final Optional<String> uniqueName = ((Identifier) call.getFunction()).getUniqueName();
+                    if (uniqueName.isPresent() && definedFunctions.contains(uniqueName.get())) {
+                        add(StaticCostModel.Feature.BANKED_CALL, 1.0);
+                    }
+                }
+            } else if (expression instanceof Assignment) {
+                add(StaticCostModel.Feature.ASSIGNMENT_BYTES, getWidth(expression));
+                if (expression instanceof TimesAssign || expression instanceof DivideAssign
+                        || expression instanceof ModuloAssign) {
+                    add(StaticCostModel.Feature.MULTIPLICATIVE_BYTES, getWidth(expression));
+                }
+                addFloatingOperation(expression);
+            } else if (expression instanceof Comparison) {
+                add(StaticCostModel.Feature.COMPARISON_BYTES,
+                        getWidth(((Comparison) expression).getLeftArgument()));
+                addFloatingOperation(((Comparison) expression).getLeftArgument());
+            } else if (expression instanceof Times || expression instanceof Divide
+                    || expression instanceof Modulo) {
+                add(StaticCostModel.Feature.MULTIPLICATIVE_BYTES, getWidth(expression));
+                addFloatingOperation(expression);
+            } else if (expression instanceof Andand || expression instanceof Oror
+                    || expression instanceof Conditional) {
+                add(StaticCostModel.Feature.BRANCH, 1.0);
+            } else if (expression instanceof Dereference || expression instanceof FieldRef
+                    || expression instanceof AddressOf || expression instanceof ArrayRef) {
+                add(StaticCostModel.Feature.MEMORY_ACCESS, 1.0);
+            } else if (expression instanceof Binary || expression instanceof Unary) {
+                add(StaticCostModel.Feature.ARITHMETIC_BYTES, getWidth(expression));
+                addFloatingOperation(expression);
+            } else if (expression instanceof Identifier) {
+                add(StaticCostModel.Feature.VARIABLE_ACCESS, 1.0);
+            } else if (expression instanceof LexicalCst) {
+                add(StaticCostModel.Feature.CONSTANT_BYTES, getWidth(expression));
+            } else {
+                add(StaticCostModel.Feature.OTHER, 1.0);
+            }
+        }
+
+        private void collectStatementFeatures(Statement statement) {
+            if (statement instanceof IfStmt || statement instanceof ConditionalStmt
+                    || statement instanceof ForStmt || statement instanceof GotoStmt
+                    || statement instanceof ComputedGotoStmt || statement instanceof BreakStmt
+                    || statement instanceof ContinueStmt) {
+                add(StaticCostModel.Feature.BRANCH, 1.0);
+            } else if (statement instanceof CompoundStmt || statement instanceof EmptyStmt) {
+                add(StaticCostModel.Feature.OTHER, 1.0);
+            } else {
+                add(StaticCostModel.Feature.STATEMENT, 1.0);
+            }
+        }
+
+        private void addFloatingOperation(Expression expression) {
+            if (isFloating(expression)) {
+                add(StaticCostModel.Feature.FLOATING_OPERATION, 1.0);
+            }
+        }
+    }
+}
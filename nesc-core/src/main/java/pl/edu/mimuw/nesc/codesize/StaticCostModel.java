@@ -0,0 +1,463 @@
+package pl.edu.mimuw.nesc.codesize;
+
+import com.google.common.base.Charsets;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Linear model of the size of the code generated by SDCC for a function.
+ * The size of a function is the sum of values of its features multiplied by
+ * coefficients of the model. Features of functions are computed from their
+ * abstract syntax trees.</p>
+ *
+ * <p>Coefficients can be fitted to sizes of functions estimated by SDCC and
+ * saved in a file to be used by subsequent compilations.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class StaticCostModel {
+    /**
+     * Coefficient of the regularization used for fitting the model. It keeps
+     * coefficients of features absent in the fitted data at zero.
+     */
+    private static final double REGULARIZATION = 1e-6;
+
+    /**
+     * The model with coefficients approximated for the code generated by
+     * SDCC for 8051 microcontrollers.
+     */
+    private static final StaticCostModel DEFAULT_MODEL;
+    static {
+        final Map<Feature, Double> coefficients = new EnumMap<>(Feature.class);
+        coefficients.put(Feature.FUNCTION, 3.0);
+        coefficients.put(Feature.STATEMENT, 1.0);
+        coefficients.put(Feature.BRANCH, 3.0);
+        coefficients.put(Feature.CALL, 3.0);
+        coefficients.put(Feature.CALL_ARGUMENT_BYTES, 2.0);
+        coefficients.put(Feature.ARITHMETIC_BYTES, 3.0);
+        coefficients.put(Feature.MULTIPLICATIVE_BYTES, 8.0);
+        coefficients.put(Feature.FLOATING_OPERATION, 6.0);
+        coefficients.put(Feature.ASSIGNMENT_BYTES, 3.0);
+        coefficients.put(Feature.COMPARISON_BYTES, 4.0);
+        coefficients.put(Feature.MEMORY_ACCESS, 4.0);
+        coefficients.put(Feature.VARIABLE_ACCESS, 1.0);
+        coefficients.put(Feature.CONSTANT_BYTES, 1.0);
+        coefficients.put(Feature.OTHER, 0.5);
+        coefficients.put(Feature.BANKED_CALL, 4.0);
+        coefficients.put(Feature.BANKED_FUNCTION, 2.0);
+        DEFAULT_MODEL = new StaticCostModel(toArray(coefficients));
+    }
+
+    /**
+     * Coefficients of features indexed by ordinals of features.
+     */
+    private final double[] coefficients;
+
+    /**
+     * Get the model with default coefficients.
+     *
+     * @return The default model.
+     */
+    public static StaticCostModel getDefault() {
+        return DEFAULT_MODEL;
+    }
+
+    /**
+     * Load the model from the given file created by {@link StaticCostModel#save}.
+     * Coefficients of features absent in the file are taken from the default
+     * model.
+     *
+     * @param fileName Name of the file with the model.
+     * @return The loaded model.
+     * @throws IOException Cannot read the file.
+     * @throws IllegalArgumentException A coefficient in the file is invalid.
+     */
+    public static StaticCostModel load(String fileName) throws IOException {
+        checkNotNull(fileName, "file name cannot be null");
+        checkArgument(!fileName.isEmpty(), "file name cannot be an empty string");
+
+        final Properties properties = new Properties();
+        try (final Reader reader = Files.newBufferedReader(Paths.get(fileName), Charsets.UTF_8)) {
+            properties.load(reader);
+        }
+
+        final double[] coefficients = Arrays.copyOf(DEFAULT_MODEL.coefficients,
+                DEFAULT_MODEL.coefficients.length);
+        for (Feature feature : Feature.values()) {
+            final String value = properties.getProperty(feature.getKey());
+            if (value != null) {
+                try {
+                    coefficients[feature.ordinal()] = Double.parseDouble(value.trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("invalid coefficient of feature '"
+                            + feature.getKey() + "': " + value);
+                }
+                checkArgument(coefficients[feature.ordinal()] >= 0.0, "coefficient of feature '%s' is negative",
+                        feature.getKey());
+            }
+        }
+
+        return new StaticCostModel(coefficients);
+    }
+
+    /**
+     * Fit coefficients of a model to the given sizes of functions. The sum of
+     * squares of differences between sizes computed by the model and the given
+     * sizes is minimized with all coefficients non-negative. The problem is
+     * solved by the active set algorithm of Lawson and Hanson.
+     *
+     * @param samples Features of functions.
+     * @param sizes Sizes of functions from the samples list, in the same
+     *              order.
+     * @return Newly created model fitted to the given sizes.
+     */
+    static StaticCostModel fit(List<double[]> samples, List<Integer> sizes) {
+        checkNotNull(samples, "samples cannot be null");
+        checkNotNull(sizes, "sizes cannot be null");
+        checkArgument(samples.size() == sizes.size(), "count of samples differs from the count of sizes");
+
+        final int featuresCount = Feature.values().length;
+        final boolean[] isPassive = new boolean[featuresCount];
+        final boolean[] isRejected = new boolean[featuresCount];
+        double[] coefficients = new double[featuresCount];
+        final double tolerance = computeTolerance(samples, sizes);
+
+        for (int iteration = 0; iteration < 3 * featuresCount; ++iteration) {
+            // Choose the feature whose coefficient decreases the error the most
+            final double[] gradient = computeNegativeGradient(samples, sizes, coefficients);
+            int enteringIndex = -1;
+            for (int i = 0; i < featuresCount; ++i) {
+                if (!isPassive[i] && !isRejected[i] && gradient[i] > tolerance
+                        && (enteringIndex == -1 || gradient[i] > gradient[enteringIndex])) {
+                    enteringIndex = i;
+                }
+            }
+
+            if (enteringIndex == -1) {
+                break;
+            }
+
+            isPassive[enteringIndex] = true;
+            double[] solution = solveLeastSquares(samples, sizes, isPassive);
+
+            /* The coefficient of the chosen feature can be non-positive only
+               because of rounding errors. Try another feature in such case. */
+            if (solution[enteringIndex] <= 0.0) {
+                isPassive[enteringIndex] = false;
+                isRejected[enteringIndex] = true;
+                continue;
+            }
+            Arrays.fill(isRejected, false);
+
+            /* Move towards the solution of the least squares problem for
+               passive features as far as all coefficients stay non-negative
+               and remove features whose coefficients become zero until the
+               solution is feasible. */
+            while (true) {
+                int leavingIndex = -1;
+                double step = 1.0;
+                for (int i = 0; i < featuresCount; ++i) {
+                    if (isPassive[i] && solution[i] <= 0.0) {
+                        final double featureStep = coefficients[i] > 0.0
+                                ? coefficients[i] / (coefficients[i] - solution[i])
+                                : 0.0;
+                        if (leavingIndex == -1 || featureStep < step) {
+                            leavingIndex = i;
+                            step = featureStep;
+                        }
+                    }
+                }
+
+                if (leavingIndex == -1) {
+                    break;
+                }
+
+                for (int i = 0; i < featuresCount; ++i) {
+                    coefficients[i] += step * (solution[i] - coefficients[i]);
+                    if (i == leavingIndex || isPassive[i] && coefficients[i] <= 0.0) {
+                        isPassive[i] = false;
+                        coefficients[i] = 0.0;
+                    }
+                }
+
+                solution = solveLeastSquares(samples, sizes, isPassive);
+            }
+
+            coefficients = solution;
+        }
+
+        return new StaticCostModel(coefficients);
+    }
+
+    /**
+     * Compute the gradient of the minimized function negated (and halved) for
+     * given coefficients. Its element is positive if increasing the
+     * coefficient of the feature decreases the error.
+     */
+    private static double[] computeNegativeGradient(List<double[]> samples, List<Integer> sizes,
+                double[] coefficients) {
+        final double[] gradient = new double[coefficients.length];
+
+        for (int sampleIndex = 0; sampleIndex < samples.size(); ++sampleIndex) {
+            final double[] sample = samples.get(sampleIndex);
+            double residual = sizes.get(sampleIndex);
+            for (int i = 0; i < coefficients.length; ++i) {
+                residual -= coefficients[i] * sample[i];
+            }
+            for (int i = 0; i < coefficients.length; ++i) {
+                gradient[i] += sample[i] * residual;
+            }
+        }
+
+        for (int i = 0; i < coefficients.length; ++i) {
+            gradient[i] -= REGULARIZATION * coefficients[i];
+        }
+
+        return gradient;
+    }
+
+    /**
+     * Compute the value of the gradient below which the error is considered
+     * not decreasing. It is relative to the magnitude of the data to be
+     * immune to rounding errors.
+     */
+    private static double computeTolerance(List<double[]> samples, List<Integer> sizes) {
+        double maxFeature = 0.0;
+        double sizesSum = 0.0;
+
+        for (int sampleIndex = 0; sampleIndex < samples.size(); ++sampleIndex) {
+            for (double feature : samples.get(sampleIndex)) {
+                maxFeature = Math.max(maxFeature, Math.abs(feature));
+            }
+            sizesSum += Math.abs(sizes.get(sampleIndex));
+        }
+
+        return 1e-10 * Math.max(1.0, maxFeature * sizesSum);
+    }
+
+    private static double[] solveLeastSquares(List<double[]> samples, List<Integer> sizes,
+                boolean[] isActive) {
+        final int n = isActive.length;
+
+        // Build normal equations for active features
+        final double[][] matrix = new double[n][n + 1];
+        for (int sampleIndex = 0; sampleIndex < samples.size(); ++sampleIndex) {
+            final double[] sample = samples.get(sampleIndex);
+            for (int i = 0; i < n; ++i) {
+                if (!isActive[i]) {
+                    continue;
+                }
+                for (int j = 0; j < n; ++j) {
+                    if (isActive[j]) {
+                        matrix[i][j] += sample[i] * sample[j];
+                    }
+                }
+                matrix[i][n] += sample[i] * sizes.get(sampleIndex);
+            }
+        }
+
+        for (int i = 0; i < n; ++i) {
+            matrix[i][i] += isActive[i] ? REGULARIZATION : 1.0;
+        }
+
+        // Gaussian elimination with partial pivoting
+        for (int column = 0; column < n; ++column) {
+            int pivotRow = column;
+            for (int row = column + 1; row < n; ++row) {
+                if (Math.abs(matrix[row][column]) > Math.abs(matrix[pivotRow][column])) {
+                    pivotRow = row;
+                }
+            }
+
+            final double[] pivotRowValues = matrix[pivotRow];
+            matrix[pivotRow] = matrix[column];
+            matrix[column] = pivotRowValues;
+
+            for (int row = column + 1; row < n; ++row) {
+                final double factor = matrix[row][column] / matrix[column][column];
+                for (int k = column; k <= n; ++k) {
+                    matrix[row][k] -= factor * matrix[column][k];
+                }
+            }
+        }
+
+        final double[] solution = new double[n];
+        for (int row = n - 1; row >= 0; --row) {
+            double value = matrix[row][n];
+            for (int k = row + 1; k < n; ++k) {
+                value -= matrix[row][k] * solution[k];
+            }
+            solution[row] = value / matrix[row][row];
+        }
+
+        for (int i = 0; i < n; ++i) {
+            if (!isActive[i]) {
+                solution[i] = 0.0;
+            }
+        }
+
+        return solution;
+    }
+
+    private static double[] toArray(Map<Feature, Double> coefficients) {
+        final double[] result = new double[Feature.values().length];
+        for (Map.Entry<Feature, Double> coefficient : coefficients.entrySet()) {
+            result[coefficient.getKey().ordinal()] = coefficient.getValue();
+        }
+        return result;
+    }
+
+    private StaticCostModel(double[] coefficients) {
+        this.coefficients = coefficients;
+    }
+
+    /**
+     * Get the coefficient of the given feature.
+     *
+     * @param feature Feature whose coefficient will be returned.
+     * @return Coefficient of the given feature.
+     */
+    public double getCoefficient(Feature feature) {
+        checkNotNull(feature, "feature cannot be null");
+        return coefficients[feature.ordinal()];
+    }
+
+    /**
+     * Compute the size of a function with given features.
+     *
+     * @param features Values of features of a function indexed by ordinals of
+     *                 features.
+     * @return Size of the function computed by this model.
+     */
+    double computeSize(double[] features) {
+        checkNotNull(features, "features cannot be null");
+        checkArgument(features.length == coefficients.length, "invalid count of features");
+
+        double size = 0.0;
+        for (int i = 0; i < coefficients.length; ++i) {
+            size += coefficients[i] * features[i];
+        }
+        return size;
+    }
+
+    /**
+     * Save the model in the given file. It can be loaded later by
+     * {@link StaticCostModel#load}.
+     *
+     * @param fileName Name of the file to save the model in.
+     * @throws IOException Cannot write the file.
+     */
+    public void save(String fileName) throws IOException {
+        checkNotNull(fileName, "file name cannot be null");
+        checkArgument(!fileName.isEmpty(), "file name cannot be an empty string");
+
+        try (final Writer writer = Files.newBufferedWriter(Paths.get(fileName), Charsets.UTF_8)) {
+            writer.write("# Coefficients of the static code size estimation model\n");
+            for (Feature feature : Feature.values()) {
+                writer.write(feature.getKey() + "=" + coefficients[feature.ordinal()] + "\n");
+            }
+        }
+    }
+
+    /**
+     * Features of functions used by the model.
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    public enum Feature {
+        /**
+         * Always one. It represents the prologue and epilogue of a function.
+         */
+        FUNCTION("function"),
+        /**
+         * Count of statements other than compound and branching statements.
+         */
+        STATEMENT("statement"),
+        /**
+         * Count of statements and expressions that cause branching.
+         */
+        BRANCH("branch"),
+        /**
+         * Count of calls.
+         */
+        CALL("call"),
+        /**
+         * Sum of sizes of arguments of all calls (in bytes).
+         */
+        CALL_ARGUMENT_BYTES("call-argument-bytes"),
+        /**
+         * Sum of widths of additive, bitwise and shift operations (in bytes).
+         */
+        ARITHMETIC_BYTES("arithmetic-bytes"),
+        /**
+         * Sum of widths of multiplications, divisions and modulo operations
+         * (in bytes).
+         */
+        MULTIPLICATIVE_BYTES("multiplicative-bytes"),
+        /**
+         * Count of operations on floating types.
+         */
+        FLOATING_OPERATION("floating-operation"),
+        /**
+         * Sum of widths of assignments (in bytes).
+         */
+        ASSIGNMENT_BYTES("assignment-bytes"),
+        /**
+         * Sum of widths of operands of comparisons (in bytes).
+         */
+        COMPARISON_BYTES("comparison-bytes"),
+        /**
+         * Count of dereferences, array subscripts, fields references and
+         * address operators.
+         */
+        MEMORY_ACCESS("memory-access"),
+        /**
+         * Count of identifiers.
+         */
+        VARIABLE_ACCESS("variable-access"),
+        /**
+         * Sum of widths of constants (in bytes).
+         */
+        CONSTANT_BYTES("constant-bytes"),
+        /**
+         * Count of all other nodes.
+         */
+        OTHER("other"),
+        /**
+         * Count of calls of functions defined in the program if the function
+         * is banked. It represents the overhead of calling banked functions.
+         */
+        BANKED_CALL("banked-call"),
+        /**
+         * One if the function is banked and zero otherwise.
+         */
+        BANKED_FUNCTION("banked-function"),
+        ;
+
+        private final String key;
+
+        private Feature(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Get the key of the feature used in files with models.
+         *
+         * @return Key of the feature.
+         */
+        public String getKey() {
+            return key;
+        }
+    }
+}
@@ -8,8 +8,10 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceArray;
@@ -105,6 +107,17 @@ final class UnitarySDCCCodeSizeEstimator implements CodeSizeEstimator {
      */
     private final ImmutableList<FunctionDecl> functions;
 
+    /**
+     * Functions whose size will be estimated by invoking SDCC, i.e. functions
+     * whose sizes have not been found in the cache.
+     */
+    private ImmutableList<FunctionDecl> pendingFunctions;
+
+    /**
+     * Cache of sizes of functions consulted before the estimation.
+     */
+    private final Optional<EstimationCache> cache;
+
     /**
      * Index of the next function whose code size will be estimated.
      */
@@ -113,7 +126,7 @@ final class UnitarySDCCCodeSizeEstimator implements CodeSizeEstimator {
     /**
      * Array for storing results of the estimating operations.
      */
-    private final AtomicReferenceArray<FunctionSizeEstimation> results;
+    private AtomicReferenceArray<FunctionSizeEstimation> results;
 
     /**
      * Next index in the results array that is not used.
@@ -133,7 +146,8 @@ final class UnitarySDCCCodeSizeEstimator implements CodeSizeEstimator {
             Optional<SDCCMemoryModel> memoryModel,
             String tempDirectory,
             int threadsCount,
-            WriteSettings writeSettings
+            WriteSettings writeSettings,
+            Optional<EstimationCache> cache
     ) {
         checkNotNull(declarations, "declarations cannot be null");
         checkNotNull(functions, "functions cannot be null");
@@ -142,6 +156,7 @@ final class UnitarySDCCCodeSizeEstimator implements CodeSizeEstimator {
         checkNotNull(memoryModel, "SDCC memory model cannot be null");
         checkNotNull(tempDirectory, "temporary directory cannot be null");
         checkNotNull(writeSettings, "write settings cannot be null");
+        checkNotNull(cache, "cache cannot be null");
         checkArgument(!sdccExecutablePath.isEmpty(), "SDCC executable path cannot be an empty string");
         checkArgument(!tempDirectory.isEmpty(), "temporary directory cannot be null");
         checkArgument(threadsCount > 0, "threads count must be positive");
@@ -153,15 +168,17 @@ final class UnitarySDCCCodeSizeEstimator implements CodeSizeEstimator {
         this.threadsCount = threadsCount;
         this.declarations = declarations;
         this.functions = functions;
+        this.pendingFunctions = functions;
+        this.cache = cache;
         this.writeSettings = writeSettings;
         this.nextFunIndex = new AtomicInteger(0);
-        this.results = new AtomicReferenceArray<>(this.functions.size());
         this.nextResultIndex = new AtomicInteger(0);
         this.sizesEstimation = Optional.absent();
     }
 
     @Override
-    public CodeSizeEstimation estimate() throws InterruptedException, IOException {
+    public CodeSizeEstimation estimate() throws EstimationProgramFailedException,
+                InterruptedException, IOException {
         if (sizesEstimation.isPresent()) {
             return sizesEstimation.get();
         }
@@ -169,6 +186,14 @@ final class UnitarySDCCCodeSizeEstimator implements CodeSizeEstimator {
         // Prepare the header files
         createHeaderFiles();
 
+        // Look for sizes of functions in the cache
+        final Optional<EstimationCache.Lookup> lookup = lookupCachedSizes();
+
+        /* Threads take functions in the order of sizes to avoid estimating
+           the biggest functions at the end. */
+        this.pendingFunctions = EstimationUnits.sortBySize(this.pendingFunctions);
+        this.results = new AtomicReferenceArray<>(this.pendingFunctions.size());
+
         // Create and start threads
         final Thread[] threads = new Thread[this.threadsCount - 1];
         for (int i = 0; i < threads.length; ++i) {
@@ -185,14 +210,27 @@ final class UnitarySDCCCodeSizeEstimator implements CodeSizeEstimator {
         }
 
         // Check if all functions have been processed
-        checkState(this.nextResultIndex.get() == this.functions.size(),
+        checkState(this.nextResultIndex.get() == this.pendingFunctions.size(),
                 "some estimation operations have failed");
 
         // Prepare the result
-        sizesEstimation = Optional.of(createResultEstimation());
+        sizesEstimation = Optional.of(createResultEstimation(lookup));
         return sizesEstimation.get();
     }
 
+    private Optional<EstimationCache.Lookup> lookupCachedSizes() throws EstimationProgramFailedException,
+                InterruptedException, IOException {
+        if (!cache.isPresent()) {
+            return Optional.absent();
+        }
+
+        cache.get().open();
+        final EstimationCache.Lookup lookup = cache.get().lookup(functions, declarations,
+                ImmutableList.<FunctionDecl>of(), writeSettings);
+        pendingFunctions = lookup.getMissingFunctions();
+        return Optional.of(lookup);
+    }
+
     private void createHeaderFiles() throws IOException {
         // Write non-banked declarations
         final CustomDeclarationsWriter declsWriter = new CustomDeclarationsWriter(
@@ -210,15 +248,28 @@ final class UnitarySDCCCodeSizeEstimator implements CodeSizeEstimator {
         declsWriter.write(declarations);
     }
 
-    private CodeSizeEstimation createResultEstimation() {
-        final CodeSizeEstimation.Builder estimationBuilder = CodeSizeEstimation.builder();
+    private CodeSizeEstimation createResultEstimation(Optional<EstimationCache.Lookup> lookup)
+                throws IOException {
+        final Map<String, Range<Integer>> estimatedSizes = new HashMap<>();
 
         for (int i = 0; i < results.length(); ++i) {
             final FunctionSizeEstimation estimation = results.get(i);
-            estimationBuilder.putFunctionSize(estimation.functionName, Range.closed(
+            estimatedSizes.put(estimation.functionName, Range.closed(
                     estimation.minimumSize, estimation.maximumSize));
         }
 
+        if (lookup.isPresent()) {
+            cache.get().store(lookup.get(), estimatedSizes);
+            estimatedSizes.putAll(lookup.get().getCachedSizes());
+        }
+
+        // Add sizes in the order of functions to make the result deterministic
+        final CodeSizeEstimation.Builder estimationBuilder = CodeSizeEstimation.builder();
+        for (FunctionDecl function : functions) {
+            final String uniqueName = DeclaratorUtils.getUniqueName(function.getDeclarator()).get();
+            estimationBuilder.putFunctionSize(uniqueName, estimatedSizes.get(uniqueName));
+        }
+
         return estimationBuilder.build();
     }
 
@@ -269,9 +320,9 @@ final class UnitarySDCCCodeSizeEstimator implements CodeSizeEstimator {
 
         @Override
         public void run() {
-            for (int funIndex = nextFunIndex.getAndIncrement(); funIndex < functions.size();
+            for (int funIndex = nextFunIndex.getAndIncrement(); funIndex < pendingFunctions.size();
                     funIndex = nextFunIndex.getAndIncrement()) {
-                estimateSizeOf(functions.get(funIndex));
+                estimateSizeOf(pendingFunctions.get(funIndex));
             }
         }
 
@@ -3,6 +3,7 @@ package pl.edu.mimuw.nesc.compilation;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -13,8 +14,10 @@ import java.util.NavigableSet;
 import pl.edu.mimuw.nesc.ContextRef;
 import pl.edu.mimuw.nesc.FileData;
 import pl.edu.mimuw.nesc.Frontend;
+import pl.edu.mimuw.nesc.FrontendCaches;
 import pl.edu.mimuw.nesc.NescFrontend;
 import pl.edu.mimuw.nesc.ProjectData;
+import pl.edu.mimuw.nesc.abi.ABI;
 import pl.edu.mimuw.nesc.ast.InstantiationOrigin;
 import pl.edu.mimuw.nesc.ast.Location;
 import pl.edu.mimuw.nesc.ast.gen.Component;
@@ -25,6 +28,7 @@ import pl.edu.mimuw.nesc.ast.gen.FunctionDecl;
 import pl.edu.mimuw.nesc.ast.gen.Module;
 import pl.edu.mimuw.nesc.ast.gen.ModuleImpl;
 import pl.edu.mimuw.nesc.ast.gen.NescDecl;
+import pl.edu.mimuw.nesc.ast.gen.Node;
 import pl.edu.mimuw.nesc.ast.gen.Visitor;
 import pl.edu.mimuw.nesc.astutil.ParametersNamesGiver;
 import pl.edu.mimuw.nesc.atomic.AtomicBlockData;
@@ -45,6 +49,7 @@ import pl.edu.mimuw.nesc.instantiation.InstantiateExecutor;
 import pl.edu.mimuw.nesc.intermediate.ConnectionsChecker;
 import pl.edu.mimuw.nesc.intermediate.TraversingIntermediateGenerator;
 import pl.edu.mimuw.nesc.names.mangling.NameMangler;
+import pl.edu.mimuw.nesc.names.mangling.UnitNameMangler;
 import pl.edu.mimuw.nesc.optimization.AtomicOptimizer;
 import pl.edu.mimuw.nesc.optimization.DeclarationsCleaner;
 import pl.edu.mimuw.nesc.optimization.TaskOptimizationChecker;
@@ -58,9 +63,11 @@ import pl.edu.mimuw.nesc.problem.NescWarning;
 import pl.edu.mimuw.nesc.problem.issue.InstantiationCycleError;
 import pl.edu.mimuw.nesc.problem.issue.Issue;
 import pl.edu.mimuw.nesc.refsgraph.ReferencesGraph;
+import pl.edu.mimuw.nesc.typelayout.TypeLayoutCache;
 import pl.edu.mimuw.nesc.wiresgraph.WiresGraph;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static java.lang.String.format;
 
 /**
@@ -119,8 +126,39 @@ public final class CompilationExecutor {
      * attributes and to use the implicit default ABI platform.
      */
     public CompilationExecutor() {
+        this(true);
+    }
+
+    /**
+     * Initialize this compilation executor not to recognize any target
+     * attributes and to use the implicit default ABI platform.
+     *
+     * @param exitOnErrors Value indicating if the Java virtual machine is
+     *                     terminated by the frontend if the options are
+     *                     invalid. If not, the compilation is aborted by
+     *                     throwing {@link InvalidOptionsException}. It allows
+     *                     using the executor for many compilations.
+     */
+    public CompilationExecutor(boolean exitOnErrors) {
+        this(exitOnErrors, new FrontendCaches());
+    }
+
+    /**
+     * Initialize this compilation executor not to recognize any target
+     * attributes and to use the implicit default ABI platform.
+     *
+     * @param exitOnErrors Value indicating if the Java virtual machine is
+     *                     terminated by the frontend if the options are
+     *                     invalid.
+     * @param caches Caches of the frontend. They can be shared by executors
+     *               used by multiple threads at once.
+     */
+    public CompilationExecutor(boolean exitOnErrors, FrontendCaches caches) {
         this.frontend = NescFrontend.builder()
                 .standalone(true)
+                .exitOnErrors(exitOnErrors)
+                .retainSourceDetails(false)
+                .caches(caches)
                 .build();
         this.listener = Optional.absent();
     }
@@ -139,11 +177,57 @@ public final class CompilationExecutor {
      */
     public CompilationExecutor(String defaultABIPlatform, Iterable<String> targetAttributes0,
             Iterable<String> targetAttributes1) {
+        this(defaultABIPlatform, targetAttributes0, targetAttributes1, true);
+    }
+
+    /**
+     * Initialize this compilation executor to recognize given target
+     * attributes and use the given ABI platform as the default one.
+     *
+     * @param defaultABIPlatform ABI platform that will be used if it is not
+     *                           specified by parameters for the frontend.
+     * @param targetAttributes0 Iterable with no-parameter target attributes
+     *                          that will be recognized by the frontend used by
+     *                          this executor.
+     * @param targetAttributes1 Iterable with one-parameter target attributes
+     *                          that will be recognized by this executor.
+     * @param exitOnErrors Value indicating if the Java virtual machine is
+     *                     terminated by the frontend if the options are
+     *                     invalid.
+     */
+    public CompilationExecutor(String defaultABIPlatform, Iterable<String> targetAttributes0,
+            Iterable<String> targetAttributes1, boolean exitOnErrors) {
+        this(defaultABIPlatform, targetAttributes0, targetAttributes1, exitOnErrors,
+                new FrontendCaches());
+    }
+
+    /**
+     * Initialize this compilation executor to recognize given target
+     * attributes and use the given ABI platform as the default one.
+     *
+     * @param defaultABIPlatform ABI platform that will be used if it is not
+     *                           specified by parameters for the frontend.
+     * @param targetAttributes0 Iterable with no-parameter target attributes
+     *                          that will be recognized by the frontend used by
+     *                          this executor.
+     * @param targetAttributes1 Iterable with one-parameter target attributes
+     *                          that will be recognized by this executor.
+     * @param exitOnErrors Value indicating if the Java virtual machine is
+     *                     terminated by the frontend if the options are
+     *                     invalid.
+     * @param caches Caches of the frontend. They can be shared by executors
+     *               used by multiple threads at once.
+     */
+    public CompilationExecutor(String defaultABIPlatform, Iterable<String> targetAttributes0,
+            Iterable<String> targetAttributes1, boolean exitOnErrors, FrontendCaches caches) {
         this.frontend = NescFrontend.builder()
                 .standalone(true)
+                .exitOnErrors(exitOnErrors)
+                .retainSourceDetails(false)
                 .addTargetAttributes0(targetAttributes0)
                 .addTargetAttributes1(targetAttributes1)
                 .defaultABIPlatform(defaultABIPlatform)
+                .caches(caches)
                 .build();
         this.listener = Optional.absent();
     }
@@ -189,37 +273,153 @@ public final class CompilationExecutor {
         return compile(new RawParamsContextCreator(frontendArgs));
     }
 
+    /**
+     * Load the program specified by given arguments to the frontend and get
+     * an object that performs the following phases of the compilation one by
+     * one. The phases are performed in the same way as by
+     * {@link CompilationExecutor#compile(String[])}. It allows running and
+     * measuring single phases, e.g. in benchmarks.
+     *
+     * @param frontendArgs Parameters to the NesC frontend that specify the
+     *                     program to compile.
+     * @return Object that performs phases of the compilation of the loaded
+     *         program.
+     * @throws ErroneousIssueException An error in the program is detected.
+     */
+    public PhasedCompilation startCompilation(String[] frontendArgs)
+            throws ErroneousIssueException, InvalidOptionsException {
+        final ProjectData projectData = load(new RawParamsContextCreator(frontendArgs));
+        handleIssues(projectData);
+        return new PhasedCompilation(projectData);
+    }
+
     private CompilationResult compile(ContextCreator contextCreator)
             throws InvalidOptionsException, ErroneousIssueException {
+        final PhaseMeasurer measurer = new PhaseMeasurer(listener);
+        final ImmutableList<Component> noComponents = ImmutableList.of();
 
+        measurer.phaseStarted("load");
         final ProjectData projectData = load(contextCreator);
+        measurer.setCountNodes(projectData.getTimeReportFile().isPresent());
+        measurer.phaseEnded(collectProgram(projectData, Optional.<Configuration>absent(), noComponents));
         handleIssues(projectData);
+
+        measurer.phaseStarted("basicReduce");
         final Optional<Configuration> taskWiringConf = basicReduce(projectData);
+        measurer.phaseEnded(collectProgram(projectData, taskWiringConf, noComponents));
+
+        measurer.phaseStarted("collectUniqueNames");
         collectUniqueNames(projectData);
+        measurer.phaseEnded();
+
+        measurer.phaseStarted("instantiate");
         final NavigableSet<Component> instantiatedComponents = instantiate(projectData, taskWiringConf);
+        measurer.phaseEnded(collectProgram(projectData, taskWiringConf, instantiatedComponents));
+
+        measurer.phaseStarted("fold");
         fold(projectData, taskWiringConf, instantiatedComponents);
+        measurer.phaseEnded(collectProgram(projectData, taskWiringConf, instantiatedComponents));
+
+        measurer.phaseStarted("finalAnalysis");
         performFinalAnalysis(projectData, taskWiringConf, instantiatedComponents);
+        measurer.phaseEnded();
+
+        measurer.phaseStarted("connect");
         final WiresGraph wiring = connect(projectData, taskWiringConf, instantiatedComponents);
+        measurer.phaseEnded();
+
+        measurer.phaseStarted("stripCombiningFunsMangling");
         final ImmutableMap<String, String> combiningFunsAfterMangling =
                 stripCombiningFunsMangling(projectData);
+        measurer.phaseEnded();
+
+        measurer.phaseStarted("generateIntermediateFuns");
         final Multimap<String, FunctionDecl> intermediateFuns = generateIntermediateFuns(wiring,
                 combiningFunsAfterMangling, projectData.getNameMangler());
-        finalReduce(projectData, taskWiringConf, instantiatedComponents, wiring);
+        measurer.phaseEnded(intermediateFuns.values());
+
+        final ParallelPassRunner passRunner = new ParallelPassRunner(projectData.getCoreThreadsCount());
+        try {
+            return compile(projectData, taskWiringConf, instantiatedComponents, wiring,
+                    intermediateFuns, measurer, passRunner);
+        } finally {
+            passRunner.shutdown();
+        }
+    }
+
+    private CompilationResult compile(ProjectData projectData, Optional<Configuration> taskWiringConf,
+                NavigableSet<Component> instantiatedComponents, WiresGraph wiring,
+                Multimap<String, FunctionDecl> intermediateFuns, PhaseMeasurer measurer,
+                ParallelPassRunner passRunner) throws ErroneousIssueException {
+        measurer.phaseStarted("finalReduce");
+        finalReduce(projectData, taskWiringConf, instantiatedComponents, wiring, passRunner);
+        measurer.phaseEnded(collectProgram(projectData, taskWiringConf, instantiatedComponents));
+
+        measurer.phaseStarted("generate");
         final ImmutableList<Declaration> finalCode = generate(projectData, instantiatedComponents,
                 intermediateFuns.values());
+        measurer.phaseEnded(finalCode);
+
+        measurer.phaseStarted("checkConnections");
         checkConnections(finalCode, instantiatedComponents);
+        measurer.phaseEnded();
+
+        measurer.phaseStarted("buildReferencesGraph");
         final ReferencesGraph refsGraph = buildReferencesGraph(finalCode);
+        measurer.phaseEnded();
+
+        measurer.phaseStarted("optimize");
         final ImmutableList<Declaration> cleanedCode = optimize(projectData,
                 wiring, finalCode, refsGraph);
-        reduceAtomic(projectData, cleanedCode);
+        measurer.phaseEnded(cleanedCode);
+
+        measurer.phaseStarted("reduceAtomic");
+        reduceAtomic(projectData, cleanedCode, passRunner);
+        measurer.phaseEnded(cleanedCode);
+
+        measurer.phaseStarted("cleanAtomic");
         final ImmutableList<Declaration> finalCleanedCode = cleanAtomic(projectData,
                 cleanedCode, refsGraph);
+        measurer.phaseEnded(finalCleanedCode);
+
+        measurer.phaseStarted("nameParameters");
         nameParameters(finalCleanedCode, projectData.getNameMangler());
+        measurer.phaseEnded();
+
+        reportCounters(projectData);
 
         return new CompilationResult(finalCleanedCode, projectData.getNameMangler(),
                 refsGraph, projectData.getOutputFile(), projectData.getExternalVariables(),
-                projectData.getExternalVariablesFile(), projectData.getABI(),
-                projectData.getAtomicSpecification());
+                projectData.getExternalVariablesFile(), projectData.getTimeReportFile(),
+                projectData.getABI(), projectData.getAtomicSpecification());
+    }
+
+    /**
+     * Collect roots of all abstract syntax trees of the program before the
+     * generation of the final list of declarations: all components (including
+     * generic ones), external declarations, instantiated components and the
+     * configuration wiring tasks.
+     *
+     * @return List with roots of trees of the program.
+     */
+    private ImmutableList<Node> collectProgram(ProjectData projectData, Optional<Configuration> taskWiringConf,
+                Collection<Component> instantiatedComponents) {
+        final ImmutableList.Builder<Node> programBuilder = ImmutableList.builder();
+
+        for (FileData fileData : projectData.getFileDatas().values()) {
+            if (fileData.getEntityRoot().isPresent()) {
+                programBuilder.add(fileData.getEntityRoot().get());
+            }
+            programBuilder.addAll(fileData.getExtdefs());
+        }
+
+        programBuilder.addAll(instantiatedComponents);
+
+        if (taskWiringConf.isPresent()) {
+            programBuilder.add(taskWiringConf.get());
+        }
+
+        return programBuilder.build();
     }
 
     /**
@@ -229,7 +429,16 @@ public final class CompilationExecutor {
      * @return Data about loaded project.
      */
     private ProjectData load(ContextCreator contextCreator) throws InvalidOptionsException{
-        final ProjectData projectData = frontend.build(contextCreator.createContext());
+        final ContextRef contextRef = contextCreator.createContext();
+        final ProjectData projectData;
+
+        try {
+            projectData = frontend.build(contextRef);
+        } finally {
+            // The executor can be used for many compilations
+            frontend.deleteContext(contextRef);
+        }
+
         if (projectData.getIssues().isEmpty()) {
             projectData.getNameMangler().addForbiddenNames(projectData.getGlobalNames().values());
         }
@@ -501,16 +710,29 @@ public final class CompilationExecutor {
      * </ol>
      */
     private void finalReduce(ProjectData projectData, Optional<Configuration> taskWiringConf,
-            NavigableSet<Component> instantiatedComponents, WiresGraph graph) {
+            NavigableSet<Component> instantiatedComponents, WiresGraph graph,
+            ParallelPassRunner passRunner) {
+        /* Transformations of external tag declarations are shared between
+           units, so this traversal is always sequential. */
         traverseProgram(projectData, taskWiringConf, instantiatedComponents,
                 new FinalTransformer(graph, projectData.getABI()),
                 Optional.<String>absent());
-        traverseProgram(projectData, taskWiringConf, instantiatedComponents,
-                new ExternalExprTransformer(projectData.getNameMangler()),
-                new ExternalExprBlockData());
-        traverseProgram(projectData, taskWiringConf, instantiatedComponents,
-                new ExprTransformer<>(new OffsetofTransformation(projectData.getABI())),
-                null);
+
+        final ImmutableList<Node> units = collectUnits(projectData, taskWiringConf,
+                instantiatedComponents);
+        final ImmutableSet<String> forbiddenNames = ImmutableSet.copyOf(
+                projectData.getGlobalNames().values());
+        final ABI abi = projectData.getABI();
+
+        passRunner.runForAll(units, new ParallelPassRunner.UnitPass<Node, Void>() {
+            @Override
+            public Void run(Node unit, int unitIndex) {
+                unit.traverse(new ExternalExprTransformer(new UnitNameMangler(unitIndex, forbiddenNames)),
+                        new ExternalExprBlockData());
+                unit.traverse(new ExprTransformer<>(new OffsetofTransformation(abi)), null);
+                return null;
+            }
+        });
     }
 
     /**
@@ -550,6 +772,37 @@ public final class CompilationExecutor {
         }
     }
 
+    /**
+     * Collect all units of the program in the order of their traversal by
+     * {@link CompilationExecutor#traverseProgram}. Indices of units in the
+     * returned list do not depend on the count of threads used for
+     * processing them.
+     *
+     * @return List with all units of the program.
+     */
+    private ImmutableList<Node> collectUnits(ProjectData projectData, Optional<Configuration> taskWiringConf,
+                NavigableSet<Component> instantiatedComponents) {
+        final ImmutableList.Builder<Node> unitsBuilder = ImmutableList.builder();
+        unitsBuilder.addAll(instantiatedComponents);
+
+        for (FileData fileData : projectData.getFileDatas().values()) {
+            if (fileData.getEntityRoot().isPresent()
+                    && fileData.getEntityRoot().get() instanceof Component) {
+                final Component component = (Component) fileData.getEntityRoot().get();
+                if (!component.getIsAbstract()) {
+                    unitsBuilder.add(component);
+                }
+            }
+            unitsBuilder.addAll(fileData.getExtdefs());
+        }
+
+        if (taskWiringConf.isPresent()) {
+            unitsBuilder.add(taskWiringConf.get());
+        }
+
+        return unitsBuilder.build();
+    }
+
     /**
      * Generate a final list with all C declarations that constitute the NesC
      * program.
@@ -652,14 +905,20 @@ public final class CompilationExecutor {
         }
     }
 
-    private void reduceAtomic(ProjectData projectData, ImmutableList<Declaration> declarations) {
-        final AtomicTransformer atomicTransformer = new AtomicTransformer(
-                AtomicSpecification.DEFAULT_SPECIFICATION, projectData.getNameMangler());
-        final AtomicBlockData initialData = AtomicBlockData.newInitialData();
-
-        for (Declaration declaration : declarations) {
-            declaration.traverse(atomicTransformer, initialData);
-        }
+    private void reduceAtomic(ProjectData projectData, ImmutableList<Declaration> declarations,
+                ParallelPassRunner passRunner) {
+        final ImmutableSet<String> forbiddenNames = ImmutableSet.copyOf(
+                projectData.getGlobalNames().values());
+
+        passRunner.runForAll(declarations, new ParallelPassRunner.UnitPass<Declaration, Void>() {
+            @Override
+            public Void run(Declaration declaration, int declarationIndex) {
+                declaration.traverse(new AtomicTransformer(AtomicSpecification.DEFAULT_SPECIFICATION,
+                        new UnitNameMangler(declarationIndex, forbiddenNames)),
+                        AtomicBlockData.newInitialData());
+                return null;
+            }
+        });
     }
 
     private ImmutableList<Declaration> cleanAtomic(ProjectData projectData,
@@ -669,6 +928,22 @@ public final class CompilationExecutor {
                 .clean();
     }
 
+    /**
+     * Notify the listener about values of counters of the compilation of the
+     * given project.
+     *
+     * @param projectData Project data of the compilation.
+     */
+    private void reportCounters(ProjectData projectData) {
+        if (!listener.isPresent()) {
+            return;
+        }
+
+        final TypeLayoutCache layoutCache = TypeLayoutCache.forABI(projectData.getABI());
+        listener.get().counterReported("typeLayoutCacheHits", layoutCache.getHitsCount());
+        listener.get().counterReported("typeLayoutCacheMisses", layoutCache.getMissesCount());
+    }
+
     /**
      * Name all unnamed parameters in functions definitions from given iterable.
      *
@@ -730,6 +1005,128 @@ public final class CompilationExecutor {
         }
     }
 
+    /**
+     * <p>Compilation of a loaded program whose phases are performed
+     * separately. Each phase has to be performed after the phases that
+     * precede it in {@link CompilationExecutor#compile(String[])}.</p>
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    public final class PhasedCompilation {
+        /**
+         * Data about the loaded program.
+         */
+        private final ProjectData projectData;
+
+        /**
+         * Configuration that wires task interfaces. It is absent until the
+         * basic reduction is performed or if it is not necessary.
+         */
+        private Optional<Configuration> taskWiringConf;
+
+        /**
+         * Instantiated components. It is absent until the instantiation is
+         * performed.
+         */
+        private Optional<NavigableSet<Component>> instantiatedComponents;
+
+        /**
+         * The wiring graph. It is absent until it is created.
+         */
+        private Optional<WiresGraph> wiring;
+
+        private PhasedCompilation(ProjectData projectData) {
+            this.projectData = projectData;
+            this.taskWiringConf = Optional.absent();
+            this.instantiatedComponents = Optional.absent();
+            this.wiring = Optional.absent();
+        }
+
+        /**
+         * @return Data about the loaded program.
+         */
+        public ProjectData getProjectData() {
+            return projectData;
+        }
+
+        /**
+         * Perform the basic reduction of the program.
+         *
+         * @return Configuration that wires task interfaces from non-generic
+         *         modules (if it is necessary).
+         */
+        public Optional<Configuration> basicReduce() {
+            taskWiringConf = CompilationExecutor.this.basicReduce(projectData);
+            return taskWiringConf;
+        }
+
+        /**
+         * Collect unique names in module tables of non-generic modules.
+         */
+        public void collectUniqueNames() {
+            CompilationExecutor.this.collectUniqueNames(projectData);
+        }
+
+        /**
+         * Instantiate generic components.
+         *
+         * @return Set with instantiated components.
+         * @throws ErroneousIssueException A cycle in the creation of
+         *                                 components is detected.
+         */
+        public NavigableSet<Component> instantiate() throws ErroneousIssueException {
+            instantiatedComponents = Optional.of(CompilationExecutor.this.instantiate(
+                    projectData, taskWiringConf));
+            return instantiatedComponents.get();
+        }
+
+        /**
+         * Fold calls to constant functions.
+         */
+        public void fold() {
+            CompilationExecutor.this.fold(projectData, taskWiringConf, getInstantiatedComponents());
+        }
+
+        /**
+         * Perform the final analysis of the program.
+         *
+         * @throws ErroneousIssueException An error in the program is
+         *                                 detected.
+         */
+        public void performFinalAnalysis() throws ErroneousIssueException {
+            CompilationExecutor.this.performFinalAnalysis(projectData, taskWiringConf,
+                    getInstantiatedComponents());
+        }
+
+        /**
+         * Create the wiring graph. It can be created many times.
+         *
+         * @return The created graph.
+         */
+        public WiresGraph connect() {
+            wiring = Optional.of(CompilationExecutor.this.connect(projectData, taskWiringConf,
+                    getInstantiatedComponents()));
+            return wiring.get();
+        }
+
+        /**
+         * Generate intermediate functions for the most recently created
+         * wiring graph.
+         *
+         * @return Multimap with intermediate functions.
+         */
+        public Multimap<String, FunctionDecl> generateIntermediateFuns() {
+            checkState(wiring.isPresent(), "the wiring graph has not been created yet");
+            return CompilationExecutor.this.generateIntermediateFuns(wiring.get(),
+                    stripCombiningFunsMangling(projectData), projectData.getNameMangler());
+        }
+
+        private NavigableSet<Component> getInstantiatedComponents() {
+            checkState(instantiatedComponents.isPresent(), "components have not been instantiated yet");
+            return instantiatedComponents.get();
+        }
+    }
+
     /**
      * Interface for creating the context for the frontend.
      *
@@ -6,7 +6,8 @@ import pl.edu.mimuw.nesc.problem.NescWarning;
 /**
  * <p>Interface that allows listening events that are generated by the compiler.
  * Currently, the events are warnings and errors that are detected during
- * compilation.</p>
+ * compilation, starts and ends of phases of the compilation and values of
+ * counters of the compiler.</p>
  *
  * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
  */
@@ -24,4 +25,27 @@ public interface CompilationListener {
      * @param warning Warning that has been generated.
      */
     void warning(NescWarning warning);
+
+    /**
+     * A phase of the compilation has started.
+     *
+     * @param phaseName Name of the phase.
+     */
+    void phaseStarted(String phaseName);
+
+    /**
+     * A phase of the compilation has ended.
+     *
+     * @param measurement Resources used by the phase.
+     */
+    void phaseEnded(PhaseMeasurement measurement);
+
+    /**
+     * Value of a counter of the compiler, e.g. of hits of a cache, has been
+     * determined at the end of the compilation.
+     *
+     * @param counterName Name of the counter.
+     * @param value Value of the counter.
+     */
+    void counterReported(String counterName, long value);
 }
@@ -52,6 +52,11 @@ public final class CompilationResult {
      */
     private final Optional<String> externalVariablesFileName;
 
+    /**
+     * Name of the file for the report of times of compilation phases.
+     */
+    private final Optional<String> timeReportFileName;
+
     /**
      * ABI for the project.
      */
@@ -69,6 +74,7 @@ public final class CompilationResult {
             String outputFileName,
             SetMultimap<Optional<String>, String> externalVariables,
             Optional<String> externalVariablesFileName,
+            Optional<String> timeReportFileName,
             ABI abi,
             AtomicSpecification atomicSpecification
     ) {
@@ -81,6 +87,7 @@ public final class CompilationResult {
         checkArgument(!outputFileName.isEmpty(), "output file name cannot be an empty string");
         checkArgument(!externalVariablesFileName.isPresent() || !externalVariablesFileName.get().isEmpty(),
                 "external variables file name cannot be an empty string");
+        checkNotNull(timeReportFileName, "name of the time report file cannot be null");
         checkNotNull(abi, "ABI cannot be null");
         checkNotNull(atomicSpecification, "atomic specification cannot be null");
 
@@ -90,6 +97,7 @@ public final class CompilationResult {
         this.outputFileName = outputFileName;
         this.externalVariables = externalVariables;
         this.externalVariablesFileName = externalVariablesFileName;
+        this.timeReportFileName = timeReportFileName;
         this.abi = abi;
         this.atomicSpecification = atomicSpecification;
     }
@@ -157,6 +165,17 @@ public final class CompilationResult {
         return externalVariablesFileName;
     }
 
+    /**
+     * Get the name of the file for the report of times of compilation phases.
+     *
+     * @return Name of the time report file to create ('-' for the standard
+     *         output). If it is absent, then the report is not expected to be
+     *         created.
+     */
+    public Optional<String> getTimeReportFileName() {
+        return timeReportFileName;
+    }
+
     /**
      * Get ABI of the target platform of the project.
      *
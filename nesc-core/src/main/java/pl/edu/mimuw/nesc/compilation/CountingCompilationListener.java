@@ -66,4 +66,25 @@ public class CountingCompilationListener implements CompilationListener {
             targetListener.get().warning(warning);
         }
     }
+
+    @Override
+    public void phaseStarted(String phaseName) {
+        if (targetListener.isPresent()) {
+            targetListener.get().phaseStarted(phaseName);
+        }
+    }
+
+    @Override
+    public void phaseEnded(PhaseMeasurement measurement) {
+        if (targetListener.isPresent()) {
+            targetListener.get().phaseEnded(measurement);
+        }
+    }
+
+    @Override
+    public void counterReported(String counterName, long value) {
+        if (targetListener.isPresent()) {
+            targetListener.get().counterReported(counterName, value);
+        }
+    }
 }
@@ -7,7 +7,7 @@ import pl.edu.mimuw.nesc.problem.NescWarning;
 
 /**
  * <p>Listener that prints issues it receives to stderr using
- * {@link NescIssuePrinter}.</p>
+ * {@link NescIssuePrinter}. Events of phases and counters are ignored.</p>
  *
  * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
  */
@@ -36,4 +36,16 @@ public class DefaultCompilationListener implements CompilationListener {
     public void warning(NescWarning warning) {
         issuePrinter.print(warning);
     }
+
+    @Override
+    public void phaseStarted(String phaseName) {
+    }
+
+    @Override
+    public void phaseEnded(PhaseMeasurement measurement) {
+    }
+
+    @Override
+    public void counterReported(String counterName, long value) {
+    }
 }
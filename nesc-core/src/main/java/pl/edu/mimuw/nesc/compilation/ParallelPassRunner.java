@@ -0,0 +1,157 @@
+package pl.edu.mimuw.nesc.compilation;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import pl.edu.mimuw.nesc.ast.gen.Node;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Runner of passes that process units of the program, e.g. components and
+ * external declarations, separately. Units are processed on a fork-join pool
+ * if more than one thread is used. A pass must not modify any state shared
+ * between units, in particular it must not use the global name mangler.
+ * Each unit is given its index in the list of units and it can be used for
+ * creating names that do not depend on the order of processing units. The
+ * results are always returned in the order of units, so they are the same
+ * for each count of threads.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class ParallelPassRunner {
+    /**
+     * Pool used for processing units. It is absent if units are processed in
+     * the calling thread.
+     */
+    private final Optional<ForkJoinPool> pool;
+
+    /**
+     * Create a runner that uses the given count of threads.
+     *
+     * @param threadsCount Count of threads to use.
+     * @throws IllegalArgumentException Count of threads is not positive.
+     */
+    public ParallelPassRunner(int threadsCount) {
+        checkArgument(threadsCount > 0, "count of threads must be positive");
+        this.pool = threadsCount > 1
+                ? Optional.of(new ForkJoinPool(threadsCount))
+                : Optional.<ForkJoinPool>absent();
+    }
+
+    /**
+     * Run the given pass for all given units and wait until it finishes.
+     *
+     * @param units Units to process.
+     * @param pass Pass to run for each unit.
+     * @return List with results of the pass for consecutive units.
+     */
+    public <T extends Node, R> ImmutableList<R> run(List<T> units, UnitPass<? super T, R> pass) {
+        checkNotNull(units, "units cannot be null");
+        checkNotNull(pass, "pass cannot be null");
+
+        final Object[] results = new Object[units.size()];
+        final UnitsAction<T, R> action = new UnitsAction<>(units, pass, results, 0, units.size());
+
+        if (pool.isPresent()) {
+            pool.get().invoke(action);
+        } else {
+            action.processSequentially();
+        }
+
+        @SuppressWarnings("unchecked")
+        final ImmutableList<R> resultsList = (ImmutableList<R>) ImmutableList.copyOf(results);
+        return resultsList;
+    }
+
+    /**
+     * Run the given pass that has no results for all given units.
+     *
+     * @param units Units to process.
+     * @param pass Pass to run for each unit.
+     */
+    public <T extends Node> void runForAll(List<T> units, final UnitPass<? super T, ?> pass) {
+        checkNotNull(pass, "pass cannot be null");
+
+        run(units, new UnitPass<T, Boolean>() {
+            @Override
+            public Boolean run(T unit, int unitIndex) {
+                pass.run(unit, unitIndex);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Release threads used by this runner. It cannot be used after calling
+     * this method.
+     */
+    public void shutdown() {
+        if (pool.isPresent()) {
+            pool.get().shutdown();
+        }
+    }
+
+    /**
+     * <p>Interface for a pass run for a single unit.</p>
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    public interface UnitPass<T, R> {
+        /**
+         * Process the given unit.
+         *
+         * @param unit Unit to process.
+         * @param unitIndex Index of the unit.
+         * @return Result of the pass for the unit. It must not be
+         *         <code>null</code>.
+         */
+        R run(T unit, int unitIndex);
+    }
+
+    /**
+     * <p>Action that processes a range of units. It is split in halves as
+     * long as it contains more than one unit.</p>
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private static final class UnitsAction<T extends Node, R> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<T> units;
+        private final UnitPass<? super T, R> pass;
+        private final Object[] results;
+        private final int start;
+        private final int end;
+
+        private UnitsAction(List<T> units, UnitPass<? super T, R> pass, Object[] results,
+                int start, int end) {
+            this.units = units;
+            this.pass = pass;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= 1) {
+                processSequentially();
+            } else {
+                final int middle = start + (end - start) / 2;
+                invokeAll(new UnitsAction<>(units, pass, results, start, middle),
+                        new UnitsAction<>(units, pass, results, middle, end));
+            }
+        }
+
+        private void processSequentially() {
+            for (int i = start; i < end; ++i) {
+                results[i] = checkNotNull(pass.run(units.get(i), i),
+                        "result of the pass for a unit cannot be null");
+            }
+        }
+    }
+}
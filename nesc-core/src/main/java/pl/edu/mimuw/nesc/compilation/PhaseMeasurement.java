@@ -0,0 +1,78 @@
+package pl.edu.mimuw.nesc.compilation;
+
+import com.google.common.base.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Resources used by a single phase of the compilation. CPU time and the
+ * amount of allocated memory concern only the thread that has performed the
+ * phase and they are absent if the virtual machine does not support
+ * measuring them.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class PhaseMeasurement {
+    /**
+     * Name of the phase.
+     */
+    private final String phaseName;
+
+    /**
+     * Elapsed real time of the phase in nanoseconds.
+     */
+    private final long wallTimeNanos;
+
+    /**
+     * CPU time used by the thread that has performed the phase in
+     * nanoseconds.
+     */
+    private final Optional<Long> cpuTimeNanos;
+
+    /**
+     * Count of bytes allocated by the thread that has performed the phase.
+     */
+    private final Optional<Long> allocatedBytes;
+
+    /**
+     * Count of nodes of the abstract syntax trees of the program after the
+     * phase. It is absent if it has not been counted.
+     */
+    private final Optional<Integer> nodesCount;
+
+    PhaseMeasurement(String phaseName, long wallTimeNanos, Optional<Long> cpuTimeNanos,
+            Optional<Long> allocatedBytes, Optional<Integer> nodesCount) {
+        checkNotNull(phaseName, "name of the phase cannot be null");
+        checkNotNull(cpuTimeNanos, "CPU time cannot be null");
+        checkNotNull(allocatedBytes, "allocated bytes cannot be null");
+        checkNotNull(nodesCount, "nodes count cannot be null");
+        checkArgument(!phaseName.isEmpty(), "name of the phase cannot be an empty string");
+
+        this.phaseName = phaseName;
+        this.wallTimeNanos = wallTimeNanos;
+        this.cpuTimeNanos = cpuTimeNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.nodesCount = nodesCount;
+    }
+
+    public String getPhaseName() {
+        return phaseName;
+    }
+
+    public long getWallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    public Optional<Long> getCpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    public Optional<Long> getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public Optional<Integer> getNodesCount() {
+        return nodesCount;
+    }
+}
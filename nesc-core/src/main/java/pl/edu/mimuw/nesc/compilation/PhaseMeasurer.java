@@ -0,0 +1,149 @@
+package pl.edu.mimuw.nesc.compilation;
+
+import com.google.common.base.Optional;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import pl.edu.mimuw.nesc.ast.gen.Node;
+import pl.edu.mimuw.nesc.astutil.AstUtils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * <p>Object that measures resources used by consecutive phases of the
+ * compilation and notifies a listener about starts and ends of phases.
+ * Phases cannot be nested and each phase must be started and ended in the
+ * same thread.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class PhaseMeasurer {
+    /**
+     * Listener notified about phases.
+     */
+    private final Optional<CompilationListener> listener;
+
+    /**
+     * Bean used for measuring the CPU time and allocated memory.
+     */
+    private final ThreadMXBean threadBean;
+
+    /**
+     * Value indicating if AST nodes are counted at ends of phases.
+     */
+    private boolean countNodes;
+
+    /**
+     * Name of the current phase and measurements at its start.
+     */
+    private Optional<String> currentPhase;
+    private long startWallTime;
+    private long startCpuTime;
+    private long startAllocatedBytes;
+
+    public PhaseMeasurer(Optional<CompilationListener> listener) {
+        checkNotNull(listener, "listener cannot be null");
+        this.listener = listener;
+        this.threadBean = ManagementFactory.getThreadMXBean();
+        this.countNodes = false;
+        this.currentPhase = Optional.absent();
+    }
+
+    /**
+     * Set if nodes of abstract syntax trees given at ends of phases are
+     * counted. Counting requires traversing all nodes so it is disabled by
+     * default.
+     *
+     * @param countNodes Value indicating if nodes will be counted.
+     */
+    public void setCountNodes(boolean countNodes) {
+        this.countNodes = countNodes;
+    }
+
+    /**
+     * Start measuring a new phase.
+     *
+     * @param phaseName Name of the phase.
+     */
+    public void phaseStarted(String phaseName) {
+        checkNotNull(phaseName, "name of the phase cannot be null");
+        checkArgument(!phaseName.isEmpty(), "name of the phase cannot be an empty string");
+        checkState(!currentPhase.isPresent(), "phase '%s' has not ended", currentPhase.orNull());
+
+        if (listener.isPresent()) {
+            listener.get().phaseStarted(phaseName);
+        }
+
+        currentPhase = Optional.of(phaseName);
+        startCpuTime = getCurrentThreadCpuTime();
+        startAllocatedBytes = getCurrentThreadAllocatedBytes();
+        startWallTime = System.nanoTime();
+    }
+
+    /**
+     * End the current phase without counting nodes.
+     */
+    public void phaseEnded() {
+        phaseEnded(Optional.<Iterable<? extends Node>>absent());
+    }
+
+    /**
+     * End the current phase and count nodes of the given trees if counting
+     * is enabled.
+     *
+     * @param program Roots of abstract syntax trees of the program after the
+     *                phase.
+     */
+    public void phaseEnded(Iterable<? extends Node> program) {
+        checkNotNull(program, "program cannot be null");
+        phaseEnded(Optional.<Iterable<? extends Node>>of(program));
+    }
+
+    private void phaseEnded(Optional<Iterable<? extends Node>> program) {
+        final long endWallTime = System.nanoTime();
+        final long endCpuTime = getCurrentThreadCpuTime();
+        final long endAllocatedBytes = getCurrentThreadAllocatedBytes();
+        checkState(currentPhase.isPresent(), "no phase has started");
+
+        final Optional<Integer> nodesCount = countNodes && program.isPresent()
+                ? Optional.of(AstUtils.countNodes(program.get()))
+                : Optional.<Integer>absent();
+        final PhaseMeasurement measurement = new PhaseMeasurement(
+                currentPhase.get(),
+                endWallTime - startWallTime,
+                startCpuTime != -1L && endCpuTime != -1L
+                        ? Optional.of(endCpuTime - startCpuTime)
+                        : Optional.<Long>absent(),
+                startAllocatedBytes != -1L && endAllocatedBytes != -1L
+                        ? Optional.of(endAllocatedBytes - startAllocatedBytes)
+                        : Optional.<Long>absent(),
+                nodesCount
+        );
+
+        currentPhase = Optional.absent();
+
+        if (listener.isPresent()) {
+            listener.get().phaseEnded(measurement);
+        }
+    }
+
+    private long getCurrentThreadCpuTime() {
+        return threadBean.isCurrentThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled()
+                ? threadBean.getCurrentThreadCpuTime()
+                : -1L;
+    }
+
+    private long getCurrentThreadAllocatedBytes() {
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            return -1L;
+        }
+
+        final com.sun.management.ThreadMXBean sunThreadBean =
+                (com.sun.management.ThreadMXBean) threadBean;
+        return sunThreadBean.isThreadAllocatedMemorySupported()
+                    && sunThreadBean.isThreadAllocatedMemoryEnabled()
+                ? sunThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId())
+                : -1L;
+    }
+}
@@ -0,0 +1,203 @@
+package pl.edu.mimuw.nesc.compilation;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import pl.edu.mimuw.nesc.problem.NescError;
+import pl.edu.mimuw.nesc.problem.NescWarning;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Compilation listener that collects measurements of phases and values of
+ * counters and allows writing them as a report in JSON format. All events
+ * are also passed to the target listener. The report has the following form:</p>
+ *
+ * <pre>
+ * {
+ *   "phases": [
+ *     {
+ *       "name": "load",
+ *       "wallTimeNanos": 1200000,
+ *       "cpuTimeNanos": 1100000,
+ *       "allocatedBytes": 5242880,
+ *       "nodesCount": 48213
+ *     },
+ *     ...
+ *   ],
+ *   "totalWallTimeNanos": 5400000,
+ *   "counters": {
+ *     "typeLayoutCacheHits": 1520,
+ *     "typeLayoutCacheMisses": 87
+ *   }
+ * }
+ * </pre>
+ *
+ * <p>Values that have not been measured are <code>null</code>.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class TimeReportCompilationListener implements CompilationListener {
+    /**
+     * Name of the report file that causes printing the report to the
+     * standard output.
+     */
+    public static final String STANDARD_OUTPUT_NAME = "-";
+
+    /**
+     * Listener that will receive all events reported to this listener.
+     */
+    private final Optional<CompilationListener> targetListener;
+
+    /**
+     * Measurements of phases in order of their ends.
+     */
+    private final List<PhaseMeasurement> measurements;
+
+    /**
+     * Values of counters in order of their first reports.
+     */
+    private final Map<String, Long> counters;
+
+    public TimeReportCompilationListener(Optional<CompilationListener> targetListener) {
+        checkNotNull(targetListener, "target listener cannot be null");
+        this.targetListener = targetListener;
+        this.measurements = new ArrayList<>();
+        this.counters = new LinkedHashMap<>();
+    }
+
+    /**
+     * Get measurements of all phases reported to this listener.
+     *
+     * @return List with measurements in order of ends of phases.
+     */
+    public ImmutableList<PhaseMeasurement> getMeasurements() {
+        return ImmutableList.copyOf(measurements);
+    }
+
+    /**
+     * Get values of all counters reported to this listener.
+     *
+     * @return Map with the last reported value of each counter.
+     */
+    public ImmutableMap<String, Long> getCounters() {
+        return ImmutableMap.copyOf(counters);
+    }
+
+    /**
+     * Write the report of phases reported so far to the given file.
+     *
+     * @param fileName Name of the file to write the report to or
+     *                 {@link TimeReportCompilationListener#STANDARD_OUTPUT_NAME}
+     *                 to print it to the standard output.
+     * @throws IOException Writing the report fails.
+     */
+    public void writeReport(String fileName) throws IOException {
+        checkNotNull(fileName, "file name cannot be null");
+        checkArgument(!fileName.isEmpty(), "file name cannot be an empty string");
+
+        if (fileName.equals(STANDARD_OUTPUT_NAME)) {
+            final Writer writer = new OutputStreamWriter(System.out, "UTF-8");
+            writeReport(writer);
+            writer.flush();
+        } else {
+            try (final OutputStream outStream = new FileOutputStream(fileName);
+                 final Writer writer = new OutputStreamWriter(outStream, "UTF-8")) {
+                writeReport(writer);
+            }
+        }
+    }
+
+    private void writeReport(Writer writer) throws IOException {
+        long totalWallTime = 0L;
+
+        writer.write("{\n  \"phases\": [");
+        for (int i = 0; i < measurements.size(); ++i) {
+            final PhaseMeasurement measurement = measurements.get(i);
+            totalWallTime += measurement.getWallTimeNanos();
+
+            writer.write(i == 0 ? "\n" : ",\n");
+            writer.write("    {\n");
+            writer.write("      \"name\": \"" + escape(measurement.getPhaseName()) + "\",\n");
+            writer.write("      \"wallTimeNanos\": " + measurement.getWallTimeNanos() + ",\n");
+            writer.write("      \"cpuTimeNanos\": " + measurement.getCpuTimeNanos().orNull() + ",\n");
+            writer.write("      \"allocatedBytes\": " + measurement.getAllocatedBytes().orNull() + ",\n");
+            writer.write("      \"nodesCount\": " + measurement.getNodesCount().orNull() + "\n");
+            writer.write("    }");
+        }
+        writer.write(measurements.isEmpty() ? "],\n" : "\n  ],\n");
+        writer.write("  \"totalWallTimeNanos\": " + totalWallTime + ",\n");
+
+        writer.write("  \"counters\": {");
+        boolean first = true;
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            writer.write(first ? "\n" : ",\n");
+            writer.write("    \"" + escape(counter.getKey()) + "\": " + counter.getValue());
+            first = false;
+        }
+        writer.write(counters.isEmpty() ? "}\n}\n" : "\n  }\n}\n");
+    }
+
+    private static String escape(String value) {
+        final StringBuilder builder = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public void error(NescError error) {
+        if (targetListener.isPresent()) {
+            targetListener.get().error(error);
+        }
+    }
+
+    @Override
+    public void warning(NescWarning warning) {
+        if (targetListener.isPresent()) {
+            targetListener.get().warning(warning);
+        }
+    }
+
+    @Override
+    public void phaseStarted(String phaseName) {
+        if (targetListener.isPresent()) {
+            targetListener.get().phaseStarted(phaseName);
+        }
+    }
+
+    @Override
+    public void phaseEnded(PhaseMeasurement measurement) {
+        checkNotNull(measurement, "measurement cannot be null");
+        measurements.add(measurement);
+        if (targetListener.isPresent()) {
+            targetListener.get().phaseEnded(measurement);
+        }
+    }
+
+    @Override
+    public void counterReported(String counterName, long value) {
+        checkNotNull(counterName, "name of the counter cannot be null");
+        counters.put(counterName, value);
+        if (targetListener.isPresent()) {
+            targetListener.get().counterReported(counterName, value);
+        }
+    }
+}
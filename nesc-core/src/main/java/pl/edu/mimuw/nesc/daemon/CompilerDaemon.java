@@ -0,0 +1,412 @@
+package pl.edu.mimuw.nesc.daemon;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Compiler daemon that performs compilations requested by
+ * {@link DaemonClient} in a single long-running Java virtual machine. It
+ * avoids the costs of starting the virtual machine, loading classes and
+ * loading ABIs of predefined platforms for each compilation and lets the
+ * compiler code be optimized by the just-in-time compiler.</p>
+ *
+ * <p>The daemon listens on a TCP port of the loopback interface. Requests
+ * are handled at once by a fixed count of threads, so the compiler must
+ * allow concurrent compilations. When the daemon starts, it sets
+ * <code>System.out</code> and <code>System.err</code> to streams that
+ * send data to the buffers of the request handled by the writing thread (or
+ * by the thread that has started it). Output of each request is captured
+ * separately and the compiler prints messages as usual. The daemon handles
+ * only requests from clients running in the same working directory as the
+ * daemon because relative paths in parameters are resolved against the
+ * working directory of the virtual machine.</p>
+ *
+ * <p>State kept warm between requests is held by the compiler, e.g. in
+ * {@link pl.edu.mimuw.nesc.FrontendCaches} shared by its compilations.
+ * Frontend contexts and caches of files are not kept because the core phases
+ * transform the abstract syntax trees, declarations and the global
+ * environment of a standalone build in place, so they cannot be reused by
+ * the next compilation even if no file has changed.</p>
+ *
+ * <p>The port is accessible to all users of the machine, so each request
+ * must contain the token of the daemon. It is a random value generated when
+ * the daemon starts and written to the token file that only the owner of the
+ * daemon can read. The file is removed when the daemon stops.</p>
+ *
+ * <p>A request consists of the magic number, the version of the protocol,
+ * the token, the kind of the request, the working directory of the client
+ * and parameters for the compilation. A response consists of the exit status
+ * of the compilation and the captured standard output and standard error
+ * output.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class CompilerDaemon {
+    /**
+     * Port used by the daemon and clients if it is not specified.
+     */
+    public static final int DEFAULT_PORT = 7541;
+
+    /**
+     * Values that start each request.
+     */
+    static final int MAGIC = 0x6e657363;
+    static final int PROTOCOL_VERSION = 2;
+
+    /**
+     * Maximum count of parameters of a compilation in a request.
+     */
+    static final int MAX_ARGS_COUNT = 65536;
+
+    /**
+     * Time in milliseconds the daemon waits for data of a request.
+     */
+    private static final int REQUEST_TIMEOUT = 30000;
+
+    /**
+     * Count of random bytes of the token.
+     */
+    private static final int TOKEN_LENGTH = 32;
+
+    /**
+     * Kinds of requests.
+     */
+    static final byte REQUEST_COMPILE = 1;
+    static final byte REQUEST_SHUTDOWN = 2;
+
+    /**
+     * Exit status sent if the request cannot be handled.
+     */
+    static final int STATUS_REJECTED = 2;
+
+    /**
+     * Compiler used for handling requests.
+     */
+    private final DaemonCompiler compiler;
+
+    /**
+     * Port the daemon listens on.
+     */
+    private final int port;
+
+    /**
+     * File the token of the daemon is written to.
+     */
+    private final File tokenFile;
+
+    /**
+     * Canonical path of the working directory of the daemon.
+     */
+    private final String workingDirectory;
+
+    /**
+     * Count of threads that handle requests.
+     */
+    private final int threadsCount;
+
+    /**
+     * Streams of the daemon used for its own messages.
+     */
+    private final PrintStream daemonOut;
+    private final PrintStream daemonErr;
+
+    /**
+     * Streams <code>System.out</code> and <code>System.err</code> are set to
+     * while the daemon runs.
+     */
+    private final ThreadOutputStream requestsOut;
+    private final ThreadOutputStream requestsErr;
+
+    /**
+     * Value indicating if a request for shutdown has been received.
+     */
+    private final AtomicBoolean shutdownRequested;
+
+    /**
+     * Initialize the daemon. It does not start listening for requests.
+     *
+     * @param compiler Compiler that will perform requested compilations.
+     * @param port Port to listen on.
+     * @param tokenFile File the token of the daemon will be written to.
+     * @throws IOException The working directory cannot be determined.
+     */
+    public CompilerDaemon(DaemonCompiler compiler, int port, File tokenFile) throws IOException {
+        this(compiler, port, tokenFile, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Initialize the daemon. It does not start listening for requests.
+     *
+     * @param compiler Compiler that will perform requested compilations.
+     * @param port Port to listen on.
+     * @param tokenFile File the token of the daemon will be written to.
+     * @param threadsCount Maximum count of requests handled at once.
+     * @throws IOException The working directory cannot be determined.
+     */
+    public CompilerDaemon(DaemonCompiler compiler, int port, File tokenFile, int threadsCount)
+            throws IOException {
+        checkNotNull(compiler, "compiler cannot be null");
+        checkArgument(port > 0 && port <= 65535, "invalid port %s", port);
+        checkNotNull(tokenFile, "token file cannot be null");
+        checkArgument(threadsCount > 0, "count of threads must be positive");
+        this.compiler = compiler;
+        this.port = port;
+        this.tokenFile = tokenFile;
+        this.threadsCount = threadsCount;
+        this.workingDirectory = new File("").getCanonicalPath();
+        this.daemonOut = System.out;
+        this.daemonErr = System.err;
+        this.requestsOut = new ThreadOutputStream(daemonOut);
+        this.requestsErr = new ThreadOutputStream(daemonErr);
+        this.shutdownRequested = new AtomicBoolean(false);
+    }
+
+    /**
+     * Get the file with the token of the daemon that listens on the given
+     * port if the file is not specified explicitly.
+     *
+     * @param port Port of the daemon.
+     * @return The default token file for the port.
+     */
+    public static File getDefaultTokenFile(int port) {
+        return new File(System.getProperty("user.home"), ".nesc-daemon-" + port + ".token");
+    }
+
+    /**
+     * Listen for requests and handle them until a request for shutdown is
+     * received. The token file is written after the daemon starts listening.
+     * Requests that are being handled when the shutdown is requested are
+     * completed before this method returns.
+     *
+     * @throws IOException The daemon cannot listen on its port or the token
+     *                     file cannot be written.
+     */
+    public void run() throws IOException {
+        try (final ServerSocket serverSocket = new ServerSocket(port, 50,
+                InetAddress.getLoopbackAddress())) {
+            final byte[] token = generateToken();
+            writeTokenFile(token);
+
+            final ExecutorService executor = Executors.newFixedThreadPool(threadsCount);
+            System.setOut(new PrintStream(requestsOut, true));
+            System.setErr(new PrintStream(requestsErr, true));
+
+            try {
+                daemonOut.println("compiler daemon listening on port " + port + " in "
+                        + workingDirectory);
+
+                while (!shutdownRequested.get()) {
+                    final Socket socket;
+                    try {
+                        socket = serverSocket.accept();
+                    } catch (IOException e) {
+                        if (serverSocket.isClosed()) {
+                            break;
+                        }
+                        daemonErr.println("warning: cannot accept a request: " + e.getMessage());
+                        continue;
+                    }
+                    executor.execute(new RequestHandler(socket, serverSocket, token));
+                }
+            } finally {
+                executor.shutdown();
+                awaitTermination(executor);
+                System.setOut(daemonOut);
+                System.setErr(daemonErr);
+                Files.deleteIfExists(tokenFile.toPath());
+            }
+        }
+    }
+
+    private void awaitTermination(ExecutorService executor) {
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                daemonOut.println("waiting for requests being handled");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private byte[] generateToken() {
+        final byte[] randomBytes = new byte[TOKEN_LENGTH];
+        new SecureRandom().nextBytes(randomBytes);
+        return BaseEncoding.base16().encode(randomBytes).getBytes(Charsets.US_ASCII);
+    }
+
+    /**
+     * Write the token to a new token file that only the owner can read and
+     * write.
+     */
+    private void writeTokenFile(byte[] token) throws IOException {
+        final Path tokenPath = tokenFile.toPath();
+        Files.deleteIfExists(tokenPath);
+
+        if (Files.getFileStore(tokenPath.toAbsolutePath().getParent())
+                .supportsFileAttributeView("posix")) {
+            Files.createFile(tokenPath, PosixFilePermissions.asFileAttribute(
+                    EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+        } else {
+            Files.createFile(tokenPath);
+            final File file = tokenPath.toFile();
+            if (!file.setReadable(false, false) || !file.setReadable(true, true)
+                    || !file.setWritable(false, false) || !file.setWritable(true, true)) {
+                throw new IOException("cannot restrict permissions of the token file");
+            }
+        }
+
+        Files.write(tokenPath, token);
+    }
+
+    /**
+     * Handle a single request received through the given socket.
+     *
+     * @return <code>true</code> if and only if the request is the request
+     *         for shutdown of the daemon.
+     */
+    private boolean handleRequest(Socket socket, byte[] token) throws IOException {
+        final DataInputStream input = new DataInputStream(socket.getInputStream());
+        final DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+
+        if (input.readInt() != MAGIC || input.readInt() != PROTOCOL_VERSION) {
+            throw new IOException("invalid request header");
+        }
+
+        final byte[] requestToken = new byte[token.length];
+        input.readFully(requestToken);
+        if (!MessageDigest.isEqual(token, requestToken)) {
+            reject(output, "error: invalid token of the compiler daemon");
+            return false;
+        }
+
+        final byte kind = input.readByte();
+        final String clientDirectory = new File(input.readUTF()).getCanonicalPath();
+        final int argsCount = input.readInt();
+        if (argsCount < 0 || argsCount > MAX_ARGS_COUNT) {
+            throw new IOException("invalid count of parameters: " + argsCount);
+        }
+        final String[] args = new String[argsCount];
+        for (int i = 0; i < args.length; ++i) {
+            args[i] = input.readUTF();
+        }
+
+        switch (kind) {
+            case REQUEST_COMPILE:
+                if (clientDirectory.equals(workingDirectory)) {
+                    compile(args, output);
+                } else {
+                    reject(output, "error: the compiler daemon runs in directory '"
+                            + workingDirectory + "' and cannot compile in directory '"
+                            + clientDirectory + "'");
+                }
+                return false;
+            case REQUEST_SHUTDOWN:
+                writeResponse(output, 0, new byte[0], new byte[0]);
+                return true;
+            default:
+                throw new IOException("invalid kind of request: " + kind);
+        }
+    }
+
+    private void compile(String[] args, DataOutputStream output) throws IOException {
+        final ByteArrayOutputStream capturedOut = new ByteArrayOutputStream();
+        final ByteArrayOutputStream capturedErr = new ByteArrayOutputStream();
+        int status;
+
+        requestsOut.setThreadStream(capturedOut);
+        requestsErr.setThreadStream(capturedErr);
+
+        try {
+            status = compiler.compile(args);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            status = STATUS_REJECTED;
+        } finally {
+            System.out.flush();
+            System.err.flush();
+            requestsOut.removeThreadStream();
+            requestsErr.removeThreadStream();
+        }
+
+        writeResponse(output, status, capturedOut.toByteArray(), capturedErr.toByteArray());
+    }
+
+    private void reject(DataOutputStream output, String message) throws IOException {
+        final ByteArrayOutputStream messageBytes = new ByteArrayOutputStream();
+        final PrintStream messageStream = new PrintStream(messageBytes, true);
+        messageStream.println(message);
+        writeResponse(output, STATUS_REJECTED, new byte[0], messageBytes.toByteArray());
+    }
+
+    private void writeResponse(DataOutputStream output, int status, byte[] out,
+            byte[] err) throws IOException {
+        output.writeInt(status);
+        output.writeInt(out.length);
+        output.write(out);
+        output.writeInt(err.length);
+        output.write(err);
+        output.flush();
+    }
+
+    /**
+     * <p>Task that handles a single request. The server socket is closed
+     * after handling a request for shutdown to stop accepting requests.</p>
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private final class RequestHandler implements Runnable {
+        private final Socket socket;
+        private final ServerSocket serverSocket;
+        private final byte[] token;
+
+        private RequestHandler(Socket socket, ServerSocket serverSocket, byte[] token) {
+            this.socket = socket;
+            this.serverSocket = serverSocket;
+            this.token = token;
+        }
+
+        @Override
+        public void run() {
+            boolean shutdown = false;
+
+            try (final Socket requestSocket = socket) {
+                requestSocket.setSoTimeout(REQUEST_TIMEOUT);
+                shutdown = handleRequest(requestSocket, token);
+            } catch (IOException | RuntimeException e) {
+                daemonErr.println("warning: cannot handle a request: " + e.getMessage());
+            }
+
+            if (shutdown && shutdownRequested.compareAndSet(false, true)) {
+                try {
+                    serverSocket.close();
+                } catch (IOException e) {
+                    daemonErr.println("warning: cannot close the socket of the daemon: "
+                            + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package pl.edu.mimuw.nesc.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * <p>Thin client of {@link CompilerDaemon}. It sends its parameters to the
+ * daemon, writes the output of the compilation to its standard output and
+ * standard error output and exits with the status of the compilation. It
+ * uses only the standard library to start quickly.</p>
+ *
+ * <p>Usage: <code>DaemonClient [--daemon-port=PORT] [--shutdown-daemon | ARGS...]</code>
+ * where <code>ARGS</code> are parameters of the compiler. The token sent to
+ * the daemon is read from the default token file for the port.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class DaemonClient {
+    /**
+     * Options of the client. They must precede parameters of the compiler.
+     */
+    private static final String OPTION_PORT = "--daemon-port=";
+    private static final String OPTION_SHUTDOWN = "--shutdown-daemon";
+
+    /**
+     * Exit status if the daemon cannot be contacted.
+     */
+    private static final int STATUS_NO_DAEMON = 3;
+
+    public static void main(String[] args) {
+        int port = CompilerDaemon.DEFAULT_PORT;
+        int firstCompilerArg = 0;
+
+        if (args.length > 0 && args[0].startsWith(OPTION_PORT)) {
+            try {
+                port = Integer.parseInt(args[0].substring(OPTION_PORT.length()));
+            } catch (NumberFormatException e) {
+                System.err.println("error: invalid port of the compiler daemon '"
+                        + args[0].substring(OPTION_PORT.length()) + "'");
+                System.exit(STATUS_NO_DAEMON);
+            }
+            ++firstCompilerArg;
+        }
+
+        final boolean shutdown = args.length == firstCompilerArg + 1
+                && args[firstCompilerArg].equals(OPTION_SHUTDOWN);
+        final String[] compilerArgs = shutdown
+                ? new String[0]
+                : Arrays.copyOfRange(args, firstCompilerArg, args.length);
+
+        try {
+            System.exit(sendRequest(port, CompilerDaemon.getDefaultTokenFile(port), shutdown
+                    ? CompilerDaemon.REQUEST_SHUTDOWN
+                    : CompilerDaemon.REQUEST_COMPILE, compilerArgs, System.out, System.err));
+        } catch (IOException e) {
+            System.err.println("error: cannot communicate with the compiler daemon on port "
+                    + port + ": " + e.getMessage());
+            System.exit(STATUS_NO_DAEMON);
+        }
+    }
+
+    private DaemonClient() {
+    }
+
+    /**
+     * Send a request to the daemon listening on the given port and write the
+     * captured output of the compilation to the given streams.
+     *
+     * @return Exit status of the compilation.
+     */
+    static int sendRequest(int port, File tokenFile, byte kind, String[] args,
+            OutputStream out, OutputStream err) throws IOException {
+        final byte[] token = Files.readAllBytes(tokenFile.toPath());
+
+        try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            final DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            output.writeInt(CompilerDaemon.MAGIC);
+            output.writeInt(CompilerDaemon.PROTOCOL_VERSION);
+            output.write(token);
+            output.writeByte(kind);
+            output.writeUTF(new File("").getAbsolutePath());
+            output.writeInt(args.length);
+            for (String arg : args) {
+                output.writeUTF(arg);
+            }
+            output.flush();
+
+            final DataInputStream input = new DataInputStream(socket.getInputStream());
+            final int status = input.readInt();
+            out.write(readBytes(input));
+            out.flush();
+            err.write(readBytes(input));
+            err.flush();
+
+            return status;
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream input) throws IOException {
+        final byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,23 @@
+package pl.edu.mimuw.nesc.daemon;
+
+/**
+ * <p>Interface for a compiler that can perform many compilations in a single
+ * Java virtual machine. It is used by {@link CompilerDaemon} for handling
+ * requests from clients.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public interface DaemonCompiler {
+    /**
+     * Perform a single compilation. The compiler shall not terminate the
+     * virtual machine. Messages for the user shall be written to
+     * <code>System.out</code> and <code>System.err</code>. The method can be
+     * called by multiple threads at once, so compilations must not share
+     * mutable state that is not safe for concurrent use.
+     *
+     * @param args Parameters of the compilation in the same form as for the
+     *             <code>main</code> method of the compiler.
+     * @return Exit status of the compilation.
+     */
+    int compile(String[] args);
+}
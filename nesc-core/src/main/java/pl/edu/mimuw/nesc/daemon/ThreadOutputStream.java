@@ -0,0 +1,69 @@
+package pl.edu.mimuw.nesc.daemon;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Output stream that writes to the stream set for the current thread or
+ * to the default stream if no stream is set. The stream set for a thread is
+ * inherited by threads it starts. It allows capturing output written by
+ * each request of the compiler daemon separately while requests are handled
+ * at once.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+final class ThreadOutputStream extends OutputStream {
+    /**
+     * Stream used by threads that have no stream set.
+     */
+    private final OutputStream defaultStream;
+
+    /**
+     * Streams set for threads.
+     */
+    private final InheritableThreadLocal<OutputStream> threadStream = new InheritableThreadLocal<>();
+
+    ThreadOutputStream(OutputStream defaultStream) {
+        checkNotNull(defaultStream, "default stream cannot be null");
+        this.defaultStream = defaultStream;
+    }
+
+    /**
+     * Set the stream data written by the current thread will be sent to.
+     *
+     * @param stream Stream for the current thread.
+     */
+    void setThreadStream(OutputStream stream) {
+        checkNotNull(stream, "stream cannot be null");
+        threadStream.set(stream);
+    }
+
+    /**
+     * Make data written by the current thread be sent to the default stream.
+     */
+    void removeThreadStream() {
+        threadStream.remove();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        getStream().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        getStream().write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        getStream().flush();
+    }
+
+    private OutputStream getStream() {
+        final OutputStream stream = threadStream.get();
+        return stream != null ? stream : defaultStream;
+    }
+}
@@ -24,7 +24,7 @@ import pl.edu.mimuw.nesc.declaration.tag.FieldDeclaration;
 import pl.edu.mimuw.nesc.declaration.tag.StructDeclaration;
 import pl.edu.mimuw.nesc.names.mangling.NameMangler;
 import pl.edu.mimuw.nesc.type.IntegerType;
-import pl.edu.mimuw.nesc.typelayout.FieldTagTypeLayoutCalculator;
+import pl.edu.mimuw.nesc.typelayout.TypeLayoutCache;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -91,8 +91,7 @@ final class ExternalStructureTransformer {
     }
 
     private void calculateLayout() {
-        new FieldTagTypeLayoutCalculator(abi, declaration.getType(false, false))
-                .calculate();
+        TypeLayoutCache.forABI(abi).getLayout(declaration.getType(false, false));
     }
 
     private void separateFields() {
@@ -19,7 +19,7 @@ import pl.edu.mimuw.nesc.declaration.tag.fieldtree.BlockElement;
 import pl.edu.mimuw.nesc.declaration.tag.fieldtree.FieldElement;
 import pl.edu.mimuw.nesc.declaration.tag.fieldtree.TreeElement;
 import pl.edu.mimuw.nesc.names.mangling.NameMangler;
-import pl.edu.mimuw.nesc.typelayout.FieldTagTypeLayoutCalculator;
+import pl.edu.mimuw.nesc.typelayout.TypeLayoutCache;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -94,8 +94,7 @@ final class ExternalUnionTransformer {
     private void calculateLayout() {
         /* Ensure that the layout of each field is present in declaration
            objects. */
-        new FieldTagTypeLayoutCalculator(this.abi, this.declaration.getType(false, false))
-                .calculate();
+        TypeLayoutCache.forABI(this.abi).getLayout(this.declaration.getType(false, false));
     }
 
     private void computeMaximumFieldsSizes() {
@@ -0,0 +1,121 @@
+package pl.edu.mimuw.nesc.fold;
+
+import com.google.common.collect.ImmutableList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import pl.edu.mimuw.nesc.ast.gen.ConstantFunctionCall;
+import pl.edu.mimuw.nesc.ast.gen.Node;
+import pl.edu.mimuw.nesc.ast.gen.NullVisitor;
+import pl.edu.mimuw.nesc.ast.gen.UniqueCall;
+import pl.edu.mimuw.nesc.ast.gen.UniqueCountCall;
+import pl.edu.mimuw.nesc.ast.gen.UniqueNCall;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Index of calls to NesC constant functions contained in nodes. Calls are
+ * stored in the order of their first occurrence in the traversal of the
+ * nodes, so evaluating them in this order allocates the same numbers as
+ * evaluating them during the traversal. Each AST node is stored only once even
+ * if it appears multiple times in the nodes.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+final class ConstantCallsIndex {
+    /**
+     * All calls to constant functions in the order of the traversal.
+     */
+    private final ImmutableList<ConstantFunctionCall> calls;
+
+    /**
+     * Calls to <code>uniqueCount</code> in the order of the traversal.
+     */
+    private final ImmutableList<UniqueCountCall> uniqueCountCalls;
+
+    /**
+     * <p>Create the index of calls to constant functions contained in the
+     * given nodes. Each node is traversed once.</p>
+     *
+     * @param nodes Nodes to index.
+     * @return Newly created index of calls from the given nodes.
+     */
+    static ConstantCallsIndex build(Iterable<? extends Node> nodes) {
+        checkNotNull(nodes, "nodes cannot be null");
+
+        final CollectingVisitor collectingVisitor = new CollectingVisitor();
+        for (Node node : nodes) {
+            node.traverse(collectingVisitor, null);
+        }
+
+        return new ConstantCallsIndex(collectingVisitor.callsBuilder.build(),
+                collectingVisitor.uniqueCountCallsBuilder.build());
+    }
+
+    private ConstantCallsIndex(ImmutableList<ConstantFunctionCall> calls,
+                ImmutableList<UniqueCountCall> uniqueCountCalls) {
+        this.calls = calls;
+        this.uniqueCountCalls = uniqueCountCalls;
+    }
+
+    /**
+     * <p>Get calls to all constant functions: <code>unique</code>,
+     * <code>uniqueN</code> and <code>uniqueCount</code>.</p>
+     *
+     * @return List with calls in the order of the traversal.
+     */
+    ImmutableList<ConstantFunctionCall> getCalls() {
+        return calls;
+    }
+
+    /**
+     * <p>Get calls to <code>uniqueCount</code>.</p>
+     *
+     * @return List with calls to <code>uniqueCount</code> in the order of the
+     *         traversal.
+     */
+    ImmutableList<UniqueCountCall> getUniqueCountCalls() {
+        return uniqueCountCalls;
+    }
+
+    /**
+     * <p>Visitor that collects calls to constant functions.</p>
+     *
+     * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+     */
+    private static final class CollectingVisitor extends NullVisitor<Void, Void> {
+        private final ImmutableList.Builder<ConstantFunctionCall> callsBuilder = ImmutableList.builder();
+        private final ImmutableList.Builder<UniqueCountCall> uniqueCountCallsBuilder = ImmutableList.builder();
+        private final Set<ConstantFunctionCall> visitedCalls =
+                Collections.newSetFromMap(new IdentityHashMap<ConstantFunctionCall, Boolean>());
+
+        @Override
+        public Void visitUniqueCall(UniqueCall uniqueCall, Void arg) {
+            addCall(uniqueCall);
+            return null;
+        }
+
+        @Override
+        public Void visitUniqueNCall(UniqueNCall uniqueNCall, Void arg) {
+            addCall(uniqueNCall);
+            return null;
+        }
+
+        @Override
+        public Void visitUniqueCountCall(UniqueCountCall uniqueCountCall, Void arg) {
+            if (addCall(uniqueCountCall)) {
+                uniqueCountCallsBuilder.add(uniqueCountCall);
+            }
+            return null;
+        }
+
+        private boolean addCall(ConstantFunctionCall call) {
+            if (!visitedCalls.add(call)) {
+                return false;
+            }
+
+            callsBuilder.add(call);
+            return true;
+        }
+    }
+}
@@ -3,7 +3,9 @@ package pl.edu.mimuw.nesc.fold;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.util.Collection;
+import pl.edu.mimuw.nesc.ast.gen.ConstantFunctionCall;
 import pl.edu.mimuw.nesc.ast.gen.Node;
+import pl.edu.mimuw.nesc.ast.gen.UniqueCountCall;
 
 /**
  * <p>Class responsible for computing values of constant functions:
@@ -52,17 +54,21 @@ public final class FoldExecutor {
      *         the first argument for a NesC constant function.
      */
     public ImmutableMap<String, Long> fold() {
+        /* Collect calls in a single traversal and evaluate them in the order
+           of the traversal. */
+        final ConstantCallsIndex index = ConstantCallsIndex.build(nodes);
+
         // Evaluate 'unique' and 'uniqueN'
         final ValuesProcessor valuesProcessor = new ValuesProcessor();
-        for (Node node : nodes) {
-            node.traverse(valuesProcessor, null);
+        for (ConstantFunctionCall call : index.getCalls()) {
+            call.accept(valuesProcessor, null);
         }
 
         // Evaluate 'uniqueCount'
         final ImmutableMap<String, Long> counters = valuesProcessor.getCounters();
         final CountsProcessor countsProcessor = new CountsProcessor(counters);
-        for (Node node : nodes) {
-            node.traverse(countsProcessor, null);
+        for (UniqueCountCall call : index.getUniqueCountCalls()) {
+            call.accept(countsProcessor, null);
         }
 
         return counters;
@@ -3,6 +3,7 @@ package pl.edu.mimuw.nesc.instantiation;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Map;
 import pl.edu.mimuw.nesc.ast.gen.*;
@@ -24,6 +25,11 @@ import static com.google.common.base.Preconditions.checkState;
  * latter case, these expressions need further analysis to determine their
  * exact type.</p>
  *
+ * <p>Types are immutable so types that do not depend on parameters of the
+ * component nor on its tags are shared between the generic component and its
+ * instances and the result of substitution is computed once for each type
+ * object.</p>
+ *
  * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
  * @see pl.edu.mimuw.nesc.type.UnknownType#unnamed
  * @see pl.edu.mimuw.nesc.type.UnknownIntegerType#unnamed
@@ -46,6 +52,12 @@ class ASTFillingVisitor extends IdentityVisitor<Void> implements TypeVisitor<Typ
      */
     private final CopyController copyController;
 
+    /**
+     * Map from types from the generic component to types after the
+     * substitution. Types are compared by identity.
+     */
+    private final Map<Type, Type> substitutedTypes = new IdentityHashMap<>();
+
     /**
      * Initializes this visitor to substitute types using the mapping
      * defined by given component reference and generic component nodes.
@@ -64,7 +76,7 @@ class ASTFillingVisitor extends IdentityVisitor<Void> implements TypeVisitor<Typ
             @Override
             public Type apply(Type type) {
                 checkNotNull(type, "type cannot be null");
-                return type.accept(ASTFillingVisitor.this, null);
+                return substituteType(type);
             }
         };
 
@@ -665,18 +677,29 @@ class ASTFillingVisitor extends IdentityVisitor<Void> implements TypeVisitor<Typ
 
     private void substituteExprType(Expression expr) {
         if (expr.getType().isPresent()) {
-            expr.setType(Optional.of(expr.getType().get().accept(this, null)));
+            expr.setType(Optional.of(substituteType(expr.getType().get())));
         }
     }
 
     @Override
     public Void visitAstType(AstType astType, Void arg) {
         if (astType.getType().isPresent()) {
-            astType.setType(Optional.of(astType.getType().get().accept(this, null)));
+            astType.setType(Optional.of(substituteType(astType.getType().get())));
         }
         return arg;
     }
 
+    private Type substituteType(Type type) {
+        final Type substitutedType = substitutedTypes.get(type);
+        if (substitutedType != null) {
+            return substitutedType;
+        }
+
+        final Type newType = type.accept(this, null);
+        substitutedTypes.put(type, newType);
+        return newType;
+    }
+
     @Override
     public Type visit(ArrayType type, Void arg) {
         final Optional<Expression> size;
@@ -689,7 +712,11 @@ class ASTFillingVisitor extends IdentityVisitor<Void> implements TypeVisitor<Typ
             size = Optional.absent();
         }
 
-        return new ArrayType(type.getElementType().accept(this, null), size);
+        final Type elementType = substituteType(type.getElementType());
+
+        return !size.isPresent() && !type.getSize().isPresent() && elementType == type.getElementType()
+                ? type
+                : new ArrayType(elementType, size);
     }
 
     @Override
@@ -772,8 +799,12 @@ class ASTFillingVisitor extends IdentityVisitor<Void> implements TypeVisitor<Typ
 
     @Override
     public Type visit(PointerType type, Void arg) {
-        return new PointerType(type.isConstQualified(), type.isVolatileQualified(),
-                type.isRestrictQualified(), type.getReferencedType().accept(this, null));
+        final Type referencedType = substituteType(type.getReferencedType());
+
+        return referencedType == type.getReferencedType()
+                ? type
+                : new PointerType(type.isConstQualified(), type.isVolatileQualified(),
+                        type.isRestrictQualified(), referencedType);
     }
 
     @Override
@@ -8,8 +8,8 @@ import com.google.common.collect.ImmutableMap;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -234,7 +234,7 @@ public final class InstantiateExecutor {
      */
     private Component copyComponent(Component specimen, ComponentRef genericRef,
                 ConfigurationImpl implementationToUpdate) {
-        final Map<Node, Node> nodesMap = new HashMap<>();
+        final Map<Node, Node> nodesMap = new IdentityHashMap<>();
         final Component copy = specimen.deepCopy(false, Optional.of(nodesMap));
         final RemanglingVisitor manglingVisitor = new RemanglingVisitor(remanglingFunction);
         final SubstitutionManager substitution = GenericParametersSubstitution.forComponent()
@@ -0,0 +1,218 @@
+package pl.edu.mimuw.nesc.codepartition;
+
+import com.google.common.base.Optional;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class MinimumCutSolverTest {
+    @Test
+    public void emptyGraphHasNoCut() {
+        assertFalse(new GraphBuilder(0).solve().isPresent());
+    }
+
+    @Test
+    public void singleVertexHasNoCut() {
+        assertFalse(new GraphBuilder(1).solve().isPresent());
+    }
+
+    @Test
+    public void twoVerticesSeparated() {
+        final GraphBuilder graph = new GraphBuilder(2).edge(0, 1, 7);
+        final MinimumCutSolver.Cut cut = graph.solve().get();
+
+        assertEquals(7, cut.getValue());
+        assertNotEquals(cut.isInFirstSet(0), cut.isInFirstSet(1));
+    }
+
+    @Test
+    public void weakestEdgeOfPathCut() {
+        final GraphBuilder graph = new GraphBuilder(4)
+                .edge(0, 1, 5)
+                .edge(1, 2, 1)
+                .edge(2, 3, 4);
+        final MinimumCutSolver.Cut cut = graph.solve().get();
+
+        assertEquals(1, cut.getValue());
+        assertEquals(cut.isInFirstSet(0), cut.isInFirstSet(1));
+        assertEquals(cut.isInFirstSet(2), cut.isInFirstSet(3));
+        assertNotEquals(cut.isInFirstSet(1), cut.isInFirstSet(2));
+    }
+
+    @Test
+    public void disconnectedGraphCutBetweenComponents() {
+        final GraphBuilder graph = new GraphBuilder(5)
+                .edge(0, 1, 3)
+                .edge(1, 2, 3)
+                .edge(0, 2, 3)
+                .edge(3, 4, 2);
+        final MinimumCutSolver.Cut cut = graph.solve().get();
+
+        assertEquals(0, cut.getValue());
+        assertEquals(0, graph.cutValue(cut));
+        assertEquals(cut.isInFirstSet(0), cut.isInFirstSet(1));
+        assertEquals(cut.isInFirstSet(0), cut.isInFirstSet(2));
+        assertEquals(cut.isInFirstSet(3), cut.isInFirstSet(4));
+        assertNotEquals(cut.isInFirstSet(0), cut.isInFirstSet(3));
+    }
+
+    @Test
+    public void isolatedVertexCut() {
+        final GraphBuilder graph = new GraphBuilder(3).edge(0, 1, 1);
+        final MinimumCutSolver.Cut cut = graph.solve().get();
+
+        assertEquals(0, cut.getValue());
+        assertNotEquals(cut.isInFirstSet(0), cut.isInFirstSet(2));
+        assertNotEquals(cut.isInFirstSet(1), cut.isInFirstSet(2));
+    }
+
+    @Test
+    public void stoerWagnerExampleGraph() {
+        // Graph from the paper by Stoer and Wagner with vertices numbered from 0
+        final GraphBuilder graph = new GraphBuilder(8)
+                .edge(0, 1, 2)
+                .edge(0, 4, 3)
+                .edge(1, 2, 3)
+                .edge(1, 4, 2)
+                .edge(1, 5, 2)
+                .edge(2, 3, 4)
+                .edge(2, 6, 2)
+                .edge(3, 6, 2)
+                .edge(3, 7, 2)
+                .edge(4, 5, 3)
+                .edge(5, 6, 1)
+                .edge(6, 7, 3);
+        final MinimumCutSolver.Cut cut = graph.solve().get();
+
+        assertEquals(4, cut.getValue());
+        for (int vertex : new int[] {1, 4, 5}) {
+            assertEquals(cut.isInFirstSet(0), cut.isInFirstSet(vertex));
+        }
+        for (int vertex : new int[] {2, 3, 6, 7}) {
+            assertNotEquals(cut.isInFirstSet(0), cut.isInFirstSet(vertex));
+        }
+    }
+
+    @Test
+    public void parallelEdgesSummed() {
+        final GraphBuilder graph = new GraphBuilder(3)
+                .edge(0, 1, 2)
+                .edge(0, 1, 2)
+                .edge(1, 2, 3);
+        final MinimumCutSolver.Cut cut = graph.solve().get();
+
+        assertEquals(3, cut.getValue());
+        assertEquals(cut.isInFirstSet(0), cut.isInFirstSet(1));
+    }
+
+    @Test
+    public void randomGraphsSameAsExhaustiveSearch() {
+        final Random random = new Random(42L);
+
+        for (int i = 0; i < 200; ++i) {
+            final int verticesCount = 2 + random.nextInt(8);
+            final GraphBuilder graph = new GraphBuilder(verticesCount);
+            for (int first = 0; first < verticesCount; ++first) {
+                for (int second = first + 1; second < verticesCount; ++second) {
+                    if (random.nextInt(3) == 0) {
+                        graph.edge(first, second, random.nextInt(10));
+                    }
+                }
+            }
+
+            final MinimumCutSolver.Cut cut = graph.solve().get();
+            assertEquals(graph.exhaustiveMinimumCutValue(), cut.getValue());
+            assertEquals(cut.getValue(), graph.cutValue(cut));
+            assertTrue(graph.isProper(cut));
+        }
+    }
+
+    /**
+     * Builder of adjacency arrays of an undirected graph for the solver.
+     */
+    private static final class GraphBuilder {
+        private final List<List<Integer>> neighbours = new ArrayList<>();
+        private final List<List<Integer>> weights = new ArrayList<>();
+        private final List<int[]> edges = new ArrayList<>();
+
+        private GraphBuilder(int verticesCount) {
+            for (int i = 0; i < verticesCount; ++i) {
+                neighbours.add(new ArrayList<Integer>());
+                weights.add(new ArrayList<Integer>());
+            }
+        }
+
+        private GraphBuilder edge(int first, int second, int weight) {
+            neighbours.get(first).add(second);
+            weights.get(first).add(weight);
+            neighbours.get(second).add(first);
+            weights.get(second).add(weight);
+            edges.add(new int[] {first, second, weight});
+            return this;
+        }
+
+        private Optional<MinimumCutSolver.Cut> solve() {
+            final int[][] neighboursArrays = new int[neighbours.size()][];
+            final int[][] weightsArrays = new int[neighbours.size()][];
+            for (int vertex = 0; vertex < neighbours.size(); ++vertex) {
+                neighboursArrays[vertex] = toArray(neighbours.get(vertex));
+                weightsArrays[vertex] = toArray(weights.get(vertex));
+            }
+            return new MinimumCutSolver(neighboursArrays, weightsArrays).solve();
+        }
+
+        private int cutValue(MinimumCutSolver.Cut cut) {
+            int value = 0;
+            for (int[] edge : edges) {
+                if (cut.isInFirstSet(edge[0]) != cut.isInFirstSet(edge[1])) {
+                    value += edge[2];
+                }
+            }
+            return value;
+        }
+
+        private boolean isProper(MinimumCutSolver.Cut cut) {
+            boolean firstSetUsed = false, secondSetUsed = false;
+            for (int vertex = 0; vertex < neighbours.size(); ++vertex) {
+                firstSetUsed = firstSetUsed || cut.isInFirstSet(vertex);
+                secondSetUsed = secondSetUsed || !cut.isInFirstSet(vertex);
+            }
+            return firstSetUsed && secondSetUsed;
+        }
+
+        private int exhaustiveMinimumCutValue() {
+            int minimum = Integer.MAX_VALUE;
+
+            // Vertex 0 is always in the first set
+            for (int mask = 1; mask < (1 << (neighbours.size() - 1)); ++mask) {
+                int value = 0;
+                for (int[] edge : edges) {
+                    if (isInMask(mask, edge[0]) != isInMask(mask, edge[1])) {
+                        value += edge[2];
+                    }
+                }
+                minimum = Math.min(minimum, value);
+            }
+
+            return minimum;
+        }
+
+        private static boolean isInMask(int mask, int vertex) {
+            return vertex != 0 && (mask & (1 << (vertex - 1))) != 0;
+        }
+
+        private static int[] toArray(List<Integer> values) {
+            final int[] result = new int[values.size()];
+            for (int i = 0; i < values.size(); ++i) {
+                result[i] = values.get(i);
+            }
+            return result;
+        }
+    }
+}
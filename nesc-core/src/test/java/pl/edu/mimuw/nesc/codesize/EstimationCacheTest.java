@@ -0,0 +1,214 @@
+package pl.edu.mimuw.nesc.codesize;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Range;
+import java.util.LinkedList;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pl.edu.mimuw.nesc.ast.Location;
+import pl.edu.mimuw.nesc.ast.RID;
+import pl.edu.mimuw.nesc.ast.gen.Attribute;
+import pl.edu.mimuw.nesc.ast.gen.CompoundStmt;
+import pl.edu.mimuw.nesc.ast.gen.Declaration;
+import pl.edu.mimuw.nesc.ast.gen.Declarator;
+import pl.edu.mimuw.nesc.ast.gen.ExpressionStmt;
+import pl.edu.mimuw.nesc.ast.gen.FunctionDecl;
+import pl.edu.mimuw.nesc.ast.gen.FunctionDeclarator;
+import pl.edu.mimuw.nesc.ast.gen.IdLabel;
+import pl.edu.mimuw.nesc.ast.gen.Statement;
+import pl.edu.mimuw.nesc.ast.gen.TypeElement;
+import pl.edu.mimuw.nesc.astutil.AstUtils;
+import pl.edu.mimuw.nesc.astutil.DeclaratorUtils;
+import pl.edu.mimuw.nesc.astwriting.WriteSettings;
+import pl.edu.mimuw.nesc.common.util.list.Lists;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class EstimationCacheTest {
+    /**
+     * Program that succeeds when asked for the version of SDCC.
+     */
+    private static final String SDCC_EXECUTABLE = "/bin/echo";
+
+    private static final ImmutableList<FunctionDecl> NO_INLINE_FUNCTIONS = ImmutableList.of();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String cacheDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDirectory = folder.newFolder("cache").getPath();
+    }
+
+    @Test
+    public void storedSizeFound() throws Exception {
+        final EstimationCache cache = newCache("fast");
+        final ImmutableList<FunctionDecl> functions = ImmutableList.of(newFunction("f", "g"));
+        final ImmutableList<Declaration> headers = ImmutableList.of(newForwardDeclaration("g", RID.VOID));
+
+        final EstimationCache.Lookup firstLookup = lookup(cache, functions, headers);
+        assertTrue(firstLookup.getCachedSizes().isEmpty());
+        assertEquals(functions, firstLookup.getMissingFunctions());
+        cache.store(firstLookup, ImmutableMap.of("f", Range.closed(3, 5)));
+
+        final EstimationCache.Lookup secondLookup = lookup(cache, functions, headers);
+        assertEquals(ImmutableMap.of("f", Range.closed(3, 5)), secondLookup.getCachedSizes());
+        assertTrue(secondLookup.getMissingFunctions().isEmpty());
+        assertEquals(1, cache.getHitsCount());
+        assertEquals(1, cache.getMissesCount());
+    }
+
+    @Test
+    public void changedBodyMisses() throws Exception {
+        final EstimationCache cache = newCache("fast");
+        final ImmutableList<Declaration> headers = ImmutableList.of(
+                newForwardDeclaration("g", RID.VOID),
+                newForwardDeclaration("h", RID.VOID));
+
+        storeSizes(cache, ImmutableList.of(newFunction("f", "g")), headers);
+
+        final EstimationCache.Lookup lookup = lookup(cache,
+                ImmutableList.of(newFunction("f", "h")), headers);
+        assertTrue(lookup.getCachedSizes().isEmpty());
+        assertEquals(1, lookup.getMissingFunctions().size());
+    }
+
+    @Test
+    public void unrelatedDeclarationAddedHits() throws Exception {
+        final EstimationCache cache = newCache("fast");
+        final ImmutableList<FunctionDecl> functions = ImmutableList.of(newFunction("f", "g"));
+
+        storeSizes(cache, functions, ImmutableList.<Declaration>of(
+                newForwardDeclaration("g", RID.VOID)));
+
+        final EstimationCache.Lookup lookup = lookup(cache, functions, ImmutableList.<Declaration>of(
+                newForwardDeclaration("g", RID.VOID),
+                newForwardDeclaration("h", RID.INT)));
+        assertEquals(ImmutableList.of("f"), ImmutableList.copyOf(lookup.getCachedSizes().keySet()));
+        assertTrue(lookup.getMissingFunctions().isEmpty());
+    }
+
+    @Test
+    public void changedDeclarationInvalidatesOnlyDependentFunctions() throws Exception {
+        final EstimationCache cache = newCache("fast");
+        final ImmutableList<FunctionDecl> functions = ImmutableList.of(
+                newFunction("f1", "g"),
+                newFunction("f2", "h"));
+
+        storeSizes(cache, functions, ImmutableList.<Declaration>of(
+                newForwardDeclaration("g", RID.VOID),
+                newForwardDeclaration("h", RID.VOID)));
+
+        final EstimationCache.Lookup lookup = lookup(cache, functions, ImmutableList.<Declaration>of(
+                newForwardDeclaration("g", RID.INT),
+                newForwardDeclaration("h", RID.VOID)));
+        assertEquals(ImmutableList.of("f2"), ImmutableList.copyOf(lookup.getCachedSizes().keySet()));
+        assertEquals(ImmutableList.of(functions.get(0)), lookup.getMissingFunctions());
+    }
+
+    @Test
+    public void changedInlineFunctionInvalidatesDependentFunctions() throws Exception {
+        final EstimationCache cache = newCache("inlining");
+        final ImmutableList<FunctionDecl> functions = ImmutableList.of(newFunction("f", "g"));
+
+        final EstimationCache.Lookup firstLookup = cache.lookup(functions,
+                ImmutableList.<Declaration>of(), ImmutableList.of(newFunction("g", "h")),
+                WriteSettings.DEFAULT_SETTINGS);
+        cache.store(firstLookup, ImmutableMap.of("f", Range.closed(1, 1)));
+
+        final EstimationCache.Lookup secondLookup = cache.lookup(functions,
+                ImmutableList.<Declaration>of(), ImmutableList.of(newFunction("g", "i")),
+                WriteSettings.DEFAULT_SETTINGS);
+        assertTrue(secondLookup.getCachedSizes().isEmpty());
+    }
+
+    @Test
+    public void differentSettingsMiss() throws Exception {
+        final ImmutableList<FunctionDecl> functions = ImmutableList.of(newFunction("f", "g"));
+        final ImmutableList<Declaration> headers = ImmutableList.of(newForwardDeclaration("g", RID.VOID));
+
+        storeSizes(newCache("fast"), functions, headers);
+
+        final EstimationCache otherCache = newCache("unitary");
+        final EstimationCache.Lookup lookup = lookup(otherCache, functions, headers);
+        assertTrue(lookup.getCachedSizes().isEmpty());
+        assertEquals(0, otherCache.getHitsCount());
+        assertEquals(1, otherCache.getMissesCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void lookupBeforeOpeningFails() throws Exception {
+        new EstimationCache(cacheDirectory, SDCC_EXECUTABLE, ImmutableList.<String>of())
+                .lookup(ImmutableList.<FunctionDecl>of(), ImmutableList.<Declaration>of(),
+                        NO_INLINE_FUNCTIONS, WriteSettings.DEFAULT_SETTINGS);
+    }
+
+    private EstimationCache newCache(String estimatorKind) throws Exception {
+        final EstimationCache cache = new EstimationCache(cacheDirectory, SDCC_EXECUTABLE,
+                ImmutableList.of(estimatorKind));
+        cache.open();
+        return cache;
+    }
+
+    private static EstimationCache.Lookup lookup(EstimationCache cache, ImmutableList<FunctionDecl> functions,
+            ImmutableList<Declaration> headers) throws Exception {
+        return cache.lookup(functions, headers, NO_INLINE_FUNCTIONS, WriteSettings.DEFAULT_SETTINGS);
+    }
+
+    private static void storeSizes(EstimationCache cache, ImmutableList<FunctionDecl> functions,
+            ImmutableList<Declaration> headers) throws Exception {
+        final EstimationCache.Lookup lookup = lookup(cache, functions, headers);
+        final ImmutableMap.Builder<String, Range<Integer>> sizesBuilder = ImmutableMap.builder();
+        for (FunctionDecl function : lookup.getMissingFunctions()) {
+            sizesBuilder.put(DeclaratorUtils.getUniqueName(function.getDeclarator()).get(), Range.closed(10, 20));
+        }
+        cache.store(lookup, sizesBuilder.build());
+    }
+
+    private static Declaration newForwardDeclaration(String name, RID returnType) {
+        return AstUtils.createForwardDeclaration(newFunction(name, returnType,
+                Lists.<Statement>newList()));
+    }
+
+    private static FunctionDecl newFunction(String name, String calleeName) {
+        final LinkedList<Statement> statements = Lists.<Statement>newList(new ExpressionStmt(
+                Location.getDummyLocation(), AstUtils.newNormalCall(calleeName)));
+        return newFunction(name, RID.VOID, statements);
+    }
+
+    private static FunctionDecl newFunction(String name, RID returnType, LinkedList<Statement> statements) {
+        final FunctionDeclarator declarator = new FunctionDeclarator(
+                Location.getDummyLocation(),
+                Optional.<Declarator>of(AstUtils.newIdentifierDeclarator(name, true, false)),
+                Lists.<Declaration>newList(),
+                Optional.<LinkedList<Declaration>>absent(),
+                Lists.<TypeElement>newList()
+        );
+        final CompoundStmt body = new CompoundStmt(
+                Location.getDummyLocation(),
+                Lists.<IdLabel>newList(),
+                Lists.<Declaration>newList(),
+                statements
+        );
+
+        final FunctionDecl function = new FunctionDecl(
+                Location.getDummyLocation(),
+                declarator,
+                AstUtils.newRidsList(returnType),
+                Lists.<Attribute>newList(),
+                body,
+                false
+        );
+        function.setOldParms(Lists.<Declaration>newList());
+        return function;
+    }
+}
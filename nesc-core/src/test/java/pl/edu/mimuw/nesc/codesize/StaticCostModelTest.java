@@ -0,0 +1,279 @@
+package pl.edu.mimuw.nesc.codesize;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pl.edu.mimuw.nesc.abi.ABI;
+import pl.edu.mimuw.nesc.ast.Location;
+import pl.edu.mimuw.nesc.ast.RID;
+import pl.edu.mimuw.nesc.ast.gen.Attribute;
+import pl.edu.mimuw.nesc.ast.gen.CompoundStmt;
+import pl.edu.mimuw.nesc.ast.gen.Declaration;
+import pl.edu.mimuw.nesc.ast.gen.Declarator;
+import pl.edu.mimuw.nesc.ast.gen.ExpressionStmt;
+import pl.edu.mimuw.nesc.ast.gen.FunctionDecl;
+import pl.edu.mimuw.nesc.ast.gen.FunctionDeclarator;
+import pl.edu.mimuw.nesc.ast.gen.IdLabel;
+import pl.edu.mimuw.nesc.ast.gen.Statement;
+import pl.edu.mimuw.nesc.ast.gen.TypeElement;
+import pl.edu.mimuw.nesc.astutil.AstUtils;
+import pl.edu.mimuw.nesc.common.util.list.Lists;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class StaticCostModelTest {
+    private static final int FEATURES_COUNT = StaticCostModel.Feature.values().length;
+    private static final double EPSILON = 1e-4;
+    private static final double GRADIENT_EPSILON = 1e-6;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void fitRecoversKnownCoefficients() {
+        final double[] expectedCoefficients = new double[FEATURES_COUNT];
+        for (int i = 0; i < FEATURES_COUNT; ++i) {
+            expectedCoefficients[i] = i % 4;
+        }
+
+        final Random random = new Random(3);
+        final List<double[]> samples = new ArrayList<>();
+        final List<Integer> sizes = new ArrayList<>();
+        for (int sampleIndex = 0; sampleIndex < 100; ++sampleIndex) {
+            final double[] sample = new double[FEATURES_COUNT];
+            int size = 0;
+            for (int i = 0; i < FEATURES_COUNT; ++i) {
+                sample[i] = random.nextInt(10);
+                size += (int) (expectedCoefficients[i] * sample[i]);
+            }
+            samples.add(sample);
+            sizes.add(size);
+        }
+
+        final StaticCostModel model = StaticCostModel.fit(samples, sizes);
+        for (StaticCostModel.Feature feature : StaticCostModel.Feature.values()) {
+            assertEquals(feature.getKey(), expectedCoefficients[feature.ordinal()],
+                    model.getCoefficient(feature), EPSILON);
+        }
+    }
+
+    @Test
+    public void fitKeepsCoefficientsNonNegative() {
+        /* Sizes are 2 * f0 - f1. The unconstrained solution has a negative
+           coefficient of f1, so the optimal non-negative solution only uses
+           f0. */
+        final double[][] features = {{1, 1}, {2, 0}, {3, 1}, {4, 3}, {5, 1}};
+        final List<double[]> samples = new ArrayList<>();
+        final List<Integer> sizes = new ArrayList<>();
+        double productsSum = 0.0;
+        double squaresSum = 0.0;
+
+        for (double[] sampleFeatures : features) {
+            final double[] sample = new double[FEATURES_COUNT];
+            sample[0] = sampleFeatures[0];
+            sample[1] = sampleFeatures[1];
+            final int size = (int) (2 * sampleFeatures[0] - sampleFeatures[1]);
+            samples.add(sample);
+            sizes.add(size);
+            productsSum += sampleFeatures[0] * size;
+            squaresSum += sampleFeatures[0] * sampleFeatures[0];
+        }
+
+        final StaticCostModel model = StaticCostModel.fit(samples, sizes);
+        assertEquals(productsSum / squaresSum, model.getCoefficient(StaticCostModel.Feature.values()[0]),
+                EPSILON);
+        for (StaticCostModel.Feature feature : StaticCostModel.Feature.values()) {
+            if (feature.ordinal() != 0) {
+                assertEquals(feature.getKey(), 0.0, model.getCoefficient(feature), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void fitIsOptimalForRandomData() {
+        final Random random = new Random(17);
+
+        for (int testIndex = 0; testIndex < 500; ++testIndex) {
+            // Some coefficients are negative so that some constraints are active
+            final int[] trueCoefficients = new int[FEATURES_COUNT];
+            for (int i = 0; i < FEATURES_COUNT; ++i) {
+                trueCoefficients[i] = random.nextInt(9) - 4;
+            }
+
+            final List<double[]> samples = new ArrayList<>();
+            final List<Integer> sizes = new ArrayList<>();
+            final int samplesCount = 5 + random.nextInt(40);
+            for (int sampleIndex = 0; sampleIndex < samplesCount; ++sampleIndex) {
+                final double[] sample = new double[FEATURES_COUNT];
+                int size = random.nextInt(11) - 5;
+                for (int i = 0; i < FEATURES_COUNT; ++i) {
+                    sample[i] = random.nextInt(6);
+                    size += trueCoefficients[i] * (int) sample[i];
+                }
+                samples.add(sample);
+                sizes.add(size);
+            }
+
+            final StaticCostModel model = StaticCostModel.fit(samples, sizes);
+            assertOptimal(model, samples, sizes);
+        }
+    }
+
+    @Test
+    public void savedModelLoaded() throws Exception {
+        final List<double[]> samples = new ArrayList<>();
+        final List<Integer> sizes = new ArrayList<>();
+        final double[] sample = new double[FEATURES_COUNT];
+        sample[StaticCostModel.Feature.CALL.ordinal()] = 3;
+        samples.add(sample);
+        sizes.add(10);
+        final StaticCostModel model = StaticCostModel.fit(samples, sizes);
+
+        final String fileName = new File(folder.getRoot(), "model.properties").getPath();
+        model.save(fileName);
+        final StaticCostModel loadedModel = StaticCostModel.load(fileName);
+
+        for (StaticCostModel.Feature feature : StaticCostModel.Feature.values()) {
+            assertEquals(feature.getKey(), model.getCoefficient(feature),
+                    loadedModel.getCoefficient(feature), 0.0);
+        }
+    }
+
+    @Test
+    public void missingCoefficientsLoadedFromDefaultModel() throws Exception {
+        final File file = folder.newFile("model.properties");
+        Files.write(file.toPath(), "call=7.5\n".getBytes(Charsets.UTF_8));
+
+        final StaticCostModel model = StaticCostModel.load(file.getPath());
+
+        for (StaticCostModel.Feature feature : StaticCostModel.Feature.values()) {
+            final double expectedCoefficient = feature == StaticCostModel.Feature.CALL
+                    ? 7.5
+                    : StaticCostModel.getDefault().getCoefficient(feature);
+            assertEquals(feature.getKey(), expectedCoefficient, model.getCoefficient(feature), 0.0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeCoefficientRejected() throws Exception {
+        final File file = folder.newFile("model.properties");
+        Files.write(file.toPath(), "branch=-1\n".getBytes(Charsets.UTF_8));
+        StaticCostModel.load(file.getPath());
+    }
+
+    @Test
+    public void featuresOfCallsExtracted() throws Exception {
+        final FunctionDecl caller = newFunction("f", "g", "g", "h");
+        final FunctionDecl callee = newFunction("g");
+        final StaticCodeSizeEstimator estimator = new StaticCodeSizeEstimator(
+                ImmutableList.of(caller, callee), loadABI(), StaticCostModel.getDefault());
+
+        final double[] notBanked = estimator.computeFeatures(caller, false);
+        final double[] banked = estimator.computeFeatures(caller, true);
+
+        assertFeature(1, StaticCostModel.Feature.FUNCTION, notBanked);
+        assertFeature(3, StaticCostModel.Feature.STATEMENT, notBanked);
+        assertFeature(3, StaticCostModel.Feature.CALL, notBanked);
+        assertFeature(3, StaticCostModel.Feature.VARIABLE_ACCESS, notBanked);
+        assertFeature(0, StaticCostModel.Feature.BRANCH, notBanked);
+        assertFeature(0, StaticCostModel.Feature.BANKED_CALL, notBanked);
+        assertFeature(0, StaticCostModel.Feature.BANKED_FUNCTION, notBanked);
+
+        // Only the calls of the function defined in the program are banked
+        assertFeature(2, StaticCostModel.Feature.BANKED_CALL, banked);
+        assertFeature(1, StaticCostModel.Feature.BANKED_FUNCTION, banked);
+        for (StaticCostModel.Feature feature : StaticCostModel.Feature.values()) {
+            if (feature != StaticCostModel.Feature.BANKED_CALL
+                    && feature != StaticCostModel.Feature.BANKED_FUNCTION) {
+                assertEquals(feature.getKey(), notBanked[feature.ordinal()],
+                        banked[feature.ordinal()], 0.0);
+            }
+        }
+    }
+
+    /**
+     * Check the optimality conditions of the non-negative least squares
+     * problem: the error does not decrease if a coefficient is increased or
+     * a positive coefficient is decreased.
+     */
+    private static void assertOptimal(StaticCostModel model, List<double[]> samples, List<Integer> sizes) {
+        final double[] gradient = new double[FEATURES_COUNT];
+        double scale = 1.0;
+
+        for (int sampleIndex = 0; sampleIndex < samples.size(); ++sampleIndex) {
+            final double[] sample = samples.get(sampleIndex);
+            final double residual = sizes.get(sampleIndex) - model.computeSize(sample);
+            for (int i = 0; i < FEATURES_COUNT; ++i) {
+                gradient[i] += sample[i] * residual;
+            }
+            scale += Math.abs(sizes.get(sampleIndex));
+        }
+
+        for (StaticCostModel.Feature feature : StaticCostModel.Feature.values()) {
+            final double coefficient = model.getCoefficient(feature);
+            assertTrue(feature.getKey(), coefficient >= 0.0);
+            assertTrue(feature.getKey(), gradient[feature.ordinal()] <= GRADIENT_EPSILON * scale);
+            if (coefficient > 0.0) {
+                assertEquals(feature.getKey(), 0.0, gradient[feature.ordinal()], GRADIENT_EPSILON * scale);
+            }
+        }
+    }
+
+    private static void assertFeature(double expectedValue, StaticCostModel.Feature feature,
+            double[] features) {
+        assertEquals(feature.getKey(), expectedValue, features[feature.ordinal()], 0.0);
+    }
+
+    private static ABI loadABI() throws Exception {
+        try (final InputStream input = StaticCostModelTest.class.getClassLoader()
+                .getResourceAsStream("abi/msp430abi.xml")) {
+            return new ABI(input);
+        }
+    }
+
+    private static FunctionDecl newFunction(String name, String... calleesNames) {
+        final LinkedList<Statement> statements = new LinkedList<>();
+        for (String calleeName : calleesNames) {
+            statements.add(new ExpressionStmt(Location.getDummyLocation(),
+                    AstUtils.newNormalCall(calleeName)));
+        }
+
+        final FunctionDeclarator declarator = new FunctionDeclarator(
+                Location.getDummyLocation(),
+                Optional.<Declarator>of(AstUtils.newIdentifierDeclarator(name, true, false)),
+                Lists.<Declaration>newList(),
+                Optional.<LinkedList<Declaration>>absent(),
+                Lists.<TypeElement>newList()
+        );
+        final CompoundStmt body = new CompoundStmt(
+                Location.getDummyLocation(),
+                Lists.<IdLabel>newList(),
+                Lists.<Declaration>newList(),
+                statements
+        );
+
+        final FunctionDecl function = new FunctionDecl(
+                Location.getDummyLocation(),
+                declarator,
+                AstUtils.newRidsList(RID.VOID),
+                Lists.<Attribute>newList(),
+                body,
+                false
+        );
+        function.setOldParms(Lists.<Declaration>newList());
+        return function;
+    }
+}
@@ -0,0 +1,41 @@
+package pl.edu.mimuw.nesc.compilation;
+
+import java.io.File;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests checking that the count of threads used for passes of the core does
+ * not change the generated code.
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class CoreThreadsTest {
+    private static final String THREADS_OPTION = "--core-threads";
+
+    @Test
+    public void generatedCodeUnchanged() throws Exception {
+        final CompilationExecutor executor = new CompilationExecutor(false);
+        int compiledCount = 0;
+
+        for (File program : IntegrationPrograms.list()) {
+            final String sequential = IntegrationPrograms.compile(executor, program,
+                    THREADS_OPTION, "1");
+
+            for (String threadsCount : new String[] { "2", "4" }) {
+                assertEquals("code generated for '" + program.getName() + "' with "
+                        + threadsCount + " threads differs",
+                        sequential, IntegrationPrograms.compile(executor, program,
+                                THREADS_OPTION, threadsCount));
+            }
+
+            if (!sequential.equals(IntegrationPrograms.OUTCOME_ERROR)) {
+                ++compiledCount;
+            }
+        }
+
+        assertTrue("no program has been compiled", compiledCount > 0);
+    }
+}
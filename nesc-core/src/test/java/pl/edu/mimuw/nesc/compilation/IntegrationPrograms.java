@@ -0,0 +1,97 @@
+package pl.edu.mimuw.nesc.compilation;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ObjectArrays;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import pl.edu.mimuw.nesc.astwriting.ASTWriter;
+import pl.edu.mimuw.nesc.astwriting.WriteSettings;
+import pl.edu.mimuw.nesc.exception.InvalidOptionsException;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Utilities for compiling correct programs from integration tests of the
+ * frontend and comparing the generated code. The programs do not contain
+ * a scheduler, so the scheduler of benchmark programs is added to the search
+ * path.
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+final class IntegrationPrograms {
+    private static final String PROGRAMS_DIRECTORY =
+            "../nesc-frontend/src/test/resources/integration/programs/good";
+    private static final String SCHEDULER_DIRECTORY = "../nesc-benchmarks/programs/tasks";
+    private static final String MAIN_ENTITY_NAME = "C";
+    private static final String SCHEDULER_SPECIFICATION =
+            "SchedulerP,SchedulerP.TaskBasic,TaskBasic,TaskBasic,runTask,postTask";
+
+    /**
+     * Outcome of a compilation of a program that contains errors.
+     */
+    static final String OUTCOME_ERROR = "<error>";
+
+    /**
+     * Get directories of all correct programs in alphabetical order.
+     *
+     * @return List with directories of the programs.
+     */
+    static ImmutableList<File> list() {
+        final File[] files = new File(PROGRAMS_DIRECTORY).listFiles();
+        assertNotNull("cannot list directory '" + PROGRAMS_DIRECTORY + "'", files);
+        Arrays.sort(files);
+
+        final ImmutableList.Builder<File> programsBuilder = ImmutableList.builder();
+        for (File file : files) {
+            if (file.isDirectory()) {
+                programsBuilder.add(file);
+            }
+        }
+        return programsBuilder.build();
+    }
+
+    /**
+     * Compile the given program and write the generated code.
+     *
+     * @param executor Executor used for the compilation.
+     * @param program Directory of the program.
+     * @param extraArgs Options added to the default ones.
+     * @return The generated code or {@link IntegrationPrograms#OUTCOME_ERROR}
+     *         if the program contains errors.
+     */
+    static String compile(CompilationExecutor executor, File program, String... extraArgs)
+            throws InvalidOptionsException, IOException {
+        final String[] args = ObjectArrays.concat(new String[] {
+                "-p", program.getPath(),
+                "-I", SCHEDULER_DIRECTORY,
+                "-m", MAIN_ENTITY_NAME,
+                "-s", SCHEDULER_SPECIFICATION,
+        }, extraArgs, String.class);
+
+        final CompilationResult result;
+        try {
+            result = executor.compile(args);
+        } catch (ErroneousIssueException e) {
+            return OUTCOME_ERROR;
+        }
+
+        final WriteSettings settings = WriteSettings.builder()
+                .charset("UTF-8")
+                .indentWithSpaces(3)
+                .nameMode(WriteSettings.NameMode.USE_UNIQUE_NAMES)
+                .uniqueMode(WriteSettings.UniqueMode.OUTPUT_VALUES)
+                .build();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try (ASTWriter writer = new ASTWriter(output, settings)) {
+            writer.write(result.getDeclarations());
+        }
+
+        return new String(output.toByteArray(), "UTF-8");
+    }
+
+    private IntegrationPrograms() {
+    }
+}
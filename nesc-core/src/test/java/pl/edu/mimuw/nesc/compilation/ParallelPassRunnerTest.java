@@ -0,0 +1,118 @@
+package pl.edu.mimuw.nesc.compilation;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.Test;
+import pl.edu.mimuw.nesc.ast.Location;
+import pl.edu.mimuw.nesc.ast.gen.Identifier;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link ParallelPassRunner}.
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class ParallelPassRunnerTest {
+    private static final Location LOCATION = new Location("units.nc", 1, 1);
+    private static final int UNITS_COUNT = 500;
+
+    @Test
+    public void resultsInOrderOfUnits() {
+        final List<Identifier> units = newUnits();
+        final ImmutableList<String> expected = runPass(1, units);
+
+        for (int threadsCount : new int[] { 2, 3, 8 }) {
+            assertEquals(expected, runPass(threadsCount, units));
+        }
+
+        assertEquals("u0@0", expected.get(0));
+        assertEquals("u499@499", expected.get(UNITS_COUNT - 1));
+    }
+
+    @Test
+    public void eachUnitProcessedOnce() {
+        final List<Identifier> units = newUnits();
+        final AtomicIntegerArray counts = new AtomicIntegerArray(UNITS_COUNT);
+        final ParallelPassRunner runner = new ParallelPassRunner(4);
+
+        try {
+            runner.runForAll(units, new ParallelPassRunner.UnitPass<Identifier, Void>() {
+                @Override
+                public Void run(Identifier unit, int unitIndex) {
+                    counts.incrementAndGet(unitIndex);
+                    return null;
+                }
+            });
+        } finally {
+            runner.shutdown();
+        }
+
+        for (int i = 0; i < UNITS_COUNT; ++i) {
+            assertEquals(1, counts.get(i));
+        }
+    }
+
+    @Test
+    public void noUnits() {
+        assertEquals(ImmutableList.<String>of(), runPass(4, Collections.<Identifier>emptyList()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void exceptionOfPassPropagated() {
+        final ParallelPassRunner runner = new ParallelPassRunner(4);
+        try {
+            runner.runForAll(newUnits(), new ParallelPassRunner.UnitPass<Identifier, Void>() {
+                @Override
+                public Void run(Identifier unit, int unitIndex) {
+                    if (unitIndex == UNITS_COUNT / 2) {
+                        throw new IllegalStateException("pass failure");
+                    }
+                    return null;
+                }
+            });
+        } finally {
+            runner.shutdown();
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullResultRejected() {
+        new ParallelPassRunner(1).run(newUnits(), new ParallelPassRunner.UnitPass<Identifier, String>() {
+            @Override
+            public String run(Identifier unit, int unitIndex) {
+                return null;
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveThreadsCountRejected() {
+        new ParallelPassRunner(0);
+    }
+
+    private ImmutableList<String> runPass(int threadsCount, List<Identifier> units) {
+        final ParallelPassRunner runner = new ParallelPassRunner(threadsCount);
+        try {
+            return runner.run(units, new ParallelPassRunner.UnitPass<Identifier, String>() {
+                @Override
+                public String run(Identifier unit, int unitIndex) {
+                    return unit.getName() + "@" + unitIndex;
+                }
+            });
+        } finally {
+            runner.shutdown();
+        }
+    }
+
+    private List<Identifier> newUnits() {
+        final List<Identifier> units = new ArrayList<>();
+        for (int i = 0; i < UNITS_COUNT; ++i) {
+            units.add(new Identifier(LOCATION, "u" + i));
+        }
+        return units;
+    }
+}
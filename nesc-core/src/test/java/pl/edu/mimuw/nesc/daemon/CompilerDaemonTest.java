@@ -0,0 +1,263 @@
+package pl.edu.mimuw.nesc.daemon;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the protocol of {@link CompilerDaemon} and {@link DaemonClient}.
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class CompilerDaemonTest {
+    /**
+     * Parameter that makes the compiler used in tests throw an exception.
+     */
+    private static final String ARG_FAIL = "--fail";
+
+    /**
+     * Parameter that makes the compiler used in tests wait until another
+     * compilation with this parameter is performed at the same time.
+     */
+    private static final String ARG_WAIT = "--wait";
+
+    /**
+     * Parameter that makes the compiler used in tests print its parameters
+     * in a new thread.
+     */
+    private static final String ARG_THREAD = "--thread";
+
+    private static final int THREADS_COUNT = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger compilationsCount = new AtomicInteger(0);
+    private final CyclicBarrier compilationsBarrier = new CyclicBarrier(2);
+    private int port;
+    private File tokenFile;
+    private Thread daemonThread;
+
+    @Before
+    public void startDaemon() throws Exception {
+        try (final ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = socket.getLocalPort();
+        }
+        tokenFile = new File(folder.getRoot(), "daemon.token");
+
+        final CompilerDaemon daemon = new CompilerDaemon(new DaemonCompiler() {
+            @Override
+            public int compile(final String[] args) {
+                compilationsCount.incrementAndGet();
+                if (args.length > 0 && args[0].equals(ARG_FAIL)) {
+                    throw new IllegalStateException("compiler failure");
+                } else if (args.length > 0 && args[0].equals(ARG_WAIT)) {
+                    try {
+                        compilationsBarrier.await(10, TimeUnit.SECONDS);
+                    } catch (Exception e) {
+                        throw new IllegalStateException("compilations are not performed at once", e);
+                    }
+                } else if (args.length > 0 && args[0].equals(ARG_THREAD)) {
+                    final Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            System.out.print("compiled " + Joiner.on(' ').join(args));
+                        }
+                    });
+                    thread.start();
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return args.length;
+                }
+                System.out.print("compiled " + Joiner.on(' ').join(args));
+                System.err.print("warning");
+                return args.length;
+            }
+        }, port, tokenFile, THREADS_COUNT);
+
+        daemonThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    daemon.run();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        daemonThread.start();
+
+        // The token file is written after the daemon starts listening
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (!tokenFile.exists() || tokenFile.length() == 0) {
+            assertTrue("the daemon has not started", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @After
+    public void stopDaemon() throws Exception {
+        if (daemonThread.isAlive()) {
+            send(CompilerDaemon.REQUEST_SHUTDOWN);
+            daemonThread.join(10000);
+        }
+    }
+
+    @Test
+    public void compilationOutputAndStatusReturned() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        final int status = DaemonClient.sendRequest(port, tokenFile, CompilerDaemon.REQUEST_COMPILE,
+                new String[] { "-m", "App" }, out, err);
+
+        assertEquals(2, status);
+        assertEquals("compiled -m App", new String(out.toByteArray(), Charsets.UTF_8));
+        assertEquals("warning", new String(err.toByteArray(), Charsets.UTF_8));
+    }
+
+    @Test
+    public void concurrentCompilationsOutputCapturedSeparately() throws Exception {
+        final ExecutorService clients = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> first = clients.submit(new CompileRequest(ARG_WAIT, "-m", "First"));
+            final Future<String> second = clients.submit(new CompileRequest(ARG_WAIT, "-m", "Second"));
+
+            assertEquals("3: compiled --wait -m First", first.get(20, TimeUnit.SECONDS));
+            assertEquals("3: compiled --wait -m Second", second.get(20, TimeUnit.SECONDS));
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    public void outputOfStartedThreadCaptured() throws Exception {
+        assertEquals("3: compiled --thread -m App", new CompileRequest(ARG_THREAD, "-m", "App").call());
+    }
+
+    @Test
+    public void invalidTokenRejected() throws Exception {
+        final File invalidTokenFile = folder.newFile("invalid.token");
+        final byte[] token = Files.readAllBytes(tokenFile.toPath());
+        token[0] = (byte) (token[0] == 'A' ? 'B' : 'A');
+        Files.write(invalidTokenFile.toPath(), token);
+
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final int status = DaemonClient.sendRequest(port, invalidTokenFile,
+                CompilerDaemon.REQUEST_COMPILE, new String[] { "-m", "App" },
+                new ByteArrayOutputStream(), err);
+
+        assertEquals(CompilerDaemon.STATUS_REJECTED, status);
+        assertTrue(new String(err.toByteArray(), Charsets.UTF_8).contains("invalid token"));
+        assertEquals(0, compilationsCount.get());
+
+        // a shutdown request with an invalid token is ignored too
+        assertEquals(CompilerDaemon.STATUS_REJECTED, DaemonClient.sendRequest(port,
+                invalidTokenFile, CompilerDaemon.REQUEST_SHUTDOWN, new String[0],
+                new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+        assertTrue(daemonThread.isAlive());
+    }
+
+    @Test
+    public void invalidParametersCountDoesNotStopDaemon() throws Exception {
+        for (int count : new int[] { -1, CompilerDaemon.MAX_ARGS_COUNT + 1 }) {
+            try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                final DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+                output.writeInt(CompilerDaemon.MAGIC);
+                output.writeInt(CompilerDaemon.PROTOCOL_VERSION);
+                output.write(Files.readAllBytes(tokenFile.toPath()));
+                output.writeByte(CompilerDaemon.REQUEST_COMPILE);
+                output.writeUTF(new File("").getAbsolutePath());
+                output.writeInt(count);
+                output.flush();
+
+                try {
+                    new DataInputStream(socket.getInputStream()).readInt();
+                    fail("response sent for an invalid request");
+                } catch (EOFException e) {
+                    // expected, the connection is closed
+                }
+            }
+        }
+
+        assertEquals(0, compilationsCount.get());
+        assertEquals(0, send(CompilerDaemon.REQUEST_COMPILE));
+    }
+
+    @Test
+    public void compilerExceptionDoesNotStopDaemon() throws Exception {
+        assertEquals(CompilerDaemon.STATUS_REJECTED, send(CompilerDaemon.REQUEST_COMPILE, ARG_FAIL));
+        assertEquals(1, send(CompilerDaemon.REQUEST_COMPILE, "-m"));
+        assertEquals(2, compilationsCount.get());
+    }
+
+    @Test
+    public void tokenFileReadableOnlyByOwner() throws Exception {
+        assumeTrue(Files.getFileStore(tokenFile.toPath()).supportsFileAttributeView("posix"));
+        assertEquals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+                Files.getPosixFilePermissions(tokenFile.toPath()));
+    }
+
+    @Test
+    public void shutdownRemovesTokenFile() throws Exception {
+        assertEquals(0, send(CompilerDaemon.REQUEST_SHUTDOWN));
+        daemonThread.join(10000);
+
+        assertFalse(daemonThread.isAlive());
+        assertFalse(tokenFile.exists());
+    }
+
+    /**
+     * Request for a compilation that returns the exit status and the
+     * standard output of the compilation.
+     */
+    private final class CompileRequest implements Callable<String> {
+        private final String[] args;
+
+        private CompileRequest(String... args) {
+            this.args = args;
+        }
+
+        @Override
+        public String call() throws IOException {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final int status = DaemonClient.sendRequest(port, tokenFile, CompilerDaemon.REQUEST_COMPILE,
+                    args, out, new ByteArrayOutputStream());
+            return status + ": " + new String(out.toByteArray(), Charsets.UTF_8);
+        }
+    }
+
+    private int send(byte kind, String... args) throws IOException {
+        return DaemonClient.sendRequest(port, tokenFile, kind, args,
+                new ByteArrayOutputStream(), new ByteArrayOutputStream());
+    }
+}
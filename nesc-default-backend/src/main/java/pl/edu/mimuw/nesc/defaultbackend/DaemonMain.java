@@ -0,0 +1,60 @@
+package pl.edu.mimuw.nesc.defaultbackend;
+
+import java.io.IOException;
+import org.apache.log4j.Level;
+import pl.edu.mimuw.nesc.FrontendCaches;
+import pl.edu.mimuw.nesc.common.util.VariousUtils;
+import pl.edu.mimuw.nesc.compilation.CompilationExecutor;
+import pl.edu.mimuw.nesc.daemon.CompilerDaemon;
+import pl.edu.mimuw.nesc.daemon.DaemonCompiler;
+
+/**
+ * <p>Class with <code>main</code> method that starts the compiler daemon for
+ * the default backend. Compilations are requested by
+ * {@link pl.edu.mimuw.nesc.daemon.DaemonClient} run in the same working
+ * directory. The only optional parameter is the port the daemon listens
+ * on. The token of the daemon is written to the default token file for the
+ * port. Each request is compiled with a new executor and all executors
+ * share caches of the frontend.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class DaemonMain {
+    /**
+     * Error code returned if the daemon cannot be started.
+     */
+    private static final int STATUS_ERROR = 1;
+
+    public static void main(String[] args) {
+        VariousUtils.setLoggingLevel(Level.OFF);
+
+        if (args.length > 1) {
+            System.err.println("usage: DaemonMain [PORT]");
+            System.exit(STATUS_ERROR);
+        }
+
+        try {
+            final int port = args.length == 1
+                    ? Integer.parseInt(args[0])
+                    : CompilerDaemon.DEFAULT_PORT;
+            final FrontendCaches caches = new FrontendCaches();
+            final DaemonCompiler compiler = new DaemonCompiler() {
+                @Override
+                public int compile(String[] args) {
+                    // an executor is not safe for concurrent compilations
+                    return new Main(new CompilationExecutor(false, caches)).compile(args);
+                }
+            };
+            new CompilerDaemon(compiler, port, CompilerDaemon.getDefaultTokenFile(port)).run();
+        } catch (NumberFormatException e) {
+            System.err.println("error: invalid port '" + args[0] + "'");
+            System.exit(STATUS_ERROR);
+        } catch (IOException e) {
+            System.err.println("error: cannot start the compiler daemon: " + e.getMessage());
+            System.exit(STATUS_ERROR);
+        }
+    }
+
+    private DaemonMain() {
+    }
+}
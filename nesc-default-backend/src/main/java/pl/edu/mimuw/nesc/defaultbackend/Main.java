@@ -10,22 +10,32 @@ import pl.edu.mimuw.nesc.astwriting.ASTWriter;
 import pl.edu.mimuw.nesc.astwriting.WriteSettings;
 import pl.edu.mimuw.nesc.common.util.VariousUtils;
 import pl.edu.mimuw.nesc.compilation.CompilationExecutor;
+import pl.edu.mimuw.nesc.compilation.CompilationListener;
 import pl.edu.mimuw.nesc.compilation.CompilationResult;
 import pl.edu.mimuw.nesc.compilation.DefaultCompilationListener;
 import pl.edu.mimuw.nesc.compilation.ErroneousIssueException;
+import pl.edu.mimuw.nesc.compilation.PhaseMeasurer;
+import pl.edu.mimuw.nesc.compilation.TimeReportCompilationListener;
+import pl.edu.mimuw.nesc.daemon.DaemonCompiler;
 import pl.edu.mimuw.nesc.exception.InvalidOptionsException;
 import pl.edu.mimuw.nesc.externalvar.ExternalVariablesWriter;
 import pl.edu.mimuw.nesc.names.mangling.NameMangler;
 import pl.edu.mimuw.nesc.optimization.LinkageOptimizer;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
  * <p>Class with <code>main</code> method that allows usage of the compiler. It
  * performs all steps of the compilation of a NesC program in the default
  * backend. A single file with C source code is created as the result.</p>
  *
+ * <p>An instance of this class can perform many compilations one after
+ * another. The compiler daemon started by {@link DaemonMain} handles requests
+ * at once, so it uses a new instance for each request.</p>
+ *
  * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
  */
-public final class Main {
+public final class Main implements DaemonCompiler {
     /**
      * Error code returned if the compilation succeeds.
      */
@@ -36,37 +46,67 @@ public final class Main {
      */
     private static final int STATUS_ERROR = 1;
 
+    /**
+     * Executor used for all compilations performed by this object.
+     */
+    private final CompilationExecutor executor;
+
     public static void main(String[] args) {
+        VariousUtils.setLoggingLevel(Level.OFF);
+        System.exit(new Main(new CompilationExecutor()).compile(args));
+    }
+
+    Main(CompilationExecutor executor) {
+        checkNotNull(executor, "executor cannot be null");
+        this.executor = executor;
+    }
+
+    @Override
+    public int compile(String[] args) {
         try {
-            VariousUtils.setLoggingLevel(Level.OFF);
-            new Main().compile(args);
-            System.exit(STATUS_SUCCESS);
+            return performCompilation(args);
+        } catch (InvalidOptionsException e) {
+            // the error has been already reported by the frontend
+            return STATUS_ERROR;
         } catch (Exception e) {
             e.printStackTrace();
             System.err.println("An error occurred: " + e.getMessage());
-            System.exit(STATUS_ERROR);
+            return STATUS_ERROR;
         }
     }
 
-    private Main() {
-    }
-
     /**
-     * Performs the whole compilation process. This method should be called
-     * exactly once per instance of this class.
+     * Performs the whole compilation process.
+     *
+     * @return Exit status of the compilation.
      */
-    private void compile(String[] args) throws InvalidOptionsException {
+    private int performCompilation(String[] args) throws InvalidOptionsException {
         try {
-            final CompilationExecutor executor = new CompilationExecutor();
-            executor.setListener(new DefaultCompilationListener());
+            final TimeReportCompilationListener listener = new TimeReportCompilationListener(
+                    Optional.<CompilationListener>of(new DefaultCompilationListener()));
+            executor.setListener(listener);
             final CompilationResult result = executor.compile(args);
+            final PhaseMeasurer measurer = new PhaseMeasurer(Optional.<CompilationListener>of(listener));
+            measurer.setCountNodes(result.getTimeReportFileName().isPresent());
+
+            measurer.phaseStarted("optimizeLinkage");
             final ImmutableList<Declaration> afterLinkageOptimization = optimizeLinkage(
                     result.getDeclarations(), result.getNameMangler());
-            writeCode(afterLinkageOptimization, result.getOutputFileName());
-            writeExternalVariables(afterLinkageOptimization, result.getExternalVariables(),
-                    result.getExternalVariablesFileName());
+            measurer.phaseEnded(afterLinkageOptimization);
+
+            measurer.phaseStarted("writeCode");
+            if (!writeCode(afterLinkageOptimization, result.getOutputFileName())
+                    || !writeExternalVariables(afterLinkageOptimization, result.getExternalVariables(),
+                        result.getExternalVariablesFileName())) {
+                return STATUS_ERROR;
+            }
+            measurer.phaseEnded();
+
+            return writeTimeReport(listener, result.getTimeReportFileName())
+                    ? STATUS_SUCCESS
+                    : STATUS_ERROR;
         } catch (ErroneousIssueException e) {
-            System.exit(STATUS_ERROR);
+            return STATUS_ERROR;
         }
     }
 
@@ -87,8 +127,9 @@ public final class Main {
      * Write the generated code to the file.
      *
      * @param finalCode All declarations to write in proper order.
+     * @return <code>true</code> if and only if the code has been written.
      */
-    private void writeCode(ImmutableList<Declaration> finalCode, String outputFile) {
+    private boolean writeCode(ImmutableList<Declaration> finalCode, String outputFile) {
         final WriteSettings writeSettings = WriteSettings.builder()
                 .charset("UTF-8")
                 .indentWithSpaces(3)
@@ -98,17 +139,18 @@ public final class Main {
 
         try (ASTWriter writer = new ASTWriter(outputFile, writeSettings)) {
             writer.write(finalCode);
+            return true;
         } catch(IOException e) {
             System.err.println("Cannot write the code to the file: " + e.getMessage());
-            System.exit(STATUS_ERROR);
+            return false;
         }
     }
 
-    private void writeExternalVariables(ImmutableList<Declaration> finalCode,
+    private boolean writeExternalVariables(ImmutableList<Declaration> finalCode,
             SetMultimap<Optional<String>, String> externalVariables,
             Optional<String> externalVariablesFile) {
         if (!externalVariablesFile.isPresent()) {
-            return;
+            return true;
         }
 
         try {
@@ -118,9 +160,33 @@ public final class Main {
                     "UTF-8",
                     externalVariables
             ).write();
+            return true;
         } catch (IOException e) {
             System.err.println("Cannot write the external variables file: " + e.getMessage());
-            System.exit(STATUS_ERROR);
+            return false;
+        }
+    }
+
+    /**
+     * Write the report of times of compilation phases if the user needs it.
+     *
+     * @param listener Listener that has collected measurements of phases.
+     * @param timeReportFile Name of the file for the report.
+     * @return <code>true</code> if and only if the report has been written
+     *         or it is not needed.
+     */
+    private boolean writeTimeReport(TimeReportCompilationListener listener,
+            Optional<String> timeReportFile) {
+        if (!timeReportFile.isPresent()) {
+            return true;
+        }
+
+        try {
+            listener.writeReport(timeReportFile.get());
+            return true;
+        } catch (IOException e) {
+            System.err.println("Cannot write the time report: " + e.getMessage());
+            return false;
         }
     }
 }
@@ -4349,7 +4349,6 @@ string_chain:
     private FrontendContext context;
     private Environment environment;
     private NescEntityEnvironment nescEnvironment;
-    private ImmutableListMultimap.Builder<Integer, Token> tokensMultimapBuilder;
     private ImmutableListMultimap.Builder<Integer, NescIssue> issuesMultimapBuilder;
     private final Map<String, String> globalNames = new HashMap<>();
     private final Map<String, String> combiningFunctions = new HashMap<>();
@@ -4414,7 +4413,6 @@ string_chain:
      * @param environment           global environment
      * @param nescEnvironment       nesc environment
      * @param fileType              fileType file type
-     * @param tokensMultimapBuilder tokens multimap builder
      * @param issuesMultimapBuilder issues multimap builder
      */
     public Parser(String filePath,
@@ -4423,7 +4421,6 @@ string_chain:
                   Environment environment,
                   NescEntityEnvironment nescEnvironment,
                   FileType fileType,
-                  ImmutableListMultimap.Builder<Integer, Token> tokensMultimapBuilder,
                   ImmutableListMultimap.Builder<Integer, NescIssue> issuesMultimapBuilder) {
         Preconditions.checkNotNull(filePath, "file path cannot be null");
         Preconditions.checkNotNull(lex, "lexer cannot be null");
@@ -4431,7 +4428,6 @@ string_chain:
         Preconditions.checkNotNull(environment, "environment cannot be null");
         Preconditions.checkNotNull(nescEnvironment, "nesc environment cannot be null");
         Preconditions.checkNotNull(fileType, "file type cannot be null");
-        Preconditions.checkNotNull(tokensMultimapBuilder, "tokens multimap builder cannot be null");
         Preconditions.checkNotNull(issuesMultimapBuilder, "issues multimap builder cannot be null");
 
         this.filePath = filePath;
@@ -4440,10 +4436,9 @@ string_chain:
         this.context = context;
         this.environment = environment;
         this.nescEnvironment = nescEnvironment;
-        this.tokensMultimapBuilder = tokensMultimapBuilder;
         this.issuesMultimapBuilder = issuesMultimapBuilder;
         this.lex = lex;
-        this.lexer = new LexerWrapper(this.lex, this.tokensMultimapBuilder, this.issuesMultimapBuilder);
+        this.lexer = new LexerWrapper(this.lex, this.issuesMultimapBuilder);
         this.yylexer = lexer;
 
         this.errors = false;
@@ -4454,20 +4449,20 @@ string_chain:
                 semanticListener, errorHelper);
 
         this.declarations = new Declarations(context.getExternalVariables(), this.nescEnvironment,
-                this.issuesMultimapBuilder, this.tokensMultimapBuilder, semanticListener,
+                this.issuesMultimapBuilder, semanticListener,
                 attributeAnalyzer, context.getABI());
         this.initializers = new Initializers(this.nescEnvironment, this.issuesMultimapBuilder,
-                this.tokensMultimapBuilder, semanticListener, attributeAnalyzer, context.getABI());
+                semanticListener, attributeAnalyzer, context.getABI());
         this.statements = new Statements(this.nescEnvironment, this.issuesMultimapBuilder,
-                this.tokensMultimapBuilder, semanticListener, attributeAnalyzer, context.getABI());
+                semanticListener, attributeAnalyzer, context.getABI());
         this.labels = new Labels(this.nescEnvironment, this.issuesMultimapBuilder,
-                this.tokensMultimapBuilder, semanticListener, attributeAnalyzer, context.getABI());
+                semanticListener, attributeAnalyzer, context.getABI());
         this.nescDeclarations = new NescDeclarations(this.nescEnvironment, this.issuesMultimapBuilder,
-                this.tokensMultimapBuilder, semanticListener, attributeAnalyzer, context.getABI());
+                semanticListener, attributeAnalyzer, context.getABI());
         this.nescComponents = new NescComponents(this.nescEnvironment, this.issuesMultimapBuilder,
-                this.tokensMultimapBuilder, semanticListener, attributeAnalyzer, context.getABI());
+                semanticListener, attributeAnalyzer, context.getABI());
         this.nescAttributes = new NescAttributes(this.nescEnvironment, this.issuesMultimapBuilder,
-                this.tokensMultimapBuilder, semanticListener, attributeAnalyzer, context.getABI());
+                semanticListener, attributeAnalyzer, context.getABI());
 
         switch (fileType) {
             case HEADER:
@@ -4685,7 +4680,6 @@ string_chain:
          * A queue of pre-read tokens to deal with the lookahead.
          */
         private LinkedList<Symbol> tokenQueue;
-        private ImmutableListMultimap.Builder<Integer, Token> tokensMultimapBuilder;
         private ImmutableListMultimap.Builder<Integer, NescIssue> issuesMultimapBuilder;
         /**
          *
@@ -4699,10 +4693,8 @@ string_chain:
         private IdentifierTypeVisitor identifierTypeVisitor;
 
         public LexerWrapper(pl.edu.mimuw.nesc.lexer.Lexer lexer,
-                            ImmutableListMultimap.Builder<Integer, Token> tokensMultimapBuilder,
                             ImmutableListMultimap.Builder<Integer, NescIssue> issuesMultimapBuilder) {
             this.lexer = lexer;
-            this.tokensMultimapBuilder = tokensMultimapBuilder;
             this.issuesMultimapBuilder = issuesMultimapBuilder;
             this.tokenQueue = new LinkedList<>();
             this.identifierTypeVisitor = new IdentifierTypeVisitor();
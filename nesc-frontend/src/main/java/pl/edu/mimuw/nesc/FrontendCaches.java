@@ -0,0 +1,66 @@
+package pl.edu.mimuw.nesc;
+
+import com.google.common.base.Optional;
+import pl.edu.mimuw.nesc.abi.ABI;
+import pl.edu.mimuw.nesc.load.EntitiesIndexCache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>State kept warm between compilations performed in a single virtual
+ * machine, e.g. in the compiler daemon. It can be shared by many frontends
+ * used by multiple threads at once. It consists of:</p>
+ * <ul>
+ *     <li>ABIs of predefined platforms; they are loaded from resources that
+ *     do not change</li>
+ *     <li>indices of nesc entities of projects keyed by their search paths
+ *     and invalidated when a search directory is modified</li>
+ * </ul>
+ * <p>Results of parsing files are not kept because a standalone compilation
+ * transforms syntax trees, declarations and the global environment in
+ * place.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class FrontendCaches {
+
+    private final ConcurrentMap<String, ABI> platformsABIs = new ConcurrentHashMap<>();
+    private final EntitiesIndexCache entitiesIndexCache = new EntitiesIndexCache();
+
+    /**
+     * Returns the ABI of the platform with given name if it has been already
+     * loaded.
+     *
+     * @param platformName name of the platform
+     * @return the loaded ABI or <code>Optional.absent()</code>
+     */
+    public Optional<ABI> getPlatformABI(String platformName) {
+        checkNotNull(platformName, "name of the platform cannot be null");
+        return Optional.fromNullable(platformsABIs.get(platformName));
+    }
+
+    /**
+     * Stores the loaded ABI of a platform. If another thread has stored the
+     * ABI of the platform in the meantime, it is kept.
+     *
+     * @param platformName name of the platform
+     * @param abi loaded ABI of the platform
+     */
+    public void putPlatformABI(String platformName, ABI abi) {
+        checkNotNull(platformName, "name of the platform cannot be null");
+        checkNotNull(abi, "ABI cannot be null");
+        platformsABIs.putIfAbsent(platformName, abi);
+    }
+
+    /**
+     * Returns the cache of indices of nesc entities.
+     *
+     * @return cache of indices
+     */
+    public EntitiesIndexCache getEntitiesIndexCache() {
+        return entitiesIndexCache;
+    }
+}
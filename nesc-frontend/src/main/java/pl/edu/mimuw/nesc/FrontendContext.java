@@ -3,13 +3,17 @@ package pl.edu.mimuw.nesc;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.SetMultimap;
+import com.google.common.hash.HashCode;
 import pl.edu.mimuw.nesc.abi.ABI;
 import pl.edu.mimuw.nesc.environment.NescEntityEnvironment;
 import pl.edu.mimuw.nesc.environment.TranslationUnitEnvironment;
 import pl.edu.mimuw.nesc.filesgraph.FilesGraph;
+import pl.edu.mimuw.nesc.load.DefaultFilesSnapshot;
+import pl.edu.mimuw.nesc.load.EntitiesIndexCache;
 import pl.edu.mimuw.nesc.load.FileCache;
 import pl.edu.mimuw.nesc.load.MacroManager;
 import pl.edu.mimuw.nesc.load.PathsResolver;
+import pl.edu.mimuw.nesc.load.PluginParseResult;
 import pl.edu.mimuw.nesc.names.mangling.AlphabeticNameMangler;
 import pl.edu.mimuw.nesc.names.mangling.NameMangler;
 import pl.edu.mimuw.nesc.option.OptionsHolder;
@@ -36,12 +40,27 @@ public final class FrontendContext {
     private SetMultimap<Optional<String>, String> externalVariables;
 
     private final boolean isStandalone;
+    /**
+     * Indicates if tokens, comments and directives other than include
+     * directives are kept in caches of files.
+     */
+    private final boolean retainSourceDetails;
     private final ImmutableSet<String> targetAttributes0;
     private final ImmutableSet<String> targetAttributes1;
+    /**
+     * Cache of indices of nesc entities shared with copies of this context
+     * and possibly with contexts of other frontends.
+     */
+    private final EntitiesIndexCache entitiesIndexCache;
     private final MacroManager macroManager;
 
     private final FilesGraph filesGraph;
     private final Map<String, FileCache> cache;
+    /**
+     * Complete results of parsing root files that can be reused if neither
+     * the files nor their dependencies change (only in the plug-in mode).
+     */
+    private final Map<String, PluginParseResult> parseResults;
     private final NameMangler nameMangler;
 
     /**
@@ -71,6 +90,11 @@ public final class FrontendContext {
      * Symbols from files included by default.
      */
     private TranslationUnitEnvironment defaultSymbols;
+    /**
+     * Snapshot of the results of parsing files included by default that can
+     * be reused in the next build (only in the plug-in mode).
+     */
+    private Optional<DefaultFilesSnapshot> defaultFilesSnapshot;
 
     /**
      * In a standalone mode a single environment is used for the entire
@@ -87,12 +111,27 @@ public final class FrontendContext {
      */
     private ABI abi;
 
-    public FrontendContext(OptionsHolder options, boolean isStandalone,
+    /**
+     * Hash of the settings that affect parsing. It is computed at most once
+     * for the options and the ABI of this context.
+     */
+    private Optional<HashCode> parseSettingsHash;
+
+    public FrontendContext(OptionsHolder options, boolean isStandalone, boolean retainSourceDetails,
             ImmutableSet<String> targetAttributes0, ImmutableSet<String> targetAttributes1,
             ABI abi) {
+        this(options, isStandalone, retainSourceDetails, targetAttributes0, targetAttributes1,
+                abi, new EntitiesIndexCache());
+    }
+
+    public FrontendContext(OptionsHolder options, boolean isStandalone, boolean retainSourceDetails,
+            ImmutableSet<String> targetAttributes0, ImmutableSet<String> targetAttributes1,
+            ABI abi, EntitiesIndexCache entitiesIndexCache) {
         this.isStandalone = isStandalone;
+        this.retainSourceDetails = retainSourceDetails;
         this.targetAttributes0 = targetAttributes0;
         this.targetAttributes1 = targetAttributes1;
+        this.entitiesIndexCache = entitiesIndexCache;
         this.options = options;
         this.predefinedMacros = options.getPredefinedMacros();
         this.defaultIncludeFiles = options.getDefaultIncludeFiles();
@@ -105,6 +144,7 @@ public final class FrontendContext {
         this.fileToComponent = new HashMap<>();
         this.filesGraph = new FilesGraph();
         this.cache = new HashMap<>();
+        this.parseResults = new HashMap<>();
         this.scheduler = options.getSchedulerSpecification();
         this.externalVariables = options.getExternalVariables();
         this.nescEntityEnvironment = new NescEntityEnvironment();
@@ -116,14 +156,20 @@ public final class FrontendContext {
 
         this.defaultMacros = new HashMap<>();
         this.defaultSymbols = new TranslationUnitEnvironment();
+        this.defaultFilesSnapshot = Optional.absent();
         this.wasInitialBuild = false;
         this.abi = abi;
+        this.parseSettingsHash = Optional.absent();
     }
 
     public boolean isStandalone() {
         return isStandalone;
     }
 
+    public boolean retainsSourceDetails() {
+        return retainSourceDetails;
+    }
+
     public ImmutableSet<String> getTargetAttributes0() {
         return targetAttributes0;
     }
@@ -160,6 +206,10 @@ public final class FrontendContext {
         return cache;
     }
 
+    public Map<String, PluginParseResult> getParseResults() {
+        return parseResults;
+    }
+
     public Optional<SchedulerSpecification> getSchedulerSpecification() {
         return scheduler;
     }
@@ -212,6 +262,18 @@ public final class FrontendContext {
         this.defaultSymbols = new TranslationUnitEnvironment();
     }
 
+    public void setDefaultSymbols(TranslationUnitEnvironment defaultSymbols) {
+        this.defaultSymbols = defaultSymbols;
+    }
+
+    public Optional<DefaultFilesSnapshot> getDefaultFilesSnapshot() {
+        return defaultFilesSnapshot;
+    }
+
+    public void setDefaultFilesSnapshot(Optional<DefaultFilesSnapshot> defaultFilesSnapshot) {
+        this.defaultFilesSnapshot = defaultFilesSnapshot;
+    }
+
     public boolean wasInitialBuild() {
         return wasInitialBuild;
     }
@@ -226,6 +288,15 @@ public final class FrontendContext {
 
     public void setABI(ABI abi) {
         this.abi = abi;
+        this.parseSettingsHash = Optional.absent();
+    }
+
+    public Optional<HashCode> getParseSettingsHash() {
+        return parseSettingsHash;
+    }
+
+    public void setParseSettingsHash(HashCode parseSettingsHash) {
+        this.parseSettingsHash = Optional.of(parseSettingsHash);
     }
 
     public void updateOptions(OptionsHolder options) {
@@ -235,6 +306,7 @@ public final class FrontendContext {
         this.defaultIncludeFiles = options.getDefaultIncludeFiles();
         this.scheduler = options.getSchedulerSpecification();
         this.externalVariables = options.getExternalVariables();
+        this.parseSettingsHash = Optional.absent();
     }
 
     /**
@@ -243,9 +315,9 @@ public final class FrontendContext {
      * @return the new instance of {@link FrontendContext}
      */
     public FrontendContext basicCopy() {
-        return new FrontendContext(this.options, this.isStandalone,
+        return new FrontendContext(this.options, this.isStandalone, this.retainSourceDetails,
                 this.targetAttributes0, this.targetAttributes1,
-                this.abi);
+                this.abi, this.entitiesIndexCache);
     }
 
     private PathsResolver getPathsResolver(OptionsHolder options) {
@@ -253,6 +325,8 @@ public final class FrontendContext {
                 .sourcePaths(options.getSourcePaths())
                 .quoteIncludePaths(options.getUserSourcePaths())
                 .projectPath(options.getProjectPath())
+                .checkModifications(!isStandalone)
+                .indexCache(entitiesIndexCache)
                 .build();
     }
 }
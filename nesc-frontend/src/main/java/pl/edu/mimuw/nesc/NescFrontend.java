@@ -20,8 +20,12 @@ import pl.edu.mimuw.nesc.exception.InvalidOptionsException;
 import pl.edu.mimuw.nesc.filesgraph.FilesGraph;
 import pl.edu.mimuw.nesc.filesgraph.GraphFile;
 import pl.edu.mimuw.nesc.filesgraph.visitor.DefaultFileGraphVisitor;
+import pl.edu.mimuw.nesc.load.DefaultFilesSnapshot;
 import pl.edu.mimuw.nesc.load.FileCache;
 import pl.edu.mimuw.nesc.load.LoadExecutor;
+import pl.edu.mimuw.nesc.load.ParseCacheKey;
+import pl.edu.mimuw.nesc.load.PathsResolver;
+import pl.edu.mimuw.nesc.load.PluginParseResult;
 import pl.edu.mimuw.nesc.option.OptionsHelpPrinter;
 import pl.edu.mimuw.nesc.option.OptionsHolder;
 import pl.edu.mimuw.nesc.option.OptionsParser;
@@ -38,6 +42,7 @@ import pl.edu.mimuw.nesc.problem.issue.Issue;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static java.lang.String.format;
 
 /**
@@ -60,17 +65,30 @@ public final class NescFrontend implements Frontend {
     }
 
     private final boolean isStandalone;
+    private final boolean exitOnErrors;
+    private final boolean retainSourceDetails;
     private final ImmutableSet<String> targetAttributes0;
     private final ImmutableSet<String> targetAttributes1;
     private final String defaultABIPlatform;
     private final Map<ContextRef, FrontendContext> contextsMap;
 
+    /**
+     * ABIs of predefined platforms that have been already loaded and indices
+     * of nesc entities of projects. A frontend used for many compilations
+     * loads each ABI only once and lists search directories of a project
+     * only when they change. The caches can be shared with other frontends.
+     */
+    private final FrontendCaches caches;
+
     private NescFrontend(Builder builder) {
         this.isStandalone = builder.isStandalone;
+        this.exitOnErrors = builder.isStandalone && builder.exitOnErrors;
+        this.retainSourceDetails = builder.retainSourceDetails;
         this.targetAttributes0 = builder.targetAttributes0Builder.build();
         this.targetAttributes1 = builder.targetAttributes1Builder.build();
         this.defaultABIPlatform = builder.defaultABIPlatform;
         this.contextsMap = new HashMap<>();
+        this.caches = builder.caches;
     }
 
     @Override
@@ -144,13 +162,15 @@ public final class NescFrontend implements Frontend {
         checkNotNull(contextRef, "context reference cannot be null");
         LOG.info("Rebuild; contextRef=" + contextRef);
 
-        final FrontendContext context = getContext(contextRef).basicCopy();
+        final FrontendContext previousContext = getContext(contextRef);
+        final FrontendContext context = previousContext.basicCopy();
         setContext(context, contextRef);
 
         final ProjectData.Builder projectDataBuilder;
         final Optional<String> startFile = getStartFile(context);
 
-        final List<FileData> defaultIncludeFilesData = parseFilesIncludedByDefault(context);
+        final List<FileData> defaultIncludeFilesData = loadFilesIncludedByDefault(context,
+                previousContext.getDefaultFilesSnapshot());
         context.setWasInitialBuild(true);
 
         if (startFile.isPresent()) {
@@ -163,6 +183,11 @@ public final class NescFrontend implements Frontend {
             projectDataBuilder = ProjectData.builder()
                     .addIssue(error);
         }
+        final PathsResolver pathsResolver = context.getPathsResolver();
+        LOG.debug(format("Entities lookups: %d, index hits: %d, index builds: %d",
+                pathsResolver.getLookupsCount(), pathsResolver.getIndexHitsCount(),
+                pathsResolver.getIndexBuildsCount()));
+
         return projectDataBuilder.addIssues(context.getIssues()).build();
     }
 
@@ -189,6 +214,8 @@ public final class NescFrontend implements Frontend {
                     .abi(context.getABI())
                     .externalVariables(options.getExternalVariables())
                     .externalVariablesFile(options.getExternalVariablesFile().orNull())
+                    .timeReportFile(options.getTimeReportFile().orNull())
+                    .coreThreadsCount(options.getCoreThreadsCount().or(1))
                     .optimizeAtomic(options.getOptimizeAtomic())
                     .optimizeTasks(options.getOptimizeTasks())
                     .atomicSpecification(AtomicSpecification.DEFAULT_SPECIFICATION)
@@ -201,11 +228,21 @@ public final class NescFrontend implements Frontend {
         LOG.info("Update; contextRef=" + contextRef + "; filePath=" + filePath);
 
         final FrontendContext context = getContext(contextRef);
-        clearDirtyFileCache(context, filePath);
 
         try {
-            // FIXME: what if we would like to edit file included by default?
-            List<FileCache> fileCacheList = new LoadExecutor(context).parse(filePath, false);
+            final Optional<PluginParseResult> upToDateResult = getUpToDateParseResult(context, filePath);
+            final List<FileCache> fileCacheList;
+
+            if (upToDateResult.isPresent()) {
+                LOG.info("File has not changed, cached data reused; filePath=" + filePath);
+                fileCacheList = upToDateResult.get().getFileCaches();
+                context.setEnvironment(upToDateResult.get().getEnvironment());
+                context.getMacroManager().replace(upToDateResult.get().getMacros());
+            } else {
+                clearDirtyFileCache(context, filePath);
+                // FIXME: what if we would like to edit file included by default?
+                fileCacheList = new LoadExecutor(context).parse(filePath, false);
+            }
             final List<FileData> fileDatas = createRootFileDataList(fileCacheList);
             final OptionsHolder options = context.getOptions();
             final ProjectData.Builder result  = ProjectData.builder()
@@ -218,6 +255,8 @@ public final class NescFrontend implements Frontend {
                     .abi(context.getABI())
                     .externalVariables(options.getExternalVariables())
                     .externalVariablesFile(options.getExternalVariablesFile().orNull())
+                    .timeReportFile(options.getTimeReportFile().orNull())
+                    .coreThreadsCount(options.getCoreThreadsCount().or(1))
                     .optimizeAtomic(options.getOptimizeAtomic())
                     .optimizeTasks(options.getOptimizeTasks())
                     .atomicSpecification(AtomicSpecification.DEFAULT_SPECIFICATION);
@@ -242,7 +281,7 @@ public final class NescFrontend implements Frontend {
         return context.getPathsResolver().getEntryPointPath(entryFilePath);
     }
 
-    private FrontendContext getContext(ContextRef contextRef) {
+    FrontendContext getContext(ContextRef contextRef) {
         final FrontendContext context = this.contextsMap.get(contextRef);
         if (context == null) {
             throw new IllegalArgumentException("unknown context reference");
@@ -271,7 +310,7 @@ public final class NescFrontend implements Frontend {
             reactToOptionsErrors(e.getMessage(), optionsParser, args.length);
             return null;
         } catch (IOException e) {
-            if (this.isStandalone) {
+            if (this.exitOnErrors) {
                 e.printStackTrace();
                 System.exit(1);
                 return null;
@@ -289,12 +328,15 @@ public final class NescFrontend implements Frontend {
             if (error.isPresent()) {
                 reactToOptionsErrors(error.get(), helpPrinter, paramsCount);
             }
-            return new FrontendContext(options, this.isStandalone,
+            return new FrontendContext(options, this.isStandalone, this.retainSourceDetails,
                     this.targetAttributes0, this.targetAttributes1,
-                    loadABI(options));
+                    loadABI(options), caches.getEntitiesIndexCache());
         } catch (ABILoadFailureException e) {
             if (this.isStandalone) {
                 System.out.println("error: " + e.getMessage());
+                if (!this.exitOnErrors) {
+                    throw new InvalidOptionsException(e.getMessage());
+                }
                 System.exit(1);
                 return null;
             } else {
@@ -311,12 +353,37 @@ public final class NescFrontend implements Frontend {
             } else {
                 helpPrinter.printError(error);
             }
+            if (!this.exitOnErrors) {
+                throw new InvalidOptionsException(error);
+            }
             System.exit(1);
         } else {
             throw new InvalidOptionsException(error);
         }
     }
 
+    /**
+     * Loads files included by default. The snapshot of the previous context
+     * is restored instead of parsing the files if it is up to date.
+     * Otherwise, files are parsed and a new snapshot is taken if possible.
+     *
+     * @param context context to load files in
+     * @param previousSnapshot snapshot from the previous context
+     * @return data of files included by default
+     */
+    private List<FileData> loadFilesIncludedByDefault(FrontendContext context,
+            Optional<DefaultFilesSnapshot> previousSnapshot) {
+        if (previousSnapshot.isPresent() && previousSnapshot.get().isUpToDate(context)) {
+            LOG.info("Files included by default have not changed, snapshot restored");
+            context.setDefaultFilesSnapshot(previousSnapshot);
+            return previousSnapshot.get().restore(context);
+        }
+
+        final List<FileData> result = parseFilesIncludedByDefault(context);
+        context.setDefaultFilesSnapshot(DefaultFilesSnapshot.take(context, result));
+        return result;
+    }
+
     private List<FileData> parseFilesIncludedByDefault(FrontendContext context) {
         final List<FileData> result = new ArrayList<>();
         final List<String> defaultIncludes = context.getDefaultIncludeFiles();
@@ -343,6 +410,33 @@ public final class NescFrontend implements Frontend {
         return result;
     }
 
+    /**
+     * Get the complete result of parsing the given file if it is still valid,
+     * i.e. neither the file, nor any file it transitively depends on, nor the
+     * settings of the context have changed since the result was created and
+     * the cache of the file has not been removed from the context.
+     *
+     * @param context Context with the results.
+     * @param filePath Path to the file.
+     * @return Result of parsing the file if it is up to date.
+     */
+    private Optional<PluginParseResult> getUpToDateParseResult(FrontendContext context, String filePath) {
+        final PluginParseResult result = context.getParseResults().get(filePath);
+        if (context.isStandalone() || result == null
+                || context.getCache().get(filePath) != result.getRootFileCache()) {
+            return Optional.absent();
+        }
+
+        try {
+            return result.getKey().equals(ParseCacheKey.computeWithDependencies(context, filePath))
+                    ? Optional.of(result)
+                    : Optional.<PluginParseResult>absent();
+        } catch (IOException e) {
+            LOG.debug("Cannot compute the key of file " + filePath, e);
+            return Optional.absent();
+        }
+    }
+
     private void clearDirtyFileCache(FrontendContext context, String modifiedFile) {
         final FilesGraph filesGraph = context.getFilesGraph();
         final GraphFile file = filesGraph.getFile(modifiedFile);
@@ -354,6 +448,7 @@ public final class NescFrontend implements Frontend {
         final Set<GraphFile> dirtyFiles = visitor.getDirtyFiles();
         for (GraphFile graphFile : dirtyFiles) {
             context.getCache().remove(graphFile.getFilePath());
+            context.getParseResults().remove(graphFile.getFilePath());
         }
     }
 
@@ -519,6 +614,14 @@ public final class NescFrontend implements Frontend {
 
     private ABI loadABIPlatform(String platformName) throws ABILoadFailureException, SAXException,
                 ParserConfigurationException, IOException, XPathExpressionException {
+        /* Each context gets its own copy of the ABI, so the state kept for
+           the ABI, e.g. the cache of layouts of types, belongs to a single
+           compilation. */
+        final Optional<ABI> loadedABI = caches.getPlatformABI(platformName);
+        if (loadedABI.isPresent()) {
+            return new ABI(loadedABI.get());
+        }
+
         final String xmlFilename = format("%s/%sabi.xml", DIR_PREDEFINED_ABI, platformName);
         final InputStream abiInput = getClass().getClassLoader().getResourceAsStream(xmlFilename);
 
@@ -526,7 +629,9 @@ public final class NescFrontend implements Frontend {
             throw new ABILoadFailureException("cannot find ABI platform '" + platformName + "'");
         }
 
-        return new ABI(abiInput);
+        final ABI abi = new ABI(abiInput);
+        caches.putPlatformABI(platformName, abi);
+        return new ABI(abi);
     }
 
     private ABI loadABIFile(String fileName) throws ABILoadFailureException, SAXException,
@@ -570,15 +675,21 @@ public final class NescFrontend implements Frontend {
     public static final class Builder {
 
         private boolean isStandalone;
+        private boolean exitOnErrors;
+        private boolean retainSourceDetails;
         private final ImmutableSet.Builder<String> targetAttributes0Builder;
         private final ImmutableSet.Builder<String> targetAttributes1Builder;
         private String defaultABIPlatform;
+        private FrontendCaches caches;
 
         public Builder() {
             this.isStandalone = false;
+            this.exitOnErrors = true;
+            this.retainSourceDetails = true;
             this.targetAttributes0Builder = ImmutableSet.builder();
             this.targetAttributes1Builder = ImmutableSet.builder();
             this.defaultABIPlatform = "msp430";
+            this.caches = new FrontendCaches();
         }
 
         /**
@@ -593,6 +704,40 @@ public final class NescFrontend implements Frontend {
             return this;
         }
 
+        /**
+         * <p>Sets whether a standalone frontend terminates the Java virtual
+         * machine after reporting invalid options or an ABI that cannot be
+         * loaded. If not, {@link InvalidOptionsException} is thrown after
+         * reporting the error. It allows a single frontend to be used for
+         * many compilations in a long-running process. By default the
+         * virtual machine is terminated. The setting has no effect in the
+         * plug-in mode.</p>
+         *
+         * @param exitOnErrors Value indicating if the virtual machine is
+         *                     terminated on errors in options.
+         * @return <code>this</code>
+         */
+        public Builder exitOnErrors(boolean exitOnErrors) {
+            this.exitOnErrors = exitOnErrors;
+            return this;
+        }
+
+        /**
+         * <p>Sets whether tokens, comments and preprocessor directives other
+         * than include directives of parsed files are kept in the results of
+         * parsing. They are necessary only in the plug-in mode, so a
+         * standalone compiler can disable retaining them to decrease the
+         * memory usage. By default they are retained.</p>
+         *
+         * @param retainSourceDetails Value indicating if tokens, comments and
+         *                            directives are to be retained.
+         * @return <code>this</code>
+         */
+        public Builder retainSourceDetails(boolean retainSourceDetails) {
+            this.retainSourceDetails = retainSourceDetails;
+            return this;
+        }
+
         /**
          * <p>Adds a new target attribute recognized by the frontend. The given
          * string is the name of the attribute. It will be a new language
@@ -662,12 +807,29 @@ public final class NescFrontend implements Frontend {
             return this;
         }
 
+        /**
+         * <p>Sets the caches used by the frontend. They can be shared by
+         * many frontends, e.g. frontends of compilations performed at once
+         * by the compiler daemon. By default the frontend uses its own
+         * caches.</p>
+         *
+         * @param caches Caches to use.
+         * @return <code>this</code>
+         */
+        public Builder caches(FrontendCaches caches) {
+            checkNotNull(caches, "caches cannot be null");
+            this.caches = caches;
+            return this;
+        }
+
         public NescFrontend build() {
             verify();
             return new NescFrontend(this);
         }
 
         private void verify() {
+            checkState(isStandalone || retainSourceDetails,
+                    "source details must be retained in the plug-in mode");
         }
     }
 }
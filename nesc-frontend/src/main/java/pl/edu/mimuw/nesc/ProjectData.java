@@ -41,6 +41,8 @@ public final class ProjectData {
     private final ABI abi;
     private final SetMultimap<Optional<String>, String> externalVariables;
     private final Optional<String> externalVariablesFile;
+    private final Optional<String> timeReportFile;
+    private final int coreThreadsCount;
     private final boolean optimizeAtomic;
     private boolean optimizeTasks;
 
@@ -60,6 +62,8 @@ public final class ProjectData {
         this.abi = builder.abi;
         this.externalVariables = builder.externalVariables;
         this.externalVariablesFile = builder.externalVariablesFile;
+        this.timeReportFile = builder.timeReportFile;
+        this.coreThreadsCount = builder.coreThreadsCount;
         this.optimizeAtomic = builder.optimizeAtomic;
         this.optimizeTasks = builder.optimizeTasks;
     }
@@ -183,6 +187,27 @@ public final class ProjectData {
         return externalVariablesFile;
     }
 
+    /**
+     * <p>Get the name of the file for the report of times of compilation
+     * phases.</p>
+     *
+     * @return Name of the time report file to create ('-' for the standard
+     *         output). If it is absent, no report should be created.
+     */
+    public Optional<String> getTimeReportFile() {
+        return timeReportFile;
+    }
+
+    /**
+     * <p>Get the count of threads used by the phases of the compilation that
+     * process components and external declarations separately.</p>
+     *
+     * @return Count of threads, always positive.
+     */
+    public int getCoreThreadsCount() {
+        return coreThreadsCount;
+    }
+
     /**
      * <p>Check if the atomic optimization should be performed for this project.
      * </p>
@@ -244,6 +269,8 @@ public final class ProjectData {
         private String outputFile;
         private ABI abi;
         private Optional<String> externalVariablesFile = Optional.absent();
+        private Optional<String> timeReportFile = Optional.absent();
+        private int coreThreadsCount = 1;
 
         private boolean optimizeAtomic;
         private boolean optimizeTasks;
@@ -316,6 +343,16 @@ public final class ProjectData {
             return this;
         }
 
+        public Builder timeReportFile(String timeReportFile) {
+            this.timeReportFile = Optional.fromNullable(timeReportFile);
+            return this;
+        }
+
+        public Builder coreThreadsCount(int coreThreadsCount) {
+            this.coreThreadsCount = coreThreadsCount;
+            return this;
+        }
+
         public Builder optimizeAtomic(boolean optimizeAtomic) {
             this.optimizeAtomic = optimizeAtomic;
             return this;
@@ -332,6 +369,7 @@ public final class ProjectData {
         }
 
         private void verify() {
+            checkState(coreThreadsCount > 0, "count of threads must be positive");
         }
 
         private void buildMaps() {
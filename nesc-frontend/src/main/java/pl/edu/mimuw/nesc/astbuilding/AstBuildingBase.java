@@ -8,7 +8,6 @@ import pl.edu.mimuw.nesc.analysis.SemanticListener;
 import pl.edu.mimuw.nesc.environment.NescEntityEnvironment;
 import pl.edu.mimuw.nesc.problem.ErrorHelper;
 import pl.edu.mimuw.nesc.problem.NescIssue;
-import pl.edu.mimuw.nesc.token.Token;
 
 /**
  * @author Grzegorz Kołakowski <gk291583@students.mimuw.edu.pl>
@@ -17,7 +16,6 @@ public abstract class AstBuildingBase {
 
     protected final ErrorHelper errorHelper;
     protected final NescEntityEnvironment nescEnvironment;
-    protected final ImmutableListMultimap.Builder<Integer, Token> tokensMultimapBuilder;
     protected final ABI abi;
 
     /**
@@ -39,12 +37,10 @@ public abstract class AstBuildingBase {
 
     protected AstBuildingBase(NescEntityEnvironment nescEnvironment,
                               ImmutableListMultimap.Builder<Integer, NescIssue> issuesMultimapBuilder,
-                              ImmutableListMultimap.Builder<Integer, Token> tokensMultimapBuilder,
                               SemanticListener semanticListener, AttributeAnalyzer attributeAnalyzer,
                               ABI abi) {
         this.nescEnvironment = nescEnvironment;
         this.errorHelper = new ErrorHelper(issuesMultimapBuilder);
-        this.tokensMultimapBuilder = tokensMultimapBuilder;
         this.semanticListener = semanticListener;
         this.manglingFunction = new Function<String, String>() {
             @Override
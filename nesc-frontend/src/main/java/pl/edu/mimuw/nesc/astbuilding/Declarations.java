@@ -37,7 +37,6 @@ import pl.edu.mimuw.nesc.facade.iface.InterfaceRefFacade;
 import pl.edu.mimuw.nesc.parser.TypeElementsAssociation;
 import pl.edu.mimuw.nesc.problem.NescIssue;
 import pl.edu.mimuw.nesc.problem.issue.*;
-import pl.edu.mimuw.nesc.token.Token;
 import pl.edu.mimuw.nesc.type.Type;
 
 import java.util.LinkedList;
@@ -110,10 +109,9 @@ public final class Declarations extends AstBuildingBase {
     public Declarations(SetMultimap<Optional<String>, String> externalVariables,
                         NescEntityEnvironment nescEnvironment,
                         ImmutableListMultimap.Builder<Integer, NescIssue> issuesMultimapBuilder,
-                        ImmutableListMultimap.Builder<Integer, Token> tokensMultimapBuilder,
                         SemanticListener semanticListener, AttributeAnalyzer attributeAnalyzer,
                         ABI abi) {
-        super(nescEnvironment, issuesMultimapBuilder, tokensMultimapBuilder,
+        super(nescEnvironment, issuesMultimapBuilder,
                 semanticListener, attributeAnalyzer, abi);
         this.externalVariables = externalVariables;
     }
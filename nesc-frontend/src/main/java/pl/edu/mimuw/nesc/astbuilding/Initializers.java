@@ -15,7 +15,6 @@ import pl.edu.mimuw.nesc.common.util.list.Lists;
 import pl.edu.mimuw.nesc.environment.Environment;
 import pl.edu.mimuw.nesc.environment.NescEntityEnvironment;
 import pl.edu.mimuw.nesc.problem.NescIssue;
-import pl.edu.mimuw.nesc.token.Token;
 
 /**
  * @author Grzegorz Kołakowski <gk291583@students.mimuw.edu.pl>
@@ -25,10 +24,9 @@ public final class Initializers extends AstBuildingBase {
 
     public Initializers(NescEntityEnvironment nescEnvironment,
             ImmutableListMultimap.Builder<Integer, NescIssue> issuesMultimapBuilder,
-            ImmutableListMultimap.Builder<Integer, Token> tokensMultimapBuilder,
             SemanticListener semanticListener, AttributeAnalyzer attributeAnalyzer,
             ABI abi) {
-        super(nescEnvironment, issuesMultimapBuilder, tokensMultimapBuilder,
+        super(nescEnvironment, issuesMultimapBuilder,
                 semanticListener, attributeAnalyzer, abi);
     }
 
@@ -14,7 +14,6 @@ import pl.edu.mimuw.nesc.problem.issue.InvalidLabelDeclarationError;
 import pl.edu.mimuw.nesc.problem.issue.RedeclarationError;
 import pl.edu.mimuw.nesc.problem.issue.RedefinitionError;
 import pl.edu.mimuw.nesc.symboltable.LabelSymbolTable;
-import pl.edu.mimuw.nesc.token.Token;
 
 /**
  * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
@@ -23,11 +22,10 @@ public class Labels extends AstBuildingBase {
 
     public Labels(NescEntityEnvironment nescEnvironment,
                   ImmutableListMultimap.Builder<Integer, NescIssue> issuesMultimapBuilder,
-                  ImmutableListMultimap.Builder<Integer, Token> tokensMultimapBuilder,
                   SemanticListener semanticListener,
                   AttributeAnalyzer attributeAnalyzer,
                   ABI abi) {
-        super(nescEnvironment, issuesMultimapBuilder, tokensMultimapBuilder,
+        super(nescEnvironment, issuesMultimapBuilder,
                 semanticListener, attributeAnalyzer, abi);
     }
 
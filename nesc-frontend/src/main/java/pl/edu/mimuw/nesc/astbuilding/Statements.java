@@ -11,7 +11,6 @@ import pl.edu.mimuw.nesc.ast.gen.*;
 import pl.edu.mimuw.nesc.environment.Environment;
 import pl.edu.mimuw.nesc.environment.NescEntityEnvironment;
 import pl.edu.mimuw.nesc.problem.NescIssue;
-import pl.edu.mimuw.nesc.token.Token;
 
 import java.util.LinkedList;
 
@@ -29,10 +28,9 @@ public final class Statements extends AstBuildingBase {
 
     public Statements(NescEntityEnvironment nescEnvironment,
                       ImmutableListMultimap.Builder<Integer, NescIssue> issuesMultimapBuilder,
-                      ImmutableListMultimap.Builder<Integer, Token> tokensMultimapBuilder,
                       SemanticListener semanticListener, AttributeAnalyzer attributeAnalyzer,
                       ABI abi) {
-        super(nescEnvironment, issuesMultimapBuilder, tokensMultimapBuilder,
+        super(nescEnvironment, issuesMultimapBuilder,
                 semanticListener, attributeAnalyzer, abi);
     }
 
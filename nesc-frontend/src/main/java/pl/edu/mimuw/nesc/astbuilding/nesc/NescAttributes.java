@@ -17,7 +17,6 @@ import pl.edu.mimuw.nesc.astutil.predicates.IsInitializerPredicate;
 import pl.edu.mimuw.nesc.environment.Environment;
 import pl.edu.mimuw.nesc.environment.NescEntityEnvironment;
 import pl.edu.mimuw.nesc.problem.NescIssue;
-import pl.edu.mimuw.nesc.token.Token;
 
 import static pl.edu.mimuw.nesc.astutil.AstUtils.getEndLocation;
 import static pl.edu.mimuw.nesc.astutil.AstUtils.getStartLocation;
@@ -29,10 +28,9 @@ public final class NescAttributes extends AstBuildingBase {
 
     public NescAttributes(NescEntityEnvironment nescEnvironment,
             ImmutableListMultimap.Builder<Integer, NescIssue> issuesMultimapBuilder,
-            ImmutableListMultimap.Builder<Integer, Token> tokensMultimapBuilder,
             SemanticListener semanticListener, AttributeAnalyzer attributeAnalyzer,
             ABI abi) {
-        super(nescEnvironment, issuesMultimapBuilder, tokensMultimapBuilder,
+        super(nescEnvironment, issuesMultimapBuilder,
                 semanticListener, attributeAnalyzer, abi);
     }
 
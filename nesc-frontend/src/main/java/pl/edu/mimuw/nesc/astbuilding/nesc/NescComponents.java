@@ -38,7 +38,6 @@ import pl.edu.mimuw.nesc.problem.NescIssue;
 import pl.edu.mimuw.nesc.problem.issue.ErroneousIssue;
 import pl.edu.mimuw.nesc.problem.issue.MissingImplementationElementError;
 import pl.edu.mimuw.nesc.problem.issue.MissingWiringError;
-import pl.edu.mimuw.nesc.token.Token;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -67,10 +66,9 @@ public final class NescComponents extends AstBuildingBase {
 
     public NescComponents(NescEntityEnvironment nescEnvironment,
                           ImmutableListMultimap.Builder<Integer, NescIssue> issuesMultimapBuilder,
-                          ImmutableListMultimap.Builder<Integer, Token> tokensMultimapBuilder,
                           SemanticListener semanticListener, AttributeAnalyzer attributeAnalyzer,
                           ABI abi) {
-        super(nescEnvironment, issuesMultimapBuilder, tokensMultimapBuilder,
+        super(nescEnvironment, issuesMultimapBuilder,
                 semanticListener, attributeAnalyzer, abi);
     }
 
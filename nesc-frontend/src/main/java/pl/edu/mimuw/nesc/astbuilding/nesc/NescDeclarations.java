@@ -26,7 +26,6 @@ import pl.edu.mimuw.nesc.declaration.object.VariableDeclaration;
 import pl.edu.mimuw.nesc.environment.Environment;
 import pl.edu.mimuw.nesc.environment.NescEntityEnvironment;
 import pl.edu.mimuw.nesc.problem.NescIssue;
-import pl.edu.mimuw.nesc.token.Token;
 
 import java.util.LinkedList;
 
@@ -45,10 +44,9 @@ public final class NescDeclarations extends AstBuildingBase {
 
     public NescDeclarations(NescEntityEnvironment nescEnvironment,
                             ImmutableListMultimap.Builder<Integer, NescIssue> issuesMultimapBuilder,
-                            ImmutableListMultimap.Builder<Integer, Token> tokensMultimapBuilder,
                             SemanticListener semanticListener, AttributeAnalyzer attributeAnalyzer,
                             ABI abi) {
-        super(nescEnvironment, issuesMultimapBuilder, tokensMultimapBuilder,
+        super(nescEnvironment, issuesMultimapBuilder,
                 semanticListener, attributeAnalyzer, abi);
     }
 
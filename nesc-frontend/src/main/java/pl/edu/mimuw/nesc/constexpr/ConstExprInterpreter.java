@@ -22,9 +22,8 @@ import pl.edu.mimuw.nesc.problem.NescIssue;
 import pl.edu.mimuw.nesc.type.ArithmeticType;
 import pl.edu.mimuw.nesc.type.Type;
 import pl.edu.mimuw.nesc.type.TypeUtils;
-import pl.edu.mimuw.nesc.typelayout.EnumeratedTypeLayoutCalculator;
-import pl.edu.mimuw.nesc.typelayout.FieldTagTypeLayoutCalculator;
 import pl.edu.mimuw.nesc.typelayout.TypeLayout;
+import pl.edu.mimuw.nesc.typelayout.TypeLayoutCache;
 import pl.edu.mimuw.nesc.typelayout.UniversalTypeLayoutCalculator;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -162,8 +161,7 @@ public class ConstExprInterpreter implements Interpreter {
 
             if (!constant.getValue().isPresent()) {
                 // Determine the value of the constant as a side effect
-                new EnumeratedTypeLayoutCalculator(abi, constant.getOwner().getType(false, false))
-                        .calculate();
+                TypeLayoutCache.forABI(abi).getLayout(constant.getOwner().getType(false, false));
             }
 
             return getFactoryForType(constant.getOwner().getCompatibleType(), Optional.<ConstantType.Type>absent())
@@ -245,8 +243,8 @@ public class ConstExprInterpreter implements Interpreter {
                     /* One of side effects of calculating the layout of the
                        whole structure or union is setting the size, alignment
                        and offset of all of its fields. */
-                    new FieldTagTypeLayoutCalculator(ConstExprInterpreter.this.abi,
-                            declaration.getOwner().getType(false, false)).calculate();
+                    TypeLayoutCache.forABI(ConstExprInterpreter.this.abi).getLayout(
+                            declaration.getOwner().getType(false, false));
                 }
 
                 totalOffsetInBits += declaration.getOffsetInBits();
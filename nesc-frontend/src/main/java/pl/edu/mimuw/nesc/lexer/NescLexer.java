@@ -60,6 +60,16 @@ public final class NescLexer extends AbstractLexer {
      * Factory of symbols used by this lexer.
      */
     private final SymbolFactory symbolFactory;
+    /**
+     * Builder reused for creating all symbols that are returned by
+     * {@link NescLexer#lex}.
+     */
+    private final Symbol.Builder symbolBuilder;
+    /**
+     * Canonical instances of texts of identifiers and paths of files. Symbols
+     * and locations created by this lexer share them.
+     */
+    private final Map<String, String> internedStrings;
 
     /**
      * Creates lexer from builder.
@@ -77,6 +87,8 @@ public final class NescLexer extends AbstractLexer {
         this.sourceStack = new Stack<>();
         this.symbolFactory = new SymbolFactory(builder.targetAttributes0,
                 builder.targetAttributes1);
+        this.symbolBuilder = Symbol.builder();
+        this.internedStrings = new HashMap<>();
 
         /*
          * Init preprocessor. When we want to include some additional header
@@ -88,7 +100,7 @@ public final class NescLexer extends AbstractLexer {
          */
         final LinkedList<String> filesOrder = new LinkedList<>(this.includeFilePaths);
         filesOrder.add(this.mainFilePath);
-        startFile = filesOrder.removeFirst();
+        startFile = intern(filesOrder.removeFirst());
         this.preprocessor = new Preprocessor(new File(startFile));
         this.sourceStack.push(startFile);
         for (String filePath : filesOrder) {
@@ -219,26 +231,37 @@ public final class NescLexer extends AbstractLexer {
         }
     }
 
-    private Symbol lex() throws IOException, LexerException {
-        final Symbol.Builder builder = Symbol.builder();
+    private String intern(String text) {
+        final String internedText = this.internedStrings.get(text);
+        if (internedText != null) {
+            return internedText;
+        }
+        this.internedStrings.put(text, text);
+        return text;
+    }
 
-        Token token = popToken();
+    private Symbol lex() throws IOException, LexerException {
+        final Symbol.Builder builder = this.symbolBuilder.reset();
 
         /*
-         * Handle token which should not produce parser token.
+         * Skip tokens which should not produce parser tokens. It is done
+         * iteratively because long runs of whitespace and comments are
+         * common.
          */
-        if (ignoreToken(token)) {
-            return lex();
-        } else if (isComment(token)) {
-            /*
-             * NOTICE: INVALID token which was intended to be a comment should
-             * be handled in this section.
-             */
-            handleComment(token, isInvalidComment(token));
-            return lex();
-        } else if (isHash(token)) {
-            // TODO handle hash
-            return lex();
+        Token token = popToken();
+        while (true) {
+            if (isComment(token)) {
+                /*
+                 * NOTICE: INVALID token which was intended to be a comment should
+                 * be handled in this section.
+                 */
+                handleComment(token, isInvalidComment(token));
+            } else if (isHash(token)) {
+                // TODO handle hash
+            } else if (!ignoreToken(token)) {
+                break;
+            }
+            token = popToken();
         }
 
         /*
@@ -329,7 +352,7 @@ public final class NescLexer extends AbstractLexer {
     }
 
     private void lexIdentifier(Token token, Symbol.Builder builder) {
-        final String text = token.getText();
+        final String text = intern(token.getText());
 
         /*
          * Split '@name' token into two tokens AT(@) and IDENTIFIER (name).
@@ -346,7 +369,7 @@ public final class NescLexer extends AbstractLexer {
                     .endLine(token.getLine())
                     .endColumn(token.getColumn() + 1);
 
-            final String identifier = text.substring(1);
+            final String identifier = intern(text.substring(1));
             final Symbol idSymbol = Symbol.builder()
                     .value(identifier)
                     .file(getCurrentFile())
@@ -364,9 +387,9 @@ public final class NescLexer extends AbstractLexer {
         final int symbolCode;
         if (invalid) {
             symbolCode = INVALID_NUMBER_LITERAL;
-        } else if (numeric.matches(INTEGER_REGEX)) {
+        } else if (NumericLiterals.isIntegerLiteral(numeric)) {
             symbolCode = INTEGER_LITERAL;
-        } else if (numeric.matches(FLOAT_REGEX)) {
+        } else if (NumericLiterals.isFloatingLiteral(numeric)) {
             symbolCode = FLOATING_POINT_LITERAL;
         } else {
             symbolCode = INVALID_NUMBER_LITERAL;
@@ -374,7 +397,7 @@ public final class NescLexer extends AbstractLexer {
         builder.value(numeric)
                 .symbolCode(symbolCode)
                 .endLine(token.getLine())
-                .endColumn(token.getColumn() + token.getText().length())
+                .endColumn(token.getColumn() + numeric.length())
                 .invalid(invalid);
     }
 
@@ -685,7 +708,7 @@ public final class NescLexer extends AbstractLexer {
 
             if (PUSH.equals(event)) {
                 final String previous = sourceStack.peek();
-                sourceStack.push(normalizePath(path.get()));
+                sourceStack.push(intern(normalizePath(path.get())));
                 if (!previous.equals(path.get())) {
                     notifyFileChange(previous, path.get(), true);
                 }
@@ -0,0 +1,195 @@
+package pl.edu.mimuw.nesc.lexer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Classifier of numeric literals. It accepts exactly the same literals as
+ * {@link NescLexer#INTEGER_REGEX} and {@link NescLexer#FLOAT_REGEX} but does
+ * not use regular expressions and does not allocate any objects.</p>
+ *
+ * @author Grzegorz Kołakowski <gk291583@students.mimuw.edu.pl>
+ */
+final class NumericLiterals {
+
+    /**
+     * Check if the given text is a valid integer literal.
+     *
+     * @param text Text of a numeric token.
+     * @return <code>true</code> if and only if the given text matches
+     *         {@link NescLexer#INTEGER_REGEX}.
+     */
+    static boolean isIntegerLiteral(String text) {
+        checkNotNull(text, "text cannot be null");
+
+        if (text.isEmpty() || !isDecimalDigit(text.charAt(0))) {
+            return false;
+        }
+
+        int index;
+        if (isHexPrefix(text)) {
+            index = skipHexDigits(text, 2);
+            if (index == 2) {
+                return false;
+            }
+        } else if (text.charAt(0) == '0') {
+            index = 1;
+            while (index < text.length() && text.charAt(index) >= '0' && text.charAt(index) <= '7') {
+                ++index;
+            }
+        } else {
+            index = skipDecimalDigits(text, 1);
+        }
+
+        return isIntegerSuffix(text, index);
+    }
+
+    /**
+     * Check if the text from the given index to its end is a valid suffix of
+     * an integer literal: 'u' or 'U' and 'l', 'L', 'll' or 'LL' in any order,
+     * each part optional.
+     */
+    private static boolean isIntegerSuffix(String text, int index) {
+        final int end = text.length();
+
+        if (index < end && isUnsignedSuffix(text.charAt(index))) {
+            return skipLongSuffix(text, index + 1) == end;
+        }
+
+        final int longSuffixEnd = skipLongSuffix(text, index);
+        return longSuffixEnd == end
+                || (longSuffixEnd > index && longSuffixEnd == end - 1
+                    && isUnsignedSuffix(text.charAt(longSuffixEnd)));
+    }
+
+    private static int skipLongSuffix(String text, int index) {
+        if (index >= text.length() || (text.charAt(index) != 'l' && text.charAt(index) != 'L')) {
+            return index;
+        }
+        return index + 1 < text.length() && text.charAt(index + 1) == text.charAt(index)
+                ? index + 2
+                : index + 1;
+    }
+
+    private static boolean isUnsignedSuffix(char c) {
+        return c == 'u' || c == 'U';
+    }
+
+    /**
+     * Check if the given text is a valid floating-point literal.
+     *
+     * @param text Text of a numeric token.
+     * @return <code>true</code> if and only if the given text matches
+     *         {@link NescLexer#FLOAT_REGEX}.
+     */
+    static boolean isFloatingLiteral(String text) {
+        checkNotNull(text, "text cannot be null");
+
+        // Ignore the optional suffix
+        int end = text.length();
+        if (end > 0 && isFloatingSuffix(text.charAt(end - 1))) {
+            --end;
+        }
+
+        return isHexPrefix(text)
+                ? isHexFloatingBody(text, end)
+                : isDecimalFloatingBody(text, end);
+    }
+
+    private static boolean isDecimalFloatingBody(String text, int end) {
+        final int integerPartEnd = skipDecimalDigits(text, 0, end);
+        int index = integerPartEnd;
+        boolean hasDigits = integerPartEnd > 0;
+        boolean hasPoint = false;
+
+        if (index < end && text.charAt(index) == '.') {
+            hasPoint = true;
+            final int fractionEnd = skipDecimalDigits(text, index + 1, end);
+            hasDigits = hasDigits || fractionEnd > index + 1;
+            index = fractionEnd;
+        }
+
+        if (!hasDigits) {
+            return false;
+        } else if (index == end) {
+            return hasPoint;
+        } else if (text.charAt(index) != 'e' && text.charAt(index) != 'E') {
+            return false;
+        }
+
+        return isExponent(text, index + 1, end);
+    }
+
+    private static boolean isHexFloatingBody(String text, int end) {
+        final int integerPartEnd = skipHexDigits(text, 2, end);
+        int index = integerPartEnd;
+        boolean hasDigits = integerPartEnd > 2;
+
+        if (index < end && text.charAt(index) == '.') {
+            final int fractionEnd = skipHexDigits(text, index + 1, end);
+            hasDigits = hasDigits || fractionEnd > index + 1;
+            index = fractionEnd;
+        }
+
+        if (!hasDigits || index == end || (text.charAt(index) != 'p' && text.charAt(index) != 'P')) {
+            return false;
+        }
+
+        return isExponent(text, index + 1, end);
+    }
+
+    /**
+     * Check if characters of the given text from the given index to the given
+     * end form a decimal exponent with optional sign.
+     */
+    private static boolean isExponent(String text, int index, int end) {
+        if (index < end && (text.charAt(index) == '+' || text.charAt(index) == '-')) {
+            ++index;
+        }
+        return index < end && skipDecimalDigits(text, index, end) == end;
+    }
+
+    private static boolean isHexPrefix(String text) {
+        return text.length() >= 2 && text.charAt(0) == '0'
+                && (text.charAt(1) == 'x' || text.charAt(1) == 'X');
+    }
+
+    private static boolean isFloatingSuffix(char c) {
+        return c == 'f' || c == 'F' || c == 'l' || c == 'L';
+    }
+
+    private static boolean isDecimalDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(char c) {
+        return isDecimalDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static int skipDecimalDigits(String text, int index) {
+        return skipDecimalDigits(text, index, text.length());
+    }
+
+    private static int skipDecimalDigits(String text, int index, int end) {
+        while (index < end && isDecimalDigit(text.charAt(index))) {
+            ++index;
+        }
+        return index;
+    }
+
+    private static int skipHexDigits(String text, int index) {
+        return skipHexDigits(text, index, text.length());
+    }
+
+    private static int skipHexDigits(String text, int index, int end) {
+        while (index < end && isHexDigit(text.charAt(index))) {
+            ++index;
+        }
+        return index;
+    }
+
+    /**
+     * Private constructor to prevent instantiating this class.
+     */
+    private NumericLiterals() {
+    }
+}
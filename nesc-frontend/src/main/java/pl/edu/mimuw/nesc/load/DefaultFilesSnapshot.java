@@ -0,0 +1,208 @@
+package pl.edu.mimuw.nesc.load;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import org.apache.log4j.Logger;
+import pl.edu.mimuw.nesc.FileData;
+import pl.edu.mimuw.nesc.FrontendContext;
+import pl.edu.mimuw.nesc.environment.TranslationUnitEnvironment;
+import pl.edu.mimuw.nesc.filesgraph.FilesGraph;
+import pl.edu.mimuw.nesc.filesgraph.GraphFile;
+import pl.edu.mimuw.nesc.preprocessor.PreprocessorMacro;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static pl.edu.mimuw.nesc.common.util.file.FileUtils.fileTypeFromExtension;
+
+/**
+ * <p>Snapshot of the results of parsing files included by default: macros,
+ * symbols and caches of all parsed files. It allows reusing the results in
+ * a new context instead of parsing the files again if neither the files nor
+ * the settings that affect parsing (files included by default, predefined
+ * macros, ABI) have changed.</p>
+ *
+ * <p>The snapshot can be taken only in the plug-in mode. In the standalone
+ * mode the abstract syntax trees of files included by default are
+ * transformed during the compilation and symbols from them are added to the
+ * global environment shared with all other files.</p>
+ *
+ * <p>Snapshots are kept only in memory of the frontend, so unlike
+ * precompiled headers they are not shared between processes or persisted
+ * between runs of the compiler. Writing them to disk would require encoding
+ * macros of the preprocessor (the tokens and names of parameters of
+ * {@link org.anarres.cpp.Macro} are not accessible), environments, tokens,
+ * comments and preprocessor directives, and none of them can be written by
+ * {@link pl.edu.mimuw.nesc.astutil.PortableObjectsCodec}. Restoring a snapshot
+ * in the standalone mode would also require registering its unique names in
+ * the name mangler of the new context.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class DefaultFilesSnapshot {
+
+    private static final Logger LOG = Logger.getLogger(DefaultFilesSnapshot.class);
+
+    /**
+     * Hash of the settings of the context the snapshot has been taken in. It
+     * covers the list of files included by default, so the snapshot is not
+     * reused if a file included by default is added or removed.
+     */
+    private final HashCode settingsHash;
+
+    /**
+     * Caches of all files parsed while loading files included by default.
+     */
+    private final ImmutableList<FileCache> caches;
+
+    /**
+     * Edges of the files graph between files parsed while loading files
+     * included by default.
+     */
+    private final ImmutableListMultimap<String, String> dependencies;
+
+    private final ImmutableMap<String, PreprocessorMacro> defaultMacros;
+    private final TranslationUnitEnvironment defaultSymbols;
+    private final ImmutableList<FileData> fileDatas;
+
+    /**
+     * Take the snapshot of the given context immediately after parsing files
+     * included by default (and before parsing any other files).
+     *
+     * @param context Context with parsed files included by default.
+     * @param fileDatas Data of files included by default that have been
+     *                  created after parsing.
+     * @return Snapshot of the context. The object is absent if the snapshot
+     *         cannot be taken, e.g. because errors have occurred while
+     *         parsing files included by default.
+     */
+    public static Optional<DefaultFilesSnapshot> take(FrontendContext context, List<FileData> fileDatas) {
+        checkNotNull(context, "context cannot be null");
+        checkNotNull(fileDatas, "file datas cannot be null");
+
+        if (context.isStandalone() || !context.getIssues().isEmpty()) {
+            return Optional.absent();
+        }
+
+        final ImmutableListMultimap.Builder<String, String> dependenciesBuilder =
+                ImmutableListMultimap.builder();
+
+        for (FileCache cache : context.getCache().values()) {
+            if (!cache.getKey().isPresent()) {
+                return Optional.absent();
+            }
+
+            final GraphFile graphFile = context.getFilesGraph().getFile(cache.getFilePath());
+            if (graphFile != null) {
+                dependenciesBuilder.putAll(cache.getFilePath(), graphFile.getUses().keySet());
+            }
+        }
+
+        final HashCode settingsHash;
+        try {
+            settingsHash = ParseCacheKey.getSettingsHash(context);
+        } catch (IOException e) {
+            LOG.debug("Cannot compute the hash of settings", e);
+            return Optional.absent();
+        }
+
+        return Optional.of(new DefaultFilesSnapshot(
+                settingsHash,
+                ImmutableList.copyOf(context.getCache().values()),
+                dependenciesBuilder.build(),
+                ImmutableMap.copyOf(context.getDefaultMacros()),
+                context.getDefaultSymbols(),
+                ImmutableList.copyOf(fileDatas)
+        ));
+    }
+
+    private DefaultFilesSnapshot(HashCode settingsHash, ImmutableList<FileCache> caches,
+            ImmutableListMultimap<String, String> dependencies,
+            ImmutableMap<String, PreprocessorMacro> defaultMacros, TranslationUnitEnvironment defaultSymbols,
+            ImmutableList<FileData> fileDatas) {
+        this.settingsHash = settingsHash;
+        this.caches = caches;
+        this.dependencies = dependencies;
+        this.defaultMacros = defaultMacros;
+        this.defaultSymbols = defaultSymbols;
+        this.fileDatas = fileDatas;
+    }
+
+    /**
+     * Check if the snapshot can be restored in the given context, i.e. if
+     * all files parsed while loading files included by default and settings
+     * of the context have not changed.
+     *
+     * @param context Context to check.
+     * @return <code>true</code> if and only if the snapshot is up to date.
+     */
+    public boolean isUpToDate(FrontendContext context) {
+        checkNotNull(context, "context cannot be null");
+
+        if (context.isStandalone()) {
+            return false;
+        }
+
+        try {
+            if (!settingsHash.equals(ParseCacheKey.getSettingsHash(context))) {
+                return false;
+            }
+        } catch (IOException e) {
+            LOG.debug("Cannot compute the hash of settings", e);
+            return false;
+        }
+
+        // Settings are equal, so only contents of files need to be compared
+        for (FileCache cache : caches) {
+            try {
+                if (!cache.getKey().get().getContentHash().equals(ParseCacheKey.hashFile(cache.getFilePath()))) {
+                    return false;
+                }
+            } catch (IOException e) {
+                LOG.debug("Cannot compute the hash of file " + cache.getFilePath(), e);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Restore the snapshot in the given context. It should be a new context
+     * in which files included by default have not been parsed yet.
+     *
+     * @param context Context to restore the snapshot in.
+     * @return List with data of files included by default.
+     */
+    public ImmutableList<FileData> restore(FrontendContext context) {
+        checkNotNull(context, "context cannot be null");
+
+        final FilesGraph filesGraph = context.getFilesGraph();
+
+        for (FileCache cache : caches) {
+            context.getCache().put(cache.getFilePath(), cache);
+            if (!filesGraph.containsFile(cache.getFilePath())) {
+                filesGraph.addFile(new GraphFile(cache.getFilePath(), cache.getFileType()));
+            }
+        }
+
+        for (Map.Entry<String, String> dependency : dependencies.entries()) {
+            if (!filesGraph.containsFile(dependency.getValue())) {
+                filesGraph.addFile(new GraphFile(dependency.getValue(),
+                        fileTypeFromExtension(dependency.getValue())));
+            }
+            filesGraph.addEdge(dependency.getKey(), dependency.getValue());
+        }
+
+        context.getDefaultMacros().clear();
+        context.getDefaultMacros().putAll(defaultMacros);
+        context.setDefaultSymbols(defaultSymbols);
+
+        return fileDatas;
+    }
+}
@@ -0,0 +1,143 @@
+package pl.edu.mimuw.nesc.load;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Immutable index that maps names of nesc entities to paths of files with
+ * their definitions. It is built by listing all search directories once.
+ * Files from directories earlier in the search order take precedence.</p>
+ * <p>The index remembers modification times of the search directories, which
+ * change when a file is added, removed or renamed. It is up to date as long
+ * as they do not change. A directory modified shortly before building the
+ * index could be modified again without changing its modification time
+ * because of its granularity, so such index is not reused by other contexts
+ * of the frontend.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class EntitiesIndex {
+    /**
+     * Granularity of modification times of directories in milliseconds
+     * assumed for detecting indices built right after a modification.
+     */
+    private static final long MODIFICATION_TIME_GRANULARITY = 1000L;
+
+    private final ImmutableList<String> searchOrder;
+    private final ImmutableMap<String, String> entitiesFiles;
+    private final long[] modificationTimes;
+    private final boolean isRacy;
+
+    /**
+     * Builds the index by listing all given directories.
+     *
+     * @param searchOrder ordered search paths
+     * @return the built index
+     */
+    public static EntitiesIndex build(List<String> searchOrder) {
+        checkNotNull(searchOrder, "search order cannot be null");
+
+        final long buildTime = System.currentTimeMillis();
+        final Map<String, String> entitiesFiles = new HashMap<>();
+        final long[] modificationTimes = new long[searchOrder.size()];
+        boolean isRacy = false;
+        int index = 0;
+
+        for (String searchPath : searchOrder) {
+            final File directory = new File(searchPath);
+            final long modificationTime = directory.lastModified();
+            modificationTimes[index++] = modificationTime;
+            isRacy = isRacy || modificationTime + MODIFICATION_TIME_GRANULARITY > buildTime;
+
+            final File[] files = directory.listFiles();
+
+            // FIXME : handle this warning
+            if (files == null) {
+                continue;
+            }
+
+            for (File child : files) {
+                final String extension = Files.getFileExtension(child.getName());
+                if (!"nc".equals(extension)) {
+                    continue;
+                }
+                final String childName = Files.getNameWithoutExtension(child.getName());
+                /* Files from directories earlier in the search order take
+                 * precedence. */
+                if (!entitiesFiles.containsKey(childName) && child.isFile()) {
+                    entitiesFiles.put(childName, child.getPath());
+                }
+            }
+        }
+
+        return new EntitiesIndex(ImmutableList.copyOf(searchOrder),
+                ImmutableMap.copyOf(entitiesFiles), modificationTimes, isRacy);
+    }
+
+    private EntitiesIndex(ImmutableList<String> searchOrder, ImmutableMap<String, String> entitiesFiles,
+            long[] modificationTimes, boolean isRacy) {
+        this.searchOrder = searchOrder;
+        this.entitiesFiles = entitiesFiles;
+        this.modificationTimes = modificationTimes;
+        this.isRacy = isRacy;
+    }
+
+    /**
+     * Returns the search paths the index has been built for.
+     *
+     * @return ordered search paths
+     */
+    public ImmutableList<String> getSearchOrder() {
+        return searchOrder;
+    }
+
+    /**
+     * Returns the path of the file with the definition of the entity with
+     * given name.
+     *
+     * @param name name of the entity
+     * @return path to the file or <code>Optional.absent()</code> if there is
+     * no such file in the search directories
+     */
+    public Optional<String> getEntityFile(String name) {
+        checkNotNull(name, "entity name cannot be null");
+        return Optional.fromNullable(entitiesFiles.get(name));
+    }
+
+    /**
+     * Checks if no search directory has been modified since building the
+     * index. It requires reading the modification time of each directory.
+     *
+     * @return <code>true</code> if and only if the index still reflects the
+     * contents of the search directories
+     */
+    public boolean isUpToDate() {
+        int index = 0;
+        for (String searchPath : searchOrder) {
+            if (new File(searchPath).lastModified() != modificationTimes[index++]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the index can be reused by another context of the frontend.
+     * It is the case if it is up to date and no search directory has been
+     * modified shortly before building it.
+     *
+     * @return <code>true</code> if and only if the index can be safely reused
+     */
+    public boolean isReusable() {
+        return !isRacy && isUpToDate();
+    }
+}
@@ -0,0 +1,56 @@
+package pl.edu.mimuw.nesc.load;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Cache of indices of nesc entities for projects compiled in a single
+ * virtual machine. Indices are keyed by the search order, i.e. by the
+ * options of a project that affect them. An index is returned only if it is
+ * reusable, so builds of a project reuse it until a search directory is
+ * modified. The cache can be used by multiple threads at once.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class EntitiesIndexCache {
+
+    private final ConcurrentMap<ImmutableList<String>, EntitiesIndex> indices = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the index for given search paths if it is cached and it can
+     * be reused. Other indices are removed.
+     *
+     * @param searchOrder ordered search paths
+     * @return the reusable index or <code>Optional.absent()</code>
+     */
+    public Optional<EntitiesIndex> get(List<String> searchOrder) {
+        checkNotNull(searchOrder, "search order cannot be null");
+
+        final ImmutableList<String> key = ImmutableList.copyOf(searchOrder);
+        final EntitiesIndex index = indices.get(key);
+        if (index == null) {
+            return Optional.absent();
+        } else if (!index.isReusable()) {
+            indices.remove(key, index);
+            return Optional.absent();
+        }
+        return Optional.of(index);
+    }
+
+    /**
+     * Stores given index in the cache. It replaces the index previously
+     * stored for the same search paths.
+     *
+     * @param index index to store
+     */
+    public void put(EntitiesIndex index) {
+        checkNotNull(index, "index cannot be null");
+        indices.put(index.getSearchOrder(), index);
+    }
+}
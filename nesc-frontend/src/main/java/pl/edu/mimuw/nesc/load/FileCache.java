@@ -52,6 +52,12 @@ public class FileCache {
     private final Multimap<Integer, Token> tokens;
     private final Multimap<Integer, NescIssue> issues;
     private final Environment environment;
+    /**
+     * Key computed for the file before parsing it. Present only for files
+     * included by default whose caches can be reused when they have not
+     * changed.
+     */
+    private final Optional<ParseCacheKey> key;
 
     private FileCache(Builder builder) {
         this.filePath = builder.filePath;
@@ -68,6 +74,7 @@ public class FileCache {
         this.tokens = builder.tokens.build();
         this.issues = builder.issues.build();
         this.environment = builder.environment;
+        this.key = Optional.fromNullable(builder.key);
     }
 
     public String getFilePath() {
@@ -126,6 +133,10 @@ public class FileCache {
         return environment;
     }
 
+    public Optional<ParseCacheKey> getKey() {
+        return key;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
@@ -160,6 +171,7 @@ public class FileCache {
         private ImmutableMultimap.Builder<Integer, Token> tokens;
         private ImmutableMultimap.Builder<Integer, NescIssue> issues;
         private Environment environment;
+        private ParseCacheKey key;
 
         public Builder() {
             this.extdefs = ImmutableList.builder();
@@ -252,6 +264,11 @@ public class FileCache {
             return this;
         }
 
+        public Builder key(ParseCacheKey key) {
+            this.key = key;
+            return this;
+        }
+
         public FileCache build() {
             verify();
             return new FileCache(this);
@@ -21,6 +21,7 @@ import pl.edu.mimuw.nesc.lexer.NescLexer;
 import pl.edu.mimuw.nesc.parser.Parser;
 import pl.edu.mimuw.nesc.parser.ParserListener;
 import pl.edu.mimuw.nesc.preprocessor.PreprocessorMacro;
+import pl.edu.mimuw.nesc.preprocessor.directive.IncludeDirective;
 import pl.edu.mimuw.nesc.preprocessor.directive.PreprocessorDirective;
 import pl.edu.mimuw.nesc.problem.NescError;
 import pl.edu.mimuw.nesc.problem.NescIssue;
@@ -49,7 +50,11 @@ public abstract class LoadFileExecutor implements LexerListener, ParserListener
 
     protected final FrontendContext context;
     protected final FileCache.Builder fileCacheBuilder;
-    protected final ImmutableListMultimap.Builder<Integer, Token> tokensMultimapBuilder;
+    /**
+     * Builder of the tokens multimap. It is absent if source details are not
+     * retained so that no tokens are collected.
+     */
+    protected final Optional<ImmutableListMultimap.Builder<Integer, Token>> tokensMultimapBuilder;
     protected final ImmutableListMultimap.Builder<Integer, NescIssue> issuesListBuilder;
     /**
      * List of datas for files parsed in this load executor and all recursive
@@ -88,7 +93,9 @@ public abstract class LoadFileExecutor implements LexerListener, ParserListener
         this.context = context;
         this.currentFilePath = currentFilePath;
         this.fileCacheBuilder = FileCache.builder();
-        this.tokensMultimapBuilder = ImmutableListMultimap.builder();
+        this.tokensMultimapBuilder = context.retainsSourceDetails()
+                ? Optional.of(ImmutableListMultimap.<Integer, Token>builder())
+                : Optional.<ImmutableListMultimap.Builder<Integer, Token>>absent();
         this.issuesListBuilder = ImmutableListMultimap.builder();
         this.fileCacheList = new LinkedList<>();
         this.wasExtdefsFinished = false;
@@ -183,7 +190,7 @@ public abstract class LoadFileExecutor implements LexerListener, ParserListener
 
     protected void setUpParser() {
         this.parser = new Parser(currentFilePath, lexer, context, environment,
-                nescEntityEnvironment, fileType, tokensMultimapBuilder, issuesListBuilder);
+                nescEntityEnvironment, fileType, issuesListBuilder);
         parser.setListener(this);
     }
 
@@ -233,7 +240,9 @@ public abstract class LoadFileExecutor implements LexerListener, ParserListener
         fileCacheBuilder.filePath(currentFilePath)
                 .fileType(fileType)
                 .entityRoot(entity.orNull())
-                .tokens(tokensMultimapBuilder.build())
+                .tokens(tokensMultimapBuilder.isPresent()
+                        ? tokensMultimapBuilder.get().build()
+                        : ImmutableListMultimap.<Integer, Token>of())
                 .issues(issuesListBuilder.build())
                 .globalNames(parser.getGlobalNames())
                 .combiningFunctions(parser.getCombiningFunctions());
@@ -259,6 +268,10 @@ public abstract class LoadFileExecutor implements LexerListener, ParserListener
 
     @Override
     public void preprocessorDirective(PreprocessorDirective directive) {
+        /* Include directives are necessary for generating the code. */
+        if (!context.retainsSourceDetails() && !(directive instanceof IncludeDirective)) {
+            return;
+        }
         if (currentFilePath.equals(directive.getSourceFile())) {
             fileCacheBuilder.directive(directive);
         } // no need to collect other directives
@@ -266,7 +279,8 @@ public abstract class LoadFileExecutor implements LexerListener, ParserListener
 
     @Override
     public void comment(Comment comment) {
-        if (currentFilePath.equals(comment.getLocation().getFilePath())) {
+        if (context.retainsSourceDetails()
+                && currentFilePath.equals(comment.getLocation().getFilePath())) {
             fileCacheBuilder.comment(comment);
         } // no need to collect other comments
     }
@@ -314,8 +328,9 @@ public abstract class LoadFileExecutor implements LexerListener, ParserListener
 
     @Override
     public void macroInstantiation(MacroToken macroToken) {
-        if (currentFilePath.equals(macroToken.getMacroName())) {
-            tokensMultimapBuilder.put(macroToken.getStartLocation().getLine(), macroToken);
+        if (tokensMultimapBuilder.isPresent()
+                && currentFilePath.equals(macroToken.getMacroName())) {
+            tokensMultimapBuilder.get().put(macroToken.getStartLocation().getLine(), macroToken);
         }
     }
 
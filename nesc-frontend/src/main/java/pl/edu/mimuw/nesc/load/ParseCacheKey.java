@@ -0,0 +1,268 @@
+package pl.edu.mimuw.nesc.load;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import pl.edu.mimuw.nesc.FrontendContext;
+import pl.edu.mimuw.nesc.filesgraph.GraphFile;
+import pl.edu.mimuw.nesc.option.OptionsHolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Key that identifies the result of parsing a single file. It consists of
+ * two parts:</p>
+ * <ul>
+ *     <li>the hash of the contents of the file (and optionally of the
+ *     contents of all files it transitively depends on)</li>
+ *     <li>the hash of the settings that affect the parsing: predefined
+ *     macros, files included by default, search paths, target attributes
+ *     and the ABI</li>
+ * </ul>
+ * <p>If the keys computed for a file at two different moments are equal, the
+ * results of parsing the file are the same at both moments (provided that
+ * its dependencies have not changed or they are covered by the key).</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class ParseCacheKey {
+    /**
+     * Hash function used for computing both parts of the key.
+     */
+    private static final HashFunction HASH_FUNCTION = Hashing.sha1();
+
+    /**
+     * Hash of the contents of the file.
+     */
+    private final HashCode contentHash;
+
+    /**
+     * Hash of the settings of the frontend.
+     */
+    private final HashCode settingsHash;
+
+    /**
+     * Compute the key for the given file in the given context.
+     *
+     * @param context Context of the frontend that will parse the file.
+     * @param filePath Path to the file.
+     * @return Newly created key for the file.
+     * @throws IOException Cannot read the file (or the ABI file specified in
+     *                     options).
+     */
+    public static ParseCacheKey compute(FrontendContext context, String filePath) throws IOException {
+        checkNotNull(context, "context cannot be null");
+        checkNotNull(filePath, "file path cannot be null");
+
+        return new ParseCacheKey(Files.hash(new File(filePath), HASH_FUNCTION),
+                getSettingsHash(context));
+    }
+
+    /**
+     * Compute the key for the given file that covers the file and all files
+     * it transitively depends on according to the files graph of the given
+     * context. The graph must be up to date, i.e. the file has to be parsed
+     * before computing the key.
+     *
+     * @param context Context of the frontend that has parsed the file.
+     * @param filePath Path to the file.
+     * @return Newly created key for the file and its dependencies.
+     * @throws IOException Cannot read one of the files (or the ABI file
+     *                     specified in options).
+     */
+    public static ParseCacheKey computeWithDependencies(FrontendContext context, String filePath)
+            throws IOException {
+        checkNotNull(context, "context cannot be null");
+        checkNotNull(filePath, "file path cannot be null");
+
+        // Paths are sorted to make the hash independent of the traversal
+        final Hasher hasher = HASH_FUNCTION.newHasher();
+        final TreeSet<String> paths = collectDependencies(context, filePath);
+        hasher.putInt(paths.size());
+        for (String path : paths) {
+            putString(hasher, path);
+            final File file = new File(path);
+            if (file.isFile()) {
+                hasher.putBoolean(true);
+                hasher.putBytes(Files.hash(file, HASH_FUNCTION).asBytes());
+            } else {
+                hasher.putBoolean(false);
+            }
+        }
+
+        return new ParseCacheKey(hasher.hash(), getSettingsHash(context));
+    }
+
+    private static TreeSet<String> collectDependencies(FrontendContext context, String filePath) {
+        final TreeSet<String> visitedPaths = new TreeSet<>();
+        final Queue<String> pathsQueue = new ArrayDeque<>();
+        visitedPaths.add(filePath);
+        pathsQueue.add(filePath);
+
+        while (!pathsQueue.isEmpty()) {
+            final GraphFile graphFile = context.getFilesGraph().getFile(pathsQueue.remove());
+            if (graphFile == null) {
+                continue;
+            }
+
+            for (String usedPath : graphFile.getUses().keySet()) {
+                if (visitedPaths.add(usedPath)) {
+                    pathsQueue.add(usedPath);
+                }
+            }
+        }
+
+        return visitedPaths;
+    }
+
+    /**
+     * Compute the hash of the contents of the given file. The same hash
+     * function as for the keys is used.
+     *
+     * @param filePath Path to the file.
+     * @return Hash of the contents of the file.
+     * @throws IOException Cannot read the file.
+     */
+    public static HashCode hashFile(String filePath) throws IOException {
+        checkNotNull(filePath, "file path cannot be null");
+        return Files.hash(new File(filePath), HASH_FUNCTION);
+    }
+
+    /**
+     * Get the hash of the settings of the given context that affect the
+     * parsing. It is computed only once for the options of the context (and
+     * thus once per build because each build uses a new context), so the ABI
+     * file is not read again for every file.
+     *
+     * @param context Context of the frontend.
+     * @return Hash of the settings of the context.
+     * @throws IOException Cannot read the ABI file specified in options.
+     */
+    static HashCode getSettingsHash(FrontendContext context) throws IOException {
+        final Optional<HashCode> settingsHash = context.getParseSettingsHash();
+        if (settingsHash.isPresent()) {
+            return settingsHash.get();
+        }
+
+        final HashCode newSettingsHash = computeSettingsHash(context);
+        context.setParseSettingsHash(newSettingsHash);
+        return newSettingsHash;
+    }
+
+    private static HashCode computeSettingsHash(FrontendContext context) throws IOException {
+        final OptionsHolder options = context.getOptions();
+        final Hasher hasher = HASH_FUNCTION.newHasher();
+
+        // Predefined macros (sorted to make the hash independent of the order)
+        final Map<String, String> sortedMacros = new TreeMap<>(context.getPredefinedMacros());
+        hasher.putInt(sortedMacros.size());
+        for (Map.Entry<String, String> macro : sortedMacros.entrySet()) {
+            putString(hasher, macro.getKey());
+            putString(hasher, macro.getValue());
+        }
+
+        // Files included by default and search paths (the order is important)
+        hasher.putInt(context.getDefaultIncludeFiles().size());
+        for (String defaultIncludeFile : context.getDefaultIncludeFiles()) {
+            putString(hasher, defaultIncludeFile);
+        }
+        hasher.putInt(context.getPathsResolver().getSearchOrder().size());
+        for (String searchPath : context.getPathsResolver().getSearchOrder()) {
+            putString(hasher, searchPath);
+        }
+
+        // Target attributes
+        hasher.putInt(context.getTargetAttributes0().size());
+        for (String attribute : new TreeSet<>(context.getTargetAttributes0())) {
+            putString(hasher, attribute);
+        }
+        hasher.putInt(context.getTargetAttributes1().size());
+        for (String attribute : new TreeSet<>(context.getTargetAttributes1())) {
+            putString(hasher, attribute);
+        }
+
+        // ABI
+        putString(hasher, options.getABIPlatformName());
+        putString(hasher, options.getABIFilename());
+        if (options.getABIFilename() != null) {
+            hasher.putBytes(Files.hash(new File(options.getABIFilename()), HASH_FUNCTION).asBytes());
+        }
+
+        return hasher.hash();
+    }
+
+    private static void putString(Hasher hasher, String value) {
+        if (value != null) {
+            hasher.putBoolean(true);
+            hasher.putInt(value.length());
+            hasher.putString(value, Charsets.UTF_8);
+        } else {
+            hasher.putBoolean(false);
+        }
+    }
+
+    private ParseCacheKey(HashCode contentHash, HashCode settingsHash) {
+        this.contentHash = contentHash;
+        this.settingsHash = settingsHash;
+    }
+
+    /**
+     * Get the hash of the contents of the file (and its dependencies if the
+     * key covers them).
+     *
+     * @return Hash of the contents of the file this key has been computed
+     *         for.
+     */
+    public HashCode getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Get the hash of the settings of the frontend.
+     *
+     * @return Hash of the settings of the frontend at the moment of computing
+     *         this key.
+     */
+    public HashCode getSettingsHash() {
+        return settingsHash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+
+        final ParseCacheKey otherKey = (ParseCacheKey) obj;
+        return contentHash.equals(otherKey.contentHash)
+                && settingsHash.equals(otherKey.settingsHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * contentHash.hashCode() + settingsHash.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("contentHash", contentHash)
+                .add("settingsHash", settingsHash)
+                .toString();
+    }
+}
@@ -2,7 +2,6 @@ package pl.edu.mimuw.nesc.load;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
-import com.google.common.io.Files;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -23,6 +22,18 @@ import static pl.edu.mimuw.nesc.common.util.file.FileUtils.normalizePath;
  * <h2>Search order</h2>
  * TODO
  * </p>
+ * <p>
+ * <h2>Entities index</h2>
+ * Files with nesc entities definitions are found using an index that maps
+ * names of entities to paths of files. The index is built on the first
+ * lookup by listing all search directories once. If modifications checking
+ * is enabled (in the plug-in mode), the index is rebuilt on a lookup when
+ * the modification time of a search directory has changed. If a cache of
+ * indices is given, the index is taken from it when it is up to date and
+ * a newly built index is stored in it, so many contexts of the same project,
+ * e.g. consecutive compilations in the compiler daemon, list the search
+ * directories only once.
+ * </p>
  *
  * @author Grzegorz Kołakowski <gk291583@students.mimuw.edu.pl>
  */
@@ -32,6 +43,17 @@ public final class PathsResolver {
     private final List<String> sourcePaths;
     private final List<String> quoteIncludePaths;
     private final List<String> searchOrder;
+    private final boolean checkModifications;
+    private final Optional<EntitiesIndexCache> indexCache;
+
+    /**
+     * Index of nesc entities. <code>null</code> until the first lookup.
+     */
+    private EntitiesIndex entitiesIndex;
+
+    private int lookupsCount;
+    private int indexHitsCount;
+    private int indexBuildsCount;
 
     private PathsResolver(Builder builder) {
         this.projectPath = builder.projectPath;
@@ -40,6 +62,11 @@ public final class PathsResolver {
         this.searchOrder = new ArrayList<>(sourcePaths.size() + 1);
         this.searchOrder.add(projectPath);
         this.searchOrder.addAll(sourcePaths);
+        this.checkModifications = builder.checkModifications;
+        this.indexCache = builder.indexCache;
+        this.lookupsCount = 0;
+        this.indexHitsCount = 0;
+        this.indexBuildsCount = 0;
     }
 
     /**
@@ -100,29 +127,60 @@ public final class PathsResolver {
     public Optional<String> getEntityFile(String name) {
         checkNotNull(name, "entity name cannot be null");
 
-        for (String searchPath : this.searchOrder) {
-            final File directory = new File(searchPath);
+        if (entitiesIndex == null || checkModifications && !entitiesIndex.isUpToDate()) {
+            loadEntitiesIndex();
+        }
+
+        ++lookupsCount;
+        final Optional<String> result = entitiesIndex.getEntityFile(name);
+        if (result.isPresent()) {
+            ++indexHitsCount;
+        }
+        return result;
+    }
 
-            File[] files = directory.listFiles();
+    /**
+     * Returns the number of calls to {@link PathsResolver#getEntityFile}.
+     *
+     * @return number of lookups of nesc entities
+     */
+    public int getLookupsCount() {
+        return lookupsCount;
+    }
 
-            // FIXME : handle this warning
-            if (files == null) {
-                //System.err.println("Directory files array is null; " + searchPath);
-                continue;
-            }
+    /**
+     * Returns the number of lookups of nesc entities that have found the file
+     * in the index.
+     *
+     * @return number of successful lookups
+     */
+    public int getIndexHitsCount() {
+        return indexHitsCount;
+    }
+
+    /**
+     * Returns how many times the index of nesc entities has been built.
+     *
+     * @return number of builds of the index
+     */
+    public int getIndexBuildsCount() {
+        return indexBuildsCount;
+    }
 
-            for (File child : files) {
-                if (!child.isFile()) {
-                    continue;
-                }
-                final String childName = Files.getNameWithoutExtension(child.getName());
-                final String extension = Files.getFileExtension(child.getName());
-                if (name.equals(childName) && "nc".equals(extension)) {
-                    return Optional.of(child.getPath());
-                }
+    private void loadEntitiesIndex() {
+        final Optional<EntitiesIndex> cachedIndex = indexCache.isPresent()
+                ? indexCache.get().get(searchOrder)
+                : Optional.<EntitiesIndex>absent();
+
+        if (cachedIndex.isPresent()) {
+            this.entitiesIndex = cachedIndex.get();
+        } else {
+            this.entitiesIndex = EntitiesIndex.build(searchOrder);
+            ++indexBuildsCount;
+            if (indexCache.isPresent()) {
+                indexCache.get().put(entitiesIndex);
             }
         }
-        return Optional.absent();
     }
 
     /**
@@ -151,8 +209,12 @@ public final class PathsResolver {
         private String projectPath;
         private List<String> sourcePaths;
         private List<String> quoteIncludePaths;
+        private boolean checkModifications;
+        private Optional<EntitiesIndexCache> indexCache;
 
         public Builder() {
+            this.checkModifications = false;
+            this.indexCache = Optional.absent();
         }
 
         public Builder projectPath(String projectPath) {
@@ -170,6 +232,31 @@ public final class PathsResolver {
             return this;
         }
 
+        /**
+         * Sets whether the index of nesc entities should be rebuilt when
+         * a search directory is modified. By default modifications are not
+         * checked.
+         *
+         * @param checkModifications check modifications of directories
+         * @return builder
+         */
+        public Builder checkModifications(boolean checkModifications) {
+            this.checkModifications = checkModifications;
+            return this;
+        }
+
+        /**
+         * Sets the cache the index of nesc entities is taken from and stored
+         * in. By default the index is not cached.
+         *
+         * @param indexCache cache of indices
+         * @return builder
+         */
+        public Builder indexCache(EntitiesIndexCache indexCache) {
+            this.indexCache = Optional.of(indexCache);
+            return this;
+        }
+
         public PathsResolver build() {
             checkNotNull(projectPath);
             checkNotNull(sourcePaths);
@@ -37,6 +37,12 @@ class PluginLoadDefaultExecutor extends LoadFileExecutor {
         this.visitedFiles = new HashSet<>();
     }
 
+    @Override
+    protected void setUp() throws IOException {
+        fileCacheBuilder.key(ParseCacheKey.compute(context, currentFilePath));
+        super.setUp();
+    }
+
     @Override
     protected void setUpEnvironments() {
         super.setUpEnvironments();
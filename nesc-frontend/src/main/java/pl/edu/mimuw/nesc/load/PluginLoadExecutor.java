@@ -1,6 +1,7 @@
 package pl.edu.mimuw.nesc.load;
 
 import com.google.common.base.Optional;
+import com.google.common.hash.HashCode;
 import org.apache.log4j.Logger;
 import pl.edu.mimuw.nesc.FrontendContext;
 import pl.edu.mimuw.nesc.ast.Location;
@@ -59,6 +60,42 @@ class PluginLoadExecutor extends LoadFileExecutor {
         fileCacheBuilder.isRoot(isRoot);
     }
 
+    @Override
+    public LinkedList<FileCache> parseFile() throws IOException {
+        if (!isRoot) {
+            return super.parseFile();
+        }
+
+        /* The hash is computed before the file is read by the lexer. If the
+         * file changes in the meantime, the result is not recorded. */
+        final HashCode hashBefore = ParseCacheKey.hashFile(currentFilePath);
+        final LinkedList<FileCache> result = super.parseFile();
+        recordParseResult(hashBefore);
+        return result;
+    }
+
+    /**
+     * Save the complete result of parsing the root file in the context. The
+     * key covers all files the root file transitively depends on, so
+     * a modification of any of them prevents reusing the result.
+     */
+    private void recordParseResult(HashCode hashBefore) {
+        context.getParseResults().remove(currentFilePath);
+
+        try {
+            if (!hashBefore.equals(ParseCacheKey.hashFile(currentFilePath))) {
+                LOG.debug("File modified during parsing, result not recorded; file: " + currentFilePath);
+                return;
+            }
+
+            final ParseCacheKey key = ParseCacheKey.computeWithDependencies(context, currentFilePath);
+            context.getParseResults().put(currentFilePath, new PluginParseResult(key,
+                    fileCacheList, context.getMacroManager().getAll(), environment));
+        } catch (IOException e) {
+            LOG.debug("Cannot compute the key of file " + currentFilePath, e);
+        }
+    }
+
     @Override
     protected void setUpEnvironments() {
         super.setUpEnvironments();
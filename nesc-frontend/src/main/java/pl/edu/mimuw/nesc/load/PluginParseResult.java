@@ -0,0 +1,97 @@
+package pl.edu.mimuw.nesc.load;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import pl.edu.mimuw.nesc.environment.TranslationUnitEnvironment;
+import pl.edu.mimuw.nesc.preprocessor.PreprocessorMacro;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Complete result of parsing a root file in the plug-in mode. It contains
+ * all data necessary to reproduce the effects of parsing the file without
+ * parsing it again:</p>
+ * <ul>
+ *     <li>caches of the file and of its dependencies parsed with it</li>
+ *     <li>macros of the macro manager after parsing the file</li>
+ *     <li>the environment of the file</li>
+ *     <li>the key that covers the file, all files it transitively depends on
+ *     and the settings of the frontend</li>
+ * </ul>
+ * <p>Results are kept only in memory of the context of the frontend. They
+ * are not used in the standalone mode because there the abstract syntax
+ * trees are transformed in place during the compilation and all files share
+ * a single global environment, so a result cannot be reused after it has
+ * been compiled once.</p>
+ * <p>Results are not persisted on disk. Besides abstract syntax trees, types
+ * and declarations, which can be written with
+ * {@link pl.edu.mimuw.nesc.astutil.PortableObjectsCodec}, a result consists
+ * of preprocessor macros, environments, NesC declarations, tokens, comments
+ * and directives that have no portable encoding. Macros cannot be encoded
+ * without changes to the preprocessor library because
+ * {@link org.anarres.cpp.Macro} does not expose its tokens and the names of
+ * its parameters. Persisting only the keys would not allow skipping any
+ * parsing, so it is not done.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class PluginParseResult {
+    /**
+     * Key of the file and its dependencies computed after parsing it.
+     */
+    private final ParseCacheKey key;
+
+    /**
+     * Caches returned by the executor (the first one is the root file's
+     * cache).
+     */
+    private final ImmutableList<FileCache> fileCaches;
+
+    /**
+     * Contents of the macro manager after parsing the file.
+     */
+    private final ImmutableMap<String, PreprocessorMacro> macros;
+
+    /**
+     * Environment of the file set in the context.
+     */
+    private final TranslationUnitEnvironment environment;
+
+    PluginParseResult(ParseCacheKey key, List<FileCache> fileCaches,
+            Map<String, PreprocessorMacro> macros, TranslationUnitEnvironment environment) {
+        checkNotNull(key, "key cannot be null");
+        checkNotNull(fileCaches, "file caches cannot be null");
+        checkNotNull(macros, "macros cannot be null");
+        checkNotNull(environment, "environment cannot be null");
+        checkArgument(!fileCaches.isEmpty(), "file caches cannot be empty");
+
+        this.key = key;
+        this.fileCaches = ImmutableList.copyOf(fileCaches);
+        this.macros = ImmutableMap.copyOf(macros);
+        this.environment = environment;
+    }
+
+    public ParseCacheKey getKey() {
+        return key;
+    }
+
+    public ImmutableList<FileCache> getFileCaches() {
+        return fileCaches;
+    }
+
+    public FileCache getRootFileCache() {
+        return fileCaches.get(0);
+    }
+
+    public ImmutableMap<String, PreprocessorMacro> getMacros() {
+        return macros;
+    }
+
+    public TranslationUnitEnvironment getEnvironment() {
+        return environment;
+    }
+}
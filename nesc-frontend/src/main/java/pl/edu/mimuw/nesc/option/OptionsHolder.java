@@ -41,6 +41,8 @@ public class OptionsHolder {
     public static final String NESC_EXTERNAL_VARIABLES_FILE = "x";
     public static final String NESC_OPTIMIZE_ATOMIC = "optimize-atomic";
     public static final String NESC_OPTIMIZE_TASKS = "optimize-tasks";
+    public static final String NESC_TIME_REPORT = "time-report";
+    public static final String NESC_CORE_THREADS = "core-threads";
 
     private static final Pattern REGEXP_EXTERNAL_VARIABLE =
             Pattern.compile("((?<componentName>[a-zA-Z_]\\w*)\\.)?(?<variableName>[a-zA-Z_]\\w*)");
@@ -223,6 +225,17 @@ public class OptionsHolder {
         return cmd.hasOption(NESC_OPTIMIZE_TASKS);
     }
 
+    public Optional<String> getTimeReportFile() {
+        return Optional.fromNullable(getValue(NESC_TIME_REPORT));
+    }
+
+    public Optional<Integer> getCoreThreadsCount() {
+        final String value = getValue(NESC_CORE_THREADS);
+        return value != null
+                ? Optional.of(Integer.valueOf(value))
+                : Optional.<Integer>absent();
+    }
+
     /**
      * Check the correctness of the options that are present in this holder.
      *
@@ -256,6 +269,16 @@ public class OptionsHolder {
         }
 
         error = validateExternalVariablesFileOption();
+        if (error.isPresent()) {
+            return error;
+        }
+
+        error = validateTimeReportOption();
+        if (error.isPresent()) {
+            return error;
+        }
+
+        error = validateCoreThreadsOption();
 
         return error;
     }
@@ -331,6 +354,31 @@ public class OptionsHolder {
                 : Optional.<String>absent();
     }
 
+    private Optional<String> validateTimeReportOption() {
+        final String timeReportFile = getValue(NESC_TIME_REPORT);
+        if (timeReportFile == null) {
+            return Optional.absent();
+        }
+
+        return timeReportFile.isEmpty()
+                ? Optional.of("name of the time report file cannot be empty")
+                : Optional.<String>absent();
+    }
+
+    private Optional<String> validateCoreThreadsOption() {
+        final String coreThreads = getValue(NESC_CORE_THREADS);
+        if (coreThreads == null) {
+            return Optional.absent();
+        }
+
+        try {
+            return Integer.parseInt(coreThreads) > 0
+                    ? Optional.<String>absent()
+                    : Optional.of("count of threads of the core phase must be positive");
+        } catch (NumberFormatException e) {
+            return Optional.of("count of threads of the core phase '" + coreThreads + "' is not a valid number");
+        }
+    }
 
     /**
      * Get the ordinal form of the given number.
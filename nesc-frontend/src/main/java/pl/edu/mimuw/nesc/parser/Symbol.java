@@ -175,6 +175,25 @@ public class Symbol {
             return this;
         }
 
+        /**
+         * Restores the initial state of this builder so that it can be used
+         * for building another symbol.
+         *
+         * @return Reference to this object.
+         */
+        public Builder reset() {
+            this.symbolCode = 0;
+            this.line = 0;
+            this.column = 0;
+            this.endLine = 0;
+            this.endColumn = 0;
+            this.file = null;
+            this.value = null;
+            this.invalid = false;
+            this.isExpanded = false;
+            return this;
+        }
+
         public Symbol build() {
             // TODO: verify
             checkState(value != null, "value cannot be null");
@@ -43,9 +43,10 @@ public final class EnumeratedTypeLayoutCalculator implements TypeLayoutCalculato
     private final ABI abi;
 
     /**
-     * Interpreter used for evaluation of constant expressions.
+     * Interpreter used for evaluation of constant expressions. It is created
+     * only if the layout is actually computed.
      */
-    private final ConstExprInterpreter interpreter;
+    private Optional<ConstExprInterpreter> interpreter = Optional.absent();
 
     /**
      * The result of calculating layout.
@@ -75,7 +76,6 @@ public final class EnumeratedTypeLayoutCalculator implements TypeLayoutCalculato
         checkNotNull(type, "the enumerated type cannot be null");
         this.abi = abi;
         this.type = type;
-        this.interpreter = new ConstExprInterpreter(abi);
     }
 
     @Override
@@ -105,9 +105,13 @@ public final class EnumeratedTypeLayoutCalculator implements TypeLayoutCalculato
         final EnumDeclaration declaration = type.getEnumDeclaration();
         BigInteger precedingValue = BigInteger.valueOf(-1L);
 
+        if (!interpreter.isPresent()) {
+            interpreter = Optional.of(new ConstExprInterpreter(abi));
+        }
+
         for (ConstantDeclaration constant : declaration.getConstants().get()) {
             if (constant.getEnumerator().getValue().isPresent()) {
-                final ConstantValue value = interpreter.evaluate(constant.getEnumerator().getValue().get());
+                final ConstantValue value = interpreter.get().evaluate(constant.getEnumerator().getValue().get());
                 if (value.getType().getType() != ConstantType.Type.SIGNED_INTEGER
                         && value.getType().getType() != ConstantType.Type.UNSIGNED_INTEGER) {
                     throw new RuntimeException("value of enumeration constant does not evaluate to an integer");
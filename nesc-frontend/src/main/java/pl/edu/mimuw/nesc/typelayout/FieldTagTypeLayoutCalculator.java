@@ -37,7 +37,7 @@ public final class FieldTagTypeLayoutCalculator implements TypeLayoutCalculator
 
     private final ABI abi;
     private final FieldTagType<?> type;
-    private final ConstExprInterpreter interpreter;
+    private Optional<ConstExprInterpreter> interpreter = Optional.absent();
     private Optional<TypeLayout> calculatedLayout = Optional.absent();
 
     /**
@@ -55,7 +55,6 @@ public final class FieldTagTypeLayoutCalculator implements TypeLayoutCalculator
 
         this.abi = abi;
         this.type = type;
-        this.interpreter = new ConstExprInterpreter(abi);
     }
 
     @Override
@@ -112,6 +111,13 @@ public final class FieldTagTypeLayoutCalculator implements TypeLayoutCalculator
                 alignmentInBits / BITS_PER_BYTE));
     }
 
+    private ConstExprInterpreter getInterpreter() {
+        if (!this.interpreter.isPresent()) {
+            this.interpreter = Optional.of(new ConstExprInterpreter(this.abi));
+        }
+        return this.interpreter.get();
+    }
+
     private TinyCalculator calculateFieldElement(FieldDeclaration field,
                 int startOffsetInBits, int startSizeInBits, int startAlignmentInBits,
                 Optional<Endianness> previousEndianness, boolean isLast) {
@@ -136,7 +142,7 @@ public final class FieldTagTypeLayoutCalculator implements TypeLayoutCalculator
             final TypeLayout fieldTypeLayout = new UniversalTypeLayoutCalculator(this.abi,
                     field.getType().get()).calculate();
 
-            final ConstantValue widthValue = interpreter.evaluate(field.getAstField().getBitfield().get());
+            final ConstantValue widthValue = getInterpreter().evaluate(field.getAstField().getBitfield().get());
             if (widthValue.getType().getType() != ConstantType.Type.UNSIGNED_INTEGER
                     && widthValue.getType().getType() != ConstantType.Type.SIGNED_INTEGER) {
                 throw new RuntimeException("width of the bit-field is not an integer constant");
@@ -159,8 +165,8 @@ public final class FieldTagTypeLayoutCalculator implements TypeLayoutCalculator
     private TinyCalculator calculateBlockElement(FieldTagDeclaration<?> tagDeclaration,
             int startOffsetInBits, int startSizeInBits, int startAlignmentInBits) {
 
-        final TypeLayout anonymousTagLayout = new FieldTagTypeLayoutCalculator(this.abi,
-                tagDeclaration.getType(false, false)).calculate();
+        final TypeLayout anonymousTagLayout = TypeLayoutCache.forABI(this.abi).getLayout(
+                tagDeclaration.getType(false, false));
         return new BlockElementTinyCalculator(startOffsetInBits, startSizeInBits,
                 startAlignmentInBits, anonymousTagLayout, tagDeclaration);
     }
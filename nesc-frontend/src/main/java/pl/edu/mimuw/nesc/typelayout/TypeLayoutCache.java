@@ -0,0 +1,137 @@
+package pl.edu.mimuw.nesc.typelayout;
+
+import com.google.common.collect.MapMaker;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import pl.edu.mimuw.nesc.abi.ABI;
+import pl.edu.mimuw.nesc.declaration.tag.EnumDeclaration;
+import pl.edu.mimuw.nesc.declaration.tag.FieldTagDeclaration;
+import pl.edu.mimuw.nesc.type.EnumeratedType;
+import pl.edu.mimuw.nesc.type.FieldTagType;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Cache of layouts of tag types for a single ABI object. Layouts are kept
+ * in tag declaration objects (including declarations of nested anonymous
+ * tags), so they are looked up by identity of declarations and copies of
+ * declarations made during instantiation of generic components inherit them.
+ * A layout of a tag is computed at most once and all later requests for it
+ * are answered without creating a calculator.</p>
+ *
+ * <p>Caches are kept for identities of ABI objects. The frontend gives each
+ * context its own copy of an ABI, so a cache, its lock and its counters
+ * belong to a single compilation and compilations performed at once do not
+ * wait for each other.</p>
+ *
+ * <p>All layout calculators and transformers of external types consult the
+ * cache for the ABI they use. It is safe to use from multiple threads.
+ * Requests for layouts are serialized on the cache because computing
+ * a layout sets it in shared declaration objects and it can be set only
+ * once.</p>
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public final class TypeLayoutCache {
+    /**
+     * Caches for all ABIs that have been used. Keys are weakly referenced and
+     * compared by identity.
+     */
+    private static final ConcurrentMap<ABI, TypeLayoutCache> CACHES = new MapMaker()
+            .weakKeys()
+            .makeMap();
+
+    /**
+     * ABI used for calculating layouts.
+     */
+    private final ABI abi;
+
+    /**
+     * Counters of layouts found in the cache and computed.
+     */
+    private final AtomicLong hitsCount;
+    private final AtomicLong missesCount;
+
+    /**
+     * Get the cache of layouts computed in the given ABI.
+     *
+     * @param abi ABI of the cache.
+     * @return The cache for the given ABI.
+     */
+    public static TypeLayoutCache forABI(ABI abi) {
+        checkNotNull(abi, "ABI cannot be null");
+
+        final TypeLayoutCache cache = CACHES.get(abi);
+        if (cache != null) {
+            return cache;
+        }
+
+        final TypeLayoutCache newCache = new TypeLayoutCache(abi);
+        final TypeLayoutCache previousCache = CACHES.putIfAbsent(abi, newCache);
+        return previousCache != null ? previousCache : newCache;
+    }
+
+    private TypeLayoutCache(ABI abi) {
+        this.abi = abi;
+        this.hitsCount = new AtomicLong(0L);
+        this.missesCount = new AtomicLong(0L);
+    }
+
+    /**
+     * Get the layout of the given structure or union type. As a side effect
+     * of computing it, layouts of all fields of the tag are set.
+     *
+     * @param type Complete field tag type.
+     * @return Layout of the given type.
+     */
+    public synchronized TypeLayout getLayout(FieldTagType<?> type) {
+        checkNotNull(type, "type cannot be null");
+
+        final FieldTagDeclaration<?> declaration = type.getDeclaration();
+        if (declaration.hasLayout()) {
+            hitsCount.incrementAndGet();
+            return new TypeLayout(declaration.getSize(), declaration.getAlignment());
+        }
+
+        missesCount.incrementAndGet();
+        return new FieldTagTypeLayoutCalculator(abi, type).calculate();
+    }
+
+    /**
+     * Get the layout of the given enumerated type. As a side effect of
+     * computing it, values of all constants of the type are set.
+     *
+     * @param type Enumerated type.
+     * @return Layout of the given type.
+     */
+    public synchronized TypeLayout getLayout(EnumeratedType type) {
+        checkNotNull(type, "type cannot be null");
+
+        final EnumDeclaration declaration = type.getEnumDeclaration();
+        if (declaration.hasLayout()) {
+            hitsCount.incrementAndGet();
+            return new TypeLayout(declaration.getSize(), declaration.getAlignment());
+        }
+
+        missesCount.incrementAndGet();
+        return new EnumeratedTypeLayoutCalculator(abi, type).calculate();
+    }
+
+    /**
+     * Get the count of requests for layouts that have been already computed.
+     *
+     * @return Count of hits of the cache.
+     */
+    public long getHitsCount() {
+        return hitsCount.get();
+    }
+
+    /**
+     * Get the count of requests that caused computing layouts.
+     *
+     * @return Count of misses of the cache.
+     */
+    public long getMissesCount() {
+        return missesCount.get();
+    }
+}
@@ -31,9 +31,10 @@ public class UniversalTypeLayoutCalculator implements TypeLayoutCalculator {
     private final Type type;
 
     /**
-     * Interpreter for constant expressions.
+     * Interpreter for constant expressions. It is created when it is needed
+     * for the first time.
      */
-    private final Interpreter interpreter;
+    private Optional<Interpreter> interpreter = Optional.absent();
 
     /**
      * The calculated layout.
@@ -50,7 +51,6 @@ public class UniversalTypeLayoutCalculator implements TypeLayoutCalculator {
 
         this.abi = abi;
         this.type = type;
-        this.interpreter = new ConstExprInterpreter(abi);
     }
 
     @Override
@@ -63,6 +63,13 @@ public class UniversalTypeLayoutCalculator implements TypeLayoutCalculator {
         return this.calculatedLayout.get();
     }
 
+    private Interpreter getInterpreter() {
+        if (!this.interpreter.isPresent()) {
+            this.interpreter = Optional.<Interpreter>of(new ConstExprInterpreter(this.abi));
+        }
+        return this.interpreter.get();
+    }
+
     /**
      * The visitor that actually computes the layout.
      *
@@ -129,8 +136,7 @@ public class UniversalTypeLayoutCalculator implements TypeLayoutCalculator {
 
         @Override
         public TypeLayout visit(EnumeratedType type, Void arg) {
-            return new EnumeratedTypeLayoutCalculator(UniversalTypeLayoutCalculator.this.abi, type)
-                    .calculate();
+            return TypeLayoutCache.forABI(UniversalTypeLayoutCalculator.this.abi).getLayout(type);
         }
 
         @Override
@@ -160,7 +166,7 @@ public class UniversalTypeLayoutCalculator implements TypeLayoutCalculator {
                     "cannot compute the layout of an incomplete array type");
 
             // Compute the size of the array
-            final ConstantValue arraySizeValue = interpreter.evaluate(type.getSize().get());
+            final ConstantValue arraySizeValue = getInterpreter().evaluate(type.getSize().get());
             checkState(arraySizeValue.getType().getType() == ConstantType.Type.SIGNED_INTEGER
                         || arraySizeValue.getType().getType() == ConstantType.Type.UNSIGNED_INTEGER,
                         "array size expression evaluated to non-integer type '" + arraySizeValue.getType().getType() + "'");
@@ -255,8 +261,7 @@ public class UniversalTypeLayoutCalculator implements TypeLayoutCalculator {
         }
 
         private TypeLayout computeFieldTagLayout(FieldTagType<?> fieldTagType) {
-            return new FieldTagTypeLayoutCalculator(UniversalTypeLayoutCalculator.this.abi, fieldTagType)
-                    .calculate();
+            return TypeLayoutCache.forABI(UniversalTypeLayoutCalculator.this.abi).getLayout(fieldTagType);
         }
 
         private TypeLayout computeLayout(int size, int nonExternalAlignment, boolean isExternal) {
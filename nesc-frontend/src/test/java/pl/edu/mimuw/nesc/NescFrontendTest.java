@@ -0,0 +1,75 @@
+package pl.edu.mimuw.nesc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pl.edu.mimuw.nesc.exception.InvalidOptionsException;
+
+/**
+ * Tests of using a single frontend for many compilations, e.g. in the
+ * compiler daemon.
+ *
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class NescFrontendTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test(expected = InvalidOptionsException.class)
+    public void invalidOptionsThrownWithoutExit() throws Exception {
+        final NescFrontend frontend = NescFrontend.builder()
+                .standalone(true)
+                .exitOnErrors(false)
+                .retainSourceDetails(false)
+                .build();
+
+        // the scheduler specification is missing
+        frontend.createContext(new String[] { "-p", folder.getRoot().getPath(), "-m", "App" });
+    }
+
+    @Test
+    public void frontendUsableAfterInvalidOptions() throws Exception {
+        final NescFrontend frontend = NescFrontend.builder()
+                .standalone(true)
+                .exitOnErrors(false)
+                .retainSourceDetails(false)
+                .build();
+
+        try {
+            frontend.createContext(new String[] { "-p", folder.getRoot().getPath(), "-m", "App" });
+            fail("invalid options accepted");
+        } catch (InvalidOptionsException e) {
+            // expected
+        }
+
+        final ContextRef contextRef = frontend.createContext(new String[] { "-p",
+                folder.getRoot().getPath(), "-m", "App", "--scheduler=S,I,r,p,q,s" });
+        assertNotNull(frontend.getContext(contextRef));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deletedContextUnknown() throws Exception {
+        final NescFrontend frontend = NescFrontend.builder().build();
+        final ContextRef contextRef = newContext(frontend);
+
+        frontend.deleteContext(contextRef);
+        frontend.getContext(contextRef);
+    }
+
+    @Test
+    public void platformABILoadedOnce() throws Exception {
+        final NescFrontend frontend = NescFrontend.builder().build();
+        final ContextRef first = newContext(frontend);
+        final ContextRef second = newContext(frontend);
+
+        assertNotSame(frontend.getContext(first), frontend.getContext(second));
+        assertSame(frontend.getContext(first).getABI(), frontend.getContext(second).getABI());
+    }
+
+    private ContextRef newContext(NescFrontend frontend) throws InvalidOptionsException {
+        return frontend.createContext(new String[] { "-p", folder.getRoot().getPath(), "-m", "App" });
+    }
+}
@@ -0,0 +1,68 @@
+package pl.edu.mimuw.nesc.lexer;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * @author Grzegorz Kołakowski <gk291583@students.mimuw.edu.pl>
+ */
+public class NumericLiteralsTest {
+
+    private static final Pattern INTEGER_PATTERN = Pattern.compile(NescLexer.INTEGER_REGEX);
+    private static final Pattern FLOAT_PATTERN = Pattern.compile(NescLexer.FLOAT_REGEX);
+
+    /**
+     * Characters that are meaningful in numeric literals.
+     */
+    private static final String ALPHABET = "0178afeExXpP.+-uUlL";
+
+    private static final int MAX_GENERATED_LENGTH = 4;
+
+    @Test
+    public void testLiterals() {
+        final ImmutableList<String> literals = ImmutableList.of(
+                "0", "7", "10", "0755", "0789", "0x", "0x1F", "0XaBcDeF", "123456789",
+                "10u", "10U", "10ul", "10UL", "10lu", "10LLU", "10llu", "10lL", "10Ll", "10uu",
+                "10ull", "10uLL", "10uLl", "10lul", "0x10L",
+                "1.", ".5", "1.5", "1e5", "1E+5", "1.e-5", ".5e10", "1.5f", "1.5L", "1e5F", "1e", "1e+",
+                "1ff", ".", ".e5", "1..5", "0x1p3", "0x1.8p-3", "0x.8p3", "0x1.p3", "0x.p3", "0x1.8",
+                "0x1p3f", "0x1P+3L", "08.5", "09e1", "");
+
+        for (String literal : literals) {
+            assertMatches(literal);
+        }
+    }
+
+    @Test
+    public void testGeneratedLiterals() {
+        final char[] buffer = new char[MAX_GENERATED_LENGTH];
+        for (int length = 1; length <= MAX_GENERATED_LENGTH; ++length) {
+            generate(buffer, 0, length);
+        }
+    }
+
+    private void generate(char[] buffer, int index, int length) {
+        if (index == length) {
+            assertMatches(new String(buffer, 0, length));
+            return;
+        }
+
+        for (int i = 0; i < ALPHABET.length(); ++i) {
+            buffer[index] = ALPHABET.charAt(i);
+            generate(buffer, index + 1, length);
+        }
+    }
+
+    private void assertMatches(String literal) {
+        assertThat(NumericLiterals.isIntegerLiteral(literal))
+                .as("integer literal '" + literal + "'")
+                .isEqualTo(INTEGER_PATTERN.matcher(literal).matches());
+        assertThat(NumericLiterals.isFloatingLiteral(literal))
+                .as("floating literal '" + literal + "'")
+                .isEqualTo(FLOAT_PATTERN.matcher(literal).matches());
+    }
+}
@@ -0,0 +1,68 @@
+package pl.edu.mimuw.nesc.load;
+
+import static org.junit.Assert.*;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pl.edu.mimuw.nesc.FileData;
+import pl.edu.mimuw.nesc.FrontendContext;
+import pl.edu.mimuw.nesc.option.OptionsParser;
+
+/**
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class DefaultFilesSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void emptySnapshotReusedWithSameSettings() throws Exception {
+        final File project = folder.newFolder("project");
+        final DefaultFilesSnapshot snapshot = takeSnapshot(newContext(project));
+
+        assertTrue(snapshot.isUpToDate(newContext(project)));
+    }
+
+    @Test
+    public void emptySnapshotNotReusedAfterAddingIncludeFile() throws Exception {
+        final File project = folder.newFolder("project");
+        final File header = new File(project, "defs.h");
+        Files.write("#define N 10\n", header, Charsets.UTF_8);
+        final DefaultFilesSnapshot snapshot = takeSnapshot(newContext(project));
+
+        assertFalse(snapshot.isUpToDate(newContext(project, "--include", header.getPath())));
+    }
+
+    @Test
+    public void snapshotNotReusedAfterChangingMacros() throws Exception {
+        final File project = folder.newFolder("project");
+        final DefaultFilesSnapshot snapshot = takeSnapshot(newContext(project, "-D", "N=10"));
+
+        assertTrue(snapshot.isUpToDate(newContext(project, "-D", "N=10")));
+        assertFalse(snapshot.isUpToDate(newContext(project, "-D", "N=11")));
+    }
+
+    private DefaultFilesSnapshot takeSnapshot(FrontendContext context) {
+        final Optional<DefaultFilesSnapshot> snapshot =
+                DefaultFilesSnapshot.take(context, ImmutableList.<FileData>of());
+        assertTrue(snapshot.isPresent());
+        return snapshot.get();
+    }
+
+    private FrontendContext newContext(File project, String... extraArgs) throws Exception {
+        final ImmutableList<String> args = ImmutableList.<String>builder()
+                .add("-p", project.getPath(), "-m", "App")
+                .add(extraArgs)
+                .build();
+        return new FrontendContext(new OptionsParser().parse(args.toArray(new String[args.size()])),
+                false, true, ImmutableSet.<String>of(), ImmutableSet.<String>of(), null);
+    }
+}
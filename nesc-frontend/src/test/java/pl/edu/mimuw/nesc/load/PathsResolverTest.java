@@ -0,0 +1,158 @@
+package pl.edu.mimuw.nesc.load;
+
+import static org.junit.Assert.*;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class PathsResolverTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void earlierSearchPathTakesPrecedence() throws IOException {
+        final File project = folder.newFolder("project");
+        final File first = folder.newFolder("first");
+        final File second = folder.newFolder("second");
+        touch(new File(first, "TimerC.nc"));
+        touch(new File(second, "TimerC.nc"));
+        touch(new File(second, "LedsC.nc"));
+        touch(new File(second, "Leds.h"));
+
+        final PathsResolver resolver = newResolver(project, first, second, false);
+
+        assertEquals(Optional.of(new File(first, "TimerC.nc").getPath()), resolver.getEntityFile("TimerC"));
+        assertEquals(Optional.of(new File(second, "LedsC.nc").getPath()), resolver.getEntityFile("LedsC"));
+        assertFalse(resolver.getEntityFile("Leds").isPresent());
+        assertFalse(resolver.getEntityFile("MainC").isPresent());
+
+        assertEquals(4, resolver.getLookupsCount());
+        assertEquals(2, resolver.getIndexHitsCount());
+        assertEquals(1, resolver.getIndexBuildsCount());
+    }
+
+    @Test
+    public void directoryIsNotAnEntity() throws IOException {
+        final File project = folder.newFolder("project");
+        final File first = folder.newFolder("first");
+        final File second = folder.newFolder("second");
+        assertTrue(new File(first, "QueueC.nc").mkdir());
+        touch(new File(second, "QueueC.nc"));
+
+        final PathsResolver resolver = newResolver(project, first, second, false);
+
+        assertEquals(Optional.of(new File(second, "QueueC.nc").getPath()), resolver.getEntityFile("QueueC"));
+    }
+
+    @Test
+    public void indexRebuiltAfterModification() throws IOException {
+        final File project = folder.newFolder("project");
+        final File first = folder.newFolder("first");
+        final File second = folder.newFolder("second");
+
+        final PathsResolver resolver = newResolver(project, first, second, true);
+        assertFalse(resolver.getEntityFile("MainC").isPresent());
+        assertEquals(1, resolver.getIndexBuildsCount());
+
+        touch(new File(second, "MainC.nc"));
+        assertTrue(second.setLastModified(second.lastModified() + 2000));
+
+        assertEquals(Optional.of(new File(second, "MainC.nc").getPath()), resolver.getEntityFile("MainC"));
+        assertEquals(2, resolver.getIndexBuildsCount());
+        assertEquals(Optional.of(new File(second, "MainC.nc").getPath()), resolver.getEntityFile("MainC"));
+        assertEquals(2, resolver.getIndexBuildsCount());
+    }
+
+    @Test
+    public void cachedIndexReusedByNextResolver() throws IOException {
+        final File project = folder.newFolder("project");
+        final File first = folder.newFolder("first");
+        final File second = folder.newFolder("second");
+        touch(new File(second, "LedsC.nc"));
+        setPastModificationTimes(project, first, second);
+        final EntitiesIndexCache cache = new EntitiesIndexCache();
+
+        final PathsResolver firstResolver = newResolver(project, first, second, false, cache);
+        assertEquals(Optional.of(new File(second, "LedsC.nc").getPath()), firstResolver.getEntityFile("LedsC"));
+        assertEquals(1, firstResolver.getIndexBuildsCount());
+
+        final PathsResolver secondResolver = newResolver(project, first, second, false, cache);
+        assertEquals(Optional.of(new File(second, "LedsC.nc").getPath()), secondResolver.getEntityFile("LedsC"));
+        assertEquals(0, secondResolver.getIndexBuildsCount());
+    }
+
+    @Test
+    public void cachedIndexNotReusedAfterModification() throws IOException {
+        final File project = folder.newFolder("project");
+        final File first = folder.newFolder("first");
+        final File second = folder.newFolder("second");
+        touch(new File(second, "LedsC.nc"));
+        setPastModificationTimes(project, first, second);
+        final EntitiesIndexCache cache = new EntitiesIndexCache();
+
+        assertFalse(newResolver(project, first, second, false, cache).getEntityFile("TimerC").isPresent());
+
+        touch(new File(first, "TimerC.nc"));
+        assertTrue(first.setLastModified(first.lastModified() - 5000));
+
+        final PathsResolver resolver = newResolver(project, first, second, false, cache);
+        assertEquals(Optional.of(new File(first, "TimerC.nc").getPath()), resolver.getEntityFile("TimerC"));
+        assertEquals(1, resolver.getIndexBuildsCount());
+    }
+
+    @Test
+    public void indexBuiltRightAfterModificationNotReused() throws IOException {
+        final File project = folder.newFolder("project");
+        final File first = folder.newFolder("first");
+        final File second = folder.newFolder("second");
+        touch(new File(second, "LedsC.nc"));
+        final EntitiesIndexCache cache = new EntitiesIndexCache();
+
+        assertTrue(newResolver(project, first, second, false, cache).getEntityFile("LedsC").isPresent());
+
+        final PathsResolver resolver = newResolver(project, first, second, false, cache);
+        assertTrue(resolver.getEntityFile("LedsC").isPresent());
+        assertEquals(1, resolver.getIndexBuildsCount());
+    }
+
+    private PathsResolver newResolver(File project, File first, File second, boolean checkModifications) {
+        return newResolverBuilder(project, first, second, checkModifications).build();
+    }
+
+    private PathsResolver newResolver(File project, File first, File second, boolean checkModifications,
+            EntitiesIndexCache cache) {
+        return newResolverBuilder(project, first, second, checkModifications)
+                .indexCache(cache)
+                .build();
+    }
+
+    private PathsResolver.Builder newResolverBuilder(File project, File first, File second,
+            boolean checkModifications) {
+        return PathsResolver.builder()
+                .projectPath(project.getPath())
+                .sourcePaths(ImmutableList.of(first.getPath(), second.getPath()))
+                .quoteIncludePaths(ImmutableList.<String>of())
+                .checkModifications(checkModifications);
+    }
+
+    private void setPastModificationTimes(File... directories) {
+        final long past = System.currentTimeMillis() - 60000;
+        for (File directory : directories) {
+            assertTrue(directory.setLastModified(past));
+        }
+    }
+
+    private void touch(File file) throws IOException {
+        Files.touch(file);
+    }
+}
@@ -0,0 +1,108 @@
+package pl.edu.mimuw.nesc.typelayout;
+
+import com.google.common.base.Optional;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.mimuw.nesc.abi.ABI;
+import pl.edu.mimuw.nesc.ast.Location;
+import pl.edu.mimuw.nesc.ast.StructSemantics;
+import pl.edu.mimuw.nesc.ast.gen.Attribute;
+import pl.edu.mimuw.nesc.ast.gen.Declaration;
+import pl.edu.mimuw.nesc.ast.gen.Declarator;
+import pl.edu.mimuw.nesc.ast.gen.Expression;
+import pl.edu.mimuw.nesc.ast.gen.FieldDecl;
+import pl.edu.mimuw.nesc.ast.gen.StructRef;
+import pl.edu.mimuw.nesc.ast.gen.Word;
+import pl.edu.mimuw.nesc.declaration.tag.FieldDeclaration;
+import pl.edu.mimuw.nesc.declaration.tag.StructDeclaration;
+import pl.edu.mimuw.nesc.declaration.tag.fieldtree.FieldElement;
+import pl.edu.mimuw.nesc.declaration.tag.fieldtree.TreeElement;
+import pl.edu.mimuw.nesc.type.FieldTagType;
+import pl.edu.mimuw.nesc.type.IntType;
+import pl.edu.mimuw.nesc.type.Type;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Michał Ciszewski <michal.ciszewski@students.mimuw.edu.pl>
+ */
+public class TypeLayoutCacheTest {
+    private ABI abi;
+
+    @Before
+    public void loadABI() throws Exception {
+        try (final InputStream input = getClass().getClassLoader()
+                .getResourceAsStream("abi/msp430abi.xml")) {
+            abi = new ABI(input);
+        }
+    }
+
+    @Test
+    public void layoutComputedOnce() {
+        final TypeLayoutCache cache = TypeLayoutCache.forABI(abi);
+        final FieldTagType<?> type = newStructure("a", "b");
+        final int intSize = abi.getInt().getSize();
+
+        final TypeLayout first = cache.getLayout(type);
+        assertEquals(0L, cache.getHitsCount());
+        assertEquals(1L, cache.getMissesCount());
+
+        final TypeLayout second = cache.getLayout(type);
+        assertEquals(1L, cache.getHitsCount());
+        assertEquals(1L, cache.getMissesCount());
+
+        assertEquals(2 * intSize, first.getSize());
+        assertEquals(first.getSize(), second.getSize());
+        assertEquals(first.getAlignment(), second.getAlignment());
+    }
+
+    @Test
+    public void fieldsLayoutsSetWithLayoutOfStructure() {
+        final FieldTagType<?> type = newStructure("a", "b");
+        TypeLayoutCache.forABI(abi).getLayout(type);
+
+        final FieldDeclaration secondField = type.getDeclaration().findField("b").get();
+        assertTrue(secondField.hasLayout());
+        assertEquals(abi.getInt().getSize() * 8, secondField.getOffsetInBits());
+    }
+
+    @Test
+    public void cacheKeptPerABIObject() {
+        final ABI copiedABI = new ABI(abi);
+
+        assertSame(TypeLayoutCache.forABI(abi), TypeLayoutCache.forABI(abi));
+        assertNotSame(TypeLayoutCache.forABI(abi), TypeLayoutCache.forABI(copiedABI));
+
+        TypeLayoutCache.forABI(abi).getLayout(newStructure("a"));
+        assertEquals(1L, TypeLayoutCache.forABI(abi).getMissesCount());
+        assertEquals(0L, TypeLayoutCache.forABI(copiedABI).getMissesCount());
+        assertEquals(0L, TypeLayoutCache.forABI(copiedABI).getHitsCount());
+    }
+
+    private static FieldTagType<?> newStructure(String... fieldsNames) {
+        final Location location = Location.getDummyLocation();
+        final List<TreeElement> structure = new LinkedList<>();
+
+        for (String fieldName : fieldsNames) {
+            final FieldDecl astField = new FieldDecl(location, Optional.<Declarator>absent(),
+                    new LinkedList<Attribute>(), Optional.<Expression>absent());
+            final FieldDeclaration field = new FieldDeclaration(Optional.of(fieldName),
+                    location, location, Optional.<Type>of(new IntType()), false, astField);
+            structure.add(new FieldElement(field));
+        }
+
+        final StructRef astStructure = new StructRef(location, new LinkedList<Attribute>(),
+                new LinkedList<Declaration>(), null, StructSemantics.DEFINITION);
+        final StructDeclaration.Builder builder = StructDeclaration.definitionBuilder();
+        builder.astNode(astStructure);
+        builder.structure(structure);
+        builder.startLocation(location);
+        final StructDeclaration declaration = builder.build();
+        declaration.ownContents();
+
+        return declaration.getType(false, false);
+    }
+}